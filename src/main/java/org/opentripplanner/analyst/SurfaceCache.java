@@ -29,7 +29,9 @@ public class SurfaceCache {
         	       		.build();
     }
 
+    /** Add a completed surface, compacting its times since cached surfaces are held for a long time. */
     public int add(TimeSurface surface) {
+        surface.times.compact();
     	this.cache.put(surface.id, surface);
     	return surface.id;
     }
@@ -1,10 +1,8 @@
 package org.opentripplanner.analyst;
 
 import org.locationtech.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
+import org.opentripplanner.analyst.core.IsochroneData;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
@@ -18,6 +16,7 @@ import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.profile.RoundBasedProfileRouter;
 import org.opentripplanner.profile.TimeRange;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
@@ -26,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 
 import static org.apache.commons.math3.util.FastMath.toRadians;
@@ -41,7 +41,8 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+    /** Travel times by vertex index */
+    public final VertexTimes times = new VertexTimes();
     public final double lat, lon;
     public int cutoffMinutes = 90; // this should really be copied from the data source but the new repeated raptor does not do so
     public long dateTime;
@@ -49,6 +50,8 @@ public class TimeSurface implements Serializable {
     public SparseMatrixZSampleGrid<WTWD> sampleGrid; // another representation on a regular grid with a triangulation
     public String description;
     public double walkSpeed = 1.33; // meters/sec TODO could we just store the whole routing request instead of params?
+    private transient Graph graph; // to look up reached vertices by index, null if deserialized
+    public transient List<IsochroneData> isochrones; // computed on demand for the vector tiles of this surface
 
     /** Create a time surface with a sample grid */
     public TimeSurface(ShortestPathTree spt) {
@@ -68,6 +71,9 @@ public class TimeSurface implements Serializable {
         // Here we use the key "default" unlike the graphservice which substitutes in the default ID.
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
+        if (spt.getOptions().rctx != null) {
+            this.graph = spt.getOptions().rctx.graph;
+        }
         long t0 = System.currentTimeMillis();
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
@@ -100,6 +106,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -114,6 +121,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -126,6 +134,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
     }
 
     public TimeSurface(RepeatedRaptorProfileRouter profileRouter) {
@@ -135,6 +144,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = 120; // FIXME is there any well-defined cutoff? This is needed for generating isochrone curves.
     }
 
@@ -170,6 +180,10 @@ public class TimeSurface implements Serializable {
         return times.get(v);
     }
 
+    public int getTime(int vertexIndex) {
+        return times.get(vertexIndex);
+    }
+
     private synchronized int makeUniqueId() {
         int id = nextId++;
         return id;
@@ -199,6 +213,9 @@ public class TimeSurface implements Serializable {
      * This is not really ideal since it includes only intersection nodes, and no points along the road segments.
      */
     public void makeSampleGridWithoutSPT () {
+        if (graph == null) {
+            throw new IllegalStateException("Cannot make a sample grid from a TimeSurface without its graph.");
+        }
         long t0 = System.currentTimeMillis();
         final double gridSizeMeters = 300; // Todo: set dynamically and make sure this matches isoline builder params
         // Off-road max distance MUST be APPROX EQUALS to the grid precision
@@ -215,10 +232,11 @@ public class TimeSurface implements Serializable {
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        for (int v = times.nextReached(0); v >= 0; v = times.nextReached(v + 1)) {
+            // Temporary vertices at the origin have already been removed from the graph
+            Vertex vertex = graph.getVertexById(v);
+            if (vertex == null) continue;
+            int time = times.get(v);
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
@@ -0,0 +1,158 @@
+package org.opentripplanner.analyst;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Travel times to vertices, stored in a dense array indexed by {@link Vertex#getIndex()}.
+ *
+ * This replaces a hash map from vertices to times, which had to be pre-sized for the largest graphs and took several
+ * times the memory of a plain array for every surface, and which hashed every vertex on every lookup.
+ *
+ * Once a surface is complete it can be compacted before it is cached: the array is trimmed after the last reached
+ * vertex, and when all times fit in 16 bits (about 18 hours) they are stored as chars, halving the size again. A
+ * compacted instance is expanded again if it is modified.
+ *
+ * Temporary vertices, e.g. at the origin of a search, have the highest indices of all, and these keep growing with
+ * every search. Their times are kept in a small map instead, so that the array only covers the graph's vertices.
+ */
+public class VertexTimes implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int UNREACHABLE = TimeSurface.UNREACHABLE;
+
+    /** Marks unreachable vertices in the compact representation, where all times are non-negative. */
+    private static final char UNREACHABLE_CHAR = Character.MAX_VALUE;
+
+    /** Times by vertex index, null when compacted to chars */
+    private int[] times;
+
+    /** Times by vertex index, only used when compacted */
+    private char[] compactTimes;
+
+    /** Times of temporary vertices by vertex index, which are not in the array */
+    private final TIntIntMap temporaryTimes = new TIntIntHashMap();
+
+    /** Number of reached vertices, not counting temporary vertices */
+    private int size;
+
+    /** Create an empty instance, which grows to the highest index of the vertices reached. */
+    public VertexTimes() {
+        this(0);
+    }
+
+    public VertexTimes(int capacity) {
+        times = new int[capacity];
+        Arrays.fill(times, UNREACHABLE);
+    }
+
+    public int get(Vertex vertex) {
+        if (vertex instanceof TemporaryVertex) {
+            return temporaryTimes.containsKey(vertex.getIndex()) ? temporaryTimes.get(vertex.getIndex()) : UNREACHABLE;
+        }
+        return get(vertex.getIndex());
+    }
+
+    /** @return the time to the vertex with the given index, or {@link TimeSurface#UNREACHABLE} */
+    public int get(int vertexIndex) {
+        if (compactTimes != null) {
+            if (vertexIndex >= compactTimes.length) return UNREACHABLE;
+            char time = compactTimes[vertexIndex];
+            return time == UNREACHABLE_CHAR ? UNREACHABLE : time;
+        }
+        return vertexIndex < times.length ? times[vertexIndex] : UNREACHABLE;
+    }
+
+    public void put(Vertex vertex, int time) {
+        if (vertex instanceof TemporaryVertex) {
+            if (time == UNREACHABLE) {
+                temporaryTimes.remove(vertex.getIndex());
+            } else {
+                temporaryTimes.put(vertex.getIndex(), time);
+            }
+            return;
+        }
+        put(vertex.getIndex(), time);
+    }
+
+    /** Set the time to the vertex with the given index, or make it unreachable with {@link TimeSurface#UNREACHABLE}. */
+    public void put(int vertexIndex, int time) {
+        if (compactTimes != null) {
+            expand();
+        }
+        if (vertexIndex >= times.length) {
+            if (time == UNREACHABLE) return;
+            int capacity = Math.max(vertexIndex + 1, times.length + times.length / 2);
+            int oldLength = times.length;
+            times = Arrays.copyOf(times, capacity);
+            Arrays.fill(times, oldLength, capacity, UNREACHABLE);
+        }
+        int existing = times[vertexIndex];
+        if (existing == UNREACHABLE && time != UNREACHABLE) size++;
+        if (existing != UNREACHABLE && time == UNREACHABLE) size--;
+        times[vertexIndex] = time;
+    }
+
+    /** @return the number of reached vertices */
+    public int size() {
+        return size + temporaryTimes.size();
+    }
+
+    /**
+     * Iterate over the reached vertices, except temporary ones:
+     * {@code for (int v = times.nextReached(0); v >= 0; v = times.nextReached(v + 1))}
+     *
+     * @return the index of the first reached vertex at or after the given index, or -1 if there is none.
+     */
+    public int nextReached(int fromIndex) {
+        int length = compactTimes != null ? compactTimes.length : times.length;
+        for (int i = fromIndex; i < length; i++) {
+            if (get(i) != UNREACHABLE) return i;
+        }
+        return -1;
+    }
+
+    /** Trim and, where possible, narrow the storage. Call this once the times are complete, e.g. before caching. */
+    public void compact() {
+        if (compactTimes != null) return;
+        int length = 0;
+        boolean fitsInChar = true;
+        for (int i = 0; i < times.length; i++) {
+            int time = times[i];
+            if (time != UNREACHABLE) {
+                length = i + 1;
+                if (time < 0 || time >= UNREACHABLE_CHAR) fitsInChar = false;
+            }
+        }
+        if (fitsInChar) {
+            compactTimes = new char[length];
+            for (int i = 0; i < length; i++) {
+                compactTimes[i] = times[i] == UNREACHABLE ? UNREACHABLE_CHAR : (char) times[i];
+            }
+            times = null;
+        } else {
+            times = Arrays.copyOf(times, length);
+        }
+    }
+
+    private void expand() {
+        times = new int[compactTimes.length];
+        Arrays.fill(times, UNREACHABLE);
+        for (int i = 0; i < compactTimes.length; i++) {
+            if (compactTimes[i] != UNREACHABLE_CHAR) times[i] = compactTimes[i];
+        }
+        compactTimes = null;
+    }
+
+    /** @return the approximate number of bytes used to store the times */
+    public long getStorageBytes() {
+        long bytes = compactTimes != null ? 2L * compactTimes.length : 4L * times.length;
+        return bytes + 8L * temporaryTimes.size();
+    }
+}
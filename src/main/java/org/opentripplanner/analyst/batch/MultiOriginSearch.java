@@ -0,0 +1,538 @@
+package org.opentripplanner.analyst.batch;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the earliest arrival times on the street network from up to 64 origins at once, for batch accessibility
+ * analysis where running one search per origin is too slow.
+ *
+ * The search runs on street edges rather than vertices: each edge holds one time per origin ("lane"), at which the end
+ * of the edge is reached through it, and a 64-bit mask of the lanes whose time improved since the edge was last
+ * expanded. An expanded edge relaxes all of its improved lanes over each turn onto a next edge together, so the turn is
+ * loaded once for all origins instead of once per origin. Knowing the edge through which a vertex was reached applies
+ * turn restrictions, the ban on U-turns and the time to get on a bike as StreetEdge.traverse() does. This is a
+ * label-correcting search: an edge is expanded again whenever one of its lanes improves, so every lane converges to the
+ * exact shortest travel time of its origin, whatever the other origins in the bundle are. Edges are expanded in order
+ * of their smallest improved time, which keeps re-expansions rare for origins close to each other.
+ *
+ * The searches run on a StreetGraph, where the travel time of each street edge and of each turn, including the turn
+ * cost of the intersection model, was computed once for the routing request. Only the requests and graphs where
+ * {@link #supports(Graph, RoutingRequest)} is true can be searched this way, the others must be routed one origin at a
+ * time. Without turn costs the times are the same as those of a shortest path tree per origin with the EarliestArrival
+ * dominance function. With turn costs they can be shorter: a shortest path tree keeps a single state per vertex, so it
+ * does not always find the fastest way to turn, while the search on edges does.
+ *
+ * An instance holds 4 bytes per street edge and origin, plus 9 bytes per street edge. With 64 origins this is 265 bytes
+ * per street edge, about 530 MB for a graph of 2 million street edges. The arrays are reused from one bundle of origins
+ * to the next, and an instance is meant to be used by a single thread, so a batch run needs that much for each thread.
+ */
+public class MultiOriginSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiOriginSearch.class);
+
+    /** The number of origins searched together, limited by the number of bits in a lane mask */
+    public static final int MAX_ORIGINS = 64;
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final StreetGraph streetGraph;
+
+    private final int maxOrigins;
+
+    private final int cutoffSeconds;
+
+    /** Travel times to the end of each edge by edge index and origin, at index edge * maxOrigins + origin */
+    private final int[] times;
+
+    /** The lanes of each edge that improved since it was last expanded */
+    private final long[] dirty;
+
+    /** Whether the times of each edge were set during the current search, to reset only those */
+    private final boolean[] touched;
+
+    private final TIntArrayList touchedEdges = new TIntArrayList();
+
+    /** The vertices from which each origin starts without a previous edge, at index origin * 2 + end, -1 if none */
+    private final int[] startVertices;
+
+    private final int[] startTimes;
+
+    private final EdgeQueue queue = new EdgeQueue();
+
+    private int nOrigins = 0;
+
+    /**
+     * @param maxOrigins the largest number of origins that will be searched together, at most MAX_ORIGINS
+     * @param cutoffSeconds travel times above this are not explored, no cutoff if not positive
+     */
+    public MultiOriginSearch(StreetGraph streetGraph, int maxOrigins, int cutoffSeconds) {
+        if (maxOrigins < 1 || maxOrigins > MAX_ORIGINS) {
+            throw new IllegalArgumentException("Number of origins must be between 1 and " + MAX_ORIGINS);
+        }
+        int nEdges = streetGraph.nEdges();
+        if ((long) nEdges * maxOrigins > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many street edges to search " + maxOrigins + " origins together");
+        }
+        this.streetGraph = streetGraph;
+        this.maxOrigins = maxOrigins;
+        this.cutoffSeconds = cutoffSeconds > 0 ? cutoffSeconds : UNREACHED - 1;
+        this.times = new int[nEdges * maxOrigins];
+        Arrays.fill(times, UNREACHED);
+        this.dirty = new long[nEdges];
+        this.touched = new boolean[nEdges];
+        this.startVertices = new int[maxOrigins * 2];
+        Arrays.fill(startVertices, -1);
+        this.startTimes = new int[maxOrigins * 2];
+    }
+
+    /**
+     * @return whether the travel times of the given request on the given graph can be computed with this class. Apart
+     * from transit, vehicle rental and parking, this rules out everything that depends on more than the previous edge:
+     * <ul>
+     * <li>no-through-traffic areas, which can only be left where they were entered,</li>
+     * <li>hard walk limits,</li>
+     * <li>turn restrictions which only apply at some times, as turns are checked at the departure time.</li>
+     * </ul>
+     */
+    public static boolean supports(Graph graph, RoutingRequest request) {
+        if (request.arriveBy || request.modes.isTransit() || request.allowBikeRental || request.parkAndRide
+                || request.kissAndRide || request.rideAndKiss || request.bikeParkAndRide) {
+            return false;
+        }
+        if (!request.softWalkLimiting && request.maxWalkDistance < Double.MAX_VALUE) {
+            return false;
+        }
+        boolean car = request.modes.getCar();
+        boolean bicycle = request.modes.getBicycle();
+        for (StreetEdge edge : graph.getStreetEdges()) {
+            if (car && edge.isMotorVehicleNoThruTraffic() || bicycle && edge.isBicycleNoThruTraffic()) {
+                return false;
+            }
+            for (TurnRestriction restriction : graph.getTurnRestrictions(edge)) {
+                if (restriction.time != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the travel times from the given origins, replacing the results of the previous search.
+     *
+     * @param origins the samples linking the origins to the street network, null for origins that were not linked.
+     */
+    public void route(List<Sample> origins) {
+        if (origins.size() > maxOrigins) {
+            throw new IllegalArgumentException("At most " + maxOrigins + " origins can be searched together");
+        }
+        reset();
+        nOrigins = origins.size();
+        for (int origin = 0; origin < nOrigins; origin++) {
+            Sample sample = origins.get(origin);
+            if (sample == null) {
+                continue;
+            }
+            start(origin, 0, sample.v0, sample.d0, sample.v1, sample.d1);
+            start(origin, 1, sample.v1, sample.d1, sample.v0, sample.d0);
+        }
+
+        int[] firstTurn = streetGraph.firstTurn;
+        int[] turnEdge = streetGraph.turnEdge;
+        int[] turnTime = streetGraph.turnTime;
+        while (!queue.isEmpty()) {
+            int edge = queue.poll();
+            long lanes = dirty[edge];
+            if (lanes == 0) {
+                // All lanes of this edge were already expanded when an earlier entry was polled
+                continue;
+            }
+            dirty[edge] = 0;
+            int edgeOffset = edge * maxOrigins;
+            for (int turn = firstTurn[edge]; turn < firstTurn[edge + 1]; turn++) {
+                int target = turnEdge[turn];
+                int targetOffset = target * maxOrigins;
+                long improved = 0;
+                int minTime = UNREACHED;
+                for (long remaining = lanes; remaining != 0; remaining &= remaining - 1) {
+                    int origin = Long.numberOfTrailingZeros(remaining);
+                    long time = (long) times[edgeOffset + origin] + turnTime[turn];
+                    if (time <= cutoffSeconds && time < times[targetOffset + origin]) {
+                        if (!touched[target]) {
+                            touch(target);
+                        }
+                        times[targetOffset + origin] = (int) time;
+                        improved |= 1L << origin;
+                        minTime = Math.min(minTime, (int) time);
+                    }
+                }
+                if (improved != 0) {
+                    dirty[target] |= improved;
+                    queue.add(target, minTime);
+                }
+            }
+        }
+    }
+
+    /** @return the travel time from the given origin of the last search to a vertex, or -1 if it was not reached */
+    public int getTime(int origin, Vertex vertex) {
+        int index = vertex.getIndex();
+        if (index >= streetGraph.nVertices() || origin >= nOrigins) {
+            return -1;
+        }
+        int time = vertexTime(origin, index);
+        return time == UNREACHED ? -1 : time;
+    }
+
+    /**
+     * Write the travel times from an origin of the last search to each destination in the given array, with the same
+     * conventions as ResultSet.forTravelTimes(): -1 for destinations that were not reached and -2 for destinations
+     * that are not linked to the street network.
+     */
+    public void getTravelTimes(int origin, Population destinations, double[] results) {
+        double walkSpeed = streetGraph.walkSpeed;
+        int i = 0;
+        for (Individual destination : destinations) {
+            Sample sample = destination.sample;
+            long time;
+            if (sample == null) {
+                time = -2;
+            } else {
+                long t0 = evalVertex(origin, sample.v0, sample.d0, walkSpeed);
+                long t1 = evalVertex(origin, sample.v1, sample.d1, walkSpeed);
+                time = Math.min(t0, t1);
+                if (time == Long.MAX_VALUE) {
+                    time = -1;
+                }
+            }
+            results[i++] = time;
+        }
+    }
+
+    private long evalVertex(int origin, Vertex vertex, int distance, double walkSpeed) {
+        if (vertex == null || vertex.getIndex() >= streetGraph.nVertices()) {
+            return Long.MAX_VALUE;
+        }
+        int time = vertexTime(origin, vertex.getIndex());
+        return time == UNREACHED ? Long.MAX_VALUE : (int) (time + distance / walkSpeed);
+    }
+
+    /** @return the earliest time at which a vertex is reached from an origin, through any edge or by starting there */
+    private int vertexTime(int origin, int vertex) {
+        int time = UNREACHED;
+        for (int end = origin * 2; end < origin * 2 + 2; end++) {
+            if (startVertices[end] == vertex) {
+                time = Math.min(time, startTimes[end]);
+            }
+        }
+        int[] firstIncoming = streetGraph.firstIncoming;
+        for (int edge = firstIncoming[vertex]; edge < firstIncoming[vertex + 1]; edge++) {
+            time = Math.min(time, times[edge * maxOrigins + origin]);
+        }
+        return time;
+    }
+
+    /**
+     * Start the search of an origin towards one end of the street it is on. The end is reached along the street if it
+     * can be traversed in that direction, as on the temporary edges linking the origin of a shortest path tree, so the
+     * street is the previous edge of the first turn. An origin which is not on a street of the graph, or right on a
+     * vertex, starts from the vertex after walking to it, as Sample.eval() does for destinations.
+     */
+    private void start(int origin, int end, Vertex vertex, int distance, Vertex otherVertex, int otherDistance) {
+        if (vertex == null || vertex.getIndex() >= streetGraph.nVertices()) {
+            return;
+        }
+        int v = vertex.getIndex();
+        if (otherVertex != null) {
+            int edge = streetGraph.findEdge(otherVertex.getIndex(), v);
+            if (edge >= 0) {
+                int length = distance + otherDistance;
+                long time = length == 0 ? 0 : (long) streetGraph.edgeTime[edge] * distance / length;
+                improve(edge, origin, time);
+                return;
+            }
+            if (streetGraph.findEdge(v, otherVertex.getIndex()) >= 0) {
+                // The street can only be traversed away from this end
+                return;
+            }
+        }
+        int time = (int) (distance / streetGraph.walkSpeed);
+        if (time > cutoffSeconds) {
+            return;
+        }
+        startVertices[origin * 2 + end] = v;
+        startTimes[origin * 2 + end] = time;
+        int[] firstOutgoing = streetGraph.firstOutgoing;
+        for (int i = firstOutgoing[v]; i < firstOutgoing[v + 1]; i++) {
+            int edge = streetGraph.outgoingEdges[i];
+            improve(edge, origin, (long) time + streetGraph.edgeTime[edge]);
+        }
+    }
+
+    private void improve(int edge, int origin, long time) {
+        int index = edge * maxOrigins + origin;
+        if (time > cutoffSeconds || time >= times[index]) {
+            return;
+        }
+        if (!touched[edge]) {
+            touch(edge);
+        }
+        times[index] = (int) time;
+        dirty[edge] |= 1L << origin;
+        queue.add(edge, (int) time);
+    }
+
+    private void touch(int edge) {
+        touched[edge] = true;
+        touchedEdges.add(edge);
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedEdges.size(); i++) {
+            int edge = touchedEdges.getQuick(i);
+            Arrays.fill(times, edge * maxOrigins, (edge + 1) * maxOrigins, UNREACHED);
+            dirty[edge] = 0;
+            touched[edge] = false;
+        }
+        touchedEdges.resetQuick();
+        Arrays.fill(startVertices, -1);
+        queue.clear();
+    }
+
+    /**
+     * The street edges of a graph and the turns between them in compressed sparse row form, with their travel time for
+     * a given routing request. It is built once for a batch run and shared by the searches of all threads.
+     */
+    public static class StreetGraph {
+
+        /**
+         * The edges are numbered by the vertex they lead to, the edges to vertex v are the ones from firstIncoming[v] to
+         * firstIncoming[v + 1] excluded
+         */
+        final int[] firstIncoming;
+
+        /** The vertex each edge comes from */
+        final int[] edgeSource;
+
+        /** Travel time in seconds of each edge, when it is the first edge of a search */
+        final int[] edgeTime;
+
+        /** The edges from vertex v are outgoingEdges[i] for i from firstOutgoing[v] to firstOutgoing[v + 1] excluded */
+        final int[] firstOutgoing;
+
+        final int[] outgoingEdges;
+
+        /** The turns after edge e are the ones from firstTurn[e] to firstTurn[e + 1] excluded */
+        final int[] firstTurn;
+
+        /** The edge taken by each turn */
+        final int[] turnEdge;
+
+        /** Travel time in seconds of the edge taken by each turn, when reached through the turn */
+        final int[] turnTime;
+
+        final double walkSpeed;
+
+        private StreetGraph(int[] firstIncoming, int[] edgeSource, int[] edgeTime, int[] firstOutgoing,
+                int[] outgoingEdges, int[] firstTurn, int[] turnEdge, int[] turnTime, double walkSpeed) {
+            this.firstIncoming = firstIncoming;
+            this.edgeSource = edgeSource;
+            this.edgeTime = edgeTime;
+            this.firstOutgoing = firstOutgoing;
+            this.outgoingEdges = outgoingEdges;
+            this.firstTurn = firstTurn;
+            this.turnEdge = turnEdge;
+            this.turnTime = turnTime;
+            this.walkSpeed = walkSpeed;
+        }
+
+        int nVertices() {
+            return firstIncoming.length - 1;
+        }
+
+        int nEdges() {
+            return edgeSource.length;
+        }
+
+        /** @return an edge from one vertex to another, or -1 if there is none */
+        int findEdge(int from, int to) {
+            if (from >= nVertices() || to >= nVertices()) {
+                return -1;
+            }
+            for (int edge = firstIncoming[to]; edge < firstIncoming[to + 1]; edge++) {
+                if (edgeSource[edge] == from) {
+                    return edge;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Traverse every street edge of the graph with the given request, once as the first edge of a search and once
+         * after each edge leading to its start, keeping the travel times of those that can be traversed.
+         *
+         * @param request a request for which supports() is true, with its date and time set
+         */
+        public static StreetGraph build(Graph graph, RoutingRequest request) {
+            long start = System.currentTimeMillis();
+            RoutingRequest options = request.clone();
+            // Turn restrictions are looked up in the graph of the routing context
+            options.setDummyRoutingContext(graph);
+            int nVertices = 0;
+            for (Vertex vertex : graph.getVertices()) {
+                nVertices = Math.max(nVertices, vertex.getIndex() + 1);
+            }
+            List<StreetEdge> edges = new ArrayList<>();
+            List<State> states = new ArrayList<>();
+            for (Edge edge : graph.getEdges()) {
+                if (!(edge instanceof StreetEdge) || edge.getFromVertex() instanceof TemporaryVertex
+                        || edge.getToVertex() instanceof TemporaryVertex) {
+                    continue;
+                }
+                State state = edge.traverse(new State(edge.getFromVertex(), options));
+                if (state == null) {
+                    continue;
+                }
+                edges.add((StreetEdge) edge);
+                states.add(state);
+            }
+            int nEdges = edges.size();
+
+            // Counting sort of the edges by destination vertex, then of their indexes by origin vertex
+            int[] firstIncoming = new int[nVertices + 1];
+            for (StreetEdge edge : edges) {
+                firstIncoming[edge.getToVertex().getIndex() + 1]++;
+            }
+            for (int v = 0; v < nVertices; v++) {
+                firstIncoming[v + 1] += firstIncoming[v];
+            }
+            int[] next = Arrays.copyOf(firstIncoming, nVertices);
+            StreetEdge[] sortedEdges = new StreetEdge[nEdges];
+            State[] sortedStates = new State[nEdges];
+            int[] edgeSource = new int[nEdges];
+            int[] edgeTime = new int[nEdges];
+            int[] firstOutgoing = new int[nVertices + 1];
+            for (int i = 0; i < nEdges; i++) {
+                StreetEdge edge = edges.get(i);
+                int e = next[edge.getToVertex().getIndex()]++;
+                sortedEdges[e] = edge;
+                sortedStates[e] = states.get(i);
+                edgeSource[e] = edge.getFromVertex().getIndex();
+                edgeTime[e] = (int) states.get(i).getElapsedTimeSeconds();
+                firstOutgoing[edgeSource[e] + 1]++;
+            }
+            for (int v = 0; v < nVertices; v++) {
+                firstOutgoing[v + 1] += firstOutgoing[v];
+            }
+            next = Arrays.copyOf(firstOutgoing, nVertices);
+            int[] outgoingEdges = new int[nEdges];
+            for (int e = 0; e < nEdges; e++) {
+                outgoingEdges[next[edgeSource[e]]++] = e;
+            }
+
+            // Traversing each edge after the previous one applies the turn restrictions, the ban on U-turns and the
+            // time to get on a bike when it was walked on the previous edge
+            int[] firstTurn = new int[nEdges + 1];
+            TIntArrayList turnEdge = new TIntArrayList();
+            TIntArrayList turnTime = new TIntArrayList();
+            for (int e = 0; e < nEdges; e++) {
+                State state = sortedStates[e];
+                int vertex = sortedEdges[e].getToVertex().getIndex();
+                for (int i = firstOutgoing[vertex]; i < firstOutgoing[vertex + 1]; i++) {
+                    int nextEdge = outgoingEdges[i];
+                    State turned = sortedEdges[nextEdge].traverse(state);
+                    if (turned != null) {
+                        turnEdge.add(nextEdge);
+                        turnTime.add((int) (turned.getElapsedTimeSeconds() - state.getElapsedTimeSeconds()));
+                    }
+                }
+                firstTurn[e + 1] = turnEdge.size();
+            }
+            LOG.info("Built street graph of {} vertices, {} edges and {} turns for multi-origin searches in {} ms",
+                    nVertices, nEdges, turnEdge.size(), System.currentTimeMillis() - start);
+            return new StreetGraph(firstIncoming, edgeSource, edgeTime, firstOutgoing, outgoingEdges, firstTurn,
+                    turnEdge.toArray(), turnTime.toArray(), request.walkSpeed);
+        }
+    }
+
+    /**
+     * A binary min-heap of edges keyed by time. An edge can be in the queue several times, the search skips the entries
+     * of edges that were already expanded.
+     */
+    private static class EdgeQueue {
+
+        private int[] edges = new int[1024];
+
+        private int[] keys = new int[1024];
+
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int edge, int key) {
+            if (size == edges.length) {
+                edges = Arrays.copyOf(edges, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                edges[i] = edges[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            edges[i] = edge;
+            keys[i] = key;
+        }
+
+        int poll() {
+            int result = edges[0];
+            size--;
+            int edge = edges[size];
+            int key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                edges[i] = edges[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            edges[i] = edge;
+            keys[i] = key;
+            return result;
+        }
+    }
+}
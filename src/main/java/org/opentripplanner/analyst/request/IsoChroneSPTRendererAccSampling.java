@@ -8,6 +8,7 @@ import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
 import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
 import org.opentripplanner.common.geometry.IsolineBuilder.ZMetric;
 import org.opentripplanner.common.geometry.ZSampleGrid;
+import org.opentripplanner.profile.IsochroneGenerator;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +50,14 @@ public class IsoChroneSPTRendererAccSampling implements IsoChroneSPTRenderer {
 
         // 2. Compute isolines
         long t0 = System.currentTimeMillis();
+        if (!isoChroneRequest.includeDebugGeometry) {
+            // All cutoffs at once. Only the Delaunay builder produces debug geometry.
+            List<IsochroneData> isochrones = IsochroneGenerator.makeIsochrones(sampleGrid, offRoadDistanceMeters,
+                    isoChroneRequest.cutoffSecList);
+            long t1 = System.currentTimeMillis();
+            LOG.info("Computed {} isochrones in {}msec", isochrones.size(), (int) (t1 - t0));
+            return isochrones;
+        }
         ZMetric<WTWD> zMetric = new ZMetric<WTWD>() {
             @Override
             public int cut(WTWD zA, WTWD zB, WTWD z0) {
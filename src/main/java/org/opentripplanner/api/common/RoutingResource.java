@@ -432,6 +432,13 @@ public abstract class RoutingResource {
     @QueryParam("disableRemainingWeightHeuristic")
     protected Boolean disableRemainingWeightHeuristic;
 
+    /**
+     * If true, a detailed profile of the search with per-phase timings and state counters is returned in the
+     * debugOutput of the response. Responses with a trace are never served from the plan cache.
+     */
+    @QueryParam("searchTrace")
+    protected Boolean searchTrace;
+
     /*
      * Control the size of flag-stop buffer returned in API response. This parameter only applies
      * to GTFS-Flex routing, which must be explicitly turned on via the useFlexService parameter in
@@ -748,6 +755,9 @@ public abstract class RoutingResource {
         if (disableRemainingWeightHeuristic != null)
             request.disableRemainingWeightHeuristic = disableRemainingWeightHeuristic;
 
+        if (searchTrace != null)
+            request.searchTrace = searchTrace;
+
         if (flexFlagStopBufferSize != null)
             request.flexFlagStopBufferSize = flexFlagStopBufferSize;
 
@@ -12,7 +12,7 @@ import org.opentripplanner.routing.core.Fare;
 /**
  * An Itinerary is one complete way of getting from the start location to the end location.
  */
-public class Itinerary {
+public class Itinerary implements Cloneable {
 
     /**
      * Duration of the trip on this itinerary, in seconds.
@@ -105,6 +105,27 @@ public class Itinerary {
         }
     }
     
+    /** @return a deep copy of this itinerary and its legs. */
+    @Override
+    public Itinerary clone() {
+        try {
+            Itinerary copy = (Itinerary) super.clone();
+            copy.startTime = startTime == null ? null : (Calendar) startTime.clone();
+            copy.endTime = endTime == null ? null : (Calendar) endTime.clone();
+            if (fare != null) {
+                copy.fare = new Fare(fare);
+                copy.fare.details.putAll(fare.details);
+            }
+            copy.legs = new ArrayList<>(legs.size());
+            for (Leg leg : legs) {
+                copy.legs.add(leg.clone());
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); //can't happen
+        }
+    }
+
     public void fixupDates(CalendarServiceData service) {
         TimeZone startTimeZone = null;
         TimeZone timeZone = null;
@@ -21,7 +21,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
  * particular vehicle (or on foot).
  */
 
-public class Leg {
+public class Leg implements Cloneable {
 
     /**
      * The date and time this leg begins.
@@ -311,6 +311,38 @@ public class Leg {
         alerts.add(new LocalizedAlert(alert, locale));
     }
 
+    /** @return a deep copy of this leg, its places and its steps. */
+    @Override
+    public Leg clone() {
+        try {
+            Leg copy = (Leg) super.clone();
+            copy.startTime = startTime == null ? null : (Calendar) startTime.clone();
+            copy.endTime = endTime == null ? null : (Calendar) endTime.clone();
+            copy.flexCallAndRideMaxStartTime = flexCallAndRideMaxStartTime == null ? null
+                    : (Calendar) flexCallAndRideMaxStartTime.clone();
+            copy.flexCallAndRideMinEndTime = flexCallAndRideMinEndTime == null ? null
+                    : (Calendar) flexCallAndRideMinEndTime.clone();
+            copy.from = from == null ? null : from.clone();
+            copy.to = to == null ? null : to.clone();
+            if (stop != null) {
+                copy.stop = new ArrayList<>(stop.size());
+                for (Place place : stop) {
+                    copy.stop.add(place.clone());
+                }
+            }
+            if (walkSteps != null) {
+                copy.walkSteps = new ArrayList<>(walkSteps.size());
+                for (WalkStep step : walkSteps) {
+                    copy.walkSteps.add(step.clone());
+                }
+            }
+            copy.alerts = alerts == null ? null : new ArrayList<>(alerts);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); //can't happen
+        }
+    }
+
     public void setTimeZone(TimeZone timeZone) {
         Calendar calendar = Calendar.getInstance(timeZone);
         calendar.setTime(startTime.getTime());
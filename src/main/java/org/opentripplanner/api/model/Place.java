@@ -11,7 +11,7 @@ import org.opentripplanner.util.model.EncodedPolylineBean;
 /** 
 * A Place is where a journey starts or ends, or a transit stop along the way.
 */ 
-public class Place {
+public class Place implements Cloneable {
 
     /** 
      * For transit stops, the name of the stop.  For points of interest, the name of the POI.
@@ -127,4 +127,16 @@ public class Place {
         this.arrival = arrival;
         this.departure = departure;
     }
+
+    @Override
+    public Place clone() {
+        try {
+            Place copy = (Place) super.clone();
+            copy.arrival = arrival == null ? null : (Calendar) arrival.clone();
+            copy.departure = departure == null ? null : (Calendar) departure.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); //can't happen
+        }
+    }
 }
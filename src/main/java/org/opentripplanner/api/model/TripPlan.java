@@ -9,7 +9,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 /**
  * A TripPlan is a set of ways to get from point A to point B at time T.
  */
-public class TripPlan {
+public class TripPlan implements Cloneable {
 
     /**  The time and date of travel */
     public Date date = null;
@@ -36,5 +36,26 @@ public class TripPlan {
         this.itinerary.add(itinerary);
     }
 
+    /**
+     * @return a deep copy of this plan, which can be changed without affecting this one, for example to hand out a
+     * cached plan to several requests.
+     */
+    @Override
+    public TripPlan clone() {
+        try {
+            TripPlan copy = (TripPlan) super.clone();
+            copy.date = date == null ? null : (Date) date.clone();
+            copy.from = from == null ? null : from.clone();
+            copy.to = to == null ? null : to.clone();
+            copy.itinerary = new ArrayList<>(itinerary.size());
+            for (Itinerary i : itinerary) {
+                copy.itinerary.add(i.clone());
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); //can't happen
+        }
+    }
+
 
 }
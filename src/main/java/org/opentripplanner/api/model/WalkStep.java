@@ -47,7 +47,7 @@ import com.google.common.collect.Lists;
  * </pre>
  * </p>
  * */
-public class WalkStep {
+public class WalkStep implements Cloneable {
 
     /**
      * The distance in meters that this step takes.
@@ -213,4 +213,17 @@ public class WalkStep {
         return elevation;
     }
 
+    @Override
+    public WalkStep clone() {
+        try {
+            WalkStep copy = (WalkStep) super.clone();
+            copy.elevation = elevation == null ? null : new ArrayList<>(elevation);
+            copy.alerts = alerts == null ? null : new ArrayList<>(alerts);
+            copy.edges = edges == null ? null : new ArrayList<>(edges);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); //can't happen
+        }
+    }
+
 }
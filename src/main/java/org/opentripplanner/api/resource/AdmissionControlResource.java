@@ -0,0 +1,33 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.OTPServer;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Report the state of the admission control: per endpoint, how many requests were admitted, rejected or are waiting,
+ * and how long they waited in the queue.
+ */
+@Path("/admission")
+@Produces(MediaType.APPLICATION_JSON)
+public class AdmissionControlResource {
+
+    @Context
+    OTPServer otpServer;
+
+    @GET
+    public Response getStats () {
+        AdmissionControl admissionControl = otpServer.admissionControl;
+        if (admissionControl == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("Admission control is not enabled.").build();
+        }
+        return Response.status(Response.Status.OK).entity(admissionControl.getStats()).build();
+    }
+
+}
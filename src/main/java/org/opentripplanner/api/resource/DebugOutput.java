@@ -37,6 +37,11 @@ public class DebugOutput {
     public long totalTime;
     public boolean timedOut;
     public long visitedVertices = -1;
+    /** True if the plan was served from the plan response cache, in which case no search was made. */
+    public boolean cached;
+
+    /** Detailed per-phase profile, only present if the request was made with searchTrace=true. */
+    public SearchTrace searchTrace;
 
     /**
      * Record the time when we first began calculating a path for this request
@@ -68,6 +73,9 @@ public class DebugOutput {
     public void finishedRendering() {
         finishedRendering = System.currentTimeMillis();
         computeSummary();
+        if (searchTrace != null) {
+            searchTrace.finish();
+        }
     }
 
     /** Summarize and calculate elapsed times. */
@@ -2,6 +2,7 @@ package org.opentripplanner.api.resource;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 import javax.ws.rs.GET;
@@ -92,6 +93,27 @@ public class GraphInspectorTileResource extends RoutingResource {
         return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
     }
 
+    /**
+     * Mapbox vector tile of the given layers of the graph, separated by commas (e.g. "streets,stops"). The layers are
+     * those registered in the VectorTileManager of the router.
+     */
+    @GET @Path("/vectortile/{layers}/{z}/{x}/{y}.pbf")
+    @Produces("application/x-protobuf")
+    public Response vectorTileGet(@PathParam("layers") String layers) {
+
+        Router router = otpServer.getRouter(routerId);
+        byte[] tile;
+        try {
+            tile = router.vectorTileManager.getTile(Arrays.asList(layers.split(",")), z, x, y);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        cc.setNoCache(false);
+        return Response.ok(tile).cacheControl(cc).build();
+    }
+
     /**
      * Gets all layer names
      * 
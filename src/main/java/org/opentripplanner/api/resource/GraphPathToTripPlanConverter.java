@@ -54,6 +54,8 @@ public abstract class GraphPathToTripPlanConverter {
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
 
+        SearchTrace trace = request.rctx.debugOutput.searchTrace;
+        SearchTrace.Phase planConversion = trace != null ? trace.startPhase() : null;
         Locale requestedLocale = request.locale;
 
         GraphPath exemplar = paths.get(0);
@@ -102,6 +104,9 @@ public abstract class GraphPathToTripPlanConverter {
                 lastLeg.to.orig = plan.to.orig;
             }
         }
+        if (planConversion != null) {
+            trace.endPhase("planConversion", planConversion);
+        }
         request.rctx.debugOutput.finishedRendering();
         return plan;
     }
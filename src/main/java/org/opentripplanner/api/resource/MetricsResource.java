@@ -0,0 +1,32 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.util.monitoring.Metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Export the operational metrics of this server (routing, realtime updates, admission control, caches) in the
+ * Prometheus text format, to be scraped by a Prometheus server.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public StreamingOutput getMetrics () {
+        return output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            Metrics.writePrometheus(writer);
+            writer.flush();
+        };
+    }
+
+}
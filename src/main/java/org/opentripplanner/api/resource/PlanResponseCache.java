@@ -0,0 +1,303 @@
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.car_park.CarParkService;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+import org.opentripplanner.util.monitoring.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Router level cache of trip plans, for clients like kiosks and widgets that send the same plan request over and over.
+ *
+ * Requests are normalized before they are routed: coordinates are rounded to a fixed number of decimals and the
+ * search time is snapped to the start (or for arriveBy searches, the end) of a time bucket. All requests that
+ * normalize to the same parameters therefore get the very same plan, and only the first one of them is routed.
+ *
+ * A cached plan is dropped as soon as the realtime data it was computed from changes: a new timetable snapshot or new
+ * alerts for transit searches, and a relevant change of bike rental or car park availability for searches using these.
+ *
+ * Cached plans are never handed out themselves: every request gets its own copy, which it can change while it is being
+ * serialized without affecting other requests.
+ *
+ * The cache is configured with a "planCache" object in router-config.json and is disabled if that object is absent.
+ */
+public class PlanResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanResponseCache.class);
+
+    /** Query parameters that are replaced by their normalized values in the cache key. */
+    private static final Set<String> NORMALIZED_PARAMETERS = Set.of("fromPlace", "toPlace", "date", "time");
+
+    /**
+     * The current cache of each router. The metrics read the caches through this map rather than holding on to them,
+     * so that the cache of a router that was evicted or reloaded can be garbage collected.
+     */
+    private static final Map<String, PlanResponseCache> CACHES = new ConcurrentHashMap<>();
+
+    private final String routerId;
+
+    private final Graph graph;
+
+    private final int timeBucketSeconds;
+
+    private final double coordinateScale;
+
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public PlanResponseCache(Graph graph, int maxEntries, int ttlSeconds, int timeBucketSeconds, int coordinateDecimals) {
+        this.graph = graph;
+        this.timeBucketSeconds = Math.max(1, timeBucketSeconds);
+        this.coordinateScale = Math.pow(10, coordinateDecimals);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        String router = graph.routerId != null ? graph.routerId : "";
+        this.routerId = router;
+        CACHES.put(router, this);
+        Metrics.gauge("otp_plan_cache_size", "Number of plans in the plan response cache.",
+                () -> stat(router, c -> c.cache.size()), "router", router);
+        Metrics.counter("otp_plan_cache_hits_total", "Number of plan requests answered from the cache.",
+                () -> stat(router, c -> c.hits.get()), "router", router);
+        Metrics.counter("otp_plan_cache_misses_total", "Number of plan requests that had to be routed.",
+                () -> stat(router, c -> c.misses.get()), "router", router);
+        Metrics.counter("otp_plan_cache_invalidations_total",
+                "Number of cached plans dropped because the realtime data they depend on changed.",
+                () -> stat(router, c -> c.invalidations.get()), "router", router);
+    }
+
+    /** Stop reporting this cache in the metrics, when its router is shut down. */
+    public void shutdown() {
+        CACHES.remove(routerId, this);
+        cache.invalidateAll();
+    }
+
+    private static long stat(String router, ToLongFunction<PlanResponseCache> statistic) {
+        PlanResponseCache cache = CACHES.get(router);
+        return cache != null ? statistic.applyAsLong(cache) : 0;
+    }
+
+    /** @return a cache configured from the given JSON node, or null if caching is not enabled for this router. */
+    public static PlanResponseCache fromConfig(Graph graph, JsonNode config) {
+        if (config == null || !config.path("enabled").asBoolean(true)) {
+            return null;
+        }
+        PlanResponseCache planResponseCache = new PlanResponseCache(graph,
+                config.path("maxEntries").asInt(10000),
+                config.path("ttlSeconds").asInt(60),
+                config.path("timeBucketSeconds").asInt(60),
+                config.path("coordinateDecimals").asInt(4));
+        LOG.info("Plan response cache enabled: {}", config);
+        return planResponseCache;
+    }
+
+    /**
+     * Round the coordinates and time of the request in place and return the cache key for the normalized request.
+     *
+     * @param queryParameters the parameters the request was built from, so that every parameter that has an effect on
+     *                        the plan is part of the key.
+     */
+    public String normalize(RoutingRequest request, Map<String, List<String>> queryParameters) {
+        roundCoordinates(request.from);
+        roundCoordinates(request.to);
+        if (request.arriveBy) {
+            request.dateTime = Math.floorDiv(request.dateTime + timeBucketSeconds - 1, timeBucketSeconds) * timeBucketSeconds;
+        } else {
+            request.dateTime = Math.floorDiv(request.dateTime, timeBucketSeconds) * timeBucketSeconds;
+        }
+
+        StringBuilder key = new StringBuilder(request.routerId);
+        appendLocation(key, request.from);
+        appendLocation(key, request.to);
+        key.append('|').append(request.dateTime);
+        for (Map.Entry<String, List<String>> parameter : new TreeMap<>(queryParameters).entrySet()) {
+            if (!NORMALIZED_PARAMETERS.contains(parameter.getKey())) {
+                key.append('|').append(parameter.getKey()).append('=').append(parameter.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Return a copy of the cached plan for the key if it is still valid for the current realtime state, or compute
+     * and cache it with the given planner otherwise.
+     */
+    public CachedPlan get(String key, RoutingRequest request, Callable<CachedPlan> planner) throws Exception {
+        RealtimeState current = currentRealtimeState();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            if (!entry.isStale(current)) {
+                hits.incrementAndGet();
+                return entry.plan.copy(true);
+            }
+            cache.invalidate(key);
+            invalidations.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        CachedPlan plan = planner.call();
+        cache.put(key, new Entry(plan.copy(false), current, request));
+        return plan;
+    }
+
+    /** Counters describing the effectiveness of this cache. */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("size", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("evictions", cache.stats().evictionCount());
+        return stats;
+    }
+
+    private void roundCoordinates(GenericLocation location) {
+        if (location == null || location.lat == null || location.lng == null) {
+            return;
+        }
+        location.lat = Math.round(location.lat * coordinateScale) / coordinateScale;
+        location.lng = Math.round(location.lng * coordinateScale) / coordinateScale;
+    }
+
+    private static void appendLocation(StringBuilder key, GenericLocation location) {
+        key.append('|');
+        if (location == null) {
+            return;
+        }
+        key.append(location.name).append("::");
+        if (location.lat != null && location.lng != null) {
+            key.append(location.lat).append(',').append(location.lng);
+        } else {
+            key.append(location.place);
+        }
+    }
+
+    private RealtimeState currentRealtimeState() {
+        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
+        long snapshotVersion = 0;
+        if (snapshotSource != null) {
+            // Commit pending updates like a routing request would
+            snapshotSource.getTimetableSnapshot();
+            snapshotVersion = snapshotSource.getSnapshotVersion();
+        }
+        BikeRentalStationService bikeRentalStationService = graph.getService(BikeRentalStationService.class);
+        CarParkService carParkService = graph.getService(CarParkService.class);
+        long alertVersion = graph.index != null ? graph.index.getAlertIndex().version : 0;
+        return new RealtimeState(snapshotVersion, alertVersion,
+                bikeRentalStationService != null ? bikeRentalStationService.getVersion() : 0,
+                carParkService != null ? carParkService.getVersion() : 0);
+    }
+
+    /**
+     * A plan, together with the duration and number of transit trips of each path it was built from, which are
+     * logged for every request even if the paths themselves are not kept.
+     */
+    public static class CachedPlan {
+
+        public final TripPlan plan;
+
+        /** Whether this plan was served from the cache rather than routed for this request. */
+        public final boolean hit;
+
+        private final int[] pathDurations;
+
+        private final int[] pathTrips;
+
+        public CachedPlan(TripPlan plan, List<GraphPath> paths) {
+            this.plan = plan;
+            this.hit = false;
+            this.pathDurations = new int[paths.size()];
+            this.pathTrips = new int[paths.size()];
+            for (int i = 0; i < paths.size(); i++) {
+                pathDurations[i] = paths.get(i).getDuration();
+                pathTrips[i] = paths.get(i).getTrips().size();
+            }
+        }
+
+        private CachedPlan(CachedPlan other, boolean hit) {
+            this.plan = other.plan.clone();
+            this.hit = hit;
+            this.pathDurations = other.pathDurations;
+            this.pathTrips = other.pathTrips;
+        }
+
+        CachedPlan copy(boolean hit) {
+            return new CachedPlan(this, hit);
+        }
+
+        /** Append the duration and number of trips of each path, in the format of the request log. */
+        public void appendPathSummary(StringBuilder sb) {
+            for (int i = 0; i < pathDurations.length; i++) {
+                sb.append(pathDurations[i]);
+                sb.append(' ');
+                sb.append(pathTrips[i]);
+                sb.append(' ');
+            }
+        }
+    }
+
+    private static class RealtimeState {
+        final long snapshotVersion;
+        final long alertVersion;
+        final long bikeRentalVersion;
+        final long carParkVersion;
+
+        RealtimeState(long snapshotVersion, long alertVersion, long bikeRentalVersion, long carParkVersion) {
+            this.snapshotVersion = snapshotVersion;
+            this.alertVersion = alertVersion;
+            this.bikeRentalVersion = bikeRentalVersion;
+            this.carParkVersion = carParkVersion;
+        }
+    }
+
+    private static class Entry {
+        final CachedPlan plan;
+        final RealtimeState state;
+        final boolean usesTransit;
+        final boolean usesTransitRealtime;
+        final boolean usesBikeRental;
+        final boolean usesCarParks;
+
+        Entry(CachedPlan plan, RealtimeState state, RoutingRequest request) {
+            this.plan = plan;
+            this.state = state;
+            this.usesTransit = request.modes.isTransit();
+            this.usesTransitRealtime = usesTransit && !request.ignoreRealtimeUpdates;
+            this.usesBikeRental = request.allowBikeRental;
+            this.usesCarParks = request.parkAndRide;
+        }
+
+        boolean isStale(RealtimeState current) {
+            return (usesTransitRealtime && state.snapshotVersion != current.snapshotVersion)
+                || (usesTransit && state.alertVersion != current.alertVersion)
+                || (usesBikeRental && state.bikeRentalVersion != current.bikeRentalVersion)
+                || (usesCarParks && state.carParkVersion != current.carParkVersion);
+        }
+    }
+}
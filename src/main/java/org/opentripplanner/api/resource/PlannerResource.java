@@ -21,7 +21,9 @@ import javax.ws.rs.core.UriInfo;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.opentripplanner.api.resource.ServerInfo.Q;
@@ -59,19 +61,43 @@ public class PlannerResource extends RoutingResource {
         RoutingRequest request = null;
         Router router = null;
         List<GraphPath> paths = null;
+        PlanResponseCache.CachedPlan cachedPlan = null;
+        DebugOutput cacheDebugOutput = null;
         try {
 
             /* Fill in request fields from query parameters via shared superclass method, catching any errors. */
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
 
-            /* Find some good GraphPaths through the OTP Graph. */
-            GraphPathFinder gpFinder = new ComparingGraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
-            paths = gpFinder.graphPathFinderEntryPoint(request);
+            PlanResponseCache planResponseCache = router.planResponseCache;
+            if (planResponseCache != null && !request.searchTrace) {
+                /* Serve identical (after normalization) requests from the router's plan cache. */
+                final RoutingRequest cachedRequest = request;
+                final Router cachedRouter = router;
+                String key = planResponseCache.normalize(request, uriInfo.getQueryParameters());
+                cacheDebugOutput = new DebugOutput();
+                cacheDebugOutput.startedCalculating();
+                cachedPlan = planResponseCache.get(key, request, () -> {
+                    List<GraphPath> cachedPaths = new ComparingGraphPathFinder(cachedRouter).graphPathFinderEntryPoint(cachedRequest);
+                    TripPlan plan = GraphPathToTripPlanConverter.generatePlan(cachedPaths, cachedRequest);
+                    return new PlanResponseCache.CachedPlan(plan, cachedPaths);
+                });
+                if (cachedPlan.hit) {
+                    /* No routing context was created, so time the lookup itself. */
+                    cacheDebugOutput.finishedCalculating();
+                    cacheDebugOutput.finishedRendering();
+                    cacheDebugOutput.cached = true;
+                }
+                response.setPlan(cachedPlan.plan);
+            } else {
+                /* Find some good GraphPaths through the OTP Graph. */
+                GraphPathFinder gpFinder = new ComparingGraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+                paths = gpFinder.graphPathFinderEntryPoint(request);
 
-            /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
-            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
-            response.setPlan(plan);
+                /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+                TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                response.setPlan(plan);
+            }
 
         } catch (Exception e) {
             PlannerError error = new PlannerError(e);
@@ -81,6 +107,8 @@ public class PlannerResource extends RoutingResource {
             if (request != null) {
                 if (request.rctx != null) {
                     response.debugOutput = request.rctx.debugOutput;
+                } else if (cachedPlan != null && cachedPlan.hit) {
+                    response.debugOutput = cacheDebugOutput;
                 }
                 request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
             }
@@ -119,10 +147,21 @@ public class PlannerResource extends RoutingResource {
                     sb.append(path.getTrips().size());
                     sb.append(' ');
                 }
+            } else if (cachedPlan != null) {
+                cachedPlan.appendPathSummary(sb);
             }
             router.requestLogger.info(sb.toString());
         }
         return response;
     }
 
+    /** Hit, miss and invalidation counts of the plan cache of this router, if it is enabled. */
+    @GET
+    @Path("cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> cacheStats() {
+        PlanResponseCache planResponseCache = otpServer.getRouter(routerId).planResponseCache;
+        return planResponseCache != null ? planResponseCache.getStats() : Collections.emptyMap();
+    }
+
 }
@@ -5,6 +5,7 @@ import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.analyst.SurfaceCache;
 import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.analyst.VertexTimes;
 import org.opentripplanner.api.param.LatLon;
 import org.opentripplanner.api.parameter.QualifiedModeSet;
 import org.opentripplanner.profile.ProfileRequest;
@@ -12,7 +13,6 @@ import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.error.VertexNotFoundException;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
@@ -119,7 +119,8 @@ public class RepeatedRaptorTestResource {
         decreased = false;
         TimeSurface.RangeSet timeSurfaces_a = router_a.timeSurfaceRangeSet;
         TimeSurface.RangeSet timeSurfaces_b = router_b.timeSurfaceRangeSet;
-        for (Vertex destVertex : timeSurfaces_a.min.times.keySet()) {
+        VertexTimes reached_a = timeSurfaces_a.min.times;
+        for (int destVertex = reached_a.nextReached(0); destVertex >= 0; destVertex = reached_a.nextReached(destVertex + 1)) {
             int min_a = timeSurfaces_a.min.getTime(destVertex);
             int max_a = timeSurfaces_a.max.getTime(destVertex);
             int avg_a = timeSurfaces_a.avg.getTime(destVertex);
@@ -140,7 +141,7 @@ public class RepeatedRaptorTestResource {
                 sum_decrease += max_diff;
                 // Time decreased due to banning a route. This is bad, print it out.
                 System.out.printf("\"%s\",%d,%d,%d,%d,%d,%d\n",
-                        destVertex.getName(), min_a, min_b, min_diff, max_a, max_b, max_diff);
+                        graph.getVertexById(destVertex).getName(), min_a, min_b, min_diff, max_a, max_b, max_diff);
                 decreased = true;
             } else if (avg_diff > 0) {
                 n_increase += 1;
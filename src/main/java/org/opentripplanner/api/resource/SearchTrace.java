@@ -0,0 +1,119 @@
+package org.opentripplanner.api.resource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Detailed profile of a single routing request, included in the debug output when the request was made with
+ * searchTrace=true. It breaks the total time down into phases (linking the origin and destination, the repeated main
+ * searches including the initialization of the heuristic, compacting legs by reversed searches and converting paths to
+ * itineraries), and counts how the states of every A* search were created, dominated or pruned.
+ *
+ * No trace object exists unless one was requested, so collecting it costs nothing for normal requests. Allocation
+ * figures are only counted on the request thread, and only on JVMs that can measure per-thread allocation.
+ */
+public class SearchTrace {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final long threadId = Thread.currentThread().getId();
+
+    private final long startAllocatedBytes = allocatedBytes();
+
+    /* Results, public to cause JAX-RS serialization */
+
+    /** Milliseconds spent in each phase, summed over all repetitions of the phase. */
+    public Map<String, Double> phaseMillis = new LinkedHashMap<>();
+
+    /** Bytes allocated by the request thread in each phase, or empty if this cannot be measured. */
+    public Map<String, Long> phaseAllocatedBytes = new LinkedHashMap<>();
+
+    /** Every A* search run for this request, in order. */
+    public List<Search> searches = Lists.newArrayList();
+
+    public long statesCreated;
+
+    public long statesDominated;
+
+    public long statesPrunedByHeuristic;
+
+    public long statesPrunedByLimits;
+
+    public long verticesVisited;
+
+    public long tripsScanned;
+
+    /** Bytes allocated by the request thread from routing context creation to plan rendering, or -1 if unknown. */
+    public long allocatedBytes = -1;
+
+    /** Counters of a single A* search. */
+    public static class Search {
+        public String type;
+        public double durationMillis;
+        public long verticesVisited;
+        public long statesCreated;
+        public long statesDominated;
+        public long statesPrunedByHeuristic;
+        public long statesPrunedByLimits;
+        public long maxQueueSize;
+        public long tripsScanned;
+    }
+
+    /** @return a token to pass to {@link #endPhase} */
+    public Phase startPhase() {
+        return new Phase(System.nanoTime(), allocatedBytes());
+    }
+
+    public synchronized void endPhase(String name, Phase phase) {
+        phaseMillis.merge(name, (System.nanoTime() - phase.startNanos) / 1e6, Double::sum);
+        if (phase.startAllocatedBytes >= 0) {
+            long allocated = allocatedBytes();
+            if (allocated >= 0) {
+                phaseAllocatedBytes.merge(name, allocated - phase.startAllocatedBytes, Long::sum);
+            }
+        }
+    }
+
+    public synchronized void addSearch(Search search) {
+        searches.add(search);
+        statesCreated += search.statesCreated;
+        statesDominated += search.statesDominated;
+        statesPrunedByHeuristic += search.statesPrunedByHeuristic;
+        statesPrunedByLimits += search.statesPrunedByLimits;
+        verticesVisited += search.verticesVisited;
+        tripsScanned += search.tripsScanned;
+    }
+
+    /** Fill in the totals, once the request has been rendered. */
+    public synchronized void finish() {
+        if (startAllocatedBytes >= 0 && Thread.currentThread().getId() == threadId) {
+            allocatedBytes = allocatedBytes() - startAllocatedBytes;
+        }
+    }
+
+    /** @return the bytes allocated so far by the current thread, or -1 if this cannot be measured. */
+    private static long allocatedBytes() {
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            if (threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public static class Phase {
+        private final long startNanos;
+        private final long startAllocatedBytes;
+
+        private Phase(long startNanos, long startAllocatedBytes) {
+            this.startNanos = startNanos;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+    }
+}
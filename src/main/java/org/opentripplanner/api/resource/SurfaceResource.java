@@ -11,7 +11,6 @@ import org.opentripplanner.analyst.TimeSurface;
 import org.opentripplanner.analyst.core.IsochroneData;
 import org.opentripplanner.analyst.core.SlippyTile;
 import org.opentripplanner.analyst.request.RenderRequest;
-import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
 import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.common.ParameterException;
 import org.opentripplanner.api.common.RoutingResource;
@@ -21,7 +20,8 @@ import org.opentripplanner.api.parameter.IsoTimeParameter;
 import org.opentripplanner.api.parameter.Layer;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
 import org.opentripplanner.api.parameter.Style;
-import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
+import org.opentripplanner.inspector.vector.VectorTileEncoder;
+import org.opentripplanner.profile.IsochroneGenerator;
 import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.spt.ShortestPathTree;
@@ -44,7 +44,7 @@ import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -187,6 +187,42 @@ public class SurfaceResource extends RoutingResource {
         Router router = otpServer.getRouter(surfA.routerId);
         return router.renderer.getResponse(tileRequest, surfA, null, renderRequest);
     }
+    /**
+     * Vector tile of the isochrones of a surface, every 5 minutes up to its cutoff. The isochrones are accumulative:
+     * each feature covers the area reachable within the number of minutes given by its "minutes" attribute.
+     */
+    @Path("/{surfaceId}/vectortile/{z}/{x}/{y}.pbf")
+    @GET @Produces("application/x-protobuf")
+    public Response vectorTileGet(@PathParam("surfaceId") Integer surfaceId,
+                                  @PathParam("x") int x,
+                                  @PathParam("y") int y,
+                                  @PathParam("z") int z) {
+
+        final TimeSurface surf = otpServer.surfaceCache.get(surfaceId);
+        if (surf == null) return badRequest("Unrecognized surface ID.");
+
+        Router router = otpServer.getRouter(surf.routerId);
+        String key = "surface" + surfaceId + "/" + z + "/" + x + "/" + y;
+        byte[] tile = router.vectorTileManager.getTile(key, () -> {
+            VectorTileEncoder encoder = new VectorTileEncoder(z, x, y);
+            for (IsochroneData isochrone : getVectorTileIsochrones(surf)) {
+                encoder.addFeature("isochrones", isochrone.geometry,
+                        Collections.<String, Object>singletonMap("minutes", isochrone.cutoffSec / 60));
+            }
+            return encoder.encode();
+        });
+        return Response.ok(tile).build();
+    }
+
+    private static List<IsochroneData> getVectorTileIsochrones(TimeSurface surf) {
+        synchronized (surf) {
+            if (surf.isochrones == null) {
+                surf.isochrones = getIsochronesAccumulative(surf, 5, surf.cutoffMinutes / 5);
+            }
+            return surf.isochrones;
+        }
+    }
+
     /**
      * Renders a raster tile for showing the difference between two TimeSurfaces.
      * This service is included as a way to provide difference tiles using existing mechanisms in OTP.
@@ -239,7 +275,7 @@ public class SurfaceResource extends RoutingResource {
 
     /**
      * Use Laurent's accumulative grid sampler. Cutoffs in minutes.
-     * The grid and Delaunay triangulation are cached, so subsequent requests are very fast.
+     * The grid is cached, so subsequent requests are very fast.
      *
      * @param spacing the number of minutes between isochrones
      * @return a list of evenly-spaced isochrones up to the timesurface's cutoff point
@@ -251,19 +287,9 @@ public class SurfaceResource extends RoutingResource {
             // The sample grid was not built from the SPT; make a minimal one including only time from the vertices in this timesurface
             surf.makeSampleGridWithoutSPT();
         }
-        DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<WTWD>(
-                surf.sampleGrid.delaunayTriangulate(), new WTWD.IsolineMetric());
-
-        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
-        for (int minutes = spacing, n = 0; minutes <= surf.cutoffMinutes && n < nMax; minutes += spacing, n++) {
-            int seconds = minutes * 60;
-            WTWD z0 = new WTWD();
-            z0.w = 1.0;
-            z0.wTime = seconds;
-            z0.d = 300; // meters. TODO set dynamically / properly, make sure it matches grid cell size?
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
-         }
+        // meters. TODO set dynamically / properly, make sure it matches grid cell size?
+        List<IsochroneData> isochrones = IsochroneGenerator.makeIsochrones(surf.sampleGrid, 300, spacing,
+                surf.cutoffMinutes, nMax);
 
         long t1 = System.currentTimeMillis();
         LOG.debug("Computed {} isochrones in {} msec", isochrones.size(), (int) (t1 - t0));
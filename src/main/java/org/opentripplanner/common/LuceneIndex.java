@@ -19,6 +19,7 @@ import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
+import org.apache.commons.io.FileUtils;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.gtfs.GtfsLibrary;
@@ -31,16 +32,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 /**
  * Lucene based index of streets, stops, etc.
  * For reference see:
  * https://svn.apache.org/repos/asf/lucene/dev/trunk/lucene/demo/src/java/org/apache/lucene/demo/IndexFiles.java
+ *
+ * The index is saved in a directory named after a checksum of the graph, and reused when a server is restarted with
+ * the same graph. It is built in a directory of its own and only moved there once complete, so that servers sharing
+ * the base path never modify or delete each other's indexes. Autocomplete queries for stops and stations are answered by a {@link StopAutocompleteIndex} held in
+ * memory, the Lucene index is only used for those when the query is not a prefix search.
  */
 public class LuceneIndex {
 
@@ -51,10 +62,14 @@ public class LuceneIndex {
     private GraphIndex graphIndex;
     private File basePath;
     private Directory directory; // the Lucene Directory, not to be confused with a filesystem directory
-    private IndexSearcher searcher; // Will be null until index is built.
+    private volatile IndexSearcher searcher; // Will be null until index is built, or if building it failed.
+    private volatile StopAutocompleteIndex autocompleteIndex; // Will be null until index is built.
+
+    /** Written into the index directory once the index is complete, so that partial indexes are never reused. */
+    private static final String COMPLETE_MARKER = "complete";
 
     /**
-     * @param basePath the filesystem location under which to save indexes
+     * @param basePath the filesystem location under which to save indexes, and look for indexes to reuse
      * @param background if true, perform the initial indexing in a background thread, if false block to index
      */
     public LuceneIndex(final GraphIndex graphIndex, File basePath, boolean background) {
@@ -71,37 +86,113 @@ public class LuceneIndex {
      * Index stations, stops, intersections, streets, and addresses by name and location.
      */
     private void index() {
+        autocompleteIndex = new StopAutocompleteIndex(graphIndex.stopForId.values(), graphIndex.stationForId.values());
+        File buildPath = null;
         try {
             long startTime = System.currentTimeMillis();
-            /* Create or re-open a disk-backed Lucene Directory under the OTP server base filesystem directory. */
-            directory = FSDirectory.open(new File(basePath, "lucene"));
-            // TODO reuse the index if it exists?
-            //directory = new RAMDirectory(); // only a little faster
-            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_47, analyzer).setOpenMode(OpenMode.CREATE);
-            final IndexWriter writer = new IndexWriter(directory, config);
-            for (Map.Entry<FeedScopedId, Stop> station : graphIndex.stationForId.entrySet()) {
-                addStation(writer, station.getKey().getAgencyId(), station.getValue());
+            /* Re-open a complete disk-backed Lucene Directory built for the same graph, by this or another server. */
+            String checksum = graphChecksum();
+            File indexPath = new File(basePath, checksum);
+            if (isComplete(indexPath)) {
+                openSearcher(indexPath);
+                LOG.info("Reusing Lucene index of graph {} from {}", checksum, indexPath);
+                return;
             }
-            for (Map.Entry<FeedScopedId, Stop> stop : graphIndex.stopForId.entrySet()) {
-                addStop(writer, stop.getKey().getAgencyId(), stop.getValue());
+            /*
+             * Build the index in a directory of our own, and only move it to the shared location once it is complete.
+             * Other servers may be reading or building indexes under the same base path at the same time.
+             */
+            Files.createDirectories(basePath.toPath());
+            buildPath = Files.createTempDirectory(basePath.toPath(), checksum + ".").toFile();
+            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_47, analyzer).setOpenMode(OpenMode.CREATE);
+            try (Directory buildDirectory = FSDirectory.open(buildPath);
+                 IndexWriter writer = new IndexWriter(buildDirectory, config)) {
+                for (Map.Entry<FeedScopedId, Stop> station : graphIndex.stationForId.entrySet()) {
+                    addStation(writer, station.getKey().getAgencyId(), station.getValue());
+                }
+                for (Map.Entry<FeedScopedId, Stop> stop : graphIndex.stopForId.entrySet()) {
+                    addStop(writer, stop.getKey().getAgencyId(), stop.getValue());
+                }
+                graphIndex.clusterStopsAsNeeded();
+                for (StopCluster stopCluster : graphIndex.stopClusterForId.values()) {
+                    addCluster(writer, stopCluster);
+                }
+                for (StreetVertex sv : Iterables.filter(graphIndex.vertexForId.values(), StreetVertex.class)) {
+                    addCorner(writer, sv);
+                }
             }
-            graphIndex.clusterStopsAsNeeded();
-            for (StopCluster stopCluster : graphIndex.stopClusterForId.values()) {
-                addCluster(writer, stopCluster);
+            if (!new File(buildPath, COMPLETE_MARKER).createNewFile()) {
+                LOG.warn("Lucene index in {} was marked complete while it was built.", buildPath);
             }
-            for (StreetVertex sv : Iterables.filter(graphIndex.vertexForId.values(), StreetVertex.class)) {
-                addCorner(writer, sv);
+            try {
+                Files.move(buildPath.toPath(), indexPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                buildPath = null;
+            } catch (IOException e) {
+                // Another server has moved its index for the same graph there first, or it cannot be moved at all.
+                if (isComplete(indexPath)) {
+                    deleteBuildPath(buildPath);
+                    buildPath = null;
+                } else {
+                    LOG.warn("Could not move Lucene index to {}, using it from {}", indexPath, buildPath, e);
+                    indexPath = buildPath;
+                }
             }
-            writer.close();
             long elapsedTime = System.currentTimeMillis() - startTime;
             LOG.info("Built Lucene index in {} msec", elapsedTime);
             // Make the IndexSearcher necessary for querying.
-            searcher = new IndexSearcher(DirectoryReader.open(directory));
+            openSearcher(indexPath);
         } catch (Exception ex) {
-            throw new RuntimeException("Lucene indexing failed.", ex);
+            LOG.error("Lucene indexing failed, only stops and stations can be autocompleted.", ex);
+            if (buildPath != null && searcher == null) {
+                deleteBuildPath(buildPath);
+            }
+        }
+    }
+
+    private static boolean isComplete(File indexPath) throws IOException {
+        if (!new File(indexPath, COMPLETE_MARKER).exists()) {
+            return false;
+        }
+        try (Directory indexDirectory = FSDirectory.open(indexPath)) {
+            return DirectoryReader.indexExists(indexDirectory);
         }
     }
 
+    private void openSearcher(File indexPath) throws IOException {
+        directory = FSDirectory.open(indexPath);
+        searcher = new IndexSearcher(DirectoryReader.open(directory));
+    }
+
+    /** Remove a directory in which this index was built, and which is not used. */
+    private static void deleteBuildPath(File buildPath) {
+        try {
+            FileUtils.deleteDirectory(buildPath);
+        } catch (IOException e) {
+            LOG.warn("Could not delete Lucene index {}", buildPath, e);
+        }
+    }
+
+    /**
+     * A checksum of everything the index is built from: the graph build, the stops and stations, the stop clustering
+     * and the OTP version, which determines what is indexed and how.
+     */
+    private String graphChecksum() {
+        long stopsHash = 0;
+        // Summing makes the hash independent of the iteration order of the maps.
+        for (Stop stop : Iterables.concat(graphIndex.stationForId.values(), graphIndex.stopForId.values())) {
+            stopsHash += Objects.hash(stop.getId().toString(), stop.getName(), stop.getCode(), stop.getLat(), stop.getLon());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(40)
+            .putLong(MavenVersion.VERSION.getUID())
+            .putLong(graphIndex.graph.buildTime.getTime())
+            .putLong(graphIndex.vertexForId.size())
+            .putLong(stopsHash)
+            .putLong(graphIndex.graph.stopClusterMode.ordinal())
+            .array());
+        return String.format("%08x", crc.getValue());
+    }
+
     private void addStation(IndexWriter iwriter, String feedId, Stop station) throws IOException {
         Document doc = new Document();
         doc.add(new TextField("name", station.getName(), Field.Store.YES));
@@ -178,6 +269,49 @@ public class LuceneIndex {
     public List<LuceneResult> query(String queryString, boolean autocomplete,
                                     boolean stops, boolean stations,
                                     boolean clusters, boolean corners, int maxResults, List<String> feeds) {
+        return query(queryString, autocomplete, stops, stations, clusters, corners, maxResults, feeds, null, null);
+    }
+
+    /** Fetch results for the geocoder using the OTP graph for stops, clusters and street names
+     *
+     * @param queryString
+     * @param autocomplete Whether we should use the query string to do a prefix match
+     * @param stops Search for stops, either by name or stop code
+     * @param stations Search for stations by their name
+     * @param clusters Search for clusters by their name
+     * @param corners Search for street corners using at least one of the street names
+     * @param maxResults Maximum amount of results to return
+     * @param feeds Return results only from specified feeds or from all feeds if null
+     * @param focusLat Latitude of the point to rank autocompleted stops and stations by distance from, or null
+     * @param focusLon Longitude of the point to rank autocompleted stops and stations by distance from, or null
+     * @return list of results in in the format expected by GeocoderBuiltin.js in the OTP Leaflet client
+     */
+    public List<LuceneResult> query(String queryString, boolean autocomplete,
+                                    boolean stops, boolean stations,
+                                    boolean clusters, boolean corners, int maxResults, List<String> feeds,
+                                    Double focusLat, Double focusLon) {
+        List<LuceneResult> result = Lists.newArrayList();
+        if (!(stops || stations || clusters || corners)) {
+            // No category given means all categories
+            stops = stations = clusters = corners = true;
+        }
+        if (autocomplete && (stops || stations) && autocompleteIndex != null) {
+            for (Stop stop : autocompleteIndex.query(queryString, stops, stations, maxResults, feeds, focusLat, focusLon)) {
+                result.add(stopResult(stop));
+            }
+            if (!(clusters || corners) || result.size() >= maxResults) {
+                return result;
+            }
+            // Complete the stops and stations with other categories from the Lucene index
+            stops = stations = false;
+            maxResults -= result.size();
+        }
+
+        if (searcher == null) {
+            LOG.warn("Lucene index is not available, no results for {}", queryString);
+            return result;
+        }
+
         /* Turn the query string into a Lucene query.*/
         BooleanQuery query = new BooleanQuery();
         BooleanQuery termQuery = new BooleanQuery();
@@ -241,7 +375,6 @@ public class LuceneIndex {
             query.add(feedQuery, BooleanClause.Occur.MUST);
         }
 
-        List<LuceneResult> result = Lists.newArrayList();
         try {
             TopScoreDocCollector collector = TopScoreDocCollector.create(maxResults, true);
             searcher.search(query, collector);
@@ -305,6 +438,17 @@ public class LuceneIndex {
         return query(queryString, autocomplete, stops, false, clusters, corners, 10, null);
     }
 
+    private LuceneResult stopResult(Stop stop) {
+        Category category = graphIndex.stationForId.containsKey(stop.getId()) ? Category.STATION : Category.STOP;
+        LuceneResult lr = new LuceneResult();
+        lr.lat = stop.getLat();
+        lr.lng = stop.getLon();
+        lr.id = GtfsLibrary.convertIdToString(stop.getId());
+        String code = stop.getCode() != null ? "(" + stop.getCode() + ")" : "";
+        lr.description = category.name().toLowerCase() + " " + stop.getName() + " " + code;
+        return lr;
+    }
+
     /** This class matches the structure of the Geocoder responses expected by the OTP client. */
     public static class LuceneResult {
         public double lat;
@@ -0,0 +1,285 @@
+package org.opentripplanner.common;
+
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.model.Stop;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory autocomplete of stop and station names and stop codes, for geocoder suggestions while the user is typing.
+ *
+ * All words of all names are kept in a single sorted array, so that the entries having a word starting with a given
+ * prefix are found by a binary search followed by a scan of the matching range. A query matches an entry when any of
+ * its words is a prefix of one of the words of the entry name, or when it equals the stop code. If a query word has no
+ * match at all, words within one typing error of it are accepted instead.
+ *
+ * Like with the Lucene query, entries matching more of the query words come first. Among these, results are ranked by
+ * match quality and, when a focus point is given, by distance from it. Unlike the Lucene index
+ * this answers in microseconds, does not touch the disk and does not need to parse the query.
+ */
+public class StopAutocompleteIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Query words shorter than this are not matched fuzzily, as nearly everything is within one edit of them. */
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    /** Match qualities, from best to worst */
+    private static final int CODE = 0, EXACT = 1, PREFIX = 2, FUZZY = 3;
+
+    private final Entry[] entries;
+
+    /** Every word of every entry, sorted */
+    private final String[] words;
+
+    /** The entry the word at the same position in {@link #words} belongs to */
+    private final int[] entryForWord;
+
+    private final Map<String, List<Entry>> entriesForCode = new HashMap<>();
+
+    public StopAutocompleteIndex(Collection<Stop> stops, Collection<Stop> stations) {
+        List<Entry> entryList = new ArrayList<>();
+        for (Stop stop : stops) {
+            entryList.add(new Entry(stop, false));
+        }
+        for (Stop station : stations) {
+            entryList.add(new Entry(station, true));
+        }
+        entries = entryList.toArray(new Entry[0]);
+
+        List<WordEntry> wordEntries = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            for (String word : entries[i].words) {
+                wordEntries.add(new WordEntry(word, i));
+            }
+            if (entries[i].code != null) {
+                entriesForCode.computeIfAbsent(entries[i].code, c -> new ArrayList<>()).add(entries[i]);
+            }
+        }
+        wordEntries.sort(Comparator.comparing(wordEntry -> wordEntry.word));
+        words = new String[wordEntries.size()];
+        entryForWord = new int[wordEntries.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = wordEntries.get(i).word;
+            entryForWord[i] = wordEntries.get(i).entry;
+        }
+    }
+
+    /**
+     * @param queryString the text typed so far
+     * @param stops whether to return stops
+     * @param stations whether to return stations
+     * @param maxResults maximum number of results
+     * @param feeds return results only from these feeds, or from all feeds if null
+     * @param focusLat latitude of the point results are ranked by distance from, or null to rank by name only
+     * @param focusLon longitude of the focus point
+     * @return the best matching stops and stations
+     */
+    public List<Stop> query(String queryString, boolean stops, boolean stations, int maxResults, List<String> feeds,
+                            Double focusLat, Double focusLon) {
+        String[] queryWords = tokenize(queryString);
+        if (queryWords.length == 0 || maxResults <= 0) {
+            return new ArrayList<>();
+        }
+
+        // number of query words matched and worst quality of these matches, by entry index
+        Map<Integer, Candidate> candidates = new HashMap<>();
+        for (String queryWord : queryWords) {
+            for (Map.Entry<Integer, Integer> match : matchWord(queryWord).entrySet()) {
+                Candidate candidate = candidates.computeIfAbsent(match.getKey(), e -> new Candidate());
+                candidate.matchedWords++;
+                candidate.quality = Math.max(candidate.quality, match.getValue());
+            }
+        }
+
+        List<Match> results = new ArrayList<>();
+        String code = queryString.trim();
+        for (Entry entry : entriesForCode.getOrDefault(code, new ArrayList<>())) {
+            if (accept(entry, stops, stations, feeds)) {
+                results.add(new Match(entry, queryWords.length, CODE, focusLat, focusLon));
+            }
+        }
+        for (Map.Entry<Integer, Candidate> candidate : candidates.entrySet()) {
+            Entry entry = entries[candidate.getKey()];
+            if (accept(entry, stops, stations, feeds) && !code.equals(entry.code)) {
+                results.add(new Match(entry, candidate.getValue().matchedWords, candidate.getValue().quality,
+                        focusLat, focusLon));
+            }
+        }
+
+        boolean byDistance = focusLat != null && focusLon != null;
+        results.sort(byDistance ? Match.BY_DISTANCE : Match.BY_QUALITY);
+        List<Stop> ret = new ArrayList<>();
+        for (int i = 0; i < results.size() && i < maxResults; i++) {
+            ret.add(results.get(i).entry.stop);
+        }
+        return ret;
+    }
+
+    /** @return the best match quality of the entries matching the given query word, by entry index */
+    private Map<Integer, Integer> matchWord(String queryWord) {
+        Map<Integer, Integer> matches = new HashMap<>();
+        int from = lowerBound(queryWord);
+        for (int i = from; i < words.length && words[i].startsWith(queryWord); i++) {
+            int quality = words[i].length() == queryWord.length() ? EXACT : PREFIX;
+            matches.merge(entryForWord[i], quality, Math::min);
+        }
+        if (matches.isEmpty() && queryWord.length() >= MIN_FUZZY_LENGTH) {
+            // Typing errors are rarely in the first character, so only words sharing it are compared.
+            String first = queryWord.substring(0, 1);
+            int end = lowerBound(first + Character.MAX_VALUE);
+            for (int i = lowerBound(first); i < end; i++) {
+                if (prefixWithinOneEdit(queryWord, words[i])) {
+                    matches.put(entryForWord[i], FUZZY);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /** @return the position of the first word that is not less than the given one */
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean accept(Entry entry, boolean stops, boolean stations, List<String> feeds) {
+        if (entry.station ? !stations : !stops) {
+            return false;
+        }
+        return feeds == null || feeds.contains(entry.stop.getId().getAgencyId());
+    }
+
+    /**
+     * @return whether some prefix of the word is within one insertion, deletion, substitution or transposition of two
+     *         adjacent characters of the query
+     */
+    static boolean prefixWithinOneEdit(String query, String word) {
+        for (int length = query.length() - 1; length <= query.length() + 1; length++) {
+            if (length <= word.length() && withinOneEdit(query, word.substring(0, length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean withinOneEdit(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (i == a.length() || i == b.length()) {
+            // one is a prefix of the other, and the lengths differ by at most one
+            return true;
+        }
+        if (a.length() == b.length()) {
+            if (a.regionMatches(i + 1, b, i + 1, a.length() - i - 1)) {
+                return true;
+            }
+            // transposition of two adjacent characters
+            return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                && a.regionMatches(i + 2, b, i + 2, a.length() - i - 2);
+        } else if (a.length() > b.length()) {
+            return a.regionMatches(i + 1, b, i, b.length() - i);
+        } else {
+            return b.regionMatches(i + 1, a, i, a.length() - i);
+        }
+    }
+
+    /** Split a name into lower case words without diacritics. */
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return Arrays.stream(NON_WORD.split(normalized.toLowerCase(Locale.ROOT)))
+            .filter(word -> !word.isEmpty())
+            .distinct()
+            .toArray(String[]::new);
+    }
+
+    private static class Entry {
+        final Stop stop;
+        final boolean station;
+        final String[] words;
+        final String code;
+
+        Entry(Stop stop, boolean station) {
+            this.stop = stop;
+            this.station = station;
+            this.words = tokenize(stop.getName());
+            this.code = stop.getCode();
+        }
+    }
+
+    private static class Candidate {
+        int matchedWords;
+        int quality = EXACT;
+    }
+
+    private static class WordEntry {
+        final String word;
+        final int entry;
+
+        WordEntry(String word, int entry) {
+            this.word = word;
+            this.entry = entry;
+        }
+    }
+
+    private static class Match {
+        /**
+         * Most query words matched first, then code matches, then names matching without typing errors nearest to the
+         * focus point
+         */
+        static final Comparator<Match> BY_DISTANCE = Comparator
+            .comparingInt((Match match) -> -match.matchedWords)
+            .thenComparingInt(match -> match.quality == CODE ? 0 : match.quality == FUZZY ? 2 : 1)
+            .thenComparingDouble(match -> match.distance)
+            .thenComparing(match -> match.entry.stop.getName());
+
+        /** Most query words matched first, then best match quality, then the shortest names, which are the most complete */
+        static final Comparator<Match> BY_QUALITY = Comparator
+            .comparingInt((Match match) -> -match.matchedWords)
+            .thenComparingInt(match -> match.quality)
+            .thenComparingInt(match -> match.entry.stop.getName().length())
+            .thenComparing(match -> match.entry.stop.getName());
+
+        final Entry entry;
+        final int matchedWords;
+        final int quality;
+        final double distance;
+
+        Match(Entry entry, int matchedWords, int quality, Double focusLat, Double focusLon) {
+            this.entry = entry;
+            this.matchedWords = matchedWords;
+            this.quality = quality;
+            this.distance = focusLat != null && focusLon != null
+                ? SphericalDistanceLibrary.fastDistance(focusLat, focusLon, entry.stop.getLat(), entry.stop.getLon())
+                : 0;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.opentripplanner.common.geometry;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.locationtech.jts.algorithm.CGAlgorithms;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.simplify.DouglasPeuckerLineSimplifier;
+import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compute isolines for many cutoffs at once, using marching squares on a dense copy of a sample grid.
+ *
+ * The sample grid is copied once into two primitive arrays, holding the time and the off-road distance of every grid
+ * point. Points further off-road than the maximum off-road distance, and points missing from the grid, are
+ * unreachable. The grid is padded with a border of unreachable points so that all isolines are closed.
+ *
+ * A single pass over the grid cells then finds, for every cell, the cutoffs lying between the lowest and the highest
+ * time at its corners, and records the isoline segments crossing the cell for each of them. Segments are recorded as
+ * links between the grid edges they cross, oriented so that the reachable area is on their left. Finally, the segments
+ * of each cutoff are joined into rings, simplified, and assembled into polygons with holes, with the cutoffs processed
+ * in parallel.
+ *
+ * Compared to the {@link DelaunayIsolineBuilder}, which walks all the edges of the triangulation for each cutoff, this
+ * does the per-cell work once for any number of cutoffs, and only touches the cells an isoline actually crosses
+ * afterwards.
+ *
+ * Like the other builders, the shells of the resulting polygons are CCW and their holes CW.
+ */
+public class MarchingSquaresIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarchingSquaresIsolineBuilder.class);
+
+    private final ToDoubleFunction<TZ> timeFunction;
+
+    private final double maxOffRoadDistance;
+
+    /** Width and height of the padded grid */
+    private final int width, height;
+
+    /** Grid indexes of the first point after the padding */
+    private final int xMin, yMin;
+
+    private final Coordinate center;
+
+    private final double dX, dY;
+
+    /** Times of the grid points, row by row, infinite when unreachable */
+    private final double[] times;
+
+    /** Off-road distances of the grid points, row by row, infinite when unknown */
+    private final double[] distances;
+
+    /** Distance tolerance of the simplification, as a fraction of the cell height */
+    private double simplifyTolerance = 0.25;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * @param grid the samples
+     * @param timeFunction the value of a sample to compute isolines of, usually a time
+     * @param distanceFunction the off-road distance of a sample, usually from the nearest point on the street network
+     * @param maxOffRoadDistance samples further off-road than this are considered unreachable
+     */
+    public MarchingSquaresIsolineBuilder(ZSampleGrid<TZ> grid, ToDoubleFunction<TZ> timeFunction,
+            ToDoubleFunction<TZ> distanceFunction, double maxOffRoadDistance) {
+        this.timeFunction = timeFunction;
+        this.maxOffRoadDistance = maxOffRoadDistance;
+        this.center = grid.getCenter();
+        this.dX = grid.getCellSize().x;
+        this.dY = grid.getCellSize().y;
+        if (grid.size() == 0) {
+            width = height = 0;
+            xMin = yMin = 0;
+            times = distances = new double[0];
+            return;
+        }
+        xMin = grid.getXMin();
+        yMin = grid.getYMin();
+        width = grid.getXMax() - xMin + 3;
+        height = grid.getYMax() - yMin + 3;
+        times = new double[width * height];
+        distances = new double[width * height];
+        Arrays.fill(times, Double.POSITIVE_INFINITY);
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        for (ZSamplePoint<TZ> point : grid) {
+            TZ z = point.getZ();
+            if (z == null) {
+                continue;
+            }
+            int index = (point.getX() - xMin + 1) + (point.getY() - yMin + 1) * width;
+            double distance = distanceFunction.applyAsDouble(z);
+            distances[index] = distance;
+            times[index] = distance > maxOffRoadDistance ? Double.POSITIVE_INFINITY : timeFunction.applyAsDouble(z);
+        }
+    }
+
+    /**
+     * @param simplifyTolerance the distance tolerance of the simplification of the isolines, as a fraction of the
+     *        cell height, or 0 to disable simplification.
+     */
+    public void setSimplifyTolerance(double simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    @Override
+    public Geometry computeIsoline(TZ z0) {
+        return computeIsolines(new double[] { timeFunction.applyAsDouble(z0) }).get(0);
+    }
+
+    /**
+     * @param cutoffs the values to compute isolines for, in any order
+     * @return the isolines, in the same order as the cutoffs
+     */
+    public List<Geometry> computeIsolines(double[] cutoffs) {
+        long t0 = System.currentTimeMillis();
+        Integer[] order = IntStream.range(0, cutoffs.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble(k -> cutoffs[k]));
+        double[] sortedCutoffs = new double[cutoffs.length];
+        TIntIntMap[] segments = new TIntIntMap[cutoffs.length];
+        for (int k = 0; k < cutoffs.length; k++) {
+            sortedCutoffs[k] = cutoffs[order[k]];
+            segments[k] = new TIntIntHashMap(64, 0.5f, -1, -1);
+        }
+
+        // Single pass over all cells, for all cutoffs
+        for (int j = 0; j < height - 1; j++) {
+            for (int i = 0; i < width - 1; i++) {
+                int a = i + j * width;
+                double tA = times[a], tB = times[a + 1], tC = times[a + 1 + width], tD = times[a + width];
+                double min = Math.min(Math.min(tA, tB), Math.min(tC, tD));
+                double max = Math.max(Math.max(tA, tB), Math.max(tC, tD));
+                if (!(min < max)) {
+                    continue;
+                }
+                // The cutoffs for which some corners are inside (time < cutoff) and some are not.
+                for (int k = firstAbove(sortedCutoffs, min); k < sortedCutoffs.length && sortedCutoffs[k] <= max; k++) {
+                    addSegments(segments[k], a, sortedCutoffs[k]);
+                }
+            }
+        }
+        long t1 = System.currentTimeMillis();
+
+        List<Geometry> sortedIsolines = IntStream.range(0, cutoffs.length).parallel()
+                .mapToObj(k -> buildIsoline(segments[k], sortedCutoffs[k]))
+                .collect(Collectors.toList());
+        Geometry[] isolines = new Geometry[cutoffs.length];
+        for (int k = 0; k < cutoffs.length; k++) {
+            isolines[order[k]] = sortedIsolines.get(k);
+        }
+        long t2 = System.currentTimeMillis();
+        LOG.debug("Computed {} isolines on a {}x{} grid: {} msec marching squares, {} msec building polygons",
+                cutoffs.length, width, height, (int) (t1 - t0), (int) (t2 - t1));
+        return Arrays.asList(isolines);
+    }
+
+    /** @return the index of the first cutoff strictly above the given value */
+    private static int firstAbove(double[] sortedCutoffs, double value) {
+        int low = 0;
+        int high = sortedCutoffs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedCutoffs[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Record the segments of the isoline crossing the cell whose lower left corner has the given index. Grid edges are
+     * identified by twice the index of their lower or left point, plus one for vertical edges.
+     *
+     * Walking the cell boundary counter-clockwise, the isoline alternately leaves and enters the reachable area. Each
+     * segment goes from a crossing where the boundary leaves the area to a neighbouring crossing where it enters it,
+     * keeping the reachable area on its left. In the ambiguous saddle cells, the value at the cell center decides
+     * whether the two reachable corners are connected.
+     */
+    private void addSegments(TIntIntMap segments, int a, double cutoff) {
+        int[] corners = { a, a + 1, a + 1 + width, a + width };
+        int[] edges = { 2 * a, 2 * (a + 1) + 1, 2 * (a + width), 2 * a + 1 };
+        int[] crossings = new int[4];
+        boolean[] leaving = new boolean[4];
+        int n = 0;
+        for (int e = 0; e < 4; e++) {
+            boolean inside = times[corners[e]] < cutoff;
+            if (inside != times[corners[(e + 1) % 4]] < cutoff) {
+                crossings[n] = edges[e];
+                leaving[n] = inside;
+                n++;
+            }
+        }
+        if (n == 2) {
+            if (leaving[0]) {
+                segments.put(crossings[0], crossings[1]);
+            } else {
+                segments.put(crossings[1], crossings[0]);
+            }
+        } else if (n == 4) {
+            double centerTime = (times[corners[0]] + times[corners[1]] + times[corners[2]] + times[corners[3]]) / 4;
+            boolean connected = centerTime < cutoff;
+            for (int p = 0; p < 4; p++) {
+                if (leaving[p]) {
+                    segments.put(crossings[p], crossings[(p + (connected ? 1 : 3)) % 4]);
+                }
+            }
+        }
+    }
+
+    /** Join the segments of one cutoff into rings, and the rings into polygons. */
+    private Geometry buildIsoline(TIntIntMap segments, double cutoff) {
+        List<Coordinate[]> shells = new ArrayList<>();
+        List<Coordinate[]> holes = new ArrayList<>();
+        while (!segments.isEmpty()) {
+            TIntIntIterator iterator = segments.iterator();
+            iterator.advance();
+            int start = iterator.key();
+            List<Coordinate> points = new ArrayList<>();
+            int edge = start;
+            do {
+                points.add(crossingPoint(edge, cutoff));
+                edge = segments.remove(edge);
+            } while (edge != start && edge >= 0);
+            if (edge < 0) {
+                // Cannot happen as every crossed grid edge is shared by two crossed cells, but do not lose the rest.
+                LOG.error("Isoline at {} is not closed.", cutoff);
+                continue;
+            }
+            points.add(points.get(0));
+            Coordinate[] ring = points.toArray(new Coordinate[points.size()]);
+            if (simplifyTolerance > 0) {
+                ring = DouglasPeuckerLineSimplifier.simplify(ring, simplifyTolerance * dY);
+            }
+            if (ring.length < 4) {
+                continue;
+            }
+            if (CGAlgorithms.signedArea(ring) > 0.0) {
+                holes.add(ring);
+            } else {
+                shells.add(ring);
+            }
+        }
+
+        // Put each hole in the smallest shell containing it, so that holes in islands inside holes find their island.
+        shells.sort(Comparator.comparingDouble(shell -> Math.abs(CGAlgorithms.signedArea(shell))));
+        List<Envelope> shellEnvelopes = new ArrayList<>(shells.size());
+        List<List<LinearRing>> shellHoles = new ArrayList<>(shells.size());
+        for (Coordinate[] shell : shells) {
+            Envelope envelope = new Envelope();
+            for (Coordinate coordinate : shell) {
+                envelope.expandToInclude(coordinate);
+            }
+            shellEnvelopes.add(envelope);
+            shellHoles.add(new ArrayList<>());
+        }
+        int nHolesFailed = 0;
+        for (Coordinate[] hole : holes) {
+            boolean found = false;
+            for (int s = 0; s < shells.size() && !found; s++) {
+                if (shellEnvelopes.get(s).contains(hole[0]) && CGAlgorithms.isPointInRing(hole[0], shells.get(s))) {
+                    shellHoles.get(s).add(geometryFactory.createLinearRing(hole));
+                    found = true;
+                }
+            }
+            if (!found) {
+                nHolesFailed++;
+            }
+        }
+        if (nHolesFailed > 0) {
+            LOG.error("Could not find a shell for {} holes.", nHolesFailed);
+        }
+        Geometry[] polygons = new Polygon[shells.size()];
+        for (int s = 0; s < shells.size(); s++) {
+            List<LinearRing> holeRings = shellHoles.get(s);
+            polygons[s] = geometryFactory.createPolygon(geometryFactory.createLinearRing(shells.get(s)),
+                    holeRings.toArray(new LinearRing[holeRings.size()]));
+        }
+        return geometryFactory.createGeometryCollection(polygons);
+    }
+
+    /** @return the point where the isoline crosses the given grid edge */
+    private Coordinate crossingPoint(int edge, double cutoff) {
+        int a = edge >> 1;
+        boolean vertical = (edge & 1) == 1;
+        int b = vertical ? a + width : a + 1;
+        double tA = times[a], tB = times[b];
+        double k;
+        if (!Double.isInfinite(tA) && !Double.isInfinite(tB)) {
+            k = (cutoff - tA) / (tB - tA);
+        } else {
+            // One end is unreachable, interpolate on the off-road distance
+            double dA = distances[a], dB = distances[b];
+            k = Double.isInfinite(dA) || Double.isInfinite(dB) || dA == dB ? 0.5
+                    : (maxOffRoadDistance - dA) / (dB - dA);
+            k = Math.max(0.0, Math.min(1.0, k));
+        }
+        double x = a % width - 1 + xMin + (vertical ? 0 : k);
+        double y = a / width - 1 + yMin + (vertical ? k : 0);
+        return new Coordinate(center.x + x * dX, center.y + y * dY);
+    }
+}
@@ -1,6 +1,7 @@
 package org.opentripplanner.graph_builder;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.module.DirectTransferGenerator;
@@ -20,9 +21,12 @@ import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderImpl;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.reflect.ReflectionLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.CommandLineParameters;
 import org.opentripplanner.standalone.GraphBuilderParameters;
 import org.opentripplanner.standalone.OTPMain;
@@ -65,6 +69,9 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should the stop trees be computed and saved along with the serialized graph? */
+    public boolean saveStopTrees = false;
+
     public GraphBuilder(File path, GraphBuilderParameters builderParams) {
         MDC.put("routerPath", path.getAbsolutePath());
         graphFile = new File(path, "Graph.obj");
@@ -154,6 +161,18 @@ public class GraphBuilder implements Runnable {
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
+            if (saveStopTrees) {
+                // Vertex indices are kept by serialization, so the stop trees of this graph remain valid once loaded.
+                // This does not need the graph to be indexed.
+                StopTreeCache stopTreeCache = new StopTreeCache(graph,
+                        Lists.newArrayList(Iterables.filter(graph.getVertices(), TransitStop.class)),
+                        GraphIndex.MAX_WALK_METERS);
+                try {
+                    stopTreeCache.save(new File(graphFile.getParentFile(), StopTreeCache.FILENAME), graph);
+                } catch (IOException e) {
+                    LOG.error("Could not save stop trees, they will be computed when first used.", e);
+                }
+            }
         } else {
             LOG.info("Not saving graph to disk, as requested.");
         }
@@ -322,6 +341,7 @@ public class GraphBuilder implements Runnable {
         }
         
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.saveStopTrees = builderParams.stopTrees;
         return graphBuilder;
     }
 
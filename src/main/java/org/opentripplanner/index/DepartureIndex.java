@@ -0,0 +1,114 @@
+package org.opentripplanner.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Departures of every timetable at every stop position, restricted to the trips running on a service date and sorted
+ * by departure time. Departure boards binary search these lists for the start of their time window and then only read
+ * the departures they return, instead of scanning every trip of every timetable.
+ *
+ * Lists are built lazily for the (timetable, service date, stop position) combinations that are actually queried.
+ * Realtime updates never modify a timetable once it is part of a committed snapshot, they create updated copies
+ * instead. These copies are keyed by identity and weakly referenced here, so the lists of a realtime timetable are
+ * built when it is first queried and dropped together with the snapshot it belongs to.
+ */
+public class DepartureIndex {
+
+    /**
+     * Lists are kept for this many service dates per timetable, those of the least recently queried date are dropped
+     * first. Departure boards mostly query yesterday, today and tomorrow.
+     */
+    private static final int RETAINED_SERVICE_DATES = 4;
+
+    private final Cache<Timetable, ConcurrentMap<ServiceDate, AtomicReferenceArray<Departures>>> departures =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * The departures of the given timetable at the given stop position, for trips running on the given service day.
+     * The returned departures must not be modified.
+     */
+    public Departures getDepartures(Timetable timetable, ServiceDate serviceDate, ServiceDay serviceDay, int stopIndex) {
+        ConcurrentMap<ServiceDate, AtomicReferenceArray<Departures>> byDate = departures.asMap().computeIfAbsent(
+                timetable, t -> CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(RETAINED_SERVICE_DATES)
+                        .<ServiceDate, AtomicReferenceArray<Departures>>build().asMap());
+        AtomicReferenceArray<Departures> byStopIndex = byDate.computeIfAbsent(serviceDate,
+                date -> new AtomicReferenceArray<>(timetable.pattern.getStops().size()));
+        Departures result = byStopIndex.get(stopIndex);
+        if (result == null) {
+            result = Departures.build(timetable, serviceDay, stopIndex);
+            if (!byStopIndex.compareAndSet(stopIndex, null, result)) {
+                result = byStopIndex.get(stopIndex);
+            }
+        }
+        return result;
+    }
+
+    /** Number of timetables with indexed departures. */
+    public long size() {
+        return departures.size();
+    }
+
+    /** The departures of one timetable at one stop position, sorted by departure time. */
+    public static class Departures {
+
+        /** Departure times in seconds since midnight of the service day, in ascending order. */
+        public final int[] times;
+
+        /** The trip departing at the time at the same position in {@link #times}. */
+        public final TripTimes[] tripTimes;
+
+        public Departures(int[] times, TripTimes[] tripTimes) {
+            this.times = times;
+            this.tripTimes = tripTimes;
+        }
+
+        static Departures build(Timetable timetable, ServiceDay serviceDay, int stopIndex) {
+            List<TripTimes> running = timetable.tripTimes.stream()
+                    .filter(tripTimes -> serviceDay.serviceRunning(tripTimes.serviceCode))
+                    .collect(Collectors.toList());
+            return of(running, stopIndex);
+        }
+
+        /** Sort the given trips by their departure time at the given stop position. */
+        public static Departures of(List<TripTimes> trips, int stopIndex) {
+            TripTimes[] sorted = trips.toArray(new TripTimes[0]);
+            Arrays.sort(sorted, Comparator.comparingInt(tripTimes -> tripTimes.getDepartureTime(stopIndex)));
+            int[] times = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                times[i] = sorted[i].getDepartureTime(stopIndex);
+            }
+            return new Departures(times, sorted);
+        }
+
+        /** @return the position of the first departure at or after the given time. */
+        public int firstAtOrAfter(int time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        public int size() {
+            return times.length;
+        }
+    }
+}
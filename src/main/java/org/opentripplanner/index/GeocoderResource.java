@@ -39,6 +39,8 @@ public class GeocoderResource {
      * @param stops Search for stops, either by name or stop code
      * @param clusters Search for clusters by their name
      * @param corners Search for street corners using at least one of the street names
+     * @param focusLat Latitude of the point to rank autocompleted stops by distance from
+     * @param focusLon Longitude of the point to rank autocompleted stops by distance from
      * @return list of results in in the format expected by GeocoderBuiltin.js in the OTP Leaflet client
      */
     @GET
@@ -46,9 +48,12 @@ public class GeocoderResource {
                                 @QueryParam("autocomplete") @DefaultValue("false") boolean autocomplete,
                                 @QueryParam("stops") @DefaultValue("true") boolean stops,
                                 @QueryParam("clusters") @DefaultValue("false") boolean clusters,
-                                @QueryParam("corners") @DefaultValue("true") boolean corners
+                                @QueryParam("corners") @DefaultValue("true") boolean corners,
+                                @QueryParam("focusLat") Double focusLat,
+                                @QueryParam("focusLon") Double focusLon
                                 ) {
-        return Response.status(Response.Status.OK).entity(index.query(query, autocomplete, stops, clusters, corners)).build();
+        return Response.status(Response.Status.OK).entity(index.query(query, autocomplete, stops, false, clusters,
+                corners, 10, null, focusLat, focusLon)).build();
     }
 
 }
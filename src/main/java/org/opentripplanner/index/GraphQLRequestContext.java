@@ -0,0 +1,19 @@
+package org.opentripplanner.index;
+
+import org.opentripplanner.standalone.Router;
+
+/**
+ * Context object handed to all data fetchers of a single GraphQL execution. It gives access to the router the query
+ * is executed against and to the per-execution {@link ResolverCache}.
+ */
+public class GraphQLRequestContext {
+
+    public final Router router;
+
+    public final ResolverCache resolverCache;
+
+    public GraphQLRequestContext(Router router, ResolverCache resolverCache) {
+        this.router = router;
+        this.resolverCache = resolverCache;
+    }
+}
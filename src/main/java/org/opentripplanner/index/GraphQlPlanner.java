@@ -44,7 +44,7 @@ public class GraphQlPlanner {
 
     public Map<String, Object> plan(DataFetchingEnvironment environment) {
 
-        Router router = (Router) environment.getContext();
+        Router router = ((GraphQLRequestContext) environment.getContext()).router;
 
 
         RoutingRequest request = createRequest(environment);
@@ -152,7 +152,7 @@ public class GraphQlPlanner {
     }
 
     private RoutingRequest createRequest(DataFetchingEnvironment environment) {
-        Router router = (Router) environment.getContext();
+        Router router = ((GraphQLRequestContext) environment.getContext()).router;
         RoutingRequest request = router.defaultRoutingRequest.clone();
         request.routerId = router.id;
 
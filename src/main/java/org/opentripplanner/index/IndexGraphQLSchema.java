@@ -31,7 +31,6 @@ import org.opentripplanner.routing.car_park.CarParkService;
 import org.opentripplanner.routing.core.*;
 import org.opentripplanner.routing.edgetype.SimpleTransfer;
 import org.opentripplanner.routing.edgetype.Timetable;
-import org.opentripplanner.routing.edgetype.TimetableSnapshot;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.error.VertexNotFoundException;
 import org.opentripplanner.routing.graph.GraphIndex;
@@ -40,7 +39,6 @@ import org.opentripplanner.routing.trippattern.RealTimeState;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.opentripplanner.updater.GtfsRealtimeFuzzyTripMatcher;
-import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.opentripplanner.util.PolylineEncoder;
 import org.opentripplanner.util.ResourceBundleSingleton;
 import org.opentripplanner.util.TranslatedString;
@@ -1125,7 +1123,7 @@ public class IndexGraphQLSchema {
                             int maxDepartures = environment.getArgument("numberOfDepartures");
                             boolean omitNonPickups = environment.getArgument("omitNonPickups");
                             boolean omitCanceled = environment.getArgument("omitCanceled");
-                            return departureRow.getStoptimes(index, startTime, timeRange, maxDepartures, omitNonPickups, omitCanceled);
+                            return departureRow.getStoptimes(index, resolverCache(environment, index), startTime, timeRange, maxDepartures, omitNonPickups, omitCanceled);
                         })
                         .build())
                 .build();
@@ -1276,7 +1274,7 @@ public class IndexGraphQLSchema {
                                 .defaultValue(true)
                                 .build())
                         .dataFetcher(environment ->
-                                index.stopTimesForPattern(environment.getSource(),
+                                index.stopTimesForPattern(resolverCache(environment, index), environment.getSource(),
                                         index.patternForId.get(environment.getArgument("id")),
                                         environment.getArgument("startTime"),
                                         environment.getArgument("timeRange"),
@@ -1468,10 +1466,10 @@ public class IndexGraphQLSchema {
                                 return index.stopsForParentStation
                                         .get(stop.getId())
                                         .stream()
-                                        .flatMap(singleStop -> index.getStopTimesForStop(singleStop, date, omitNonPickups, omitCanceled).stream())
+                                        .flatMap(singleStop -> index.getStopTimesForStop(resolverCache(environment, index), singleStop, date, omitNonPickups, omitCanceled).stream())
                                         .collect(Collectors.toList());
                             }
-                            return index.getStopTimesForStop(stop, date, omitNonPickups, omitCanceled);
+                            return index.getStopTimesForStop(resolverCache(environment, index), stop, date, omitNonPickups, omitCanceled);
                         })
                         .build())
                 .field(GraphQLFieldDefinition.newFieldDefinition()
@@ -1515,7 +1513,7 @@ public class IndexGraphQLSchema {
                                         .get(stop.getId())
                                         .stream()
                                         .flatMap(singleStop ->
-                                                index.stopTimesForStop(singleStop,
+                                                resolverCache(environment, index).stopTimesForStop(singleStop,
                                                         environment.getArgument("startTime"),
                                                         environment.getArgument("timeRange"),
                                                         environment.getArgument("numberOfDepartures"),
@@ -1525,7 +1523,7 @@ public class IndexGraphQLSchema {
                                         )
                                         .collect(Collectors.toList());
                             }
-                            return index.stopTimesForStop(stop,
+                            return resolverCache(environment, index).stopTimesForStop(stop,
                                     environment.getArgument("startTime"),
                                     environment.getArgument("timeRange"),
                                     environment.getArgument("numberOfDepartures"),
@@ -1575,7 +1573,7 @@ public class IndexGraphQLSchema {
                                         .get(stop.getId())
                                         .stream()
                                         .flatMap(singleStop ->
-                                                index.stopTimesForStop(singleStop,
+                                                resolverCache(environment, index).stopTimesForStop(singleStop,
                                                         environment.getArgument("startTime"),
                                                         environment.getArgument("timeRange"),
                                                         environment.getArgument("numberOfDepartures"),
@@ -1584,7 +1582,7 @@ public class IndexGraphQLSchema {
                                                         .stream()
                                         );
                             } else {
-                                stream = index.stopTimesForStop(
+                                stream = resolverCache(environment, index).stopTimesForStop(
                                         environment.getSource(),
                                         environment.getArgument("startTime"),
                                         environment.getArgument("timeRange"),
@@ -1603,7 +1601,7 @@ public class IndexGraphQLSchema {
                         .name("alerts")
                         .description("List of alerts which have an effect on this stop")
                         .type(new GraphQLList(alertType))
-                        .dataFetcher(dataFetchingEnvironment -> index.getAlertsForStop(
+                        .dataFetcher(dataFetchingEnvironment -> resolverCache(dataFetchingEnvironment, index).getAlertsForStop(
                                 dataFetchingEnvironment.getSource()))
                         .build())
                 .build();
@@ -1859,7 +1857,7 @@ public class IndexGraphQLSchema {
                                         0,
                                         timetable.pattern.getStop(0),
                                         environment.getArgument("serviceDate") == null
-                                                ? null : new ServiceDay(index.graph, ServiceDate.parseString(environment.getArgument("serviceDate")), index.graph.getCalendarService(), ((Trip) environment.getSource()).getRoute().getAgency().getId()));
+                                                ? null : index.graph.getServiceCalendarCache().serviceDay(ServiceDate.parseString(environment.getArgument("serviceDate")), ((Trip) environment.getSource()).getRoute().getAgency().getId()));
                             } catch (ParseException e) {
                                 //Invalid date format
                                 return null;
@@ -1883,7 +1881,7 @@ public class IndexGraphQLSchema {
                                         triptimes.getNumStops() - 1,
                                         timetable.pattern.getStop(triptimes.getNumStops() - 1),
                                         environment.getArgument("serviceDate") == null
-                                                ? null : new ServiceDay(index.graph, ServiceDate.parseString(environment.getArgument("serviceDate")), index.graph.getCalendarService(), ((Trip) environment.getSource()).getRoute().getAgency().getId()));
+                                                ? null : index.graph.getServiceCalendarCache().serviceDay(ServiceDate.parseString(environment.getArgument("serviceDate")), ((Trip) environment.getSource()).getRoute().getAgency().getId()));
                             } catch (ParseException e) {
                                 //Invalid date format
                                 return null;
@@ -1914,19 +1912,10 @@ public class IndexGraphQLSchema {
                                                 : environment.getArgument("serviceDay");
                                 final ServiceDate serviceDate = argServiceDate != null
                                         ? ServiceDate.parseString(argServiceDate) : new ServiceDate();
-                                final ServiceDay serviceDay = new ServiceDay(index.graph, serviceDate,
-                                        index.graph.getCalendarService(), trip.getRoute().getAgency().getId());
-                                TimetableSnapshotSource timetableSnapshotSource = index.graph.timetableSnapshotSource;
-                                Timetable timetable = null;
-                                if (timetableSnapshotSource != null) {
-                                    TimetableSnapshot timetableSnapshot = timetableSnapshotSource.getTimetableSnapshot();
-                                    if (timetableSnapshot != null) {
-                                        timetable = timetableSnapshot.resolve(index.patternForTrip.get(trip), serviceDate);
-                                    }
-                                }
-                                if (timetable == null) {
-                                    timetable = index.patternForTrip.get(trip).scheduledTimetable;
-                                }
+                                final ResolverCache resolverCache = resolverCache(environment, index);
+                                final ServiceDay serviceDay = resolverCache.serviceDay(serviceDate,
+                                        trip.getRoute().getAgency().getId());
+                                Timetable timetable = resolverCache.resolve(index.patternForTrip.get(trip), serviceDate);
                                 return TripTimeShort.fromTripTimes(timetable, trip, serviceDay);
                             } catch (ParseException e) {
                                 return null; // Invalid date format
@@ -1969,7 +1958,7 @@ public class IndexGraphQLSchema {
                         .name("alerts")
                         .description("List of alerts which have an effect on this trip")
                         .type(new GraphQLList(alertType))
-                        .dataFetcher(dataFetchingEnvironment -> index.getAlertsForTrip(
+                        .dataFetcher(dataFetchingEnvironment -> resolverCache(dataFetchingEnvironment, index).getAlertsForTrip(
                                 dataFetchingEnvironment.getSource()))
                         .build())
                 .build();
@@ -2054,7 +2043,7 @@ public class IndexGraphQLSchema {
                         .type(new GraphQLList(new GraphQLNonNull(tripType)))
                         .dataFetcher(environment -> {
                             try {
-                                BitSet services = index.servicesRunning(
+                                BitSet services = resolverCache(environment, index).servicesRunning(
                                         ServiceDate.parseString(
                                                 environment.containsArgument("serviceDate")
                                                         && environment.getArgument("serviceDate") != null
@@ -2114,7 +2103,7 @@ public class IndexGraphQLSchema {
                         .name("alerts")
                         .description("List of alerts which have an effect on trips of the pattern")
                         .type(new GraphQLList(alertType))
-                        .dataFetcher(dataFetchingEnvironment -> index.getAlertsForPattern(
+                        .dataFetcher(dataFetchingEnvironment -> resolverCache(dataFetchingEnvironment, index).getAlertsForPattern(
                                 dataFetchingEnvironment.getSource()))
                         .build())
                 .build();
@@ -2224,7 +2213,7 @@ public class IndexGraphQLSchema {
                         .name("alerts")
                         .description("List of alerts which have an effect on the route")
                         .type(new GraphQLList(alertType))
-                        .dataFetcher(dataFetchingEnvironment -> index.getAlertsForRoute(
+                        .dataFetcher(dataFetchingEnvironment -> resolverCache(dataFetchingEnvironment, index).getAlertsForRoute(
                                 dataFetchingEnvironment.getSource()))
                         .build())
                 .build();
@@ -2305,7 +2294,7 @@ public class IndexGraphQLSchema {
                         .name("alerts")
                         .description("List of alerts which have an effect on all operations of the agency (e.g. a strike)")
                         .type(new GraphQLList(alertType))
-                        .dataFetcher(dataFetchingEnvironment -> index.getAlertsForAgency(
+                        .dataFetcher(dataFetchingEnvironment -> resolverCache(dataFetchingEnvironment, index).getAlertsForAgency(
                                 dataFetchingEnvironment.getSource()))
                         .build())
                 .build();
@@ -3600,6 +3589,17 @@ public class IndexGraphQLSchema {
                 .build(dictionary);
     }
 
+    /**
+     * The cache shared by all resolvers of the current execution, or a fresh one if the schema is executed without a
+     * {@link GraphQLRequestContext}.
+     */
+    private static ResolverCache resolverCache(final DataFetchingEnvironment environment, final GraphIndex index) {
+        if (environment.getContext() instanceof GraphQLRequestContext) {
+            return ((GraphQLRequestContext) environment.getContext()).resolverCache;
+        }
+        return new ResolverCache(index);
+    }
+
     private ServiceDate parseDateString(final String dateString) {
         ServiceDate date = null;
         if (dateString != null) {
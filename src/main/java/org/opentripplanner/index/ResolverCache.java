@@ -0,0 +1,141 @@
+package org.opentripplanner.index;
+
+import org.opentripplanner.common.model.T2;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.model.Agency;
+import org.opentripplanner.model.Route;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.model.Trip;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.alertpatch.AlertIndex;
+import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache shared by all resolvers of a single GraphQL execution.
+ *
+ * Resolvers of sibling entities (e.g. the stoptimes of 50 stops in a stop list) mostly need the same timetables,
+ * service days and alerts. Instead of resolving these again for every entity, they are looked up once per key and
+ * served from here for the rest of the query. The realtime snapshot and the alert index are captured when the cache is
+ * created, so all fields of one response see the same consistent realtime state.
+ *
+ * The top level fields of a query are resolved concurrently, so all caches are thread safe.
+ */
+public class ResolverCache {
+
+    private final GraphIndex index;
+
+    private final TimetableSnapshot snapshot;
+
+    /** Default start time for departure queries, so that all stops of a query share the same notion of "now". */
+    private final long creationTime = System.currentTimeMillis() / 1000;
+
+    private final Map<T2<TripPattern, ServiceDate>, Timetable> timetables = new ConcurrentHashMap<>();
+
+    private final Map<T2<String, ServiceDate>, ServiceDay> serviceDays = new ConcurrentHashMap<>();
+
+    private final Map<ServiceDate, BitSet> servicesRunning = new ConcurrentHashMap<>();
+
+    private final Map<List<Object>, List<StopTimesInPattern>> stopTimesForStop = new ConcurrentHashMap<>();
+
+    private final AlertIndex alerts;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResolverCache(GraphIndex index) {
+        this.index = index;
+        this.snapshot = index.graph.timetableSnapshotSource != null
+            ? index.graph.timetableSnapshotSource.getTimetableSnapshot() : null;
+        this.alerts = index.getAlertIndex();
+    }
+
+    /** The realtime snapshot this execution is served from, or null if there is no realtime data. */
+    public TimetableSnapshot getTimetableSnapshot() {
+        return snapshot;
+    }
+
+    /** The timetable of the pattern on the given date, with realtime updates applied if there are any. */
+    public Timetable resolve(TripPattern pattern, ServiceDate serviceDate) {
+        if (snapshot == null) {
+            return pattern.scheduledTimetable;
+        }
+        return lookup(timetables, new T2<>(pattern, serviceDate), key -> snapshot.resolve(key.first, key.second));
+    }
+
+    public ServiceDay serviceDay(ServiceDate serviceDate, String agencyId) {
+        return lookup(serviceDays, new T2<>(agencyId, serviceDate), key ->
+            index.graph.getServiceCalendarCache().serviceDay(key.second, key.first));
+    }
+
+    public BitSet servicesRunning(ServiceDate serviceDate) {
+        return lookup(servicesRunning, serviceDate, date -> index.servicesRunning(date));
+    }
+
+    /** @see GraphIndex#stopTimesForStop(Stop, long, int, int, boolean, boolean) */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures,
+                                                     boolean omitNonPickups, boolean omitCanceled) {
+        if (startTime == 0) {
+            startTime = creationTime;
+        }
+        final long start = startTime;
+        List<Object> key = Arrays.asList(stop, start, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
+        return lookup(stopTimesForStop, key, k -> index.stopTimesForStop(this, stop, start, timeRange,
+            numberOfDepartures, omitNonPickups, omitCanceled));
+    }
+
+    public List<AlertPatch> getAlertsForStop(Stop stop) {
+        return alerts.getAlertsForStop(stop.getId());
+    }
+
+    public List<AlertPatch> getAlertsForRoute(Route route) {
+        return alerts.getAlertsForRoute(route.getId());
+    }
+
+    public List<AlertPatch> getAlertsForTrip(Trip trip) {
+        return alerts.getAlertsForTrip(trip.getId());
+    }
+
+    public List<AlertPatch> getAlertsForPattern(TripPattern pattern) {
+        return alerts.getAlertsForPattern(pattern.code);
+    }
+
+    public List<AlertPatch> getAlertsForAgency(Agency agency) {
+        return alerts.getAlertsForAgency(agency.getId());
+    }
+
+    /** Number of lookups answered from this cache. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Number of lookups that had to be resolved from the index. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private <K, V> V lookup(Map<K, V> cache, K key, Function<K, V> loader) {
+        V value = cache.get(key);
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        value = loader.apply(key);
+        V previous = cache.putIfAbsent(key, value);
+        return previous != null ? previous : value;
+    }
+}
@@ -51,6 +51,15 @@ public class ResourceConstrainedExecutorServiceExecutionStrategy extends Executi
         }
     }
 
+    /** Number of fields resolved so far by this execution. */
+    public long getResolveCount() {
+        return resolveCount.get();
+    }
+
+    public long getMaxResolves() {
+        return maxResolves;
+    }
+
     @Override
     public ExecutionResult execute(
         final ExecutionContext executionContext,
@@ -58,6 +67,8 @@ public class ResourceConstrainedExecutorServiceExecutionStrategy extends Executi
         final Object source,
         final Map<String, List<Field>> fields
     ) {
+        resolveCount.addAndGet(fields.size());
+
         if (executorService == null)
             return new SimpleExecutionStrategy().execute(executionContext, parentType, source, fields);
 
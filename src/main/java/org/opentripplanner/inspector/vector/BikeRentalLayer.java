@@ -0,0 +1,69 @@
+package org.opentripplanner.inspector.vector;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The bike rental stations and free floating bikes, with their availability. The version of the layer follows the
+ * bike rental updaters, so that tiles are regenerated when the availability changes.
+ */
+public class BikeRentalLayer implements VectorTileLayer {
+
+    private final Graph graph;
+
+    public BikeRentalLayer(Graph graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public String getName() {
+        return "bikerental";
+    }
+
+    @Override
+    public int getMinZoom() {
+        return 12;
+    }
+
+    @Override
+    public long getVersion() {
+        BikeRentalStationService service = graph.getService(BikeRentalStationService.class);
+        return service == null ? 0 : service.getVersion();
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return true;
+    }
+
+    @Override
+    public void addFeatures(VectorTileEncoder encoder, int zoom) {
+        BikeRentalStationService service = graph.getService(BikeRentalStationService.class);
+        if (service == null) {
+            return;
+        }
+        Envelope envelope = encoder.getClipEnvelope();
+        for (BikeRentalStation station : service.getBikeRentalStations()) {
+            if (!envelope.contains(station.x, station.y)) {
+                continue;
+            }
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("id", station.id);
+            attributes.put("name", station.name == null ? null : station.name.toString());
+            attributes.put("bikesAvailable", station.bikesAvailable);
+            attributes.put("spacesAvailable", station.spacesAvailable);
+            attributes.put("allowDropoff", station.allowDropoff);
+            attributes.put("floatingBike", station.isFloatingBike);
+            attributes.put("networks", station.networks == null ? null : String.join(",", station.networks));
+            encoder.addFeature(getName(),
+                    GeometryUtils.getGeometryFactory().createPoint(new Coordinate(station.x, station.y)), attributes);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.opentripplanner.inspector.vector;
+
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** The transit stops of the graph. */
+public class StopLayer implements VectorTileLayer {
+
+    private final Graph graph;
+
+    public StopLayer(Graph graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public String getName() {
+        return "stops";
+    }
+
+    @Override
+    public int getMinZoom() {
+        return 10;
+    }
+
+    @Override
+    public void addFeatures(VectorTileEncoder encoder, int zoom) {
+        for (TransitStop transitStop : graph.streetIndex.getTransitStopForEnvelope(encoder.getClipEnvelope())) {
+            Stop stop = transitStop.getStop();
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("id", stop.getId().toString());
+            attributes.put("name", stop.getName());
+            attributes.put("code", stop.getCode());
+            attributes.put("wheelchairBoarding", stop.getWheelchairBoarding());
+            encoder.addFeature(getName(),
+                    GeometryUtils.getGeometryFactory().createPoint(transitStop.getCoordinate()), attributes);
+        }
+    }
+}
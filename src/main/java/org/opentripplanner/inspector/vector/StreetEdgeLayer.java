@@ -0,0 +1,48 @@
+package org.opentripplanner.inspector.vector;
+
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The street edges of the graph, with the attributes shown by the raster inspector layers: permissions, bike safety
+ * and wheelchair accessibility.
+ */
+public class StreetEdgeLayer implements VectorTileLayer {
+
+    private final Graph graph;
+
+    public StreetEdgeLayer(Graph graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public String getName() {
+        return "streets";
+    }
+
+    @Override
+    public int getMinZoom() {
+        return 13;
+    }
+
+    @Override
+    public void addFeatures(VectorTileEncoder encoder, int zoom) {
+        for (Edge edge : graph.streetIndex.getEdgesForEnvelope(encoder.getClipEnvelope())) {
+            if (!(edge instanceof StreetEdge)) {
+                continue;
+            }
+            StreetEdge streetEdge = (StreetEdge) edge;
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("name", streetEdge.getName());
+            attributes.put("permission", streetEdge.getPermission().name());
+            attributes.put("bikeSafety", streetEdge.getBicycleSafetyFactor());
+            attributes.put("wheelchair", streetEdge.isWheelchairAccessible());
+            attributes.put("carSpeed", streetEdge.getCarSpeed());
+            encoder.addFeature(getName(), streetEdge.getGeometry(), attributes);
+        }
+    }
+}
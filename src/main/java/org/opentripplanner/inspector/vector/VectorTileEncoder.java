@@ -0,0 +1,383 @@
+package org.opentripplanner.inspector.vector;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.TopologyException;
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes features into a Mapbox Vector Tile (version 2.1 of the specification), using the protobuf wire format
+ * directly so that no generated classes are needed.
+ *
+ * Geometries are given in WGS84 longitude and latitude. They are clipped to the tile with a small buffer, projected to
+ * web mercator tile coordinates, and encoded as the drawing commands of the specification.
+ *
+ * @see <a href="https://github.com/mapbox/vector-tile-spec/tree/master/2.1">the vector tile specification</a>
+ */
+public class VectorTileEncoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VectorTileEncoder.class);
+
+    /** Width and height of the tile in tile coordinates */
+    public static final int EXTENT = 4096;
+
+    /** Width of the band around the tile in which geometries are kept, in tile coordinates */
+    private static final int BUFFER = 64;
+
+    private static final int MOVE_TO = 1, LINE_TO = 2, CLOSE_PATH = 7;
+
+    private static final int POINT = 1, LINESTRING = 2, POLYGON = 3;
+
+    private final double minLon, maxLon, minMercatorY, maxMercatorY;
+
+    private final Envelope bbox;
+
+    private final Envelope clipEnvelope;
+
+    private final Geometry clipGeometry;
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    public VectorTileEncoder(int z, int x, int y) {
+        minLon = SlippyTile.tile2lon(x, z);
+        maxLon = SlippyTile.tile2lon(x + 1, z);
+        double minLat = SlippyTile.tile2lat(y + 1, z);
+        double maxLat = SlippyTile.tile2lat(y, z);
+        minMercatorY = mercatorY(minLat);
+        maxMercatorY = mercatorY(maxLat);
+        bbox = new Envelope(minLon, maxLon, minLat, maxLat);
+        double buffer = (double) BUFFER / EXTENT;
+        clipEnvelope = new Envelope(bbox);
+        clipEnvelope.expandBy(buffer * bbox.getWidth(), buffer * bbox.getHeight());
+        clipGeometry = GeometryUtils.getGeometryFactory().toGeometry(clipEnvelope);
+    }
+
+    /** @return the area covered by the tile, in WGS84 */
+    public Envelope getEnvelope() {
+        return bbox;
+    }
+
+    /** @return the area covered by the tile and its buffer, in which features should be looked up */
+    public Envelope getClipEnvelope() {
+        return clipEnvelope;
+    }
+
+    /**
+     * Add a feature to a layer. Geometry collections are split into one feature per geometry type.
+     *
+     * @param attributes String, Boolean, Integer, Long, Float or Double values by name, null values are skipped.
+     */
+    public void addFeature(String layerName, Geometry geometry, Map<String, Object> attributes) {
+        if (geometry == null || geometry.isEmpty() || !clipEnvelope.intersects(geometry.getEnvelopeInternal())) {
+            return;
+        }
+        if (geometry.getDimension() > 0 && !clipEnvelope.contains(geometry.getEnvelopeInternal())) {
+            try {
+                geometry = geometry.intersection(clipGeometry);
+            } catch (TopologyException e) {
+                LOG.debug("Could not clip geometry to tile: {}", e.getMessage());
+                return;
+            }
+        }
+        List<Point> points = new ArrayList<>();
+        List<LineString> lines = new ArrayList<>();
+        List<Polygon> polygons = new ArrayList<>();
+        flatten(geometry, points, lines, polygons);
+
+        Layer layer = layers.computeIfAbsent(layerName, Layer::new);
+        int[] tags = layer.tags(attributes);
+        if (!points.isEmpty()) {
+            layer.add(tags, POINT, encodePoints(points));
+        }
+        if (!lines.isEmpty()) {
+            layer.add(tags, LINESTRING, encodeLines(lines));
+        }
+        if (!polygons.isEmpty()) {
+            layer.add(tags, POLYGON, encodePolygons(polygons));
+        }
+    }
+
+    /** @return the encoded tile, empty if no feature was added */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            for (Layer layer : layers.values()) {
+                if (!layer.features.isEmpty()) {
+                    out.writeByteArray(3, layer.encode());
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void flatten(Geometry geometry, List<Point> points, List<LineString> lines,
+            List<Polygon> polygons) {
+        if (geometry instanceof GeometryCollection) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                flatten(geometry.getGeometryN(i), points, lines, polygons);
+            }
+        } else if (geometry.isEmpty()) {
+            return;
+        } else if (geometry instanceof Point) {
+            points.add((Point) geometry);
+        } else if (geometry instanceof LineString) {
+            lines.add((LineString) geometry);
+        } else if (geometry instanceof Polygon) {
+            polygons.add((Polygon) geometry);
+        }
+    }
+
+    private TIntList encodePoints(List<Point> points) {
+        Cursor cursor = new Cursor();
+        TIntList commands = new TIntArrayList();
+        commands.add(command(MOVE_TO, points.size()));
+        for (Point point : points) {
+            cursor.moveTo(commands, tileX(point.getX()), tileY(point.getY()));
+        }
+        return commands;
+    }
+
+    private TIntList encodeLines(List<LineString> lines) {
+        Cursor cursor = new Cursor();
+        TIntList commands = new TIntArrayList();
+        for (LineString line : lines) {
+            int[] xy = toTileCoordinates(line.getCoordinates(), false);
+            int n = xy.length / 2;
+            if (n < 2) {
+                continue;
+            }
+            commands.add(command(MOVE_TO, 1));
+            cursor.moveTo(commands, xy[0], xy[1]);
+            commands.add(command(LINE_TO, n - 1));
+            for (int i = 1; i < n; i++) {
+                cursor.moveTo(commands, xy[2 * i], xy[2 * i + 1]);
+            }
+        }
+        return commands;
+    }
+
+    private TIntList encodePolygons(List<Polygon> polygons) {
+        Cursor cursor = new Cursor();
+        TIntList commands = new TIntArrayList();
+        for (Polygon polygon : polygons) {
+            int[] shell = toTileCoordinates(polygon.getExteriorRing().getCoordinates(), true);
+            if (shell.length < 6 || !encodeRing(commands, cursor, shell, true)) {
+                continue;
+            }
+            for (int r = 0; r < polygon.getNumInteriorRing(); r++) {
+                int[] hole = toTileCoordinates(polygon.getInteriorRingN(r).getCoordinates(), true);
+                if (hole.length >= 6) {
+                    encodeRing(commands, cursor, hole, false);
+                }
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * The specification requires exterior rings to have a positive area in tile coordinates, where y grows downwards,
+     * and interior rings a negative one.
+     *
+     * @return false if the ring was skipped because it has no area in tile coordinates
+     */
+    private static boolean encodeRing(TIntList commands, Cursor cursor, int[] xy, boolean exterior) {
+        int n = xy.length / 2;
+        long area = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += (long) xy[2 * i] * xy[2 * j + 1] - (long) xy[2 * j] * xy[2 * i + 1];
+        }
+        if (area == 0) {
+            return false;
+        }
+        boolean reverse = (area > 0) != exterior;
+        commands.add(command(MOVE_TO, 1));
+        int first = reverse ? n - 1 : 0;
+        cursor.moveTo(commands, xy[2 * first], xy[2 * first + 1]);
+        commands.add(command(LINE_TO, n - 1));
+        for (int k = 1; k < n; k++) {
+            int i = reverse ? n - 1 - k : k;
+            cursor.moveTo(commands, xy[2 * i], xy[2 * i + 1]);
+        }
+        commands.add(command(CLOSE_PATH, 1));
+        return true;
+    }
+
+    /**
+     * @param ring whether the coordinates are a closed ring, whose last point is then dropped
+     * @return the x, y pairs of the coordinates in tile coordinates, without consecutive duplicates
+     */
+    private int[] toTileCoordinates(Coordinate[] coordinates, boolean ring) {
+        TIntList xy = new TIntArrayList(coordinates.length * 2);
+        int length = ring ? coordinates.length - 1 : coordinates.length;
+        for (int i = 0; i < length; i++) {
+            int x = tileX(coordinates[i].x);
+            int y = tileY(coordinates[i].y);
+            int size = xy.size();
+            if (size == 0 || xy.get(size - 2) != x || xy.get(size - 1) != y) {
+                xy.add(x);
+                xy.add(y);
+            }
+        }
+        int size = xy.size();
+        if (ring && size >= 4 && xy.get(0) == xy.get(size - 2) && xy.get(1) == xy.get(size - 1)) {
+            xy.remove(size - 2, 2);
+        }
+        return xy.toArray();
+    }
+
+    private int tileX(double lon) {
+        return (int) Math.round((lon - minLon) / (maxLon - minLon) * EXTENT);
+    }
+
+    private int tileY(double lat) {
+        return (int) Math.round((maxMercatorY - mercatorY(lat)) / (maxMercatorY - minMercatorY) * EXTENT);
+    }
+
+    private static double mercatorY(double lat) {
+        return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    /** The position of the drawing cursor, which carries over between the parts of a feature. */
+    private static class Cursor {
+        int x, y;
+
+        void moveTo(TIntList commands, int x, int y) {
+            commands.add(zigZag(x - this.x));
+            commands.add(zigZag(y - this.y));
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static class Layer {
+        final String name;
+        final Map<String, Integer> keys = new LinkedHashMap<>();
+        final Map<Object, Integer> values = new LinkedHashMap<>();
+        final List<byte[]> features = new ArrayList<>();
+
+        Layer(String name) {
+            this.name = name;
+        }
+
+        int[] tags(Map<String, Object> attributes) {
+            TIntList tags = new TIntArrayList();
+            if (attributes != null) {
+                for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                    Object value = attribute.getValue();
+                    if (value == null) {
+                        continue;
+                    }
+                    if (!(value instanceof String || value instanceof Boolean || value instanceof Integer
+                            || value instanceof Long || value instanceof Float || value instanceof Double)) {
+                        value = value.toString();
+                    }
+                    tags.add(keys.computeIfAbsent(attribute.getKey(), k -> keys.size()));
+                    tags.add(values.computeIfAbsent(value, v -> values.size()));
+                }
+            }
+            return tags.toArray();
+        }
+
+        void add(int[] tags, int type, TIntList geometry) {
+            if (geometry.isEmpty()) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+                writePacked(out, 2, tags);
+                out.writeEnum(3, type);
+                writePacked(out, 4, geometry.toArray());
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            features.add(bytes.toByteArray());
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            out.writeUInt32(15, 2);
+            out.writeString(1, name);
+            for (byte[] feature : features) {
+                out.writeByteArray(2, feature);
+            }
+            for (String key : keys.keySet()) {
+                out.writeString(3, key);
+            }
+            for (Object value : values.keySet()) {
+                out.writeByteArray(4, encodeValue(value));
+            }
+            out.writeUInt32(5, EXTENT);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static byte[] encodeValue(Object value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            if (value instanceof String) {
+                out.writeString(1, (String) value);
+            } else if (value instanceof Float) {
+                out.writeFloat(2, (Float) value);
+            } else if (value instanceof Double) {
+                out.writeDouble(3, (Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeBool(7, (Boolean) value);
+            } else {
+                out.writeSInt64(6, ((Number) value).longValue());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static void writePacked(CodedOutputStream out, int field, int[] values) throws IOException {
+            if (values.length == 0) {
+                return;
+            }
+            int size = 0;
+            for (int value : values) {
+                size += CodedOutputStream.computeUInt32SizeNoTag(value);
+            }
+            out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(size);
+            for (int value : values) {
+                out.writeUInt32NoTag(value);
+            }
+        }
+    }
+}
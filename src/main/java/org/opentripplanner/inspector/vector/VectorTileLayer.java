@@ -0,0 +1,31 @@
+package org.opentripplanner.inspector.vector;
+
+/**
+ * A layer of the vector tiles served by the graph inspector. A layer looks up the features in the area of the tile
+ * and adds them to the encoder.
+ *
+ * @see VectorTileManager
+ */
+public interface VectorTileLayer {
+
+    /** @return the name of the layer, both in the URL and in the encoded tile */
+    String getName();
+
+    /** @return the lowest zoom level at which the layer has features, tiles are empty below it */
+    int getMinZoom();
+
+    /**
+     * @return a number that changes whenever the features of the layer change, so that cached tiles of an older version
+     * are not served anymore. Layers made of static graph data keep the default.
+     */
+    default long getVersion() {
+        return 0;
+    }
+
+    /** @return whether the features change while the router is running, so that tiles are not generated in advance */
+    default boolean isRealtime() {
+        return false;
+    }
+
+    void addFeatures(VectorTileEncoder encoder, int zoom);
+}
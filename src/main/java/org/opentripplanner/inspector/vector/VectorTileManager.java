@@ -0,0 +1,205 @@
+package org.opentripplanner.inspector.vector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.WorldEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Generates and caches Mapbox vector tiles for the layers of the graph inspector, and for the other resources serving
+ * vector tiles (e.g. travel time surfaces).
+ *
+ * Each layer of a tile is encoded and cached separately, so that a request for several layers reuses the tiles of the
+ * layers that did not change. Since a vector tile is a sequence of layer messages, the tile for several layers is
+ * simply the concatenation of the single layer tiles. The cache key contains the version of the layer, so that the
+ * tiles of layers updated in realtime (bike rental) are regenerated after each update. The cache belongs to the
+ * router, so tiles of a graph are dropped when the graph is reloaded.
+ *
+ * The cache is bounded by the total size of the tiles, and the low zoom levels of the layers made of static graph data
+ * over the area of the graph can be generated in the background when the router starts. This is configured with a "vectorTiles" object in
+ * router-config.json.
+ *
+ * @see VectorTileLayer
+ * @see org.opentripplanner.api.resource.GraphInspectorTileResource
+ */
+public class VectorTileManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VectorTileManager.class);
+
+    private final Graph graph;
+
+    private final Map<String, VectorTileLayer> layers = new LinkedHashMap<>();
+
+    private final Cache<String, byte[]> cache;
+
+    public VectorTileManager(Graph graph, long cacheSizeBytes) {
+        this.graph = graph;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheSizeBytes)
+                .weigher((String key, byte[] tile) -> key.length() + tile.length)
+                .build();
+        registerLayer(new StreetEdgeLayer(graph));
+        registerLayer(new StopLayer(graph));
+        registerLayer(new BikeRentalLayer(graph));
+    }
+
+    /** @return a manager configured from the given JSON node, which may be null to use the defaults. */
+    public static VectorTileManager fromConfig(Graph graph, JsonNode config) {
+        if (config == null) {
+            return new VectorTileManager(graph, 64L << 20);
+        }
+        VectorTileManager vectorTileManager = new VectorTileManager(graph,
+                config.path("cacheSizeMb").asLong(64) << 20);
+        int pregenerateMaxZoom = config.path("pregenerateMaxZoom").asInt(-1);
+        if (pregenerateMaxZoom >= 0) {
+            int minZoom = vectorTileManager.getPregenerateMinZoom();
+            if (pregenerateMaxZoom < minZoom) {
+                LOG.error("Vector tiles have no features below zoom level {}, pregenerateMaxZoom {} would not generate "
+                        + "any tile. No tiles are generated in advance.", minZoom, pregenerateMaxZoom);
+            } else {
+                vectorTileManager.pregenerate(pregenerateMaxZoom);
+            }
+        }
+        LOG.info("Vector tiles configured: {}", config);
+        return vectorTileManager;
+    }
+
+    public void registerLayer(VectorTileLayer layer) {
+        layers.put(layer.getName(), layer);
+    }
+
+    public Map<String, VectorTileLayer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * @param layerNames the names of the layers to include, in order
+     * @return the encoded tile
+     * @throws IllegalArgumentException if a layer does not exist or is given more than once
+     */
+    public byte[] getTile(List<String> layerNames, int z, int x, int y) {
+        List<VectorTileLayer> tileLayers = new ArrayList<>(layerNames.size());
+        for (String layerName : layerNames) {
+            VectorTileLayer layer = layers.get(layerName);
+            if (layer == null) {
+                throw new IllegalArgumentException("Unknown layer: " + layerName);
+            }
+            if (tileLayers.contains(layer)) {
+                throw new IllegalArgumentException("Duplicate layer: " + layerName);
+            }
+            tileLayers.add(layer);
+        }
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        for (VectorTileLayer layer : tileLayers) {
+            String layerName = layer.getName();
+            if (z < layer.getMinZoom()) {
+                continue;
+            }
+            String key = layerName + "@" + layer.getVersion() + "/" + z + "/" + x + "/" + y;
+            byte[] layerTile = getTile(key, () -> {
+                VectorTileEncoder encoder = new VectorTileEncoder(z, x, y);
+                layer.addFeatures(encoder, z);
+                return encoder.encode();
+            });
+            tile.write(layerTile, 0, layerTile.length);
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * Get a tile from the cache, or generate it with the given loader if it is not cached yet.
+     *
+     * @param key a key identifying the content of the tile, including its version and coordinates
+     */
+    public byte[] getTile(String key, Callable<byte[]> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not generate vector tile " + key, e.getCause());
+        }
+    }
+
+    /**
+     * @return the lowest zoom level at which a layer made of static graph data has features, or
+     * {@link Integer#MAX_VALUE} if there is no such layer
+     */
+    public int getPregenerateMinZoom() {
+        int minZoom = Integer.MAX_VALUE;
+        for (VectorTileLayer layer : layers.values()) {
+            if (!layer.isRealtime()) {
+                minZoom = Math.min(minZoom, layer.getMinZoom());
+            }
+        }
+        return minZoom;
+    }
+
+    /**
+     * Generate the tiles of the layers made of static graph data covering the graph, from the lowest zoom level at
+     * which each layer has features up to the given one, in a background thread. Tiles that do not fit in the cache are
+     * simply evicted again. Layers updated in realtime are skipped, as their tiles would soon be out of date.
+     *
+     * @throws IllegalArgumentException if no layer has features at or below the given zoom level
+     */
+    public void pregenerate(int maxZoom) {
+        if (maxZoom < getPregenerateMinZoom()) {
+            throw new IllegalArgumentException("No vector tile layer has features up to zoom level " + maxZoom);
+        }
+        Thread thread = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            int count = generateTiles(maxZoom);
+            LOG.info("Generated {} vector tiles up to zoom level {} in {} ms", count, maxZoom,
+                    System.currentTimeMillis() - start);
+        }, "vector-tile-pregeneration");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /** @return the number of tiles generated */
+    int generateTiles(int maxZoom) {
+        int count = 0;
+        WorldEnvelope envelope = graph.getEnvelope();
+        for (VectorTileLayer layer : layers.values()) {
+            if (layer.isRealtime()) {
+                continue;
+            }
+            List<String> layerNames = List.of(layer.getName());
+            for (int z = layer.getMinZoom(); z <= maxZoom; z++) {
+                int minX = lon2tile(envelope.getLowerLeftLongitude(), z);
+                int maxX = lon2tile(envelope.getUpperRightLongitude(), z);
+                int minY = lat2tile(envelope.getUpperRightLatitude(), z);
+                int maxY = lat2tile(envelope.getLowerLeftLatitude(), z);
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        getTile(layerNames, z, x, y);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int lon2tile(double lon, int z) {
+        int n = 1 << z;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    private static int lat2tile(double lat, int z) {
+        int n = 1 << z;
+        double latRad = Math.toRadians(lat);
+        double y = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor(y)));
+    }
+}
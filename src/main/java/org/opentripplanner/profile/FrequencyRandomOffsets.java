@@ -16,13 +16,19 @@ public class FrequencyRandomOffsets {
     /** The mersenne twister is a higher quality random number generator than the one included with Java */
     private MersenneTwister mt = new MersenneTwister();
 
+    /** Draw the offsets from a generator with the given seed, so that the same offsets are drawn every time. */
+    public FrequencyRandomOffsets(RaptorWorkerData data, int seed) {
+        this(data);
+        mt.setSeed(seed);
+    }
+
     public FrequencyRandomOffsets(RaptorWorkerData data) {
         this.data = data;
 
         if (!data.hasFrequencies)
             return;
 
-        data.timetablesForPattern.stream().filter(tt -> tt.hasFrequencyTrips())
+        data.timetablesForPattern.stream().filter(tt -> tt != null && tt.hasFrequencyTrips())
                 .forEach(tt -> {
                     offsets.put(tt.dataIndex, new int[tt.getFrequencyTripCount()]);
                 });
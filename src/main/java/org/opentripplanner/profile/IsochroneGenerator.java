@@ -1,12 +1,13 @@
 package org.opentripplanner.profile;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.PointSet;
 import org.opentripplanner.analyst.core.IsochroneData;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
-import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
+import org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilder;
 import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.geometry.ZSampleGrid;
@@ -75,31 +76,43 @@ public abstract class IsochroneGenerator {
 
 
     /**
-     * Make isochrones from a grid. This more general function should probably be reused by SurfaceResource.
-     * FIXME code duplication: function ripped off from SurfaceResource
+     * Make isochrones from a grid, with samples more than one grid cell off-road considered unreachable.
      * @param spacingMinutes the number of minutes between isochrones
      * @return a list of evenly-spaced isochrones
      */
     public static List<IsochroneData> getIsochronesAccumulative(ZSampleGrid<WTWD> grid,
                                                           int spacingMinutes, int cutoffMinutes, int nMax) {
+        return makeIsochrones(grid, GRID_SIZE_METERS, spacingMinutes, cutoffMinutes, nMax);
+    }
 
-        DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<>(
-                grid.delaunayTriangulate(), new WTWD.IsolineMetric());
-
-        List<IsochroneData> isochrones = new ArrayList<>();
+    /**
+     * Make isochrones every spacingMinutes up to cutoffMinutes, but at most nMax of them.
+     * @param offRoadDistanceMeters grid samples further than this from the street network are unreachable
+     */
+    public static List<IsochroneData> makeIsochrones(ZSampleGrid<WTWD> grid, double offRoadDistanceMeters,
+                                                     int spacingMinutes, int cutoffMinutes, int nMax) {
+        List<Integer> cutoffSecList = new ArrayList<>();
         for (int minutes = spacingMinutes, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacingMinutes, n++) {
-            int seconds = minutes * 60;
-            SampleGridRenderer.WTWD z0 = new SampleGridRenderer.WTWD();
-            z0.w = 1.0;
-            z0.wTime = seconds;
-            z0.d = GRID_SIZE_METERS;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
-            if (n + 1 >= nMax) {
-                break;
-            }
+            cutoffSecList.add(minutes * 60);
         }
+        return makeIsochrones(grid, offRoadDistanceMeters, cutoffSecList);
+    }
 
+    /**
+     * Make isochrones for all the given cutoffs in a single marching squares pass over the grid, building and
+     * simplifying the polygons of the different cutoffs in parallel.
+     * @param offRoadDistanceMeters grid samples further than this from the street network are unreachable
+     */
+    public static List<IsochroneData> makeIsochrones(ZSampleGrid<WTWD> grid, double offRoadDistanceMeters,
+                                                     List<Integer> cutoffSecList) {
+        MarchingSquaresIsolineBuilder<WTWD> isolineBuilder = new MarchingSquaresIsolineBuilder<>(
+                grid, z -> z.wTime / z.w, z -> z.d, offRoadDistanceMeters);
+        double[] cutoffs = cutoffSecList.stream().mapToDouble(Integer::doubleValue).toArray();
+        List<Geometry> isolines = isolineBuilder.computeIsolines(cutoffs);
+        List<IsochroneData> isochrones = new ArrayList<>(cutoffSecList.size());
+        for (int i = 0; i < cutoffSecList.size(); i++) {
+            isochrones.add(new IsochroneData(cutoffSecList.get(i), isolines.get(i)));
+        }
         return isochrones;
     }
 
@@ -0,0 +1,77 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable list of int arrays (e.g. the transfers or the patterns for each stop) packed end to end into a single
+ * flat array, along with the offset at which each of them starts. Compared to a List of int arrays this saves an
+ * object header and a pointer per entry, keeps all the values contiguous in memory, and can be shared freely between
+ * threads. Entries are read by looping from start(i) to end(i) over the values array.
+ */
+public class PackedIntLists implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The offset of each entry in the values array, with one more element holding the total number of values. */
+    private final int[] offsets;
+
+    /** All the entries, packed end to end. This must not be modified. */
+    public final int[] values;
+
+    private PackedIntLists (int[] offsets, int[] values) {
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    /** @return the number of entries. */
+    public int size () {
+        return offsets.length - 1;
+    }
+
+    /** @return the index in the values array of the first value of entry i. */
+    public int start (int i) {
+        return offsets[i];
+    }
+
+    /** @return the index in the values array just after the last value of entry i. */
+    public int end (int i) {
+        return offsets[i + 1];
+    }
+
+    /** @return a copy of entry i. This allocates, so it should not be used in loops that need to be fast. */
+    public int[] get (int i) {
+        return Arrays.copyOfRange(values, offsets[i], offsets[i + 1]);
+    }
+
+    /** Builds PackedIntLists by appending entries one after the other. */
+    public static class Builder {
+
+        private final TIntList offsets = new TIntArrayList();
+
+        private final TIntList values = new TIntArrayList();
+
+        public Builder () {
+            offsets.add(0);
+        }
+
+        public Builder add (int[] entry) {
+            values.add(entry);
+            offsets.add(values.size());
+            return this;
+        }
+
+        public Builder add (TIntList entry) {
+            values.addAll(entry);
+            offsets.add(values.size());
+            return this;
+        }
+
+        public PackedIntLists build () {
+            return new PackedIntLists(offsets.toArray(), values.toArray());
+        }
+    }
+}
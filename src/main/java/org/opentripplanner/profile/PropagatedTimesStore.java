@@ -13,7 +13,6 @@ import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWDAccumulativeMetric;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
-import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
 import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.routing.graph.Graph;
@@ -21,7 +20,6 @@ import org.opentripplanner.routing.graph.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -283,19 +281,8 @@ public class PropagatedTimesStore {
 
         SparseMatrixZSampleGrid<WTWD> grid = makeSampleGridForVertices(times, gridSize);
         long t0 = System.currentTimeMillis();
-        DelaunayIsolineBuilder<WTWD> isolineBuilder =
-                new DelaunayIsolineBuilder<>(grid.delaunayTriangulate(), new WTWD.IsolineMetric());
-
-        List<IsochroneData> isoData = new ArrayList<IsochroneData>();
-        for (int minutes = spacing, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacing, n++) {
-            int seconds = minutes * 60;
-            WTWD z0 = new WTWD();
-            z0.w = 1.0;
-            z0.wTime = seconds;
-            z0.d = offroadDistanceMeters;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isoData.add(isochrone);
-        }
+        List<IsochroneData> isoData =
+                IsochroneGenerator.makeIsochrones(grid, offroadDistanceMeters, spacing, cutoffMinutes, nMax);
 
         long t1 = System.currentTimeMillis();
         ResultSet resultSet = new ResultSet();
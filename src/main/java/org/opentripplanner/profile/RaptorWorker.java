@@ -107,11 +107,14 @@ public class RaptorWorker {
 
     BitSet patternsTouched;
 
+    /** The patterns having frequency trips, the only ones to explore first in a frequency search (see runRaptorFrequency) */
+    BitSet frequencyPatterns;
+
     private ProfileRequest req;
 
     private long totalPropagationTime = 0;
 
-    private FrequencyRandomOffsets offsets;
+    FrequencyRandomOffsets offsets;
 
     public RaptorWorker(RaptorWorkerData data, ProfileRequest req) {
         this.data = data;
@@ -127,6 +130,12 @@ public class RaptorWorker {
         Arrays.fill(bestTimes, UNREACHED); // initialize once here and reuse on subsequent iterations.
         Arrays.fill(bestNonTransferTimes, UNREACHED);
         offsets = new FrequencyRandomOffsets(data);
+        frequencyPatterns = new BitSet(data.nPatterns);
+        for (int p = 0; p < data.nPatterns; p++) {
+            RaptorWorkerTimetable timetable = data.timetablesForPattern.get(p);
+            if (timetable != null && timetable.hasFrequencyTrips())
+                frequencyPatterns.set(p);
+        }
     }
 
     public void advance () {
@@ -178,7 +187,7 @@ public class RaptorWorker {
         ts.searchCount = iterations;
 
         // Iterate backward through minutes (range-raptor) taking a snapshot of router state after each call
-        int[][] timesAtTargetsEachIteration = new int[iterations][data.nTargets];
+        int[][] timesAtTargetsEachIteration = new int[iterations][];
 
         // for each iteration, whether it is the result of a schedule or Monte Carlo search, or whether it is an extrema.
         // extrema are not included in averages.
@@ -195,6 +204,19 @@ public class RaptorWorker {
         // current iteration
         int iteration = 0;
 
+        // The frequency searches with a deterministic boarding assumption (the best and worst cases when the requested
+        // assumption is RANDOM, otherwise the requested one for all of them) are range-RAPTOR searches in their own
+        // right: their state is kept from one minute to the next, like that of the scheduled search.
+        RangeState worstCase = null, bestCase = null, requestedCase = null;
+        if (data.hasFrequencies) {
+            if (req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
+                worstCase = new RangeState(RaptorWorkerTimetable.BoardingAssumption.WORST_CASE);
+                bestCase = new RangeState(RaptorWorkerTimetable.BoardingAssumption.BEST_CASE);
+            } else {
+                requestedCase = new RangeState(req.boardingAssumption);
+            }
+        }
+
         // FIXME this should be changed to tolerate a zero-width time range
         for (int departureTime = req.toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
             if (n % 15 == 0) {
@@ -213,8 +235,25 @@ public class RaptorWorker {
             }
 
             // run the frequency searches
-            if (data.hasFrequencies) {
+            if (data.hasFrequencies && requestedCase != null) {
+                // All the searches would be identical, only run one of them and use its results for all the iterations.
+                runRaptorFrequencyRange(departureTime, requestedCase, scheduledTimesAtTargets);
+                int[] frequencyTimesAtTargets = requestedCase.elapsedTimesAtTargets(departureTime);
                 for (int i = 0; i < monteCarloDraws + 2; i++) {
+                    timesAtTargetsEachIteration[iteration++] = frequencyTimesAtTargets;
+                }
+            } else if (data.hasFrequencies) {
+                // special cases: calculate the best and the worst cases as well. They are not included in averages.
+                // Note that this (intentionally) does not affect stops with transfer rules.
+                runRaptorFrequencyRange(departureTime, worstCase, scheduledTimesAtTargets);
+                includeIterationInAverages[iteration] = false;
+                timesAtTargetsEachIteration[iteration++] = worstCase.elapsedTimesAtTargets(departureTime);
+
+                runRaptorFrequencyRange(departureTime, bestCase, scheduledTimesAtTargets);
+                includeIterationInAverages[iteration] = false;
+                timesAtTargetsEachIteration[iteration++] = bestCase.elapsedTimesAtTargets(departureTime);
+
+                for (int i = 0; i < monteCarloDraws; i++) {
                     // make copies for just this search. We need copies because we can't use dynamic
                     // programming/range-raptor with randomized schedules
                     int[] bestTimesCopy = Arrays.copyOf(bestTimes, bestTimes.length);
@@ -223,35 +262,16 @@ public class RaptorWorker {
                     int[] previousPatternsCopy = Arrays
                             .copyOf(previousPatterns, previousPatterns.length);
 
-                    // special cases: calculate the best and the worst cases as well
-                    // Note that this (intentionally) does not affect searches where the user has requested
-                    // an assumption other than RANDOM, or stops with transfer rules.
-                    RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
-
-                    if (i == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
-                        // don't include extrema in averages
-                        includeIterationInAverages[iteration] = false;
-                    }
-                    else if (i == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
-                        // don't include extrema in averages
-                        includeIterationInAverages[iteration] = false;
-                    }
-                    else if (requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
-                        // use a new Monte Carlo draw each time
-                        // included in averages by default
-                        offsets.randomize();
+                    // use a new Monte Carlo draw each time
+                    // included in averages by default
+                    offsets.randomize();
 
                     this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
                             previousPatternsCopy);
 
-                    req.boardingAssumption = requestedBoardingAssumption;
-
                     // do propagation
-                    int[] frequencyTimesAtTargets = timesAtTargetsEachIteration[iteration++];
-                    System.arraycopy(scheduledTimesAtTargets, 0, frequencyTimesAtTargets, 0,
-                            scheduledTimesAtTargets.length);
+                    int[] frequencyTimesAtTargets = Arrays.copyOf(scheduledTimesAtTargets, scheduledTimesAtTargets.length);
+                    timesAtTargetsEachIteration[iteration++] = frequencyTimesAtTargets;
                     // updates timesAtTargetsEachIteration directly because it has a reference into the array.
                     this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets,
                             departureTime);
@@ -335,7 +355,10 @@ public class RaptorWorker {
         }
     }
 
-    /** Run a RAPTOR search using frequencies */
+    /**
+     * Run a RAPTOR search using frequencies, starting from the results of the scheduled search for the same departure
+     * time (copied into the given arrays).
+     */
     public void runRaptorFrequency (int departureTime, int[] bestTimes, int[] bestNonTransferTimes, int[] previousPatterns) {
         max_time = departureTime + MAX_DURATION;
         round = 0;
@@ -344,11 +367,12 @@ public class RaptorWorker {
         allStopsTouched.clear();
         stopsTouched.clear();
 
-        // we need to mark every reachable stop here, because the network is changing randomly.
+        // we need to explore from every reachable stop here, because the network is changing randomly.
         // It is entirely possible that the first trip in an itinerary does not change, but trips
-        // further down do.
-        IntStream.range(0, bestTimes.length).filter(i -> bestTimes[i] != UNREACHED).forEach(
-                this::markPatternsForStop);
+        // further down do. However the times come from a complete scheduled search, so nothing can be improved by
+        // riding a scheduled pattern until a frequency trip has improved some stop: the first round only needs to
+        // explore the frequency patterns.
+        patternsTouched.or(frequencyPatterns);
 
         // Anytime a round updates some stops, move on to another round
         while (doOneRound(bestTimes, bestNonTransferTimes, previousPatterns, true)) {
@@ -356,6 +380,50 @@ public class RaptorWorker {
         }
     }
 
+    /**
+     * Continue the range-RAPTOR frequency search of the given state at an earlier departure time. The state already
+     * holds the results of the search at the next (later) departure minute, which remain valid as one can always wait.
+     * These are merged with the results of the scheduled search at this departure time, which must just have been run,
+     * and only the patterns passing through stops improved by this merge are explored.
+     */
+    void runRaptorFrequencyRange (int departureTime, RangeState state, int[] scheduledTimesAtTargets) {
+        max_time = departureTime + MAX_DURATION;
+        round = 0;
+        advance(); // go to first round
+        patternsTouched.clear(); // clear patterns left over from previous calls.
+        allStopsTouched.clear();
+        stopsTouched.clear();
+
+        for (int stop = 0; stop < data.nStops; stop++) {
+            boolean improved = false;
+            if (bestTimes[stop] < state.bestTimes[stop]) {
+                state.bestTimes[stop] = bestTimes[stop];
+                state.previousPatterns[stop] = previousPatterns[stop];
+                improved = true;
+            }
+            if (bestNonTransferTimes[stop] < state.bestNonTransferTimes[stop]) {
+                state.bestNonTransferTimes[stop] = bestNonTransferTimes[stop];
+                improved = true;
+            }
+            if (improved)
+                markPatternsForStop(stop);
+        }
+
+        RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
+        req.boardingAssumption = state.boardingAssumption;
+        while (doOneRound(state.bestTimes, state.bestNonTransferTimes, state.previousPatterns, true)) {
+            advance();
+        }
+        req.boardingAssumption = requestedBoardingAssumption;
+
+        // the scheduled times already include the propagation from the stops merged above, as well as the walk only times
+        for (int t = 0; t < scheduledTimesAtTargets.length; t++) {
+            if (scheduledTimesAtTargets[t] < state.timesAtTargets[t])
+                state.timesAtTargets[t] = scheduledTimesAtTargets[t];
+        }
+        doPropagation(state.bestNonTransferTimes, state.timesAtTargets, departureTime);
+    }
+
     public boolean doOneRound (int[] bestTimes, int[] bestNonTransferTimes, int[] previousPatterns, boolean useFrequencies) {
         //LOG.info("round {}", round);
         stopsTouched.clear(); // clear any stops left over from previous round.
@@ -390,7 +458,7 @@ public class RaptorWorker {
                     if (bestTimes[stopIndex] != UNREACHED) {
                         for (int trip = 0; trip < timetable.getFrequencyTripCount(); trip++) {
                             int boardTime = timetable
-                                    .getFrequencyDeparture(trip, stopPositionInPattern,
+                                    .getFrequencyDeparture(data, trip, stopPositionInPattern,
                                             bestTimes[stopIndex], previousPatterns[stopIndex], offsets, req.boardingAssumption);
 
                             if (boardTime != -1 && boardTime < remainOnBoardTime) {
@@ -489,10 +557,10 @@ public class RaptorWorker {
             // TODO this is reboarding every trip at every stop.
             markPatternsForStop(stop);
             int fromTime = bestNonTransferTimes[stop];
-            int[] transfers = data.transfersForStop.get(stop);
-            for (int i = 0; i < transfers.length; i++) {
-                int toStop = transfers[i++]; // increment i
-                int distance = transfers[i]; // i will be incremented at the end of the loop
+            int[] transfers = data.transfersForStop.values;
+            for (int i = data.transfersForStop.start(stop), end = data.transfersForStop.end(stop); i < end; i += 2) {
+                int toStop = transfers[i];
+                int distance = transfers[i + 1];
                 int toTime = fromTime + (int) (distance / req.walkSpeed);
                 if (toTime < max_time && toTime < bestTimes[toStop]) {
                     bestTimes[toStop] = toTime;
@@ -533,15 +601,12 @@ public class RaptorWorker {
             // we do not necessarily compute all pareto-optimal paths on (journey time, number of transfers).
             int baseTimeSeconds = timesAtTransitStops[s];
             if (baseTimeSeconds != UNREACHED) {
-                int[] targets = data.targetsForStop.get(s);
-
-                if (targets == null)
-                    continue;
+                int[] targets = data.targetsForStop.values;
 
-                for (int i = 0; i < targets.length; i++) {
-                    int targetIndex = targets[i++]; // increment i after read
+                for (int i = data.targetsForStop.start(s), end = data.targetsForStop.end(s); i < end; i += 2) {
+                    int targetIndex = targets[i];
                     // the cache has time in seconds rather than distance, to avoid costly floating-point divides and integer casts here.
-                    int propagated_time = baseTimeSeconds + targets[i];
+                    int propagated_time = baseTimeSeconds + targets[i + 1];
 
                     if (timesAtTargets[targetIndex] > propagated_time) {
                         timesAtTargets[targetIndex] = propagated_time;
@@ -552,11 +617,41 @@ public class RaptorWorker {
         totalPropagationTime += (System.currentTimeMillis() - beginPropagationTime);
     }
 
+    /** The state of a frequency search with a deterministic boarding assumption, kept across departure minutes. */
+    class RangeState {
+
+        final RaptorWorkerTimetable.BoardingAssumption boardingAssumption;
+
+        final int[] bestTimes = new int[data.nStops];
+
+        final int[] bestNonTransferTimes = new int[data.nStops];
+
+        final int[] previousPatterns = new int[data.nStops];
+
+        /** Clock times at targets */
+        final int[] timesAtTargets = new int[data.nTargets];
+
+        RangeState (RaptorWorkerTimetable.BoardingAssumption boardingAssumption) {
+            this.boardingAssumption = boardingAssumption;
+            Arrays.fill(bestTimes, UNREACHED);
+            Arrays.fill(bestNonTransferTimes, UNREACHED);
+            Arrays.fill(previousPatterns, -1);
+            Arrays.fill(timesAtTargets, UNREACHED);
+        }
+
+        /** @return the times at targets, as elapsed times since the given departure time. */
+        int[] elapsedTimesAtTargets (int departureTime) {
+            return IntStream.of(timesAtTargets)
+                    .map(t -> t != UNREACHED ? t - departureTime : t)
+                    .toArray();
+        }
+    }
+
     /** Mark all the patterns passing through the given stop. */
     private void markPatternsForStop(int stop) {
-        int[] patterns = data.patternsForStop.get(stop);
-        for (int pattern : patterns) {
-            patternsTouched.set(pattern);
+        int[] patterns = data.patternsForStop.values;
+        for (int i = data.patternsForStop.start(stop), end = data.patternsForStop.end(stop); i < end; i++) {
+            patternsTouched.set(patterns[i]);
         }
     }
 
@@ -21,6 +21,7 @@ import org.opentripplanner.analyst.cluster.TaskStatistics;
 import org.opentripplanner.analyst.scenario.AddTripPattern;
 import org.opentripplanner.analyst.scenario.ConvertToFrequency;
 import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.analyst.scenario.TimetableFilter;
 import org.opentripplanner.analyst.scenario.TransferRule;
 import org.opentripplanner.analyst.scenario.TripPatternFilter;
 import org.opentripplanner.common.model.GenericLocation;
@@ -48,6 +49,15 @@ import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * The transit data used by a RaptorWorker: compacted timetables for all the patterns running during a time window, and
+ * the transfers and the targets (intersections or samples) reachable from each stop, in flat int arrays indexed by
+ * 0-based RAPTOR stop and pattern indices.
+ *
+ * RaptorWorkerData is not modified once built, so it can be shared by any number of concurrent searches. Data for a
+ * scenario which only filters or adjusts existing trips and patterns is built as an overlay on the data without any
+ * scenario, sharing everything the scenario does not change (see RaptorWorkerDataCache).
+ */
 public class RaptorWorkerData implements Serializable {
     public static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerData.class);
 
@@ -62,13 +72,19 @@ public class RaptorWorkerData implements Serializable {
     public final int nTargets;
 
     /** For every stop, one pair of ints (targetStopIndex, distanceMeters) for each transfer out of that stop. This uses 0-based stop indices that are specific to RaptorData */
-    public final List<int[]> transfersForStop = new ArrayList<>();
+    public final PackedIntLists transfersForStop;
 
     /** A list of pattern indexes passing through each stop, again using Raptor indices. */
-    public final List<int[]> patternsForStop = new ArrayList<>();
+    public final PackedIntLists patternsForStop;
 
-    /** For each pattern, a 2D array of stoptimes for each trip on the pattern. */
-    public List<RaptorWorkerTimetable> timetablesForPattern = new ArrayList<>();
+    /**
+     * For each pattern, its timetable. Patterns whose trips have all been removed by a scenario applied as an overlay
+     * keep their index, with a null timetable; they do not appear in patternsForStop.
+     */
+    public final List<RaptorWorkerTimetable> timetablesForPattern;
+
+    /** The trip pattern each timetable was made from, for applying scenarios on top of this data. */
+    public transient final List<TripPattern> patternForIndex;
 
     /** does this RaptorData have any scheduled trips? */
     public boolean hasSchedules = false;
@@ -95,13 +111,13 @@ public class RaptorWorkerData implements Serializable {
      * For generic TimeSurfaces these are street intersections. They could be anything though since the worker doesn't
      * care what the IDs stand for. For example, they could be point indexes in a pointset.
      */
-    public final List<int[]> targetsForStop = new ArrayList<>();
+    public final PackedIntLists targetsForStop;
 
     /** The 0-based RAPTOR indices of each stop from their vertex IDs */
     public transient final TIntIntMap indexForStop;
      /** Optional debug data: the name of each stop. */
-    public transient final List<String> stopNames = new ArrayList<>();
-    public transient final List<String> patternNames = new ArrayList<>();
+    public transient final List<String> stopNames;
+    public transient final List<String> patternNames;
 
     /** Create RaptorWorkerData for the given window and graph */
     public RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest request, TaskStatistics ts) {
@@ -118,12 +134,17 @@ public class RaptorWorkerData implements Serializable {
 
     /** Create RaptorWorkerData to be used to build ResultSets directly without creating an intermediate SampleSet */
     public RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest req, SampleSet sampleSet, TaskStatistics ts) {
-        Scenario scenario = req.scenario;
+        this(graph, window, req, req.scenario, sampleSet, ts);
+    }
 
+    /** Create RaptorWorkerData for the given request, but with the given scenario rather than the one of the request. */
+    RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest req, Scenario scenario, SampleSet sampleSet, TaskStatistics ts) {
         int totalPatterns = graph.index.patternForId.size();
         int totalStops = graph.index.stopForId.size();
         timetablesForPattern = new ArrayList<RaptorWorkerTimetable>(totalPatterns);
-        List<TripPattern> patternForIndex = Lists.newArrayList(totalPatterns);
+        patternForIndex = Lists.newArrayList(totalPatterns);
+        patternNames = new ArrayList<>(totalPatterns);
+        stopNames = new ArrayList<>(totalStops);
         TObjectIntMap<TripPattern> indexForPattern = new TObjectIntHashMap<>(totalPatterns, 0.75f, -1);
         indexForStop = new TIntIntHashMap(totalStops, 0.75f, Integer.MIN_VALUE, -1);
         TIntList stopForIndex = new TIntArrayList(totalStops, Integer.MIN_VALUE);
@@ -197,20 +218,7 @@ public class RaptorWorkerData implements Serializable {
             // apply filters. note that a filter can create multiple trip patterns from a single trip pattern
             // so we need to make sure we handle all of them
             if (scenario != null && scenario.modifications != null) {
-                for (TripPatternFilter filter : Iterables
-                        .filter(scenario.modifications, TripPatternFilter.class)) {
-                    Collection<TripPattern> modifiedPatterns = Lists.newArrayList();
-
-                    for (TripPattern pattern : patterns) {
-                        Collection<TripPattern> result = filter.apply(pattern);
-
-                        if (result != null)
-                            modifiedPatterns.addAll(result);
-                    }
-
-                    // this is the result of this filter for all trip patterns
-                    patterns = modifiedPatterns;
-                }
+                patterns = applyPatternFilters(originalPattern, scenario);
             }
 
             for (TripPattern pattern : patterns) {
@@ -222,7 +230,6 @@ public class RaptorWorkerData implements Serializable {
                 }
 
                 timetable.dataIndex = timetablesForPattern.size();
-                timetable.raptorData = this;
                 timetablesForPattern.add(timetable);
 
                 if (timetable.hasFrequencyTrips())
@@ -262,15 +269,15 @@ public class RaptorWorkerData implements Serializable {
 
                 timetable.dataIndex = timetablesForPattern.size();
                 timetablesForPattern.add(timetable);
-                timetable.raptorData = this;
 
                 if (timetable.hasFrequencyTrips())
                     this.hasFrequencies = true;
                 if (timetable.hasScheduledTrips())
                     this.hasSchedules = true;
 
-                // TODO: patternForIndex, indexForPattern
+                // TODO: indexForPattern
 
+                patternForIndex.add(null);
                 patternNames.add(atp.name);
 
                 // create the stops for the pattern, and collect the temporary stops
@@ -394,21 +401,10 @@ public class RaptorWorkerData implements Serializable {
         }
 
         // create the mapping from stops to patterns
-        TIntObjectMap<TIntList> patternsForStopList = new TIntObjectHashMap<>();
-        for (int pattern = 0; pattern < timetablesForPattern.size(); pattern++) {
-            for (int stop : timetablesForPattern.get(pattern).stopIndices) {
-                if (!patternsForStopList.containsKey(stop))
-                    patternsForStopList.put(stop, new TIntArrayList());
-
-                patternsForStopList.get(stop).add(pattern);
-            }
-        }
-
-        for (int stop = 0; patternsForStopList.containsKey(stop); stop++) {
-            patternsForStop.add(patternsForStopList.get(stop).toArray());
-        }
+        patternsForStop = makePatternsForStop(timetablesForPattern, stopForIndex.size());
 
         /** Record transfers between all used stops. */
+        PackedIntLists.Builder transfersForStop = new PackedIntLists.Builder();
         for (TIntIterator it = stopForIndex.iterator(); it.hasNext();) {
             int stop = it.next();
             TIntList transfers = new TIntArrayList();
@@ -437,11 +433,9 @@ public class RaptorWorkerData implements Serializable {
                 }
             }
 
-            if (!transfers.isEmpty())
-                transfersForStop.add(transfers.toArray());
-            else
-                transfersForStop.add(EMPTY_INT_ARRAY);
+            transfersForStop.add(transfers);
         }
+        this.transfersForStop = transfersForStop.build();
 
         long stcStart = System.currentTimeMillis();
         StopTreeCache stc = graph.index.getStopTreeCache();
@@ -449,6 +443,7 @@ public class RaptorWorkerData implements Serializable {
 
         // Record times to nearby intersections for all used stops.
         // We use times rather than distances to avoid a costly floating-point divide during propagation
+        PackedIntLists.Builder targetsForStop = new PackedIntLists.Builder();
         if (sampleSet == null) {
             int maxWalkDistance = (int) (req.maxWalkTime * 60 * req.walkSpeed);
             for (TIntIterator stopIt = stopForIndex.iterator(); stopIt.hasNext();) {
@@ -458,7 +453,7 @@ public class RaptorWorkerData implements Serializable {
                 Vertex tstop = graph.getVertexById(stop);
                 boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
                 // convert distance to time
-                int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
+                int[] distancesForStop = isPermanentStop ? stc.getDistancesForStop((TransitStop) tstop) : temporaryStopTreeCache.get(stop);
                 TIntList timesForStop = new TIntArrayList();
 
                 for (int i = 0; i < distancesForStop.length; i += 2) {
@@ -473,7 +468,7 @@ public class RaptorWorkerData implements Serializable {
                     }
                 }
 
-                targetsForStop.add(timesForStop.toArray());
+                targetsForStop.add(timesForStop);
             }
 
             // TODO memory leak when many graphs have been built
@@ -542,7 +537,7 @@ public class RaptorWorkerData implements Serializable {
                 Vertex tstop = graph.getVertexById(stop);
                 if (tstop != null && TransitStop.class.isInstance(tstop))
                     // permanent stop
-                    distancesForStop = stc.distancesForStop.get(tstop);
+                    distancesForStop = stc.getDistancesForStop((TransitStop) tstop);
                 else
                     // temporary stop
                     distancesForStop = temporaryStopTreeCache.get(stop);
@@ -581,8 +576,158 @@ public class RaptorWorkerData implements Serializable {
 
             nTargets = sampleSet.pset.capacity;
         }
+        this.targetsForStop = targetsForStop.build();
+
+        addTransferRules(graph, scenario);
+
+        ts.stopCount = nStops = stopForIndex.size();
+        ts.patternCount = nPatterns = timetablesForPattern.size();
+        ts.targetCount = nTargets;
+    }
+
+    /**
+     * Create RaptorWorkerData for a scenario as an overlay on base, which must have been built for the same window and
+     * request without any scenario. The scenario may only contain modifications filtering or adjusting existing trips
+     * and patterns, and transfer rules (see canOverlay).
+     *
+     * The stops, transfers and targets of the base data are shared, as are the timetables of all the patterns the
+     * scenario cannot affect. A pattern which could be affected gets a new timetable at the same index, so the timetables
+     * shared with the base data remain valid; extra patterns made by splitting one are added after all the others.
+     */
+    RaptorWorkerData (RaptorWorkerData base, Graph graph, TimeWindow window, ProfileRequest req, TaskStatistics ts) {
+        Scenario scenario = req.scenario;
+        List<TimetableFilter> filters = Lists.newArrayList(Iterables.filter(scenario.modifications, TimetableFilter.class));
+
+        timetablesForPattern = new ArrayList<>(base.timetablesForPattern);
+        patternForIndex = new ArrayList<>(base.patternForIndex);
+        patternNames = new ArrayList<>(base.patternNames);
+        boolean patternsChanged = false;
+
+        for (int p = 0; p < base.nPatterns; p++) {
+            TripPattern originalPattern = base.patternForIndex.get(p);
+            if (originalPattern == null)
+                continue;
+
+            boolean couldMatch = false;
+            for (TimetableFilter filter : filters) {
+                couldMatch = couldMatch || filter.couldMatch(originalPattern);
+            }
+            if (!couldMatch)
+                continue;
+
+            patternsChanged = true;
+            timetablesForPattern.set(p, null);
+
+            for (TripPattern pattern : applyPatternFilters(originalPattern, scenario)) {
+                RaptorWorkerTimetable timetable = RaptorWorkerTimetable
+                        .forPattern(graph, pattern, window, scenario, ts);
+                if (timetable == null)
+                    continue;
+
+                // Filters never add stops to a pattern, so all of them already have an index
+                timetable.stopIndices = pattern.getStops().stream()
+                        .mapToInt(stop -> base.indexForStop.get(graph.index.stopVertexForStop.get(stop).getIndex()))
+                        .toArray();
+
+                if (timetablesForPattern.get(p) == null) {
+                    timetable.dataIndex = p;
+                    timetablesForPattern.set(p, timetable);
+                    patternForIndex.set(p, pattern);
+                    patternNames.set(p, pattern.code);
+                } else {
+                    timetable.dataIndex = timetablesForPattern.size();
+                    timetablesForPattern.add(timetable);
+                    patternForIndex.add(pattern);
+                    patternNames.add(pattern.code);
+                }
+            }
+        }
+
+        for (RaptorWorkerTimetable timetable : timetablesForPattern) {
+            if (timetable == null)
+                continue;
+
+            hasFrequencies = hasFrequencies || timetable.hasFrequencyTrips();
+            hasSchedules = hasSchedules || timetable.hasScheduledTrips();
+        }
+
+        boardingAssumption = req.boardingAssumption;
+        indexForStop = base.indexForStop;
+        stopNames = base.stopNames;
+        addedStops = base.addedStops;
+        transfersForStop = base.transfersForStop;
+        targetsForStop = base.targetsForStop;
+        nTargets = base.nTargets;
+        nStops = base.nStops;
+        nPatterns = timetablesForPattern.size();
+        patternsForStop = patternsChanged ? makePatternsForStop(timetablesForPattern, nStops) : base.patternsForStop;
+
+        addTransferRules(graph, scenario);
+
+        ts.stopCount = nStops;
+        ts.patternCount = nPatterns;
+        ts.targetCount = nTargets;
+    }
+
+    /**
+     * Can RaptorWorkerData for the given scenario be built as an overlay on the data without any scenario? This is the
+     * case when all the modifications are filters on existing trips and patterns or transfer rules, as opposed to those
+     * adding patterns and stops or regrouping trips.
+     */
+    public static boolean canOverlay (Scenario scenario) {
+        if (scenario == null || scenario.modifications == null)
+            return true;
+
+        return scenario.modifications.stream()
+                .allMatch(m -> m instanceof TimetableFilter || m instanceof TransferRule);
+    }
+
+    /** Apply all the pattern filters of the scenario to a pattern, yielding zero or more patterns. */
+    private static Collection<TripPattern> applyPatternFilters (TripPattern originalPattern, Scenario scenario) {
+        Collection<TripPattern> patterns = Arrays.asList(originalPattern);
+
+        for (TripPatternFilter filter : Iterables.filter(scenario.modifications, TripPatternFilter.class)) {
+            Collection<TripPattern> modifiedPatterns = Lists.newArrayList();
+
+            for (TripPattern pattern : patterns) {
+                Collection<TripPattern> result = filter.apply(pattern);
 
-        // store transfer rules by stop
+                if (result != null)
+                    modifiedPatterns.addAll(result);
+            }
+
+            // this is the result of this filter for all trip patterns
+            patterns = modifiedPatterns;
+        }
+
+        return patterns;
+    }
+
+    /** Make the list of the patterns passing through each stop, skipping patterns without a timetable. */
+    private static PackedIntLists makePatternsForStop (List<RaptorWorkerTimetable> timetables, int nStops) {
+        TIntList[] patternsForStop = new TIntList[nStops];
+        for (int pattern = 0; pattern < timetables.size(); pattern++) {
+            RaptorWorkerTimetable timetable = timetables.get(pattern);
+            if (timetable == null)
+                continue;
+
+            for (int stop : timetable.stopIndices) {
+                if (patternsForStop[stop] == null)
+                    patternsForStop[stop] = new TIntArrayList();
+
+                patternsForStop[stop].add(pattern);
+            }
+        }
+
+        PackedIntLists.Builder builder = new PackedIntLists.Builder();
+        for (TIntList patterns : patternsForStop) {
+            builder.add(patterns == null ? EMPTY_INT_ARRAY : patterns.toArray());
+        }
+        return builder.build();
+    }
+
+    /** Store the transfer rules of the scenario by stop. */
+    private void addTransferRules (Graph graph, Scenario scenario) {
         if (scenario != null && scenario.modifications != null) {
             for (TransferRule tr : Iterables.filter(scenario.modifications, TransferRule.class)) {
                 if (tr.stop == null) {
@@ -607,10 +752,6 @@ public class RaptorWorkerData implements Serializable {
                 }
             }
         }
-
-        ts.stopCount = nStops = stopForIndex.size();
-        ts.patternCount = nPatterns = timetablesForPattern.size();
-        ts.targetCount = nTargets;
     }
 
     /** find stops from a given SPT, including temporary stops. If useTimes is true, use times from the SPT, otherwise use distances */
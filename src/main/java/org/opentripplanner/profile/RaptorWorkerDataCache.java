@@ -0,0 +1,128 @@
+package org.opentripplanner.profile;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DayOfWeek;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the RaptorWorkerData built for a graph, so that concurrent and successive profile requests for the same day,
+ * time window and walk parameters share a single copy of the transit data rather than each building their own.
+ *
+ * Requests with a scenario only filtering or adjusting existing trips and patterns, or changing transfer rules, get an
+ * overlay on the shared data without any scenario, which only copies the timetables of the patterns the scenario could
+ * affect. Scenarios adding patterns or converting trips to frequencies still get data built from scratch.
+ */
+public class RaptorWorkerDataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerDataCache.class);
+
+    /** Each entry can be large, and requests tend to use the same few days and time windows. */
+    private static final int MAX_ENTRIES = 8;
+
+    private final Graph graph;
+
+    private final Cache<Key, RaptorWorkerData> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .softValues()
+            .build();
+
+    public RaptorWorkerDataCache (Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Get RaptorWorkerData for the given window and request, propagating to the given sample set or to street vertices
+     * when it is null. The result must not be modified.
+     */
+    public RaptorWorkerData get (TimeWindow window, ProfileRequest request, SampleSet sampleSet, TaskStatistics ts) {
+        if (!RaptorWorkerData.canOverlay(request.scenario)) {
+            return new RaptorWorkerData(graph, window, request, sampleSet, ts);
+        }
+
+        Key key = new Key(window, request, sampleSet);
+        RaptorWorkerData base;
+        try {
+            base = cache.get(key, () -> {
+                LOG.info("Building shared RAPTOR data for {}", key);
+                return new RaptorWorkerData(graph, window, request, null, sampleSet, ts);
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not build RAPTOR data", e.getCause());
+        }
+
+        if (request.scenario == null || request.scenario.modifications == null
+                || request.scenario.modifications.isEmpty()) {
+            ts.stopCount = base.nStops;
+            ts.patternCount = base.nPatterns;
+            ts.targetCount = base.nTargets;
+            return base;
+        }
+
+        return new RaptorWorkerData(base, graph, window, request, ts);
+    }
+
+    /** Everything the RaptorWorkerData for a request without any scenario depends on. */
+    private static class Key {
+
+        final int from;
+
+        final int to;
+
+        final BitSet servicesRunning;
+
+        final DayOfWeek dayOfWeek;
+
+        final float walkSpeed;
+
+        final int maxWalkTime;
+
+        final RaptorWorkerTimetable.BoardingAssumption boardingAssumption;
+
+        /** Compared by identity, sample sets being reused for the same point set. */
+        final SampleSet sampleSet;
+
+        Key (TimeWindow window, ProfileRequest request, SampleSet sampleSet) {
+            this.from = window.from;
+            this.to = window.to;
+            this.servicesRunning = window.servicesRunning;
+            this.dayOfWeek = window.dayOfWeek;
+            this.walkSpeed = request.walkSpeed;
+            this.maxWalkTime = request.maxWalkTime;
+            this.boardingAssumption = request.boardingAssumption;
+            this.sampleSet = sampleSet;
+        }
+
+        @Override
+        public boolean equals (Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return from == other.from && to == other.to && servicesRunning.equals(other.servicesRunning)
+                    && dayOfWeek == other.dayOfWeek && walkSpeed == other.walkSpeed
+                    && maxWalkTime == other.maxWalkTime && boardingAssumption == other.boardingAssumption
+                    && sampleSet == other.sampleSet;
+        }
+
+        @Override
+        public int hashCode () {
+            return Objects.hash(from, to, servicesRunning, dayOfWeek, walkSpeed, maxWalkTime, boardingAssumption,
+                    System.identityHashCode(sampleSet));
+        }
+
+        @Override
+        public String toString () {
+            return String.format("%s %d-%d, walk speed %s, max walk time %d", dayOfWeek, from, to, walkSpeed,
+                    maxWalkTime);
+        }
+    }
+}
@@ -42,17 +42,21 @@ public class RaptorWorkerTimetable implements Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerTimetable.class);
 
-    /* Times for schedule-based trips/patterns are stored in a 2D array. */
+    /* Times for schedule-based trips/patterns are stored in a single flat array. */
 
     int nTrips, nStops;
 
-    /* For each trip on this pattern, an packed array of (arrival, departure) time pairs. */
-    public int[][] timesPerTrip;
+    /**
+     * (arrival, departure) time pairs at each stop, for each trip on this pattern one after the other, i.e. the times
+     * of trip t at stop s are at (t * nStops + s) * 2. Keeping them in one array rather than one per trip avoids a
+     * pointer dereference for each trip examined when searching for a departure, and keeps them contiguous in memory.
+     */
+    int[] stopTimes;
 
     /* Times for frequency-based trips are stored in parallel arrays (a column store). */
 
-    /** Times (0-based) for frequency trips */
-    int[][] frequencyTrips;
+    /** Times (0-based) for frequency trips, packed in the same way as the stop times of scheduled trips. */
+    int[] frequencyTimes;
 
     /** Headways (seconds) for frequency trips, parallel to above. Note that frequency trips are unsorted. */
     int[] headwaySecs;
@@ -66,13 +70,13 @@ public class RaptorWorkerTimetable implements Serializable {
     /** Indices of stops in parent data */
     public int[] stopIndices;
 
-    /** parent raptorworkerdata of this timetable */
-    public RaptorWorkerData raptorData;
-
     /** Mode of this pattern, see constants in com.conveyal.gtfs.model.Route */
     public int mode;
 
-    /** Index of this pattern in RaptorData */
+    /**
+     * Index of this pattern in RaptorData. Timetables do not refer back to the RaptorWorkerData holding them, as they
+     * may be shared by the RaptorWorkerData of several scenarios; these all keep the pattern at the same index.
+     */
     public int dataIndex;
 
     /** for debugging, the ID of the route this represents */
@@ -84,7 +88,7 @@ public class RaptorWorkerTimetable implements Serializable {
     public RaptorWorkerTimetable(int nTrips, int nStops) {
         this.nTrips = nTrips;
         this.nStops = nStops;
-        timesPerTrip = new int[nTrips][];
+        stopTimes = new int[nTrips * nStops * 2];
     }
 
     /**
@@ -92,7 +96,7 @@ public class RaptorWorkerTimetable implements Serializable {
      * MIN_BOARD_TIME_SECONDS seconds of slack. 
      */
     public int findDepartureAfter(int stop, int time) {
-        for (int trip = 0; trip < timesPerTrip.length; trip++) {
+        for (int trip = 0; trip < nTrips; trip++) {
             if (getDeparture(trip, stop) > time + MIN_BOARD_TIME_SECONDS) {
                 return trip;
             }
@@ -101,24 +105,21 @@ public class RaptorWorkerTimetable implements Serializable {
     }
 
     public int getArrival (int trip, int stop) {
-        return timesPerTrip[trip][stop * 2];
+        return stopTimes[(trip * nStops + stop) * 2];
     }
 
     public int getDeparture (int trip, int stop) {
-        return timesPerTrip[trip][stop * 2 + 1];
-    }
-
-    public int getFrequencyDeparture (int trip, int stop, int time, int previousPattern, FrequencyRandomOffsets offsets) {
-        return getFrequencyDeparture(trip, stop, time, previousPattern, offsets, null);
+        return stopTimes[(trip * nStops + stop) * 2 + 1];
     }
 
     /**
      * Get the departure on frequency trip trip at stop stop after time time,
      * with the given boarding assumption. (Note that the boarding assumption specified may be overridden
-     * by transfer rules).
+     * by transfer rules). The transfer rules and the default boarding assumption are those of raptorData, which must
+     * contain this timetable.
      */
-    public int getFrequencyDeparture (int trip, int stop, int time, int previousPattern, FrequencyRandomOffsets offsets, BoardingAssumption assumption) {
-        int timeToReachStop = frequencyTrips[trip][stop * 2 + 1];
+    public int getFrequencyDeparture (RaptorWorkerData raptorData, int trip, int stop, int time, int previousPattern, FrequencyRandomOffsets offsets, BoardingAssumption assumption) {
+        int timeToReachStop = frequencyTimes[(trip * nStops + stop) * 2 + 1];
 
         // figure out if there is an applicable transfer rule
         TransferRule transferRule = null;
@@ -225,7 +226,8 @@ public class RaptorWorkerTimetable implements Serializable {
      * Get the travel time (departure to arrival) on frequency trip trip, from stop from to stop to.  
      */
     public int getFrequencyTravelTime (int trip, int from, int to) {
-        return frequencyTrips[trip][to * 2] - frequencyTrips[trip][from * 2 + 1];
+        int offset = trip * nStops * 2;
+        return frequencyTimes[offset + to * 2] - frequencyTimes[offset + from * 2 + 1];
     }
 
     /**
@@ -242,7 +244,7 @@ public class RaptorWorkerTimetable implements Serializable {
 
     /** does this timetable have any scheduled trips? */
     public boolean hasScheduledTrips () {
-        return this.timesPerTrip != null && this.timesPerTrip.length > 0;
+        return this.nTrips > 0;
     }
 
     /**
@@ -317,48 +319,43 @@ public class RaptorWorkerTimetable implements Serializable {
 
         // Copy the times into the compacted table
         RaptorWorkerTimetable rwtt = new RaptorWorkerTimetable(tripTimes.size(), pattern.getStops().size());
-        int t = 0;
+        int i = 0;
         for (TripTimes tt : tripTimes) {
-            int[] times = new int[rwtt.nStops * 2];
-            for (int s = 0; s < pattern.getStops().size(); s++) {
-                int arrival = tt.getArrivalTime(s);
-                int departure = tt.getDepartureTime(s);
-                times[s * 2] = arrival;
-                times[s * 2 + 1] = departure;
+            for (int s = 0; s < rwtt.nStops; s++) {
+                rwtt.stopTimes[i++] = tt.getArrivalTime(s);
+                rwtt.stopTimes[i++] = tt.getDepartureTime(s);
             }
-            rwtt.timesPerTrip[t++] = times;
         }
 
-        ts.scheduledTripCount += rwtt.timesPerTrip.length;
+        ts.scheduledTripCount += rwtt.nTrips;
 
         // save frequency times
-        rwtt.frequencyTrips = new int[freqs.size()][pattern.getStops().size() * 2];
+        rwtt.frequencyTimes = new int[freqs.size() * rwtt.nStops * 2];
         rwtt.endTimes = new int[freqs.size()];
         rwtt.startTimes = new int[freqs.size()];
         rwtt.headwaySecs = new int[freqs.size()];
 
         {
-            int i = 0;
+            int f = 0;
+            i = 0;
             for (FrequencyEntry fe : freqs) {
-                rwtt.headwaySecs[i] = fe.headway;
-                rwtt.startTimes[i] = fe.startTime;
-                rwtt.endTimes[i] = fe.endTime;
+                rwtt.headwaySecs[f] = fe.headway;
+                rwtt.startTimes[f] = fe.startTime;
+                rwtt.endTimes[f] = fe.endTime;
 
                 ts.frequencyTripCount += fe.numTrips();
 
-                int[] times = rwtt.frequencyTrips[i];
-
                 // It's generally considered good practice to have frequency trips start at midnight, however that is
                 // not always the case, and we need to preserve the original times so that we can update them in
                 // real time.
                 int startTime = fe.tripTimes.getArrivalTime(0);
 
                 for (int s = 0; s < fe.tripTimes.getNumStops(); s++) {
-                    times[s * 2] = fe.tripTimes.getArrivalTime(s) - startTime;
-                    times[s * 2 + 1] = fe.tripTimes.getDepartureTime(s) - startTime;
+                    rwtt.frequencyTimes[i++] = fe.tripTimes.getArrivalTime(s) - startTime;
+                    rwtt.frequencyTimes[i++] = fe.tripTimes.getDepartureTime(s) - startTime;
                 }
 
-                i++;
+                f++;
             }
         }
 
@@ -396,22 +393,23 @@ public class RaptorWorkerTimetable implements Serializable {
         RaptorWorkerTimetable rwtt = new RaptorWorkerTimetable(timetables.size(), atp.temporaryStops.length);
 
         // create timetabled trips
+        int stride = atp.temporaryStops.length * 2;
         int t = 0;
         for (AddTripPattern.PatternTimetable pt : timetables) {
-            rwtt.timesPerTrip[t++] = timesForPatternTimetable(atp, pt);
+            System.arraycopy(timesForPatternTimetable(atp, pt), 0, rwtt.stopTimes, t++ * stride, stride);
         }
 
-        ts.scheduledTripCount += rwtt.timesPerTrip.length;
+        ts.scheduledTripCount += rwtt.nTrips;
 
         // create frequency trips
-        rwtt.frequencyTrips = new int[frequencies.size()][atp.temporaryStops.length * 2];
+        rwtt.frequencyTimes = new int[frequencies.size() * stride];
         rwtt.endTimes = new int[frequencies.size()];
         rwtt.startTimes = new int[frequencies.size()];
         rwtt.headwaySecs = new int[frequencies.size()];
 
         t = 0;
         for (AddTripPattern.PatternTimetable pt : frequencies) {
-            rwtt.frequencyTrips[t] = timesForPatternTimetable(atp, pt);
+            System.arraycopy(timesForPatternTimetable(atp, pt), 0, rwtt.frequencyTimes, t * stride, stride);
             rwtt.startTimes[t] = pt.startTime;
             rwtt.endTimes[t] = pt.endTime;
             rwtt.headwaySecs[t++] = pt.headwaySecs;
@@ -303,12 +303,9 @@ public class RepeatedRaptorProfileRouter {
         TimeWindow window = new TimeWindow(request.fromTime, request.toTime + RaptorWorker.MAX_DURATION,
                 graph.index.servicesRunning(request.date), dayOfWeek);
 
-        RaptorWorkerData raptorWorkerData;
-        if (sampleSet == null)
-            raptorWorkerData = new RaptorWorkerData(graph, window, request, ts);
-        else
-            raptorWorkerData = new RaptorWorkerData(graph, window, request, sampleSet,
-                    ts);
+        // shared with other requests for the same window, see RaptorWorkerDataCache
+        RaptorWorkerData raptorWorkerData = graph.index.getRaptorWorkerDataCache()
+                .get(window, request, sampleSet, ts);
 
         ts.raptorData = (int) (System.currentTimeMillis() - startData);
 
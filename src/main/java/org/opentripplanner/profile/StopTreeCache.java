@@ -1,7 +1,8 @@
 package org.opentripplanner.profile;
 
-import com.beust.jcommander.internal.Maps;
-
+import com.google.common.collect.Lists;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -14,25 +15,71 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Keeps travel distances from all transit stops in a particular Graph to their nearby street nodes.
  * This allows us to propagate travel times out from transit to streets much faster in one-to-many analyst queries.
  * The StopTreeCache has a fixed distance cutoff, so will be unable to provide distance information for vertices beyond
  * that cutoff distance.
+ *
+ * The distances for all stops are packed into a single buffer. It is either built on the heap on first use, or saved
+ * at graph build time into a file next to the graph, which is then memory-mapped when the graph is loaded: the
+ * operating system only reads the distances of a stop from disk when they are first used, and they do not take any
+ * space on the heap.
  */
 public class StopTreeCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(StopTreeCache.class);
+
+    /** The name of the file holding the stop trees, in the same directory as the graph. */
+    public static final String FILENAME = "stopTrees.bin";
+
+    private static final int MAGIC = 0x53545243; // STRC
+
+    private static final int FILE_VERSION = 1;
+
     final int maxWalkMeters;
+
+    /** The position of each stop in the offsets array, by stop vertex index */
+    private final TIntIntMap stopForVertex;
+
+    /** The vertex index of each stop */
+    private final int[] stopVertices;
+
+    /** For each stop, the offset of its distances in the distances buffer, and the total size at the end */
+    private final int[] offsets;
+
     // Flattened 2D array of (streetVertexIndex, distanceFromStop) for each TransitStop
-    public final Map<TransitStop, int[]> distancesForStop = Maps.newHashMap();
+    private final IntBuffer distances;
 
     public StopTreeCache (Graph graph, int maxWalkMeters) {
+        this(graph, graph.index.stopVertexForStop.values(), maxWalkMeters);
+    }
+
+    /** Compute the distances from the given stops, in parallel. This does not need the graph to be indexed. */
+    public StopTreeCache (Graph graph, Collection<TransitStop> stops, int maxWalkMeters) {
         this.maxWalkMeters = maxWalkMeters;
         LOG.info("Caching distances to nearby street intersections from each transit stop...");
-        graph.index.stopVertexForStop.values().parallelStream().forEach(tstop -> {
+        List<TransitStop> stopList = Lists.newArrayList(stops);
+        int[][] distancesForStop = new int[stopList.size()][];
+        IntStream.range(0, stopList.size()).parallel().forEach(s -> {
+            TransitStop tstop = stopList.get(s);
             RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
             rr.batch = (true);
             rr.setRoutingContext(graph, tstop, tstop);
@@ -54,23 +101,138 @@ public class StopTreeCache {
             int i = 0;
             for (Vertex vertex : spt.getVertices()) {
                 State state = spt.getState(vertex);
-                
+
                 if (state == null)
                     continue;
-                
+
                 distances[i++] = vertex.getIndex();
                 distances[i++] = (int) state.getWalkDistance();
             }
 
             rr.cleanup();
 
-            synchronized (distancesForStop) {
-                distancesForStop.put(tstop, distances);
-            }
+            distancesForStop[s] = i == distances.length ? distances : Arrays.copyOf(distances, i);
         });
+
+        stopVertices = new int[stopList.size()];
+        stopForVertex = new TIntIntHashMap(stopList.size(), 0.75f, -1, -1);
+        offsets = new int[stopList.size() + 1];
+        for (int s = 0; s < stopList.size(); s++) {
+            stopVertices[s] = stopList.get(s).getIndex();
+            stopForVertex.put(stopVertices[s], s);
+            offsets[s + 1] = offsets[s] + distancesForStop[s].length;
+        }
+        int[] packed = new int[offsets[stopList.size()]];
+        for (int s = 0; s < stopList.size(); s++) {
+            System.arraycopy(distancesForStop[s], 0, packed, offsets[s], distancesForStop[s].length);
+        }
+        distances = IntBuffer.wrap(packed);
         LOG.info("Done caching distances to nearby street intersections from each transit stop.");
     }
 
+    private StopTreeCache (int maxWalkMeters, int[] stopVertices, int[] offsets, IntBuffer distances) {
+        this.maxWalkMeters = maxWalkMeters;
+        this.stopVertices = stopVertices;
+        this.offsets = offsets;
+        this.distances = distances;
+        stopForVertex = new TIntIntHashMap(stopVertices.length, 0.75f, -1, -1);
+        for (int s = 0; s < stopVertices.length; s++) {
+            stopForVertex.put(stopVertices[s], s);
+        }
+    }
+
+    /**
+     * Save the stop trees to a file, which can be loaded for the same graph as it was serialized (vertex indices
+     * are kept by serialization). The trees are written to a temporary file which then replaces the file at once, so
+     * that stop trees memory-mapped from a previous version of the file are never overwritten.
+     */
+    public void save (File file, Graph graph) throws IOException {
+        LOG.info("Writing stop trees to {}", file);
+        File tempFile = File.createTempFile(FILENAME, ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeLong(graph.buildTime.getTime());
+                out.writeInt(maxWalkMeters);
+                out.writeInt(stopVertices.length);
+                for (int stopVertex : stopVertices) {
+                    out.writeInt(stopVertex);
+                }
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                for (int i = 0; i < distances.limit(); i++) {
+                    out.writeInt(distances.get(i));
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete(); // remove half-written file
+            throw e;
+        }
+    }
+
+    /**
+     * Memory-map the stop trees saved in the given file for the given graph.
+     * @return null if the file cannot be read or was not saved for this graph and walk distance cutoff.
+     */
+    public static StopTreeCache load (File file, Graph graph, int maxWalkMeters) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                LOG.warn("Stop tree file {} is too large to be mapped, stop trees will be computed.", file);
+                return null;
+            }
+            // The mapping remains valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FILE_VERSION
+                    || buffer.getLong() != graph.buildTime.getTime() || buffer.getInt() != maxWalkMeters) {
+                LOG.warn("Stop tree file {} was not saved for this graph, stop trees will be computed.", file);
+                return null;
+            }
+            int nStops = buffer.getInt();
+            int[] stopVertices = new int[nStops];
+            for (int s = 0; s < nStops; s++) {
+                stopVertices[s] = buffer.getInt();
+                if (!(graph.getVertexById(stopVertices[s]) instanceof TransitStop)) {
+                    LOG.warn("Stop tree file {} does not match the stops of this graph, stop trees will be computed.",
+                            file);
+                    return null;
+                }
+            }
+            int[] offsets = new int[nStops + 1];
+            for (int s = 0; s <= nStops; s++) {
+                offsets[s] = buffer.getInt();
+            }
+            ByteBuffer values = buffer.slice();
+            if (values.remaining() != offsets[nStops] * 4) {
+                LOG.warn("Stop tree file {} is truncated, stop trees will be computed.", file);
+                return null;
+            }
+            LOG.info("Memory-mapped stop trees for {} stops from {}", nStops, file);
+            return new StopTreeCache(maxWalkMeters, stopVertices, offsets, values.asIntBuffer());
+        } catch (IOException e) {
+            LOG.warn("Could not read stop tree file {}, stop trees will be computed.", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a copy of the flattened (streetVertexIndex, distanceFromStop) pairs for the given stop, or null if it is
+     * not in this cache.
+     */
+    public int[] getDistancesForStop (TransitStop transitStop) {
+        int stop = stopForVertex.get(transitStop.getIndex());
+        if (stop == -1)
+            return null;
+
+        int[] ret = new int[offsets[stop + 1] - offsets[stop]];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = distances.get(offsets[stop] + i);
+        }
+        return ret;
+    }
+
     /**
      * Given a travel time to a transit stop, fill in the array with minimum travel times to all nearby street vertices.
      * This function is meant to be called repeatedly on multiple transit stops, accumulating minima
@@ -79,12 +241,17 @@ public class StopTreeCache {
     public void propagateStop(TransitStop transitStop, int baseTimeSeconds, double walkSpeed, int[] targetArray) {
         // Iterate over street intersections in the vicinity of this particular transit stop.
         // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
-        int[] distances = distancesForStop.get(transitStop);
-        int v = 0;
-        while (v < distances.length) {
+        int stop = stopForVertex.get(transitStop.getIndex());
+        if (stop == -1)
+            return;
+
+        // absolute gets do not change the position of the buffer, so this is safe to call from several threads
+        int v = offsets[stop];
+        int end = offsets[stop + 1];
+        while (v < end) {
             // Unravel flattened 2D array
-            int vertexIndex = distances[v++];
-            int distance = distances[v++];
+            int vertexIndex = distances.get(v++);
+            int distance = distances.get(v++);
             // distance in meters over walkspeed in meters per second --> seconds
             int egressWalkTimeSeconds = (int) (distance / walkSpeed);
             int propagated_time = baseTimeSeconds + egressWalkTimeSeconds;
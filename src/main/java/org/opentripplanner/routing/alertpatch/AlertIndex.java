@@ -0,0 +1,100 @@
+package org.opentripplanner.routing.alertpatch;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import org.opentripplanner.model.FeedScopedId;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of all active alert patches, grouped by the stops, routes, trips, patterns and agencies they
+ * affect and by id. A new snapshot is built on the graph writer thread every time an alerts feed has been applied, and
+ * published by replacing a single reference, so readers never lock and never see a partially applied feed.
+ */
+public class AlertIndex {
+
+    public static final AlertIndex EMPTY = new AlertIndex(0, ImmutableList.of());
+
+    /** Incremented every time a new snapshot is published, so that caches can tell whether alerts have changed. */
+    public final long version;
+
+    private final List<AlertPatch> all;
+
+    private final ListMultimap<FeedScopedId, AlertPatch> byStop;
+
+    private final ListMultimap<FeedScopedId, AlertPatch> byRoute;
+
+    private final ListMultimap<FeedScopedId, AlertPatch> byTrip;
+
+    private final ListMultimap<String, AlertPatch> byPattern;
+
+    private final ListMultimap<String, AlertPatch> byAgency;
+
+    private final Map<String, AlertPatch> byId;
+
+    public AlertIndex(long version, Collection<AlertPatch> alertPatches) {
+        this.version = version;
+        ImmutableListMultimap.Builder<FeedScopedId, AlertPatch> stops = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<FeedScopedId, AlertPatch> routes = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<FeedScopedId, AlertPatch> trips = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, AlertPatch> patterns = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, AlertPatch> agencies = ImmutableListMultimap.builder();
+        // Several feeds may contain patches with the same id, the first one wins as it did with the linear search.
+        Map<String, AlertPatch> ids = new HashMap<>();
+        for (AlertPatch alertPatch : alertPatches) {
+            if (alertPatch.getStop() != null) stops.put(alertPatch.getStop(), alertPatch);
+            if (alertPatch.getRoute() != null) routes.put(alertPatch.getRoute(), alertPatch);
+            if (alertPatch.getTrip() != null) trips.put(alertPatch.getTrip(), alertPatch);
+            if (alertPatch.getAgency() != null) agencies.put(alertPatch.getAgency(), alertPatch);
+            if (alertPatch.getTripPatterns() != null) {
+                alertPatch.getTripPatterns().stream()
+                    .map(tripPattern -> tripPattern.code)
+                    .distinct()
+                    .forEach(code -> patterns.put(code, alertPatch));
+            }
+            if (alertPatch.getId() != null) ids.putIfAbsent(alertPatch.getId(), alertPatch);
+        }
+        this.all = ImmutableList.copyOf(alertPatches);
+        this.byStop = stops.build();
+        this.byRoute = routes.build();
+        this.byTrip = trips.build();
+        this.byPattern = patterns.build();
+        this.byAgency = agencies.build();
+        this.byId = ImmutableMap.copyOf(ids);
+    }
+
+    public List<AlertPatch> getAlerts() {
+        return all;
+    }
+
+    public List<AlertPatch> getAlertsForStop(FeedScopedId stopId) {
+        return byStop.get(stopId);
+    }
+
+    public List<AlertPatch> getAlertsForRoute(FeedScopedId routeId) {
+        return byRoute.get(routeId);
+    }
+
+    public List<AlertPatch> getAlertsForTrip(FeedScopedId tripId) {
+        return byTrip.get(tripId);
+    }
+
+    /** @param patternCode the code of a {@link org.opentripplanner.routing.edgetype.TripPattern} */
+    public List<AlertPatch> getAlertsForPattern(String patternCode) {
+        return byPattern.get(patternCode);
+    }
+
+    public List<AlertPatch> getAlertsForAgency(String agencyId) {
+        return byAgency.get(agencyId);
+    }
+
+    /** @return the alert patch with the given id, or null if there is none. */
+    public AlertPatch getAlertForId(String id) {
+        return byId.get(id);
+    }
+}
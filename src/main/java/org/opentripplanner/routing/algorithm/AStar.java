@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.opentripplanner.api.resource.SearchTrace;
 import org.opentripplanner.common.pqueue.BinHeap;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
@@ -16,8 +17,9 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.*;
 import org.opentripplanner.util.DateUtils;
-import org.opentripplanner.util.monitoring.MonitoringStore;
-import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,8 +35,18 @@ import com.beust.jcommander.internal.Lists;
 public class AStar {
 
     private static final Logger LOG = LoggerFactory.getLogger(AStar.class);
-    // FIXME this is not really a factory, it's a way to fake a global variable. This should be stored at the OTPServer level.
-    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
+    private static final Counter SEARCHES = Metrics.counter("otp_astar_searches_total",
+            "Number of A* searches run.");
+    private static final Counter TIMEOUTS = Metrics.counter("otp_astar_timeouts_total",
+            "Number of A* searches aborted because of a timeout.");
+    private static final Histogram VISITED_VERTICES = Metrics.histogram("otp_astar_visited_vertices",
+            "Number of vertices visited per A* search.");
+    private static final Histogram MAX_QUEUE_SIZE = Metrics.histogram("otp_astar_max_queue_size",
+            "Largest size of the priority queue per A* search.");
+    private static final Histogram SEARCH_DURATION = Metrics.histogram("otp_astar_search_duration_ms",
+            "Duration of the main loop per A* search, in milliseconds.");
+    private static final Histogram TRIPS_SCANNED = Metrics.histogram("otp_astar_trips_scanned",
+            "Number of trips whose times were compared in timetable lookups per A* search.");
     private static final double OVERSEARCH_MULTIPLIER = 4.0;
 
     private boolean verbose = false;
@@ -55,6 +67,12 @@ public class AStar {
         RemainingWeightHeuristic heuristic;
         public RoutingContext rctx;
         public int nVisited;
+        int maxQueueSize;
+        // Plain counters are cheap enough to maintain for every search; they are only reported when tracing.
+        int statesCreated;
+        int statesDominated;
+        int statesPrunedByHeuristic;
+        int statesPrunedByLimits;
         public List<State> targetAcceptedStates;
         public RunStatus status;
         private RoutingRequest options;
@@ -151,6 +169,7 @@ public class AStar {
         if (!runState.spt.visit(runState.u)) {
             // state has been dominated since it was added to the priority queue, so it is
             // not in any optimal path. drop it on the floor and try the next one.
+            runState.statesDominated += 1;
             return false;
         }
         
@@ -175,6 +194,7 @@ public class AStar {
             // returning NULL), the iteration is over. TODO Use this to board multiple trips.
             for (State v = edge.traverse(runState.u); v != null; v = v.getNextResult()) {
                 // Could be: for (State v : traverseEdge...)
+                runState.statesCreated += 1;
 
                 if (traverseVisitor != null) {
                     traverseVisitor.visitEdge(edge, v);
@@ -185,6 +205,7 @@ public class AStar {
 //                LOG.info("{} {}", v, remaining_w);
 
                 if (remaining_w < 0 || Double.isInfinite(remaining_w) ) {
+                    runState.statesPrunedByHeuristic += 1;
                     continue;
                 }
                 double estimate = v.getWeight() + remaining_w;
@@ -201,12 +222,14 @@ public class AStar {
                     // too expensive to get here
                     if (verbose)
                         System.out.println("         too expensive to reach, not enqueued. estimated weight = " + estimate);
+                    runState.statesPrunedByLimits += 1;
                     continue;
                 }
                 if (isWorstTimeExceeded(v, runState.options)) {
                     // too much time to get here
                     if (verbose)
                         System.out.println("         too much time to reach, not enqueued. time = " + v.getTimeSeconds());
+                    runState.statesPrunedByLimits += 1;
                     continue;
                 }
                 
@@ -217,7 +240,12 @@ public class AStar {
                         traverseVisitor.visitEnqueue(v);
                     //LOG.info("u.w={} v.w={} h={}", runState.u.weight, v.weight, remaining_w);
                     runState.pq.insert(v, estimate);
-                } 
+                    if (runState.pq.size() > runState.maxQueueSize) {
+                        runState.maxQueueSize = runState.pq.size();
+                    }
+                } else {
+                    runState.statesDominated += 1;
+                }
             }
         }
         
@@ -225,6 +253,8 @@ public class AStar {
     }
     
     void runSearch(long abortTime){
+        long startNanos = System.nanoTime();
+        long tripsScannedBefore = runState.rctx.tripsScanned;
         /* the core of the A* algorithm */
         while (!runState.pq.empty()) { // Until the priority queue is empty:
             /*
@@ -238,7 +268,7 @@ public class AStar {
                 // allows returning a partial list results even when a timeout occurs.
                 runState.options.rctx.aborted = true; // signal search cancellation up to higher stack frames
                 runState.options.rctx.debugOutput.timedOut = true; // signal timeout in debug output object
-
+                TIMEOUTS.inc();
                 break;
             }
             
@@ -288,6 +318,31 @@ public class AStar {
             }
 
         }
+        SEARCHES.inc();
+        SEARCH_DURATION.recordMillisSince(startNanos);
+        VISITED_VERTICES.record(runState.nVisited);
+        MAX_QUEUE_SIZE.record(runState.maxQueueSize);
+        long tripsScanned = runState.rctx.tripsScanned - tripsScannedBefore;
+        TRIPS_SCANNED.record(tripsScanned);
+        SearchTrace trace = runState.rctx.debugOutput.searchTrace;
+        if (trace != null) {
+            trace.addSearch(searchSummary(startNanos, tripsScanned));
+        }
+    }
+
+    private SearchTrace.Search searchSummary(long startNanos, long tripsScanned) {
+        SearchTrace.Search search = new SearchTrace.Search();
+        RoutingRequest options = runState.options;
+        search.type = options.batch ? "batch" : options.arriveBy ? "arriveBy" : "departAfter";
+        search.durationMillis = (System.nanoTime() - startNanos) / 1e6;
+        search.verticesVisited = runState.nVisited;
+        search.statesCreated = runState.statesCreated;
+        search.statesDominated = runState.statesDominated;
+        search.statesPrunedByHeuristic = runState.statesPrunedByHeuristic;
+        search.statesPrunedByLimits = runState.statesPrunedByLimits;
+        search.maxQueueSize = runState.maxQueueSize;
+        search.tripsScanned = tripsScanned;
+        return search;
     }
 
     /** @return the shortest path, or null if none is found */
@@ -302,8 +357,7 @@ public class AStar {
             runSearch(abortTime);
             spt = runState.spt;
         }
-        
-        storeMemory();
+
         return spt;
     }
     
@@ -331,15 +385,6 @@ public class AStar {
         return spt;
     }
 
-    private void storeMemory() {
-        if (store.isMonitoring("memoryUsed")) {
-            System.gc();
-            long memoryUsed = Runtime.getRuntime().totalMemory() -
-                    Runtime.getRuntime().freeMemory();
-            store.setLongMax("memoryUsed", memoryUsed);
-        }
-    }
-
     private boolean isWorstTimeExceeded(State v, RoutingRequest opt) {
         if (opt.arriveBy)
             return v.getTimeSeconds() < opt.worstTime;
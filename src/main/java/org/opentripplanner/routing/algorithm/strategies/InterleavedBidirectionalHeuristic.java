@@ -2,6 +2,7 @@ package org.opentripplanner.routing.algorithm.strategies;
 
 import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
+import org.opentripplanner.api.resource.SearchTrace;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.pqueue.BinHeap;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -18,6 +19,9 @@ import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.routing.vertextype.TransitVertex;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -127,6 +131,15 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 
     private static Logger LOG = LoggerFactory.getLogger(InterleavedBidirectionalHeuristic.class);
 
+    private static final Histogram INIT_DURATION = Metrics.histogram("otp_heuristic_init_duration_ms",
+            "Duration of the street searches initializing the bidirectional heuristic, in milliseconds.");
+
+    private static final Histogram STREET_VERTICES = Metrics.histogram("otp_heuristic_street_vertices",
+            "Number of street vertices reached around the origin and destination while initializing the heuristic.");
+
+    private static final Counter INIT_TIMEOUTS = Metrics.counter("otp_heuristic_init_timeouts_total",
+            "Number of heuristic initializations aborted because of a timeout.");
+
     // For each step in the main search, how many steps should the reverse search proceed?
     private int HEURISTIC_STEPS_PER_MAIN_STEP; // TODO determine a good value empirically
 
@@ -207,6 +220,9 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         LOG.debug("Initializing heuristic computation.");
         this.graph = request.rctx.graph;
         long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        SearchTrace trace = request.rctx.debugOutput.searchTrace;
+        SearchTrace.Phase heuristicInit = trace != null ? trace.startPhase() : null;
         this.target = target;
         this.routingRequest = request;
         request.softWalkLimiting = false;
@@ -220,11 +236,13 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         // Forward street search first, mark street vertices around the origin so H evaluates to 0.
         preTransitVertices = streetSearch(request, false, abortTime);
         if (preTransitVertices == null) {
+            INIT_TIMEOUTS.inc();
             return; // Search timed out
         }
         LOG.debug("end forward street search {} ms", System.currentTimeMillis() - start);
         postTransitVertices = streetSearch(request, true, abortTime);
         if (postTransitVertices == null) {
+            INIT_TIMEOUTS.inc();
             return; // Search timed out
         }
         LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
@@ -262,6 +280,11 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         request.setMaxPreTransitTime(Integer.MAX_VALUE);
 
         LOG.debug("initialized SSSP");
+        INIT_DURATION.recordMillisSince(startNanos);
+        if (heuristicInit != null) {
+            trace.endPhase("heuristicInit", heuristicInit);
+        }
+        STREET_VERTICES.record(preTransitVertices.size() + postTransitVertices.size());
         request.rctx.debugOutput.finishedPrecalculating();
     }
 
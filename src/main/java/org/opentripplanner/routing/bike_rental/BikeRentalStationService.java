@@ -17,10 +17,31 @@ public class BikeRentalStationService implements Serializable {
 
     private Map<String, RentalType> networkRentalTypes = Maps.newConcurrentMap();
 
+    /** Vehicles without a dock, which are not linked into the street graph. They are also in bikeRentalStations. */
+    private FreeFloatingVehicleIndex freeFloatingVehicles = new FreeFloatingVehicleIndex();
+
+    /**
+     * Incremented by the updaters whenever bike rental stations appear, disappear or change their availability in a way that
+     * affects routing. Only written by the graph writer thread.
+     */
+    private volatile long version = 0;
+
     public Collection<BikeRentalStation> getBikeRentalStations() {
         return bikeRentalStations;
     }
 
+    public FreeFloatingVehicleIndex getFreeFloatingVehicles() {
+        return freeFloatingVehicles;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void markChanged() {
+        version++;
+    }
+
     public void addBikeRentalStation(BikeRentalStation bikeRentalStation) {
         // Remove old reference first, as adding will be a no-op if already present
         bikeRentalStations.remove(bikeRentalStation);
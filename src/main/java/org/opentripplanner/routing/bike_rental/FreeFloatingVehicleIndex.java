@@ -0,0 +1,238 @@
+package org.opentripplanner.routing.bike_rental;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The positions of free-floating rental vehicles (bikes and scooters without a dock), which are not linked into the
+ * street graph. Instead, the search looks up the vehicles close to the street vertices it reaches, so that vehicles
+ * moving around every few seconds do not cause vertices to be added and street edges to be split.
+ *
+ * Each updater replaces the vehicles of its network as a whole, from its own polling thread. Readers get an immutable
+ * {@link Snapshot} of all vehicles, which is swapped after each update, and do not take any lock.
+ */
+public class FreeFloatingVehicleIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Vehicles at most this far from a street vertex, in meters, can be rented there. */
+    public static final double MAX_DISTANCE_METERS = 50;
+
+    /**
+     * About 110 m north-south, and less east-west away from the equator: vehicles are looked up in as many cells
+     * around the position as needed to cover {@link #MAX_DISTANCE_METERS} at its latitude.
+     */
+    private static final double CELL_SIZE_DEGREES = 0.001;
+
+    /**
+     * The largest distance searched east and west of a position, in degrees, which is far beyond
+     * {@link #MAX_DISTANCE_METERS} except right at the poles, where meridians converge.
+     */
+    private static final double MAX_LON_SEARCH_DEGREES = 1;
+
+    private static final BikeRentalStation[] NO_VEHICLES = new BikeRentalStation[0];
+
+    /** The vehicles of each network, guarded by this. */
+    private final Map<String, List<BikeRentalStation>> vehiclesByNetwork = new HashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot(new TLongObjectHashMap<>(), 0);
+
+    /**
+     * Replace the vehicles of a network. The grid of all vehicles is built by the calling thread, and only then made
+     * visible to readers.
+     */
+    public synchronized void update(String network, Collection<BikeRentalStation> vehicles) {
+        if (vehicles.isEmpty()) {
+            if (vehiclesByNetwork.remove(network) == null) {
+                return;
+            }
+        } else {
+            vehiclesByNetwork.put(network, new ArrayList<>(vehicles));
+        }
+
+        Map<Long, List<BikeRentalStation>> vehiclesByCell = new HashMap<>();
+        int nVehicles = 0;
+        for (List<BikeRentalStation> networkVehicles : vehiclesByNetwork.values()) {
+            for (BikeRentalStation vehicle : networkVehicles) {
+                vehiclesByCell.computeIfAbsent(cell(vehicle.x, vehicle.y), c -> new ArrayList<>()).add(vehicle);
+                nVehicles++;
+            }
+        }
+        TLongObjectMap<BikeRentalStation[]> cells = new TLongObjectHashMap<>(vehiclesByCell.size());
+        for (Map.Entry<Long, List<BikeRentalStation>> entry : vehiclesByCell.entrySet()) {
+            cells.put(entry.getKey(), entry.getValue().toArray(NO_VEHICLES));
+        }
+        snapshot = new Snapshot(cells, nVehicles);
+    }
+
+    /** @return an immutable view of the vehicles of all networks, which is not affected by later updates. */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** @return the number of vehicles of all networks. */
+    public int size() {
+        return snapshot.size;
+    }
+
+    public boolean isEmpty() {
+        return snapshot.size == 0;
+    }
+
+    /** @return the vehicles of a network, which must not be modified. */
+    public synchronized List<BikeRentalStation> getVehicles(String network) {
+        return vehiclesByNetwork.getOrDefault(network, Collections.emptyList());
+    }
+
+    /**
+     * Find the nearest vehicle which can be rented at the given position.
+     *
+     * @see Snapshot#getNearestVehicle(double, double, Set, boolean)
+     */
+    public BikeRentalStation getNearestVehicle(double lon, double lat, Set<String> networks, boolean useAvailability) {
+        return snapshot.getNearestVehicle(lon, lat, networks, useAvailability);
+    }
+
+    static long cell(double lon, double lat) {
+        return key((int) Math.floor(lon / CELL_SIZE_DEGREES), (int) Math.floor(lat / CELL_SIZE_DEGREES));
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the number of cells to look at on each side of a cell, in the direction of the given number of degrees,
+     * so that all positions up to that far from anywhere in the cell are covered.
+     */
+    private static int cellsAround(double degrees) {
+        return (int) Math.ceil(degrees / CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * @return the degrees of longitude at the edge of the given row of cells nearer to the pole that contain all
+     * positions up to {@link #MAX_DISTANCE_METERS} away, as {@link #nearest} measures distances. The search distance
+     * is the same for all positions in a row of cells, so that the vehicles near a cell can be reused for all of them.
+     */
+    private static double searchDegreesLongitude(int cellY) {
+        double poleward = Math.max(Math.abs(cellY * CELL_SIZE_DEGREES), Math.abs((cellY + 1) * CELL_SIZE_DEGREES));
+        double degrees = SphericalDistanceLibrary.metersToLonDegrees(
+                MAX_DISTANCE_METERS / SphericalDistanceLibrary.MAX_ERR_INV, poleward);
+        // Negative or huge next to the poles
+        return degrees > 0 && degrees < MAX_LON_SEARCH_DEGREES ? degrees : MAX_LON_SEARCH_DEGREES;
+    }
+
+    /**
+     * Pick the nearest vehicle among candidates.
+     *
+     * @param networks only vehicles of one of these networks are returned, null for all networks
+     * @param useAvailability if true, vehicles without any bike available are ignored
+     * @return the nearest vehicle at most {@link #MAX_DISTANCE_METERS} away, or null if there is none
+     */
+    static BikeRentalStation nearest(BikeRentalStation[] candidates, double lon, double lat, Set<String> networks,
+            boolean useAvailability) {
+        BikeRentalStation nearest = null;
+        double nearestDistance = MAX_DISTANCE_METERS;
+        for (BikeRentalStation vehicle : candidates) {
+            if (useAvailability && vehicle.bikesAvailable == 0) {
+                continue;
+            }
+            if (networks != null && vehicle.networks != null && Collections.disjoint(networks, vehicle.networks)) {
+                continue;
+            }
+            double distance = SphericalDistanceLibrary.fastDistance(lat, lon, vehicle.y, vehicle.x);
+            if (distance <= nearestDistance) {
+                nearest = vehicle;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * The vehicles of all networks at one point in time, in a grid of cells.
+     */
+    public static class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TLongObjectMap<BikeRentalStation[]> cells;
+
+        private final int size;
+
+        private Snapshot(TLongObjectMap<BikeRentalStation[]> cells, int size) {
+            this.cells = cells;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @return the vehicles in the cell of the given position and in the cells around it, which include all vehicles
+         * at most {@link #MAX_DISTANCE_METERS} away from anywhere in that cell. Cells are narrower east-west away from
+         * the equator, so more of them are searched in that direction at high latitudes. The array must not be
+         * modified.
+         */
+        public BikeRentalStation[] getVehiclesNear(double lon, double lat) {
+            if (size == 0) {
+                return NO_VEHICLES;
+            }
+            int cellX = (int) Math.floor(lon / CELL_SIZE_DEGREES);
+            int cellY = (int) Math.floor(lat / CELL_SIZE_DEGREES);
+            int cellsX = cellsAround(searchDegreesLongitude(cellY));
+            int cellsY = cellsAround(SphericalDistanceLibrary.metersToDegrees(
+                    MAX_DISTANCE_METERS / SphericalDistanceLibrary.MAX_ERR_INV));
+            BikeRentalStation[] single = null;
+            List<BikeRentalStation> merged = null;
+            for (int x = cellX - cellsX; x <= cellX + cellsX; x++) {
+                for (int y = cellY - cellsY; y <= cellY + cellsY; y++) {
+                    BikeRentalStation[] vehicles = cells.get(key(x, y));
+                    if (vehicles == null) {
+                        continue;
+                    }
+                    if (single == null) {
+                        single = vehicles;
+                    } else {
+                        if (merged == null) {
+                            merged = new ArrayList<>();
+                            Collections.addAll(merged, single);
+                        }
+                        Collections.addAll(merged, vehicles);
+                    }
+                }
+            }
+            if (merged != null) {
+                return merged.toArray(NO_VEHICLES);
+            }
+            return single == null ? NO_VEHICLES : single;
+        }
+
+        /**
+         * Find the nearest vehicle which can be rented at the given position.
+         *
+         * @param networks only vehicles of one of these networks are returned, null for all networks
+         * @param useAvailability if true, vehicles without any bike available are ignored
+         * @return the nearest vehicle at most {@link #MAX_DISTANCE_METERS} away, or null if there is none
+         */
+        public BikeRentalStation getNearestVehicle(double lon, double lat, Set<String> networks,
+                boolean useAvailability) {
+            return nearest(getVehiclesNear(lon, lat), lon, lat, networks, useAvailability);
+        }
+    }
+}
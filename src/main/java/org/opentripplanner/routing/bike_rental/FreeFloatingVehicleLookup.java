@@ -0,0 +1,50 @@
+package org.opentripplanner.routing.bike_rental;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.Set;
+
+/**
+ * Looks up free-floating vehicles for a single search. The search reaches many street vertices in the same grid cell,
+ * so the vehicles around each cell are gathered only once, and checking a vertex costs only as much as the number of
+ * vehicles nearby. Vertices in cells without vehicles around them cost a single hash lookup.
+ *
+ * This holds the snapshot of the vehicles taken when the search started, so that the search sees a coherent set of
+ * vehicles. It is not thread safe, like the rest of the routing context.
+ */
+public class FreeFloatingVehicleLookup {
+
+    private final FreeFloatingVehicleIndex.Snapshot snapshot;
+
+    private final TLongObjectMap<BikeRentalStation[]> vehiclesByCell = new TLongObjectHashMap<>();
+
+    public FreeFloatingVehicleLookup(FreeFloatingVehicleIndex.Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Find the nearest vehicle which can be rented at the given position.
+     *
+     * @param networks only vehicles of one of these networks are returned, null for all networks
+     * @param useAvailability if true, vehicles without any bike available are ignored
+     * @return the nearest vehicle at most {@link FreeFloatingVehicleIndex#MAX_DISTANCE_METERS} away, or null
+     */
+    public BikeRentalStation getNearestVehicle(double lon, double lat, Set<String> networks, boolean useAvailability) {
+        long cell = FreeFloatingVehicleIndex.cell(lon, lat);
+        BikeRentalStation[] vehicles = vehiclesByCell.get(cell);
+        if (vehicles == null) {
+            vehicles = snapshot.getVehiclesNear(lon, lat);
+            vehiclesByCell.put(cell, vehicles);
+        }
+        if (vehicles.length == 0) {
+            return null;
+        }
+        return FreeFloatingVehicleIndex.nearest(vehicles, lon, lat, networks, useAvailability);
+    }
+
+    /** @return the number of cells looked up so far, for debugging. */
+    public int getCellsVisited() {
+        return vehiclesByCell.size();
+    }
+}
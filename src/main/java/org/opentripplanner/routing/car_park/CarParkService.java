@@ -23,6 +23,12 @@ public class CarParkService implements Serializable {
 
     private Map<String, CarPark> carParks = new HashMap<>();
 
+    /**
+     * Incremented by the updaters whenever car parks appear, disappear or change their availability in a way that
+     * affects routing. Only written by the graph writer thread.
+     */
+    private volatile long version = 0;
+
     public Collection<CarPark> getCarParks() {
         return carParks.values();
     }
@@ -31,6 +37,14 @@ public class CarParkService implements Serializable {
         return carParks;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void markChanged() {
+        version++;
+    }
+
     public void addCarPark(CarPark carPark) {
         carParks.put(carPark.id, carPark);
     }
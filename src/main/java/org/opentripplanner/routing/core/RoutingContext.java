@@ -8,10 +8,14 @@ import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.model.CalendarService;
 import org.opentripplanner.api.resource.DebugOutput;
+import org.opentripplanner.api.resource.SearchTrace;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.bike_rental.FreeFloatingVehicleIndex;
+import org.opentripplanner.routing.bike_rental.FreeFloatingVehicleLookup;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TemporaryPartialStreetEdge;
 import org.opentripplanner.routing.edgetype.TimetableSnapshot;
@@ -87,6 +91,12 @@ public class RoutingContext implements Cloneable {
     /** The timetableSnapshot is a {@link TimetableSnapshot} for looking up real-time updates. */
     public final TimetableSnapshot timetableSnapshot;
 
+    /**
+     * The free-floating rental vehicles which can be picked up next to any street vertex, or null if bike rental is
+     * not allowed or there are none. Like the timetable snapshot, the vehicles do not change during the search.
+     */
+    public final FreeFloatingVehicleLookup freeFloatingVehicles;
+
     /**
      * Cache lists of which transit services run on which midnight-to-midnight periods. This ties a TraverseOptions to a particular start time for the
      * duration of a search so the same options cannot be used for multiple searches concurrently. To do so this cache would need to be moved into
@@ -110,6 +120,12 @@ public class RoutingContext implements Cloneable {
     /** Indicates that the search timed out or was otherwise aborted. */
     public boolean aborted;
 
+    /**
+     * The number of trips whose times were compared in timetable lookups so far. Incremented by the timetables and
+     * reported by each search for its share of it.
+     */
+    public long tripsScanned;
+
     /** Indicates that a maximum slope constraint was specified but was removed during routing to produce a result. */
     public boolean slopeRestrictionRemoved = false;
 
@@ -215,6 +231,9 @@ public class RoutingContext implements Cloneable {
         this.opt = routingRequest;
         this.graph = graph;
         this.debugOutput.startedCalculating();
+        if (routingRequest.searchTrace) {
+            this.debugOutput.searchTrace = new SearchTrace();
+        }
 
         // The following block contains potentially resource-intensive things that are only relevant for transit.
         // In normal searches the impact is low, because the routing context is only constructed once at the beginning
@@ -240,8 +259,19 @@ public class RoutingContext implements Cloneable {
             calendarService = null;
         }
 
+        if (opt.allowBikeRental) {
+            BikeRentalStationService bikeRentalStationService = graph.getService(BikeRentalStationService.class);
+            FreeFloatingVehicleIndex.Snapshot vehicles = bikeRentalStationService == null ? null
+                    : bikeRentalStationService.getFreeFloatingVehicles().getSnapshot();
+            freeFloatingVehicles = vehicles == null || vehicles.isEmpty() ? null
+                    : new FreeFloatingVehicleLookup(vehicles);
+        } else {
+            freeFloatingVehicles = null;
+        }
+
         Edge fromBackEdge = null;
         Edge toBackEdge = null;
+        SearchTrace.Phase linking = debugOutput.searchTrace != null ? debugOutput.searchTrace.startPhase() : null;
         if (findPlaces) {
             if (opt.batch) {
                 // batch mode: find an OSM vertex, don't split
@@ -284,6 +314,9 @@ public class RoutingContext implements Cloneable {
             fromVertex = from;
             toVertex = to;
         }
+        if (linking != null) {
+            debugOutput.searchTrace.endPhase("linking", linking);
+        }
 
         // If the from and to vertices are generated and lie on some of the same edges, we need to wire them
         // up along those edges so that we don't get odd circuitous routes for really short trips.
@@ -385,20 +418,20 @@ public class RoutingContext implements Cloneable {
         // can begin is 1 service day (e.g. a trip which started yesterday is usable today.) This
         // does not address the case where a trip started multiple days ago (e.g. a multi-day ferry
         // trip will not be board-able after day 2).
+        ServiceCalendarCache serviceCalendar = graph.getServiceCalendarCache();
         for (TimeZone timeZone : graph.getAllTimeZones()) {
             // Add today
-            addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate, calendarService, timeZone));
+            addIfNotExists(this.serviceDays, serviceCalendar.serviceDay(serviceDate, timeZone));
             // Add one day previous (previous in the direction of the transit search, so yesterday if
             // arriveBy=false and tomorrow if arriveBy=true
-            addIfNotExists(this.serviceDays, new ServiceDay(graph,
-                    opt.arriveBy ? serviceDate.next() : serviceDate.previous(),
-                    calendarService, timeZone));
+            addIfNotExists(this.serviceDays, serviceCalendar.serviceDay(
+                    opt.arriveBy ? serviceDate.next() : serviceDate.previous(), timeZone));
             // Add one or more days in the "forward" direction
             ServiceDate sd = serviceDate;
             int lookout = Math.max(1, opt.serviceDayLookout);
             for (int i = 0; i < lookout; i++) {
                 sd = opt.arriveBy ? sd.previous() : sd.next();
-                addIfNotExists(this.serviceDays, new ServiceDay(graph, sd, calendarService, timeZone));
+                addIfNotExists(this.serviceDays, serviceCalendar.serviceDay(sd, timeZone));
             }
         }
         serviceDays.sort(Comparator.comparing(ServiceDay::getServiceDate));
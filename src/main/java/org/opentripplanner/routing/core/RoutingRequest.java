@@ -670,6 +670,12 @@ public class RoutingRequest implements Cloneable, Serializable {
             .map(s -> s.strip().contains("true"))
             .orElse(false);
 
+    /**
+     * If true, a detailed profile of the search (per-phase timings, state counters and allocations) is collected and
+     * returned in the debug output of the response.
+     */
+    public boolean searchTrace = false;
+
     /* CONSTRUCTORS */
 
     /** Constructor for options; modes defaults to walk and transit */
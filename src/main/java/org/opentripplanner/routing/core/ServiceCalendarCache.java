@@ -0,0 +1,107 @@
+package org.opentripplanner.routing.core;
+
+import org.opentripplanner.common.model.T2;
+import org.opentripplanner.model.CalendarService;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The services running on each day of the transit feeds of a graph, shared by routing requests, index queries and
+ * realtime updaters instead of each of them looking up the service IDs of a date and setting their codes in a new
+ * BitSet.
+ *
+ * The service codes of all dates on which any service runs are computed once, by walking the dates of each service
+ * rather than the services of each date. The ServiceDays of these dates (which also hold the midnight of the date in a
+ * time zone, taking daylight saving time into account) are built for each time zone of the graph. ServiceDays for
+ * other dates within the feed validity window, or a few weeks around it, are added as they are requested. Those of
+ * dates further away are built for each request without being kept, so that unusual requests do not fill the cache.
+ *
+ * The returned BitSets and ServiceDays are shared and must not be modified.
+ */
+public class ServiceCalendarCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceCalendarCache.class);
+
+    /** ServiceDays up to this many days before or after the feed validity window are kept once requested. */
+    private static final int MARGIN_DAYS = 31;
+
+    private final CalendarService calendarService;
+
+    /** Returned for all dates without any service. */
+    private final BitSet noServices = new BitSet();
+
+    private final Map<ServiceDate, BitSet> servicesForDate = new ConcurrentHashMap<>();
+
+    /** ServiceDays by time zone ID and date. */
+    private final Map<T2<String, ServiceDate>, ServiceDay> serviceDays = new ConcurrentHashMap<>();
+
+    /** The first and last date of the window in which ServiceDays are kept, null if there is no service at all. */
+    private final ServiceDate firstDate, lastDate;
+
+    public ServiceCalendarCache (CalendarService calendarService, Map<FeedScopedId, Integer> serviceCodes,
+                                 Collection<TimeZone> timeZones) {
+        this.calendarService = calendarService;
+        int nServices = calendarService.getServiceIds().size();
+        ServiceDate first = null, last = null;
+        for (FeedScopedId serviceId : calendarService.getServiceIds()) {
+            Integer serviceCode = serviceCodes.get(serviceId);
+            if (serviceCode == null || serviceCode < 0) continue;
+            for (ServiceDate date : calendarService.getServiceDatesForServiceId(serviceId)) {
+                servicesForDate.computeIfAbsent(date, d -> new BitSet(nServices)).set(serviceCode);
+                if (first == null || date.compareTo(first) < 0) first = date;
+                if (last == null || date.compareTo(last) > 0) last = date;
+            }
+        }
+        firstDate = first == null ? null : first.shift(-MARGIN_DAYS);
+        lastDate = last == null ? null : last.shift(MARGIN_DAYS);
+
+        for (TimeZone timeZone : timeZones) {
+            for (Map.Entry<ServiceDate, BitSet> entry : servicesForDate.entrySet()) {
+                ServiceDate date = entry.getKey();
+                serviceDays.put(new T2<>(timeZone.getID(), date), makeServiceDay(date, timeZone, entry.getValue()));
+            }
+        }
+        LOG.info("Cached the services of {} days, from {} to {}, in {} time zones.", servicesForDate.size(), first,
+                last, timeZones.size());
+    }
+
+    /** @return the codes of the services running on the given date. This must not be modified. */
+    public BitSet servicesRunning (ServiceDate date) {
+        BitSet services = servicesForDate.get(date);
+        return services == null ? noServices : services;
+    }
+
+    /** @return the ServiceDay for the given date in the time zone of the given agency. */
+    public ServiceDay serviceDay (ServiceDate date, String agencyId) {
+        return serviceDay(date, calendarService.getTimeZoneForAgencyId(agencyId));
+    }
+
+    /** @return the ServiceDay for the given date in the given time zone. */
+    public ServiceDay serviceDay (ServiceDate date, TimeZone timeZone) {
+        T2<String, ServiceDate> key = new T2<>(timeZone.getID(), date);
+        ServiceDay serviceDay = serviceDays.get(key);
+        if (serviceDay != null) {
+            return serviceDay;
+        }
+        serviceDay = makeServiceDay(date, timeZone, servicesRunning(date));
+        if (firstDate != null && date.compareTo(firstDate) >= 0 && date.compareTo(lastDate) <= 0) {
+            ServiceDay previous = serviceDays.putIfAbsent(key, serviceDay);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return serviceDay;
+    }
+
+    private static ServiceDay makeServiceDay (ServiceDate date, TimeZone timeZone, BitSet services) {
+        return new ServiceDay(date, date.getAsDate(timeZone).getTime() / 1000, services);
+    }
+}
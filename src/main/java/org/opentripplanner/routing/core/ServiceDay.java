@@ -51,6 +51,13 @@ public class ServiceDay implements Serializable {
         init(graph, cs, timeZone);
     }
 
+    /** Make a ServiceDay sharing the given set of service codes, see ServiceCalendarCache. */
+    ServiceDay(ServiceDate serviceDate, long midnight, BitSet serviceIdsRunning) {
+        this.serviceDate = serviceDate;
+        this.midnight = midnight;
+        this.serviceIdsRunning = serviceIdsRunning;
+    }
+
     private void init(Graph graph, CalendarService cs, TimeZone timeZone) {
         Date d = serviceDate.getAsDate(timeZone);
         this.midnight = d.getTime() / 1000;
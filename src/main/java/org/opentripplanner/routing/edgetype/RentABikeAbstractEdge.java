@@ -60,12 +60,20 @@ public abstract class RentABikeAbstractEdge extends Edge {
 
     public static State startRental(Edge edge, State state, RoutingRequest options, Set<String> networks, TraverseMode vehicleMode) {
         StateEditor editor = state.edit(edge);
+        startRental(editor, options, networks, vehicleMode);
+        editor.setBackMode(state.getNonTransitMode());
+        return editor.makeState();
+    }
+
+    /**
+     * Add the cost of renting a vehicle to a state being edited, and switch it to the rented vehicle's mode. This is
+     * also used when a free-floating vehicle is picked up while traversing a street edge.
+     */
+    public static void startRental(StateEditor editor, RoutingRequest options, Set<String> networks, TraverseMode vehicleMode) {
         editor.incrementWeight(options.arriveBy ? options.bikeRentalDropoffCost : options.bikeRentalPickupCost);
         editor.incrementTimeInSeconds(options.arriveBy ? options.bikeRentalDropoffTime : options.bikeRentalPickupTime);
         editor.beginVehicleRenting(vehicleMode);
         editor.setBikeRentalNetworks(networks);
-        editor.setBackMode(state.getNonTransitMode());
-        return editor.makeState();
     }
 
     private boolean noBikeRentalNetworkAllowed(Set<String> allowedBikeRentalNetworks) {
@@ -104,7 +112,16 @@ public abstract class RentABikeAbstractEdge extends Edge {
 
     public static State dropOffBike(Edge currentEdge, State state, RoutingRequest options, boolean freeFloatingDropOff) {
         StateEditor editor = state.edit(currentEdge);
+        dropOffBike(editor, options, freeFloatingDropOff);
+        editor.setBackMode(TraverseMode.WALK);
+        return editor.makeState();
+    }
 
+    /**
+     * Add the cost of returning a rented vehicle to a state being edited, and switch it back to walking. In an
+     * arrive-by search this is where the vehicle was picked up.
+     */
+    public static void dropOffBike(StateEditor editor, RoutingRequest options, boolean freeFloatingDropOff) {
         if(freeFloatingDropOff) {
             editor.incrementWeight(options.bikeRentalFreeFloatDropoffCost);
         }
@@ -112,8 +129,6 @@ public abstract class RentABikeAbstractEdge extends Edge {
         editor.incrementWeight(options.arriveBy ? options.bikeRentalPickupCost : options.bikeRentalDropoffCost);
         editor.incrementTimeInSeconds(options.arriveBy ? options.bikeRentalPickupTime : options.bikeRentalDropoffTime);
         editor.doneVehicleRenting();
-        editor.setBackMode(TraverseMode.WALK);
-        return editor.makeState();
     }
 
     @Override
@@ -7,9 +7,12 @@ import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.common.geometry.*;
 import org.opentripplanner.common.model.P2;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.FreeFloatingVehicleLookup;
 import org.opentripplanner.routing.core.*;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BarrierVertex;
 import org.opentripplanner.routing.vertextype.IntersectionVertex;
 import org.opentripplanner.routing.vertextype.OsmVertex;
@@ -27,6 +30,7 @@ import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * This represents a street segment.
@@ -254,6 +258,16 @@ public class StreetEdge extends Edge implements Cloneable {
         final TraverseMode currMode = s0.getNonTransitMode();
         StateEditor editor = doTraverse(s0, options, s0.getNonTransitMode());
         State state = (editor == null) ? null : editor.makeState();
+        /* Free-floating rental vehicles are not linked into the graph, they are looked up near each vertex reached. */
+        if (state != null && options.allowBikeRental && options.rctx != null) {
+            FreeFloatingVehicleLookup freeFloatingVehicles = options.rctx.freeFloatingVehicles;
+            if (freeFloatingVehicles != null) {
+                State rentalState = traverseFreeFloatingRental(s0, options, freeFloatingVehicles);
+                if (rentalState != null) {
+                    state = rentalState.addToExistingResultChain(state);
+                }
+            }
+        }
         /* Kiss and ride support. Mode transitions occur without the explicit loop edges used in park-and-ride. */
         if (options.kissAndRide || options.rideAndKiss) {
             // Use of ride and kiss (instead of kiss and ride) will reverse the following car/walk mode change
@@ -287,6 +301,60 @@ public class StreetEdge extends Edge implements Cloneable {
         return state;
     }
 
+    /**
+     * Traverse this edge and pick up a free-floating rental vehicle close to the vertex reached. In an arrive-by search
+     * the rented vehicle is ridden along this edge and was picked up close to the vertex reached.
+     *
+     * @return the state after renting, or null if there is no vehicle nearby that can be rented
+     */
+    private State traverseFreeFloatingRental(State s0, RoutingRequest options,
+            FreeFloatingVehicleLookup freeFloatingVehicles) {
+        Set<String> networks;
+        if (options.arriveBy) {
+            if (!s0.isBikeRenting()) {
+                return null;
+            }
+            networks = s0.getBikeRentalNetworks();
+        } else {
+            if (s0.isBikeRenting() || s0.getNonTransitMode() != TraverseMode.WALK
+                    || !options.modes.contains(TraverseMode.BICYCLE)) {
+                return null;
+            }
+            networks = options.allowedBikeRentalNetworks;
+            if (networks != null && networks.isEmpty()) {
+                return null;
+            }
+        }
+
+        Vertex vertex = options.arriveBy ? fromv : tov;
+        BikeRentalStation vehicle = freeFloatingVehicles.getNearestVehicle(vertex.getLon(), vertex.getLat(),
+                networks, options.useBikeRentalAvailabilityInformation);
+        if (vehicle == null) {
+            return null;
+        }
+        TraverseMode vehicleMode = vehicle.isCarStation ? TraverseMode.CAR : TraverseMode.BICYCLE;
+        if (options.arriveBy && s0.getNonTransitMode() != vehicleMode) {
+            return null;
+        }
+
+        StateEditor editor = doTraverse(s0, options, s0.getNonTransitMode());
+        if (editor == null) {
+            return null;
+        }
+        double distance = SphericalDistanceLibrary.fastDistance(vertex.getLat(), vertex.getLon(), vehicle.y,
+                vehicle.x);
+        int walkTime = (int) Math.ceil(distance / options.walkSpeed);
+        editor.incrementTimeInSeconds(walkTime);
+        editor.incrementWeight(walkTime * options.walkReluctance);
+        editor.incrementWalkDistance(distance);
+        if (options.arriveBy) {
+            RentABikeAbstractEdge.dropOffBike(editor, options, false);
+        } else {
+            RentABikeAbstractEdge.startRental(editor, options, vehicle.networks, vehicleMode);
+        }
+        return editor.makeState();
+    }
+
     /** return a StateEditor rather than a State so that we can make parking/mode switch modifications for kiss-and-ride. */
     private StateEditor doTraverse(State s0, RoutingRequest options, TraverseMode traverseMode) {
         boolean walkingBike = options.walkingBike;
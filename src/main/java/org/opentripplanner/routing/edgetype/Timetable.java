@@ -10,6 +10,7 @@ import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StopTransfer;
@@ -183,6 +184,7 @@ public class Timetable implements Serializable {
 
         boolean isReverseOptimizing = s0.getOptions().reverseOptimizing;
         int requestStartTime = serviceDay.secondsSinceMidnight(s0.getOptions().getSecondsSinceEpoch());
+        int tripsScanned = 0;
 
         for (TripTimes tt : tripTimes) {
             if (tt.isCanceled() && omitCanceled) continue;
@@ -191,6 +193,7 @@ public class Timetable implements Serializable {
             if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
             int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
             if (adjustedTime == -1) continue;
+            tripsScanned++;
             if (boarding) {
                 if (tt.isCanceledDeparture(stopIndex) && omitCanceled) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
                 // For GTFS-Flex, if this is a flag-stop or deviated-route board/alight, we need to
@@ -253,6 +256,7 @@ public class Timetable implements Serializable {
             if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
             int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
             if (adjustedTime == -1) continue;
+            tripsScanned++;
             LOG.debug("  running freq {}", freq);
             if (boarding) {
                 int depTime = freq.nextDepartureTime(stopIndex, adjustedTime); // min transfer time included in search
@@ -275,6 +279,10 @@ public class Timetable implements Serializable {
             // Materialize that FrequencyEntry entry at the given time.
             bestTrip = bestFreq.tripTimes.timeShift(stopIndex, bestTime, boarding);
         }
+        RoutingContext rctx = s0.getOptions().rctx;
+        if (rctx != null) {
+            rctx.tripsScanned += tripsScanned;
+        }
         return bestTrip;
     }
 
@@ -236,6 +236,78 @@ public class TimetableSnapshot {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
         }
         
+        Timetable tt = getWritableTimetable(pattern, serviceDate);
+        
+        // Assume all trips in a pattern are from the same feed, which should be the case.
+        // Find trip index
+        int tripIndex = tt.getTripIndex(updatedTripTimes.trip.getId());
+        if (tripIndex == -1) {
+            // Trip not found, add it
+            tt.addTripTimes(updatedTripTimes);
+            // Remember this pattern for the added trip id and service date
+            String tripId = updatedTripTimes.trip.getId().getId();
+            TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
+            lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
+        } else {
+            // Set updated trip times of trip
+            tt.setTripTimes(tripIndex, updatedTripTimes);
+        }
+        
+        // The time tables are finished during the commit
+        
+        return true;
+    }
+
+    /**
+     * Undo the updates of one trip in the timetable of a trip pattern for a service date: the trip gets its scheduled
+     * trip times back if it is part of the scheduled timetable of the pattern, otherwise it is removed from the
+     * timetable.
+     *
+     * @param feedId feed id the trip id belongs to
+     * @param pattern trip pattern
+     * @param tripId trip id (without agency)
+     * @param serviceDate service day of the updates to undo
+     * @return whether the timetable contained updated trip times for this trip
+     */
+    public boolean revert(String feedId, TripPattern pattern, String tripId, ServiceDate serviceDate) {
+        // Preconditions
+        Preconditions.checkNotNull(pattern);
+        Preconditions.checkNotNull(serviceDate);
+
+        if (readOnly) {
+            throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
+        }
+
+        Timetable tt = resolve(pattern, serviceDate);
+        int tripIndex = tt.getTripIndex(tripId);
+        if (tt == pattern.scheduledTimetable || tripIndex == -1) {
+            return false;
+        }
+        int scheduledIndex = pattern.scheduledTimetable.getTripIndex(tripId);
+        TripTimes scheduledTripTimes = scheduledIndex == -1 ? null : pattern.scheduledTimetable.getTripTimes(scheduledIndex);
+        if (tt.getTripTimes(tripIndex) == scheduledTripTimes) {
+            return false;
+        }
+
+        tt = getWritableTimetable(pattern, serviceDate);
+        tripIndex = tt.getTripIndex(tripId);
+        if (scheduledTripTimes != null) {
+            tt.setTripTimes(tripIndex, scheduledTripTimes);
+        } else {
+            tt.tripTimes.remove(tripIndex);
+            TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
+            if (lastAddedTripPattern.get(tripIdAndServiceDate) == pattern) {
+                lastAddedTripPattern.remove(tripIdAndServiceDate);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the timetable of the pattern for the service date that can be modified in this snapshot, copying it the
+     *         first time it is modified since the last commit.
+     */
+    private Timetable getWritableTimetable(TripPattern pattern, ServiceDate serviceDate) {
         Timetable tt = resolve(pattern, serviceDate);
         // we need to perform the copy of Timetable here rather than in Timetable.update()
         // to avoid repeatedly copying in case several updates are applied to the same timetable
@@ -258,25 +330,7 @@ public class TimetableSnapshot {
             dirtyTimetables.add(tt);
             dirty = true;
         }
-        
-        // Assume all trips in a pattern are from the same feed, which should be the case.
-        // Find trip index
-        int tripIndex = tt.getTripIndex(updatedTripTimes.trip.getId());
-        if (tripIndex == -1) {
-            // Trip not found, add it
-            tt.addTripTimes(updatedTripTimes);
-            // Remember this pattern for the added trip id and service date
-            String tripId = updatedTripTimes.trip.getId().getId();
-            TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
-            lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
-        } else {
-            // Set updated trip times of trip
-            tt.setTripTimes(tripIndex, updatedTripTimes);
-        }
-        
-        // The time tables are finished during the commit
-        
-        return true;
+        return tt;
     }
 
     /**
@@ -395,6 +449,15 @@ public class TimetableSnapshot {
         return modified;
     }
 
+    /**
+     * @return all trip patterns with updated timetables or added trips in this snapshot.
+     */
+    public Set<TripPattern> getPatternsInUse() {
+        Set<TripPattern> patterns = new HashSet<>(timetables.keySet());
+        patterns.addAll(lastAddedTripPattern.values());
+        return patterns;
+    }
+
     public boolean isDirty() {
         if (readOnly) return false;
         return dirty;
@@ -43,6 +43,7 @@ import org.opentripplanner.profile.StopClusterMode;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
+import org.opentripplanner.routing.core.ServiceCalendarCache;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
@@ -81,7 +82,8 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    /** The sets of alert patches are never modified once stored here, so they can be read without locking. */
+    private final Map<Edge, Set<AlertPatch>> alertPatches = new ConcurrentHashMap<Edge, Set<AlertPatch>>();
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
 
@@ -103,6 +105,8 @@ public class Graph implements Serializable {
 
     private transient CalendarService calendarService;
 
+    private transient volatile ServiceCalendarCache serviceCalendarCache;
+
     private boolean debugData = true;
 
     // TODO this would be more efficient if it was just an array.
@@ -266,9 +270,7 @@ public class Graph implements Serializable {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
-            }
+            alertPatches.remove(e);
 
             turnRestrictions.remove(e);
             streetNotesService.removeStaticNotes(e);
@@ -356,19 +358,17 @@ public class Graph implements Serializable {
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
+        alertPatches.compute(edge, (e, alertPatches) -> {
             if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
+                return Collections.singleton(alertPatch);
             }
-        }
+            if (alertPatches.contains(alertPatch)) {
+                return alertPatches;
+            }
+            Set<AlertPatch> copy = new HashSet<AlertPatch>(alertPatches);
+            copy.add(alertPatch);
+            return copy;
+        });
     }
 
     /**
@@ -379,16 +379,17 @@ public class Graph implements Serializable {
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
-                } else {
-                    alertPatches.remove(alertPatch);
-                }
+        alertPatches.computeIfPresent(edge, (e, alertPatches) -> {
+            if (!alertPatches.contains(alertPatch)) {
+                return alertPatches;
             }
-        }
+            if (alertPatches.size() < 2) {
+                return null;
+            }
+            Set<AlertPatch> copy = new HashSet<AlertPatch>(alertPatches);
+            copy.remove(alertPatch);
+            return copy;
+        });
     }
 
     /**
@@ -398,11 +399,9 @@ public class Graph implements Serializable {
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
         if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
+            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
+            if (alertPatches != null) {
+                return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
             }
         }
         return new AlertPatch[0];
@@ -700,6 +699,8 @@ public class Graph implements Serializable {
             if (ttp != null) ttp.scheduledTimetable.finish(); // skip frequency-based patterns with no table (null)
         }
         // TODO: Move this ^ stuff into the graph index
+        // service codes may have been added since the calendar was cached
+        serviceCalendarCache = null;
         this.index = new GraphIndex(this);
         if (useFlexService ) {
             this.flexIndex = new FlexIndex();
@@ -871,6 +872,23 @@ public class Graph implements Serializable {
         return this.calendarService;
     }
 
+    /**
+     * @return the services running on each day, shared by all users of this graph, or null if it has no calendar
+     * service.
+     */
+    public ServiceCalendarCache getServiceCalendarCache() {
+        ServiceCalendarCache cache = serviceCalendarCache;
+        if (cache == null) {
+            CalendarService calendarService = getCalendarService();
+            if (calendarService == null) {
+                return null;
+            }
+            cache = new ServiceCalendarCache(calendarService, serviceCodes, getAllTimeZones());
+            serviceCalendarCache = cache;
+        }
+        return cache;
+    }
+
     public int removeEdgelessVertices() {
         int removed = 0;
         List<Vertex> toRemove = new LinkedList<Vertex>();
@@ -952,7 +970,7 @@ public class Graph implements Serializable {
         List<TimeZone> timeZones = new ArrayList<>();
         for (String feedId : getFeedIds()) {
             for (Agency agency : getAgencies(feedId)) {
-                TimeZone timeZone = calendarService.getTimeZoneForAgencyId(agency.getId());
+                TimeZone timeZone = getCalendarService().getTimeZoneForAgencyId(agency.getId());
                 if (timeZone != null) {
                     timeZones.add(timeZone);
                 }
@@ -4,11 +4,8 @@ import static java.lang.Math.min;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.attribute.FileAttribute;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -50,7 +47,6 @@ import io.sentry.Sentry;
 import io.sentry.event.Event;
 import io.sentry.event.EventBuilder;
 
-import org.apache.lucene.util.PriorityQueue;
 import org.joda.time.LocalDate;
 import org.opentripplanner.model.Agency;
 import org.opentripplanner.model.FeedScopedId;
@@ -59,15 +55,18 @@ import org.opentripplanner.model.Route;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
-import org.opentripplanner.model.CalendarService;
 import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.index.DepartureIndex;
+import org.opentripplanner.index.DepartureIndex.Departures;
 import org.opentripplanner.index.FieldErrorInstrumentation;
+import org.opentripplanner.index.GraphQLRequestContext;
 import org.opentripplanner.index.IndexGraphQLSchema;
+import org.opentripplanner.index.ResolverCache;
 import org.opentripplanner.index.ResourceConstrainedExecutorServiceExecutionStrategy;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
@@ -75,7 +74,9 @@ import org.opentripplanner.profile.ProfileTransfer;
 import org.opentripplanner.profile.StopCluster;
 import org.opentripplanner.profile.StopClusterMode;
 import org.opentripplanner.profile.StopNameNormalizer;
+import org.opentripplanner.profile.RaptorWorkerDataCache;
 import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.alertpatch.AlertIndex;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.algorithm.ExtendedTraverseVisitor;
@@ -87,6 +88,7 @@ import org.opentripplanner.routing.car_park.CarPark;
 import org.opentripplanner.routing.core.Fare.FareType;
 import org.opentripplanner.routing.core.FareRuleSet;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceCalendarCache;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TicketType;
@@ -154,10 +156,6 @@ public class GraphIndex {
     public final Map<FeedScopedId, TicketType> ticketTypesForId = Maps.newHashMap();
     public final Map<FeedScopedId, Geometry> flexAreasById = Maps.newHashMap();
 
-    /* Should eventually be replaced with new serviceId indexes. */
-    private final CalendarService calendarService;
-    private final Map<FeedScopedId,Integer> serviceCodes;
-
     /* Full-text search extensions */
     public transient LuceneIndex luceneIndex;
 
@@ -174,6 +172,14 @@ public class GraphIndex {
     /** Store distances from each stop to all nearby street intersections. Useful in speeding up analyst requests. */
     private transient StopTreeCache stopTreeCache = null;
 
+    private transient RaptorWorkerDataCache raptorWorkerDataCache = null;
+
+    /** Departures per timetable, service date and stop position, sorted by time, for departure board queries. */
+    public final DepartureIndex departureIndex = new DepartureIndex();
+
+    /** Active alert patches, replaced as a whole after every alerts update. */
+    private volatile AlertIndex alertIndex = AlertIndex.EMPTY;
+
     final transient GraphQLSchema indexSchema;
 
     public final ExecutorService threadPool;
@@ -258,9 +264,6 @@ public class GraphIndex {
             routeForId.put(route.getId(), route);
         }
 
-        // Copy these two service indexes from the graph until we have better ones.
-        calendarService = graph.getCalendarService();
-        serviceCodes = graph.serviceCodes;
         this.graph = graph;
         threadPool = Executors.newCachedThreadPool(
             new ThreadFactoryBuilder().setNameFormat("GraphQLExecutor-" + graph.routerId + "-%d")
@@ -473,13 +476,9 @@ public class GraphIndex {
     public LuceneIndex getLuceneIndex() {
         synchronized (this) {
             if (luceneIndex == null) {
-                File directory;
-                try {
-                    directory = Files.createTempDirectory(graph.routerId + "_lucene",
-                        (FileAttribute<?>[]) new FileAttribute[]{}).toFile();
-                } catch (IOException e) {
-                    return null;
-                }
+                // A fixed location, so that the index can be reused after a restart
+                File directory = new File(System.getProperty("java.io.tmpdir"),
+                    "otp_lucene" + File.separator + (graph.routerId != null ? graph.routerId : "default"));
                 // Synchronously lazy-initialize the Lucene index
                 luceneIndex = new LuceneIndex(this, directory, false);
             }
@@ -550,6 +549,10 @@ public class GraphIndex {
             return index.stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
         }
 
+        public List<TripTimeShort> getStoptimes(GraphIndex index, ResolverCache cache, long startTime, int timeRange, int numberOfDepartures, boolean omitNonPickups, boolean omitCanceled) {
+            return index.stopTimesForPattern(cache, stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
+        }
+
         public static DepartureRow fromId(GraphIndex index, String id) {
             String[] parts = id.split(";", 3);
             FeedScopedId stopId = new FeedScopedId(parts[0], parts[1]);
@@ -707,15 +710,12 @@ public class GraphIndex {
         return modesForStop(stop).anyMatch(modes::contains);
     }
 
-    /** An OBA Service Date is a local date without timezone, only year month and day. */
+    /**
+     * An OBA Service Date is a local date without timezone, only year month and day.
+     * The returned set is shared by all callers (see ServiceCalendarCache) and must not be modified.
+     */
     public BitSet servicesRunning (ServiceDate date) {
-        BitSet services = new BitSet(calendarService.getServiceIds().size());
-        for (FeedScopedId serviceId : calendarService.getServiceIdsOnDate(date)) {
-            int n = serviceCodes.get(serviceId);
-            if (n < 0) continue;
-            services.set(n);
-        }
-        return services;
+        return graph.getServiceCalendarCache().servicesRunning(date);
     }
 
     /**
@@ -758,12 +758,20 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> stopTimesForStop(final Stop stop, final long startTime, final int timeRange, final int numberOfDepartures, boolean omitNonPickups, boolean omitCanceled) {
+        return stopTimesForStop(new ResolverCache(this), stop, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
+    }
+
+    /**
+     * Fetch upcoming vehicle departures from a stop, resolving timetables and service days through the given cache
+     * so that they can be shared with other lookups of the same GraphQL execution.
+     */
+    public List<StopTimesInPattern> stopTimesForStop(final ResolverCache cache, final Stop stop, final long startTime, final int timeRange, final int numberOfDepartures, boolean omitNonPickups, boolean omitCanceled) {
 
         final List<StopTimesInPattern> ret = new ArrayList<>();
 
         for (final TripPattern pattern : patternsForStop.get(stop)) {
 
-            final List<TripTimeShort> stopTimesForStop = stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
+            final List<TripTimeShort> stopTimesForStop = stopTimesForPattern(cache, stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
 
 
             if (stopTimesForStop.size() >0) {
@@ -798,6 +806,15 @@ public class GraphIndex {
      */
     public List<TripTimeShort> stopTimesForPattern(final Stop stop, final TripPattern pattern, long startTime, final int timeRange,
                                                    int numberOfDepartures, boolean omitNonPickups, boolean omitCanceled) {
+        return stopTimesForPattern(new ResolverCache(this), stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, omitCanceled);
+    }
+
+    /**
+     * Fetch next n upcoming vehicle departures for a stop of pattern, resolving timetables and service days through
+     * the given cache.
+     */
+    public List<TripTimeShort> stopTimesForPattern(final ResolverCache cache, final Stop stop, final TripPattern pattern, long startTime, final int timeRange,
+                                                   int numberOfDepartures, boolean omitNonPickups, boolean omitCanceled) {
 
         if (pattern == null) {
             return Collections.emptyList();
@@ -806,77 +823,103 @@ public class GraphIndex {
             startTime = System.currentTimeMillis() / 1000;
         }
 
-        final PriorityQueue<TripTimeShort> ret = new PriorityQueue<TripTimeShort>(numberOfDepartures) {
-
-                @Override
-            protected boolean lessThan(final TripTimeShort t1, final TripTimeShort t2) {
-                return (t1.serviceDay + t1.realtimeDeparture) > (t2.serviceDay
-                        + t2.realtimeDeparture);
-                }
-            };
-
-        final TimetableSnapshot snapshot = (graph.timetableSnapshotSource != null)
-            ? graph.timetableSnapshotSource.getTimetableSnapshot() : null;
+        // One cursor per service date and stop position, merged in order of departure.
+        final PriorityQueue<DepartureCursor> cursors = new PriorityQueue<>();
 
         Date date = new Date(startTime * 1000);
         final ServiceDate[] serviceDates = {new ServiceDate(date).previous(), new ServiceDate(date), new ServiceDate(date).next()};
-            // Loop through all possible days
+        // Loop through all possible days
         for (final ServiceDate serviceDate : serviceDates) {
-            final ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService,
-                    pattern.route.getAgency().getId());
-                Timetable tt;
-                if (snapshot != null){
-                    tt = snapshot.resolve(pattern, serviceDate);
-                } else {
-                    tt = pattern.scheduledTimetable;
-                }
+            final ServiceDay sd = cache.serviceDay(serviceDate, pattern.route.getAgency().getId());
+            Timetable tt = cache.resolve(pattern, serviceDate);
 
-                if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
+            if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
 
             final int starttimeSecondsSinceMidnight = sd.secondsSinceMidnight(startTime);
-            int stopIndex = 0;
+            final int endtimeSecondsSinceMidnight = starttimeSecondsSinceMidnight + timeRange;
 
             // loop through all stops of pattern
-            for (final Stop currStop : pattern.stopPattern.stops) {
-                if (currStop.equals(stop)) {
-                    if(omitNonPickups && pattern.stopPattern.pickups[stopIndex] == pattern.stopPattern.PICKDROP_NONE) continue;
-                    for (final TripTimes triptimes : tt.tripTimes) {
-                        if (!sd.serviceRunning(triptimes.serviceCode))
-                            continue;
-                        int stopDepartureTime = triptimes.getDepartureTime(stopIndex);
-                        if (!(omitCanceled && triptimes.isCanceledDeparture(stopIndex)) && stopDepartureTime >= starttimeSecondsSinceMidnight && stopDepartureTime < starttimeSecondsSinceMidnight + timeRange) {
-                            ret.insertWithOverflow(new TripTimeShort(triptimes, stopIndex, currStop, sd));
-                            }
-                        }
+            for (int stopIndex = 0; stopIndex < pattern.stopPattern.size; stopIndex++) {
+                final Stop currStop = pattern.stopPattern.stops[stopIndex];
+                if (!currStop.equals(stop)) continue;
+                if (omitNonPickups && pattern.stopPattern.pickups[stopIndex] == pattern.stopPattern.PICKDROP_NONE) continue;
+
+                Departures departures = departureIndex.getDepartures(tt, serviceDate, sd, stopIndex);
+                addCursor(cursors, departures, sd, stopIndex, starttimeSecondsSinceMidnight, endtimeSecondsSinceMidnight);
 
-                        // TODO: This needs to be adapted after #1647 is merged
+                // TODO: This needs to be adapted after #1647 is merged
+                if (!tt.frequencyEntries.isEmpty()) {
+                    List<TripTimes> frequencyTrips = new ArrayList<>();
                     for (final FrequencyEntry freq : tt.frequencyEntries) {
-                            if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
+                        if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
                         int departureTime = freq.nextDepartureTime(stopIndex, starttimeSecondsSinceMidnight);
-                            if (omitCanceled && departureTime == -1) continue;
+                        if (departureTime == -1) continue;
                         final int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(stopIndex)
                                 - freq.tripTimes.getDepartureTime(0);
-                        while (departureTime <= lastDeparture && ret.size() < numberOfDepartures) {
-                            ret.insertWithOverflow(new TripTimeShort(freq.materialize(stopIndex, departureTime, true),
-                                    stopIndex, currStop, sd));
-                                departureTime += freq.headway;
-                            }
+                        for (int n = 0; departureTime <= lastDeparture && n < numberOfDepartures; n++) {
+                            frequencyTrips.add(freq.materialize(stopIndex, departureTime, true));
+                            departureTime += freq.headway;
                         }
                     }
-                stopIndex++;
+                    addCursor(cursors, DepartureIndex.Departures.of(frequencyTrips, stopIndex), sd, stopIndex,
+                            starttimeSecondsSinceMidnight, endtimeSecondsSinceMidnight);
                 }
             }
+        }
 
         final List<TripTimeShort> result = new ArrayList<>();
-        while(ret.size()>0) {
-            TripTimeShort tripTimeShort = ret.pop();
-            if (!result.contains(tripTimeShort)) {
-                result.add(0, tripTimeShort);
+        final Set<TripTimeShort> seen = new HashSet<>();
+        while (result.size() < numberOfDepartures && !cursors.isEmpty()) {
+            DepartureCursor cursor = cursors.poll();
+            TripTimes tripTimes = cursor.departures.tripTimes[cursor.position];
+            if (!(omitCanceled && tripTimes.isCanceledDeparture(cursor.stopIndex))) {
+                TripTimeShort tripTimeShort = new TripTimeShort(tripTimes, cursor.stopIndex, stop, cursor.serviceDay);
+                if (seen.add(tripTimeShort)) {
+                    result.add(tripTimeShort);
                 }
             }
+            if (++cursor.position < cursor.end) {
+                cursors.add(cursor);
+            }
+        }
         return result;
+    }
+
+    private static void addCursor(PriorityQueue<DepartureCursor> cursors, Departures departures,
+                                  ServiceDay serviceDay, int stopIndex, int startTime, int endTime) {
+        int position = departures.firstAtOrAfter(startTime);
+        int end = departures.firstAtOrAfter(endTime);
+        if (position < end) {
+            cursors.add(new DepartureCursor(departures, serviceDay, stopIndex, position, end));
+        }
+    }
+
+    /** Position in the sorted departures of one timetable at one stop position, on one service day. */
+    private static class DepartureCursor implements Comparable<DepartureCursor> {
+        final Departures departures;
+        final ServiceDay serviceDay;
+        final int stopIndex;
+        final int end;
+        int position;
+
+        DepartureCursor(Departures departures, ServiceDay serviceDay, int stopIndex, int position, int end) {
+            this.departures = departures;
+            this.serviceDay = serviceDay;
+            this.stopIndex = stopIndex;
+            this.position = position;
+            this.end = end;
+        }
+
+        long time() {
+            return serviceDay.time(departures.times[position]);
         }
 
+        @Override
+        public int compareTo(DepartureCursor other) {
+            return Long.compare(time(), other.time());
+        }
+    }
+
     /**
      * Get a list of all trips that pass through a stop during a single ServiceDate. Useful when creating complete stop
      * timetables for a single day.
@@ -887,32 +930,28 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate, boolean omitNonPickups, boolean omitCanceled) {
+        return getStopTimesForStop(new ResolverCache(this), stop, serviceDate, omitNonPickups, omitCanceled);
+    }
+
+    /**
+     * Get a list of all trips that pass through a stop during a single ServiceDate, resolving timetables and service
+     * days through the given cache.
+     */
+    public List<StopTimesInPattern> getStopTimesForStop(ResolverCache cache, Stop stop, ServiceDate serviceDate, boolean omitNonPickups, boolean omitCanceled) {
         List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
         Collection<TripPattern> patterns = patternsForStop.get(stop);
         for (TripPattern pattern : patterns) {
             StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
-            Timetable tt;
-            if (snapshot != null){
-                tt = snapshot.resolve(pattern, serviceDate);
-            } else {
-                tt = pattern.scheduledTimetable;
-            }
-            ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
-            int sidx = 0;
-            for (Stop currStop : pattern.stopPattern.stops) {
-                if (currStop.equals(stop)) {
-                    if(omitNonPickups && pattern.stopPattern.pickups[sidx] == pattern.stopPattern.PICKDROP_NONE) continue;
-                    for (TripTimes t : tt.tripTimes) {
-                        if (!sd.serviceRunning(t.serviceCode)) continue;
-                        if (omitCanceled && t.isTimeCanceled(sidx)) continue;
-                        stopTimes.times.add(new TripTimeShort(t, sidx, stop, sd));
-                    }
+            Timetable tt = cache.resolve(pattern, serviceDate);
+            ServiceDay sd = cache.serviceDay(serviceDate, pattern.route.getAgency().getId());
+            for (int sidx = 0; sidx < pattern.stopPattern.size; sidx++) {
+                if (!pattern.stopPattern.stops[sidx].equals(stop)) continue;
+                if (omitNonPickups && pattern.stopPattern.pickups[sidx] == pattern.stopPattern.PICKDROP_NONE) continue;
+                Departures departures = departureIndex.getDepartures(tt, serviceDate, sd, sidx);
+                for (TripTimes t : departures.tripTimes) {
+                    if (omitCanceled && t.isTimeCanceled(sidx)) continue;
+                    stopTimes.times.add(new TripTimeShort(t, sidx, stop, sd));
                 }
-                sidx++;
             }
             ret.add(stopTimes);
         }
@@ -931,6 +970,29 @@ public class GraphIndex {
         return stopTreeCache;
     }
 
+    /**
+     * Use the stop trees saved in the given file at graph build time, rather than computing them on first use. This
+     * does nothing if the file was not saved for this graph.
+     */
+    public void loadStopTreeCache(File file) {
+        StopTreeCache cache = StopTreeCache.load(file, graph, MAX_WALK_METERS);
+        if (cache != null) {
+            stopTreeCache = cache;
+        }
+    }
+
+    /** Fetch the RAPTOR transit data shared by the profile requests on this graph, lazy-building the cache as needed. */
+    public RaptorWorkerDataCache getRaptorWorkerDataCache() {
+        if (raptorWorkerDataCache == null) {
+            synchronized (this) {
+                if (raptorWorkerDataCache == null) {
+                    raptorWorkerDataCache = new RaptorWorkerDataCache(graph);
+                }
+            }
+        }
+        return raptorWorkerDataCache;
+    }
+
     /**
      * Get the most up-to-date timetable for the given TripPattern, as of right now.
      * There should probably be a less awkward way to do this that just gets the latest entry from the resolver without
@@ -1050,17 +1112,24 @@ public class GraphIndex {
     public HashMap<String, Object> getGraphQLExecutionResult(String query, Router router,
         Map<String, Object> variables, String operationName, int timeout, long maxResolves, MultivaluedMap<String, String> headers) {
 
-        GraphQL graphQL = GraphQL.newGraphQL(indexSchema).queryExecutionStrategy(
-            new ResourceConstrainedExecutorServiceExecutionStrategy(threadPool, timeout, TimeUnit.MILLISECONDS, maxResolves)
-        ).instrumentation(FieldErrorInstrumentation.get(query, router, variables, headers)).build();
+        ResourceConstrainedExecutorServiceExecutionStrategy executionStrategy =
+            new ResourceConstrainedExecutorServiceExecutionStrategy(threadPool, timeout, TimeUnit.MILLISECONDS, maxResolves);
+        GraphQL graphQL = GraphQL.newGraphQL(indexSchema).queryExecutionStrategy(executionStrategy)
+            .instrumentation(FieldErrorInstrumentation.get(query, router, variables, headers)).build();
 
         if (variables == null) {
             variables = new HashMap<>();
         }
 
-        ExecutionResult executionResult = graphQL.execute(query, operationName, router, variables);
+        ResolverCache resolverCache = new ResolverCache(this);
+        ExecutionResult executionResult = graphQL.execute(query, operationName,
+            new GraphQLRequestContext(router, resolverCache), variables);
         HashMap<String, Object> content = new HashMap<>();
 
+        LOG.debug("GraphQL query resolved {} fields (limit {}), resolver cache hits {}, misses {}",
+            executionStrategy.getResolveCount(), executionStrategy.getMaxResolves(), resolverCache.getHits(),
+            resolverCache.getMisses());
+
         if (!executionResult.getErrors().isEmpty()) {
             content.put("errors",
                 executionResult
@@ -1105,6 +1174,20 @@ public class GraphIndex {
         return content;
     }
 
+    /**
+     * Rebuild the alert index from the alert patches of all alert updaters. This must be called on the graph writer
+     * thread after an alerts feed has been applied, so that no patches are modified while the index is built.
+     */
+    public void updateAlertIndex() {
+        List<AlertPatch> alertPatches = getAlertPatchStream().collect(Collectors.toList());
+        alertIndex = new AlertIndex(alertIndex.version + 1, alertPatches);
+    }
+
+    /** The alert patches active since the last alerts update, indexed by the entities they affect. */
+    public AlertIndex getAlertIndex() {
+        return alertIndex;
+    }
+
     private Stream<AlertPatch> getAlertPatchStream() {
         if (graph.updaterManager == null) {
             return Stream.empty();
@@ -1118,50 +1201,32 @@ public class GraphIndex {
     }
 
     public List<AlertPatch> getAlerts() {
-        return getAlertPatchStream()
-            .collect(Collectors.toList());
+        return alertIndex.getAlerts();
     }
 
     public List<AlertPatch> getAlertsForRoute(Route route) {
-        return getAlertPatchStream()
-            .filter(alertPatch -> alertPatch.getRoute() != null)
-            .filter(alertPatch -> route.getId().equals(alertPatch.getRoute()))
-            .collect(Collectors.toList());
+        return alertIndex.getAlertsForRoute(route.getId());
     }
 
     public List<AlertPatch> getAlertsForTrip(Trip trip) {
-        return getAlertPatchStream()
-            .filter(alertPatch -> alertPatch.getTrip() != null)
-            .filter(alertPatch -> trip.getId().equals(alertPatch.getTrip()))
-            .collect(Collectors.toList());
+        return alertIndex.getAlertsForTrip(trip.getId());
     }
 
     public List<AlertPatch> getAlertsForPattern(TripPattern pattern) {
-        return getAlertPatchStream()
-            .filter(alertPatch -> alertPatch.getTripPatterns() != null)
-            .filter(alertPatch -> alertPatch.getTripPatterns().stream().anyMatch(tripPattern -> pattern.code.equals(tripPattern.code)))
-            .collect(Collectors.toList());
+        return alertIndex.getAlertsForPattern(pattern.code);
     }
 
     public List<AlertPatch> getAlertsForAgency(Agency agency) {
-        return getAlertPatchStream()
-            .filter(alertPatch -> alertPatch.getAgency() != null)
-            .filter(alertPatch -> agency.getId().equals(alertPatch.getAgency()))
-            .collect(Collectors.toList());
+        return alertIndex.getAlertsForAgency(agency.getId());
     }
 
     public List<AlertPatch> getAlertsForStop(Stop stop) {
-        return getAlertPatchStream()
-                .filter(alertPatch -> alertPatch.getStop() != null)
-                .filter(alertPatch -> {
-
-                    return stop.getId().equals(alertPatch.getStop());
-                })
-                .collect(Collectors.toList());
+        return alertIndex.getAlertsForStop(stop.getId());
     }
 
+    /** @return the alert patch with the given id, or null if there is none. */
     public AlertPatch getAlertForId(String id) {
-        return getAlertPatchStream().filter(alertPatch -> id.equals(alertPatch.getId())).findFirst().get();
+        return alertIndex.getAlertForId(id);
     }
 
     public Agency getAgencyWithFeedScopeId(String agencyFeedScopeIdRaw) {
@@ -1214,8 +1279,7 @@ public class GraphIndex {
     public List<TripTimeShort> getTripTimes(final Collection<TripPattern> patterns, final List<String> tripIds, final ServiceDate minDate, final ServiceDate maxDate, final Integer minDepartureTime, final Integer maxDepartureTime, final Integer minArrivalTime, final Integer maxArrivalTime, final RealTimeState state) {
         final TimetableSnapshot snapshot = (graph.timetableSnapshotSource != null) ? graph.timetableSnapshotSource.getTimetableSnapshot() : null;
         final ConcurrentHashMap<TripPattern, Collection<Timetable>> timetableForPattern = new ConcurrentHashMap<>();
-        final ConcurrentHashMap<String, ServiceDay> serviceDaysByAgency = new ConcurrentHashMap<>();
-        final CalendarService calendarService = graph.getCalendarService();
+        final ServiceCalendarCache serviceCalendar = graph.getServiceCalendarCache();
         return patterns.stream()
                 .distinct()
                 .filter(Objects::nonNull)
@@ -1263,8 +1327,7 @@ public class GraphIndex {
                             final int stopIndex = 0;
                             final Stop stop = timetable.pattern.getStop(stopIndex);
                             final String agencyId = tripTimes.trip.getId().getAgencyId();
-                            final String agencyIdServiceDate = agencyId + "_" + timetable.serviceDate.getAsString();
-                            final ServiceDay serviceDay = serviceDaysByAgency.computeIfAbsent(agencyIdServiceDate, key -> new ServiceDay(graph, timetable.serviceDate, calendarService, agencyId));
+                            final ServiceDay serviceDay = serviceCalendar.serviceDay(timetable.serviceDate, agencyId);
                             return new TripTimeShort(tripTimes, stopIndex, stop, serviceDay);
                         })
                 )
@@ -3,6 +3,7 @@ package org.opentripplanner.routing.impl;
 import com.google.common.collect.Lists;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.api.resource.DebugOutput;
+import org.opentripplanner.api.resource.SearchTrace;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
@@ -170,7 +171,12 @@ public class GraphPathFinder {
                 break;
             }
             // Don't dig through the SPT object, just ask the A star algorithm for the states that reached the target.
+            SearchTrace trace = options.rctx.debugOutput.searchTrace;
+            SearchTrace.Phase search = trace != null ? trace.startPhase() : null;
             aStar.getShortestPathTree(options, timeout);
+            if (search != null) {
+                trace.endPhase("search", search);
+            }
 
             if (options.rctx.aborted) {
                 break; // Search timed out or was gracefully aborted for some other reason.
@@ -182,11 +188,15 @@ public class GraphPathFinder {
 
             // Do a full reversed search to compact the legs
             if(options.compactLegsByReversedSearch){
+                SearchTrace.Phase compactLegs = trace != null ? trace.startPhase() : null;
                 try {
                     newPaths = compactLegsByReversedSearch(aStar, originalReq, options, newPaths, timeout, reversedSearchHeuristic);
                 } catch (Exception e) {
                     LOG.debug("CompactLegsByReversedSearch failed on request: " + originalReq.toString());
                 }
+                if (compactLegs != null) {
+                    trace.endPhase("compactLegs", compactLegs);
+                }
             }
 
             // Find all trips used in this path and ban them for the remaining searches
@@ -367,6 +377,8 @@ public class GraphPathFinder {
         reversedOptions.dateTime = dateTime;
         reversedOptions.setArriveBy(!originalReq.arriveBy);
         reversedOptions.setRoutingContext(router.graph, fromVertex, toVertex);
+        // Report the reversed searches in the trace of the original request
+        reversedOptions.rctx.debugOutput.searchTrace = options.rctx.debugOutput.searchTrace;
         reversedOptions.dominanceFunction = new DominanceFunction.MinimumWeight();
         reversedOptions.rctx.remainingWeightHeuristic = remainingWeightHeuristic;
         reversedOptions.maxTransfers = 4;
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.google.common.io.ByteStreams;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
@@ -192,6 +193,12 @@ public class InputStreamGraphSource implements GraphSource {
             return null;
         }
 
+        // Use the stop trees saved along with the graph, if any
+        File stopTreeFile = streams.getStopTreeCacheFile();
+        if (stopTreeFile != null && stopTreeFile.canRead()) {
+            newGraph.index.loadStopTreeCache(stopTreeFile);
+        }
+
         // Decorate the graph TODO how are we "decorating" it? This appears to refer to loading its configuration.
         // Even if a config file is not present on disk one could be bundled inside.
         try (InputStream is = streams.getConfigInputStream()) {
@@ -227,6 +234,9 @@ public class InputStreamGraphSource implements GraphSource {
         public abstract InputStream getConfigInputStream() throws IOException;
 
         public abstract long getLastModified();
+
+        /** @return the file holding the stop trees saved at graph build time, or null if it cannot be memory-mapped. */
+        public abstract File getStopTreeCacheFile();
     }
 
     private static class FileStreams implements Streams {
@@ -260,6 +270,11 @@ public class InputStreamGraphSource implements GraphSource {
             // Note: this returns 0L if the file does not exists
             return new File(path, GRAPH_FILENAME).lastModified();
         }
+
+        @Override
+        public File getStopTreeCacheFile() {
+            return new File(path, StopTreeCache.FILENAME);
+        }
     }
 
     private static class ClasspathStreams implements Streams {
@@ -294,6 +309,12 @@ public class InputStreamGraphSource implements GraphSource {
         public long getLastModified() {
             return 0L;
         }
+
+        /** Classpath resources cannot be memory-mapped. */
+        @Override
+        public File getStopTreeCacheFile() {
+            return null;
+        }
     }
 
     /**
@@ -0,0 +1,258 @@
+package org.opentripplanner.standalone;
+
+import com.google.common.collect.ImmutableSet;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of expensive routing requests that are executed concurrently, so that a burst of heavy transit
+ * searches cannot occupy every HTTP handler thread and make all requests time out together.
+ *
+ * Every request to a limited endpoint is given a cost estimated from its parameters. Each endpoint has a fixed
+ * capacity of cost units; a request waits until enough units are free. Requests are rejected immediately when too many
+ * requests are already waiting, and after a maximum waiting time otherwise.
+ *
+ * A request waits for admission on its handler thread. The number of handler threads that limited requests may occupy,
+ * executing or waiting, is therefore bounded as well, across all endpoints. This bound must be below the size of the
+ * handler thread pool: the remaining threads answer other requests and reject the requests over capacity right away,
+ * rather than letting them pile up in the queue of the HTTP server.
+ */
+public class AdmissionControl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final Set<String> TRANSIT_MODES = ImmutableSet.of("TRANSIT", "BUS", "RAIL", "TRAM", "SUBWAY",
+            "FERRY", "CABLE_CAR", "GONDOLA", "FUNICULAR", "AIRPLANE");
+
+    /** The endpoints whose requests are admission controlled. */
+    public enum Endpoint {
+        PLAN, PROFILE, GRAPHQL;
+
+        /** @return the endpoint handling the given path (relative to /otp), or null if it is not limited. */
+        public static Endpoint forPath(String path) {
+            String[] parts = path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+            if (parts.length < 3 || !parts[0].equals("routers")) {
+                return null;
+            }
+            switch (parts[2]) {
+                case "plan":
+                    return parts.length == 3 ? PLAN : null;
+                case "profile":
+                    return parts.length == 3 ? PROFILE : null;
+                case "index":
+                    return parts.length >= 4 && parts[3].equals("graphql") ? GRAPHQL : null;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final Map<Endpoint, EndpointLimiter> limiters = new EnumMap<>(Endpoint.class);
+
+    private final int maxBusyThreads;
+
+    private final int maxQueuedRequests;
+
+    private final long maxQueueWaitMillis;
+
+    /** The number of handler threads currently executing or waiting for admission of a limited request. */
+    private final AtomicInteger busyThreads = new AtomicInteger();
+
+    /**
+     * @param capacity the cost units of requests each endpoint executes concurrently
+     * @param maxBusyThreads the number of handler threads limited requests may occupy at once, which must be less than
+     *                       the number of handler threads.
+     */
+    public AdmissionControl(int capacity, int maxBusyThreads, int maxQueuedRequests, long maxQueueWaitMillis) {
+        this.maxBusyThreads = maxBusyThreads;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+        for (Endpoint endpoint : Endpoint.values()) {
+            limiters.put(endpoint, new EndpointLimiter(endpoint, capacity));
+        }
+        Metrics.gauge("otp_admission_busy_threads", "Number of handler threads executing or waiting for admission.",
+                busyThreads::get);
+        LOG.info("Admission control enabled: {} cost units per endpoint, {} handler threads, at most {} queued requests "
+                + "waiting at most {} ms.", capacity, maxBusyThreads, maxQueuedRequests, maxQueueWaitMillis);
+    }
+
+    /**
+     * Wait until the request may be executed.
+     *
+     * @return the cost units granted to the request, which must be handed back with {@link #release}, or 0 if the
+     *         request was rejected.
+     */
+    public int acquire(Endpoint endpoint, MultivaluedMap<String, String> parameters) throws InterruptedException {
+        EndpointLimiter limiter = limiters.get(endpoint);
+        if (busyThreads.incrementAndGet() > maxBusyThreads) {
+            busyThreads.decrementAndGet();
+            limiter.rejected.incrementAndGet();
+            return 0;
+        }
+        int cost = 0;
+        try {
+            cost = admit(limiter, endpoint, parameters);
+            return cost;
+        } finally {
+            if (cost == 0) {
+                busyThreads.decrementAndGet();
+            }
+        }
+    }
+
+    private int admit(EndpointLimiter limiter, Endpoint endpoint, MultivaluedMap<String, String> parameters)
+            throws InterruptedException {
+        int cost = Math.min(estimateCost(endpoint, parameters), limiter.capacity);
+        if (limiter.permits.tryAcquire(cost)) {
+            limiter.admitted.incrementAndGet();
+            return cost;
+        }
+        if (limiter.queued.incrementAndGet() > maxQueuedRequests) {
+            limiter.queued.decrementAndGet();
+            limiter.rejected.incrementAndGet();
+            return 0;
+        }
+        long start = System.nanoTime();
+        try {
+            boolean acquired = limiter.permits.tryAcquire(cost, maxQueueWaitMillis, TimeUnit.MILLISECONDS);
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            limiter.queueWaitMillis.addAndGet(waitMillis);
+            limiter.queueWait.record(waitMillis);
+            limiter.maxQueueWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            if (!acquired) {
+                limiter.rejected.incrementAndGet();
+                return 0;
+            }
+            limiter.admitted.incrementAndGet();
+            limiter.admittedAfterWait.incrementAndGet();
+            return cost;
+        } finally {
+            limiter.queued.decrementAndGet();
+        }
+    }
+
+    public void release(Endpoint endpoint, int cost) {
+        limiters.get(endpoint).permits.release(cost);
+        busyThreads.decrementAndGet();
+    }
+
+    /** Counters of admitted and rejected requests and of the time spent waiting in the queue, per endpoint. */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (Map.Entry<Endpoint, EndpointLimiter> entry : limiters.entrySet()) {
+            EndpointLimiter limiter = entry.getValue();
+            Map<String, Long> endpointStats = new LinkedHashMap<>();
+            endpointStats.put("capacity", (long) limiter.capacity);
+            endpointStats.put("available", (long) limiter.permits.availablePermits());
+            endpointStats.put("queued", (long) limiter.queued.get());
+            endpointStats.put("admitted", limiter.admitted.get());
+            endpointStats.put("admittedAfterWait", limiter.admittedAfterWait.get());
+            endpointStats.put("rejected", limiter.rejected.get());
+            endpointStats.put("queueWaitMillis", limiter.queueWaitMillis.get());
+            endpointStats.put("maxQueueWaitMillis", limiter.maxQueueWaitMillis.get());
+            stats.put(entry.getKey().name().toLowerCase(), endpointStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Estimate the relative cost of a request from its parameters. A street-only plan costs one unit. Transit
+     * searches, mixed access modes, additional itineraries and wider profile search windows cost more.
+     */
+    static int estimateCost(Endpoint endpoint, MultivaluedMap<String, String> parameters) {
+        switch (endpoint) {
+            case PLAN: {
+                String modes = parameters.getFirst("mode");
+                int cost = 1;
+                if (modes == null || hasTransitMode(modes)) {
+                    cost = 2;
+                    if (modes != null && (modes.contains("_RENT") || modes.contains("_PARK") || modes.contains("CAR"))) {
+                        cost += 1;
+                    }
+                }
+                int numItineraries = parseInt(parameters.getFirst("numItineraries"), 3);
+                return cost * Math.max(1, (numItineraries + 2) / 3);
+            }
+            case PROFILE: {
+                int windowMinutes = minutesOfDay(parameters.getFirst("endTime"), 8 * 60 + 30)
+                        - minutesOfDay(parameters.getFirst("startTime"), 7 * 60 + 30);
+                return 2 + Math.max(1, (windowMinutes + 29) / 30);
+            }
+            case GRAPHQL:
+            default:
+                return 1;
+        }
+    }
+
+    private static boolean hasTransitMode(String modes) {
+        for (String mode : modes.split(",")) {
+            if (TRANSIT_MODES.contains(mode.trim().toUpperCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /** Parse a time of day in HH:mm or HH:mm:ss format to minutes after midnight. */
+    private static int minutesOfDay(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String[] fields = value.trim().split(":");
+        if (fields.length < 2) {
+            return defaultValue;
+        }
+        return parseInt(fields[0], defaultValue / 60) * 60 + parseInt(fields[1], 0);
+    }
+
+    private static class EndpointLimiter {
+        final int capacity;
+        final Semaphore permits;
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong admittedAfterWait = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong queueWaitMillis = new AtomicLong();
+        final AtomicLong maxQueueWaitMillis = new AtomicLong();
+        final Histogram queueWait;
+
+        EndpointLimiter(Endpoint endpoint, int capacity) {
+            this.capacity = capacity;
+            this.permits = new Semaphore(capacity, true);
+            String label = endpoint.name().toLowerCase();
+            queueWait = Metrics.histogram("otp_admission_queue_wait_ms",
+                    "Time requests waited for admission, in milliseconds.", "endpoint", label);
+            Metrics.counter("otp_admission_admitted_total", "Number of requests admitted.",
+                    admitted::get, "endpoint", label);
+            Metrics.counter("otp_admission_rejected_total", "Number of requests rejected because of overload.",
+                    rejected::get, "endpoint", label);
+            Metrics.gauge("otp_admission_queued_requests", "Number of requests waiting for admission.",
+                    queued::get, "endpoint", label);
+            Metrics.gauge("otp_admission_available_cost", "Cost units currently available for new requests.",
+                    permits::availablePermits, "endpoint", label);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.opentripplanner.standalone;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.opentripplanner.standalone.AdmissionControl.Endpoint;
+
+/**
+ * Makes plan, profile and GraphQL requests pass through the {@link AdmissionControl} before they are handed to the
+ * resource classes. Requests that cannot be admitted are answered with 503 Service Unavailable and a Retry-After
+ * header, without doing any routing work. The cost units granted to a request are handed back in the response filter.
+ */
+public class AdmissionControlFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String ENDPOINT_PROPERTY = AdmissionControlFilter.class.getName() + ".endpoint";
+
+    private static final String COST_PROPERTY = AdmissionControlFilter.class.getName() + ".cost";
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        Endpoint endpoint = Endpoint.forPath(requestContext.getUriInfo().getPath());
+        if (endpoint == null) {
+            return;
+        }
+        int cost;
+        try {
+            cost = admissionControl.acquire(endpoint, requestContext.getUriInfo().getQueryParameters());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cost = 0;
+        }
+        if (cost == 0) {
+            requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .type(MediaType.TEXT_PLAIN)
+                .entity("The server is overloaded, please retry later.")
+                .build());
+            return;
+        }
+        requestContext.setProperty(ENDPOINT_PROPERTY, endpoint);
+        requestContext.setProperty(COST_PROPERTY, cost);
+    }
+
+    /** Release the cost units of an admitted request. Aborted and rejected requests carry no properties. */
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        Endpoint endpoint = (Endpoint) request.getProperty(ENDPOINT_PROPERTY);
+        if (endpoint != null) {
+            request.removeProperty(ENDPOINT_PROPERTY);
+            admissionControl.release(endpoint, (Integer) request.getProperty(COST_PROPERTY));
+        }
+    }
+
+}
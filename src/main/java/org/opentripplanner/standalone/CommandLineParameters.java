@@ -96,6 +96,22 @@ public class CommandLineParameters implements Cloneable {
     @Parameter(names = {"--maxThreads"}, description = "The maximum number of HTTP handler threads in the pool.")
     public Integer maxThreads;
 
+    @Parameter(names = {"--admissionControl"},
+            description = "Limit the number of plan, profile and GraphQL requests executed concurrently, and reject requests when overloaded.")
+    public boolean admissionControl = false;
+
+    @Parameter(names = {"--maxRequestCost"},
+            description = "With admission control, the total estimated cost of requests executed concurrently per endpoint. Defaults to three quarters of the number of HTTP handler threads.")
+    public Integer maxRequestCost;
+
+    @Parameter(names = {"--maxQueuedRequests"},
+            description = "With admission control, the number of requests per endpoint that may wait for execution before further requests are rejected.")
+    public int maxQueuedRequests = 16;
+
+    @Parameter(names = {"--maxQueueWait"},
+            description = "With admission control, the number of milliseconds a request may wait for execution before it is rejected.")
+    public int maxQueueWait = 5000;
+
     @Parameter(names = {"--graphs"}, validateWith = ReadableDirectory.class,
             description = "Path to directory containing graphs. Defaults to BASE_PATH/graphs.")
     public File graphDirectory;
@@ -194,6 +194,12 @@ public class GraphBuilderParameters {
      */
     public final String vertexConnectorName;
 
+    /**
+     * Compute the walk distances from each transit stop to nearby streets used by analyst queries, and save them in a
+     * file next to the graph, so that servers memory-map them instead of computing them after each restart.
+     */
+    public final boolean stopTrees;
+
     /**
      * Path to a serialized graph which, if specified, will be used as base graph.
      */
@@ -236,6 +242,7 @@ public class GraphBuilderParameters {
         banDiscouragedBiking = config.path("banDiscouragedBiking").asBoolean(false);
         maxTransferDistance = config.path("maxTransferDistance").asDouble(2000);
         baseGraph = config.path("baseGraph").asText(null);
+        stopTrees = config.path("stopTrees").asBoolean(false);
         extraEdgesStopPlatformLink = config.path("extraEdgesStopPlatformLink").asBoolean(false);
         vertexConnectorName = config.path("vertexConnector").asText("");
     }
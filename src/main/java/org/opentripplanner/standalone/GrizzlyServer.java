@@ -26,6 +26,9 @@ public class GrizzlyServer {
 
     private static final int MIN_THREADS = 4;
 
+    /** With admission control, the number of connections per handler thread that may wait for a free thread. */
+    private static final int QUEUED_CONNECTIONS_PER_THREAD = 4;
+
     static {
         // Remove existing handlers attached to the j.u.l root logger
         SLF4JBridgeHandler.removeHandlersForRootLogger();  // (since SLF4J 1.6.5)
@@ -88,6 +91,15 @@ public class GrizzlyServer {
             .setCorePoolSize(nHandlerThreads)
             .setMaxPoolSize(nHandlerThreads)
             .setQueueLimit(-1);
+        if (params.admissionControl) {
+            // Keep some handler threads out of reach of the limited requests, so that requests over capacity are
+            // rejected by these threads right away. Connections beyond the bounded queue are refused by Grizzly.
+            int maxBusyThreads = nHandlerThreads - Math.max(1, nHandlerThreads / 4);
+            int maxRequestCost = params.maxRequestCost != null ? params.maxRequestCost : maxBusyThreads;
+            server.admissionControl = new AdmissionControl(maxRequestCost, maxBusyThreads, params.maxQueuedRequests,
+                    params.maxQueueWait);
+            threadPoolConfig.setQueueLimit(nHandlerThreads * QUEUED_CONNECTIONS_PER_THREAD);
+        }
 
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
@@ -94,6 +94,8 @@ public class OTPApplication extends Application {
             ScenarioResource.class,
             RepeatedRaptorTestResource.class,
             EncryptedRedirect.class,
+            AdmissionControlResource.class,
+            MetricsResource.class,
             /* Features and Filters: extend Jersey, manipulate requests and responses. */
             CorsFilter.class,
             MultiPartFeature.class
@@ -117,7 +119,7 @@ public class OTPApplication extends Application {
      */
     @Override
     public Set<Object> getSingletons() {
-        return Sets.newHashSet (
+        Set<Object> singletons = Sets.newHashSet (
             // Show exception messages in responses
             new OTPExceptionMapper(),
             // Enable Jackson JSON response serialization
@@ -129,6 +131,11 @@ public class OTPApplication extends Application {
             // Allow injecting the OTP server object into Jersey resource classes
             server.makeBinder()
         );
+        if (server.admissionControl != null) {
+            // Reject plan, profile and GraphQL requests early when the server is overloaded
+            singletons.add(new AdmissionControlFilter(server.admissionControl));
+        }
+        return singletons;
     }
 
     /**
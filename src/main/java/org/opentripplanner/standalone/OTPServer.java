@@ -33,6 +33,9 @@ public class OTPServer {
     public PointSetCache pointSetCache;
     public ScriptingService scriptingService;
 
+    /** Limits concurrent routing requests when enabled on the command line, otherwise null. */
+    public AdmissionControl admissionControl;
+
     public CommandLineParameters params;
 
     public OTPServer (CommandLineParameters params, GraphService gs) {
@@ -9,7 +9,9 @@ import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.api.resource.PlanResponseCache;
 import org.opentripplanner.inspector.TileRendererManager;
+import org.opentripplanner.inspector.vector.VectorTileManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -47,6 +49,7 @@ public class Router {
 
     // Inspector/debug services
     public TileRendererManager tileRendererManager;
+    public VectorTileManager vectorTileManager;
 
     // Analyst services
     public TileCache tileCache;
@@ -63,6 +66,9 @@ public class Router {
     /** Storage for non-destructive alternatives analysis scenarios. */
     public ScenarioStore scenarioStore = new ScenarioStore();
 
+    /** Cache for the results of identical plan requests, null if disabled in the router config. */
+    public PlanResponseCache planResponseCache = null;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -179,6 +185,12 @@ public class Router {
             graph.setUseFlexService(useFlexService.asBoolean(false));
         }
 
+        /* Set up the vector tiles of the graph inspector, which may start generating tiles in the background */
+        this.vectorTileManager = VectorTileManager.fromConfig(this.graph, config.get("vectorTiles"));
+
+        /* Set up the optional cache for identical plan requests */
+        this.planResponseCache = PlanResponseCache.fromConfig(this.graph, config.get("planCache"));
+
         /* Create Graph updater modules from JSON config. */
         GraphUpdaterConfigurator.setupGraph(this.graph, config);
 
@@ -197,6 +209,9 @@ public class Router {
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (planResponseCache != null) {
+            planResponseCache.shutdown();
+        }
     }
 
     /**
@@ -4,17 +4,23 @@ import com.beust.jcommander.internal.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,13 +33,42 @@ import org.slf4j.LoggerFactory;
  *
  * Each updater will run in its own thread. When changes to the graph have to be made by these
  * updaters, this should be done via the execute method of this manager to prevent race conditions
- * between graph write operations.
+ * between graph write operations. Graph writers modifying different parts of the graph (see
+ * {@link GraphWriterDomain}) are executed on separate threads, so that a slow writer does not hold
+ * back the others.
  *
  */
 public class GraphUpdaterManager {
 
     private static Logger LOG = LoggerFactory.getLogger(GraphUpdaterManager.class);
 
+    /** Number of graph writer tasks submitted but not yet started, over all routers. */
+    private static final AtomicInteger WRITER_QUEUE_LENGTH = new AtomicInteger();
+
+    static {
+        Metrics.gauge("otp_graph_writer_queue_length", "Number of graph writer tasks waiting for execution.",
+                WRITER_QUEUE_LENGTH::get);
+    }
+
+    private static final Map<GraphWriterDomain, Histogram> WRITER_QUEUE_WAIT = new EnumMap<>(GraphWriterDomain.class);
+
+    private static final Map<GraphWriterDomain, Histogram> WRITER_DURATION = new EnumMap<>(GraphWriterDomain.class);
+
+    static {
+        for (GraphWriterDomain domain : GraphWriterDomain.values()) {
+            String label = domain.name().toLowerCase();
+            WRITER_QUEUE_WAIT.put(domain, Metrics.histogram("otp_graph_writer_queue_wait_ms",
+                    "Time graph writer tasks waited for the graph writer thread of their domain, in milliseconds.",
+                    "domain", label));
+            WRITER_DURATION.put(domain, Metrics.histogram("otp_graph_writer_duration_ms",
+                    "Duration of graph writer tasks applying updater results to the graph, in milliseconds.",
+                    "domain", label));
+        }
+    }
+
+    private static final Counter WRITER_ERRORS = Metrics.counter("otp_graph_writer_errors_total",
+            "Number of graph writer tasks that failed with an exception.");
+
     /**
      * Text used for naming threads when the graph lacks a routerId.
      */
@@ -46,12 +81,11 @@ public class GraphUpdaterManager {
 
     /**
      * OTP's multi-version concurrency control model for graph updating allows simultaneous reads,
-     * but never simultaneous writes. We ensure this policy is respected by having a single writer
-     * thread, which sequentially executes all graph updater tasks. Each task is a runnable that is
-     * scheduled with the ExecutorService to run at regular intervals.
-     * FIXME in reality we're not using scheduleAtFixedInterval. We're scheduling for immediate execution from separate threads that sleep in a loop.
+     * but never simultaneous writes to the same data. We ensure this policy is respected by having a
+     * single writer thread per domain, which sequentially executes the graph updater tasks of that
+     * domain. Exclusive tasks hold all writer threads while they run.
      */
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<GraphWriterDomain, ExecutorService> writers = new EnumMap<>(GraphWriterDomain.class);
 
     /**
      * A pool of threads on which the updaters will run.
@@ -82,7 +116,12 @@ public class GraphUpdaterManager {
             routerId = DEFAULT_ROUTER_ID;
 
         threadFactory = new ThreadFactoryBuilder().setNameFormat("GraphUpdater-" + routerId + "-%d").build();
-        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        for (GraphWriterDomain domain : GraphWriterDomain.values()) {
+            if (domain != GraphWriterDomain.EXCLUSIVE) {
+                writers.put(domain, Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("GraphWriter-" + routerId + "-" + domain.name().toLowerCase()).build()));
+            }
+        }
         updaterPool = Executors.newCachedThreadPool(threadFactory);
     }
 
@@ -107,12 +146,16 @@ public class GraphUpdaterManager {
         }
         updaterList.clear();
 
-        // Shutdown scheduler
-        scheduler.shutdownNow();
+        // Shutdown graph writers
+        for (ExecutorService writer : writers.values()) {
+            writer.shutdownNow();
+        }
         try {
-            boolean ok = scheduler.awaitTermination(30, TimeUnit.SECONDS);
-            if (!ok) {
-                LOG.warn("Timeout waiting for scheduled task to finish.");
+            for (ExecutorService writer : writers.values()) {
+                boolean ok = writer.awaitTermination(30, TimeUnit.SECONDS);
+                if (!ok) {
+                    LOG.warn("Timeout waiting for scheduled task to finish.");
+                }
             }
         } catch (InterruptedException e) {
             // This should not happen
@@ -130,20 +173,62 @@ public class GraphUpdaterManager {
     }
 
     /**
-     * This is the method to use to modify the graph from the updaters. The runnables will be
-     * scheduled after each other, guaranteeing that only one of these runnables will be active at
-     * any time.
+     * This is the method to use to modify the graph from the updaters. The runnables of a domain will
+     * be scheduled after each other, guaranteeing that only one runnable of each domain will be
+     * active at any time. Exclusive runnables wait for all runnables submitted before them, and hold
+     * back all runnables submitted after them until they are done.
      *
      * @param runnable is a graph writer runnable
      */
-    public void execute(GraphWriterRunnable runnable) {
-        scheduler.submit(() -> {
+    public synchronized void execute(GraphWriterRunnable runnable) {
+        // Synchronized so that exclusive runnables are queued in the same order on all writer threads
+        long submitNanos = System.nanoTime();
+        WRITER_QUEUE_LENGTH.incrementAndGet();
+        GraphWriterDomain domain = runnable.getDomain();
+        if (domain != GraphWriterDomain.EXCLUSIVE) {
+            writers.get(domain).submit(() -> runWriter(runnable, domain, submitNanos));
+            return;
+        }
+
+        // Block every writer thread, and run the runnable on one of them once all of them are blocked
+        CountDownLatch blocked = new CountDownLatch(writers.size());
+        CountDownLatch done = new CountDownLatch(1);
+        Iterator<ExecutorService> it = writers.values().iterator();
+        it.next().submit(() -> {
             try {
-                runnable.run(graph);
-            } catch (Exception e) {
-                LOG.error("Error while running graph writer {}:", runnable.getClass().getName(), e);
+                blocked.countDown();
+                blocked.await();
+                runWriter(runnable, domain, submitNanos);
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting to run graph writer {}.", runnable.getClass().getName());
+            } finally {
+                done.countDown();
             }
         });
+        while (it.hasNext()) {
+            it.next().submit(() -> {
+                blocked.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    // The manager is being stopped
+                }
+            });
+        }
+    }
+
+    private void runWriter(GraphWriterRunnable runnable, GraphWriterDomain domain, long submitNanos) {
+        WRITER_QUEUE_LENGTH.decrementAndGet();
+        WRITER_QUEUE_WAIT.get(domain).recordMillisSince(submitNanos);
+        long startNanos = System.nanoTime();
+        try {
+            runnable.run(graph);
+        } catch (Exception e) {
+            WRITER_ERRORS.inc();
+            LOG.error("Error while running graph writer {}:", runnable.getClass().getName(), e);
+        } finally {
+            WRITER_DURATION.get(domain).recordMillisSince(startNanos);
+        }
     }
 
     public int size() {
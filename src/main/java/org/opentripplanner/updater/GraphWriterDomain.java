@@ -0,0 +1,31 @@
+package org.opentripplanner.updater;
+
+/**
+ * The part of the graph a GraphWriterRunnable modifies. Writers of the same domain are executed one after the other,
+ * in the order they were submitted, while writers of different domains may run at the same time.
+ *
+ * @see GraphUpdaterManager#execute(GraphWriterRunnable)
+ */
+public enum GraphWriterDomain {
+
+    /** The realtime timetable snapshot source and the trip updates applied to it. */
+    TRANSIT,
+
+    /** Alert patches and the alert index. */
+    ALERTS,
+
+    /** The notes attached to street edges. */
+    STREET_NOTES,
+
+    /**
+     * Vertices linked into the street network, such as bike rental stations, bike parks and car parks. Linking them
+     * splits street edges, so all of these share a domain.
+     */
+    STREETS,
+
+    /**
+     * Writers which may touch anything in the graph. They run alone: once all writers submitted before them have
+     * finished, and before any writer submitted after them starts.
+     */
+    EXCLUSIVE
+}
@@ -19,4 +19,12 @@ public interface GraphWriterRunnable {
      * This function is executed to modify the graph.
      */
     public void run(Graph graph);
+
+    /**
+     * The part of the graph modified by this runnable, so that runnables modifying other parts can be executed at the
+     * same time. By default a runnable has exclusive access to the graph.
+     */
+    default GraphWriterDomain getDomain() {
+        return GraphWriterDomain.EXCLUSIVE;
+    }
 }
@@ -1,6 +1,8 @@
 package org.opentripplanner.updater;
 
 import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
 import org.opentripplanner.util.TimeToStringConverter;
@@ -11,7 +13,12 @@ import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.TripTimes;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is used for matching TripDescriptors without trip_ids to scheduled GTFS data and to
@@ -19,11 +26,17 @@ import java.util.BitSet;
  *
  * The class should only be used if we know that the feed producer is unable to produce trip_ids
  * in the GTFS-RT feed.
+ *
+ * The scheduled trips of a route are indexed by direction and first departure time when the route
+ * is first looked up. The index of a route is rebuilt when its number of patterns changes, e.g.
+ * when patterns created by realtime updates are added to the graph index.
  */
 public class GtfsRealtimeFuzzyTripMatcher {
 
     private GraphIndex index;
 
+    private final Map<Route, RouteTrips> tripsForRoute = new ConcurrentHashMap<>();
+
     public GtfsRealtimeFuzzyTripMatcher(GraphIndex index) {
         this.index = index;
     }
@@ -72,16 +85,49 @@ public class GtfsRealtimeFuzzyTripMatcher {
     }
 
     public Trip getTrip (Route route, int direction, int startTime, ServiceDate date) {
+        Collection<TripPattern> patterns = index.patternsForRoute.get(route);
+        RouteTrips trips = tripsForRoute.get(route);
+        if (trips == null || trips.nPatterns != patterns.size()) {
+            trips = new RouteTrips(patterns);
+            tripsForRoute.put(route, trips);
+        }
+        List<TripTimes> candidates = trips.tripTimes.get(key(direction, startTime));
+        if (candidates == null) {
+            return null;
+        }
         BitSet services = index.servicesRunning(date);
-        for (TripPattern pattern : index.patternsForRoute.get(route)) {
-            if (pattern.directionId != direction) continue;
-            for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
-                if (times.getScheduledDepartureTime(0) == startTime &&
-                        services.get(times.serviceCode)) {
-                    return times.trip;
-                }
+        for (TripTimes times : candidates) {
+            if (services.get(times.serviceCode)) {
+                return times.trip;
             }
         }
         return null;
     }
+
+    private static long key (int direction, int startTime) {
+        return ((long) direction << 32) | (startTime & 0xFFFFFFFFL);
+    }
+
+    /** The scheduled trips of a route by direction and first departure time, in pattern order. */
+    private static class RouteTrips {
+
+        final int nPatterns;
+
+        final TLongObjectMap<List<TripTimes>> tripTimes = new TLongObjectHashMap<>();
+
+        RouteTrips (Collection<TripPattern> patterns) {
+            nPatterns = patterns.size();
+            for (TripPattern pattern : patterns) {
+                for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
+                    long key = key(pattern.directionId, times.getScheduledDepartureTime(0));
+                    List<TripTimes> candidates = tripTimes.get(key);
+                    if (candidates == null) {
+                        candidates = new ArrayList<>(1);
+                        tripTimes.put(key, candidates);
+                    }
+                    candidates.add(times);
+                }
+            }
+        }
+    }
 }
@@ -2,6 +2,9 @@ package org.opentripplanner.updater;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,12 +42,20 @@ public abstract class PollingGraphUpdater implements GraphUpdater {
 
     @Override
     final public void run() {
+        String updaterName = this.getClass().getSimpleName();
+        Histogram pollDuration = Metrics.histogram("otp_updater_poll_duration_ms",
+                "Duration of fetching and processing one poll of a polling updater, in milliseconds.",
+                "updater", updaterName);
+        Counter pollErrors = Metrics.counter("otp_updater_poll_errors_total",
+                "Number of polls of a polling updater that failed with an exception.", "updater", updaterName);
         try {
             LOG.info("Polling updater started: {}", this);
             while (true) {
+                long startNanos = System.nanoTime();
                 try {
                     // Run concrete polling graph updater's implementation method.
                     runPolling();
+                    pollDuration.recordMillisSince(startNanos);
                     if (pollingPeriodSeconds <= 0) {
                         // Non-positive polling period values mean to run the updater only once.
                         LOG.info("As requested in configuration, updater {} has run only once and will now stop.",
@@ -54,6 +65,7 @@ public abstract class PollingGraphUpdater implements GraphUpdater {
                 } catch (InterruptedException e) {
                     throw e;
                 } catch (Exception e) {
+                    pollErrors.inc();
                     LOG.error("Error while running polling updater of type {}", type, e);
                     // TODO Should we cancel the task? Or after n consecutive failures? cancel();
                 }
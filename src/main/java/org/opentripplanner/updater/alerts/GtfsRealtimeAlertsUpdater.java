@@ -7,6 +7,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.impl.AlertPatchServiceImpl;
 import org.opentripplanner.routing.services.AlertPatchService;
 import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterDomain;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.GtfsRealtimeFuzzyTripMatcher;
 import org.opentripplanner.updater.PollingGraphUpdater;
@@ -106,6 +107,12 @@ public class GtfsRealtimeAlertsUpdater extends PollingGraphUpdater {
                 @Override
                 public void run(Graph graph) {
                     updateHandler.update(feed);
+                    graph.index.updateAlertIndex();
+                }
+
+                @Override
+                public GraphWriterDomain getDomain() {
+                    return GraphWriterDomain.ALERTS;
                 }
             });
 
@@ -19,6 +19,7 @@ import org.opentripplanner.routing.edgetype.BikeParkEdge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.vertextype.BikeParkVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterDomain;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.PollingGraphUpdater;
 import org.opentripplanner.updater.JsonConfigurable;
@@ -118,6 +119,11 @@ public class BikeParkUpdater extends PollingGraphUpdater {
             this.bikeParks = bikeParks;
         }
 
+        @Override
+        public GraphWriterDomain getDomain() {
+            return GraphWriterDomain.STREETS;
+        }
+
         @Override
         public void run(Graph graph) {
             // Apply stations to graph
@@ -20,5 +20,13 @@ public interface BikeRentalDataSource {
      * @return a List of all currently known bike rental stations. The updater will use this to update the Graph.
      */
     List<BikeRentalStation> getStations();
+
+    /**
+     * @return the number of bytes downloaded by the last update, 0 if the source was unchanged, or -1 if this source
+     * does not measure it.
+     */
+    default long getBytesRead() {
+        return -1;
+    }
     
 }
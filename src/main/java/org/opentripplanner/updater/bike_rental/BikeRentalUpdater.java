@@ -6,7 +6,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -14,14 +13,18 @@ import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService.RentalType;
+import org.opentripplanner.routing.bike_rental.FreeFloatingVehicleIndex;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
 import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterDomain;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.JsonConfigurable;
 import org.opentripplanner.updater.PollingGraphUpdater;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +39,11 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private static final String DEFAULT_NETWORK_LIST = "default";
 
-    private Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
+    /** The vertices of the docked stations, by station ID. Only accessed by the graph writer. */
+    private Map<String, BikeRentalStationVertex> verticesByStationId = new HashMap<>();
+
+    /** The free-floating vehicles added to the bike rental station service. Only accessed by the graph writer. */
+    private List<BikeRentalStation> vehiclesInService = new ArrayList<>();
 
     private BikeRentalDataSource source;
 
@@ -49,6 +56,10 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
     private String network = "default";
     private RentalType rentalType;
 
+    private Histogram pollDuration;
+
+    private Histogram pollBytes;
+
     @Override
     public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
         this.updaterManager = updaterManager;
@@ -120,6 +131,12 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         this.source = source;
         this.network = networkName;
         this.rentalType = parseRentalType(config.path("rentalType").asText(), networkName);
+        this.pollDuration = Metrics.histogram("otp_bike_rental_poll_duration_ms",
+                "Time to download and parse the bike rental data of a network, in milliseconds.",
+                "network", networkName);
+        this.pollBytes = Metrics.histogram("otp_bike_rental_poll_bytes",
+                "Bytes of bike rental data downloaded per poll, 0 when the data had not changed.",
+                "network", networkName);
 
 
         if (pollingPeriodSeconds <= 0) {
@@ -156,14 +173,36 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
     @Override
     protected void runPolling() throws Exception {
         LOG.debug("Updating bike rental stations from " + source);
-        if (!source.update()) {
+        long startNanos = System.nanoTime();
+        boolean updated = source.update();
+        pollDuration.recordMillisSince(startNanos);
+        long bytesRead = source.getBytesRead();
+        if (bytesRead >= 0) {
+            pollBytes.record(bytesRead);
+        }
+        if (!updated) {
             LOG.debug("No updates");
             return;
         }
-        List<BikeRentalStation> stations = source.getStations();
+        Set<String> defaultNetworks = new HashSet<>(Arrays.asList(network));
+        List<BikeRentalStation> stations = new ArrayList<>();
+        List<BikeRentalStation> vehicles = new ArrayList<>();
+        for (BikeRentalStation station : source.getStations()) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            (station.isFloatingBike ? vehicles : stations).add(station);
+        }
+
+        // Free-floating vehicles are not in the graph, their index is rebuilt here and swapped in without locking
+        FreeFloatingVehicleIndex freeFloatingVehicles = service.getFreeFloatingVehicles();
+        boolean vehiclesChanged = !vehicles.isEmpty() || !freeFloatingVehicles.getVehicles(network).isEmpty();
+        freeFloatingVehicles.update(network, vehicles);
 
         // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
+        BikeRentalGraphWriterRunnable graphWriterRunnable =
+                new BikeRentalGraphWriterRunnable(stations, vehicles, vehiclesChanged);
         updaterManager.execute(graphWriterRunnable);
     }
 
@@ -184,56 +223,107 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
         private List<BikeRentalStation> stations;
 
-        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations) {
+        private List<BikeRentalStation> vehicles;
+
+        private boolean vehiclesChanged;
+
+        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations, List<BikeRentalStation> vehicles,
+                                             boolean vehiclesChanged) {
             this.stations = stations;
+            this.vehicles = vehicles;
+            this.vehiclesChanged = vehiclesChanged;
+        }
+
+        @Override
+        public GraphWriterDomain getDomain() {
+            return GraphWriterDomain.STREETS;
         }
 
         @Override
         public void run(Graph graph) {
             // Apply stations to graph
-            Set<BikeRentalStation> stationSet = new HashSet<>();
-            Set<String> defaultNetworks = new HashSet<>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
+            Map<String, BikeRentalStationVertex> previousVertices = verticesByStationId;
+            Map<String, BikeRentalStationVertex> vertices = new HashMap<>(previousVertices.size());
+            boolean changed = vehiclesChanged;
+
+            /* the service keys stations by ID: one listed again in this update, possibly having switched between being
+               docked and free-floating, is replaced when it is added and must not be removed */
+            Set<String> stationIds = new HashSet<>();
             for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
+                stationIds.add(station.id);
+            }
+            for (BikeRentalStation vehicle : vehicles) {
+                stationIds.add(vehicle.id);
+            }
+
+            /* free-floating vehicles are replaced as a whole, remove the previous ones first */
+            for (BikeRentalStation vehicle : vehiclesInService) {
+                if (!stationIds.contains(vehicle.id)) {
+                    service.removeBikeRentalStation(vehicle);
                 }
+            }
+
+            /* add any new stations, update existing stations in place and relink the ones that moved */
+            for (BikeRentalStation station : stations) {
                 service.addBikeRentalStation(station);
-                stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
-                if (vertex == null) {
+                BikeRentalStationVertex vertex = previousVertices.remove(station.id);
+                if (vertex != null && !hasMoved(vertex.getStation(), station)) {
+                    changed |= availabilityChanged(vertex.getStation(), station);
+                    vertex.setStation(station);
+                } else {
+                    if (vertex != null) {
+                        removeVertex(graph, vertex);
+                    }
                     vertex = new BikeRentalStationVertex(graph, station);
                     if (!linker.link(vertex)) {
                         // the toString includes the text "Bike rental station"
                         LOG.warn("{} not near any streets; it will not be usable.", station);
                     }
-                    verticesByStation.put(station, vertex);
                     new RentABikeOnEdge(vertex, vertex, station.networks);
                     if (station.allowDropoff)
                         new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setStation(station);
+                    changed = true;
                 }
+                vertices.put(station.id, vertex);
             }
+
             /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
-                    continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
+            for (BikeRentalStationVertex vertex : previousVertices.values()) {
+                removeVertex(graph, vertex);
+                if (!stationIds.contains(vertex.getStation().id)) {
+                    service.removeBikeRentalStation(vertex.getStation());
                 }
-                toRemove.add(station);
-                service.removeBikeRentalStation(station);
-                // TODO: need to unsplit any streets that were split
+                changed = true;
             }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
+            verticesByStationId = vertices;
+
+            /* the free-floating vehicles are only listed by the service, the search uses their index */
+            for (BikeRentalStation vehicle : vehicles) {
+                service.addBikeRentalStation(vehicle);
             }
+            vehiclesInService = vehicles;
+            if (changed) {
+                service.markChanged();
+            }
+        }
+
+        private void removeVertex(Graph graph, BikeRentalStationVertex vertex) {
+            if (graph.containsVertex(vertex)) {
+                graph.removeVertexAndEdges(vertex);
+            }
+            // TODO: need to unsplit any streets that were split
+        }
+
+        private boolean hasMoved(BikeRentalStation previous, BikeRentalStation station) {
+            return previous.x != station.x || previous.y != station.y;
+        }
+
+        /** Routing only distinguishes between empty and non-empty stations, so only report those transitions. */
+        private boolean availabilityChanged(BikeRentalStation previous, BikeRentalStation station) {
+            return previous == null
+                || (previous.bikesAvailable == 0) != (station.bikesAvailable == 0)
+                || (previous.spacesAvailable == 0) != (station.spacesAvailable == 0)
+                || previous.allowDropoff != station.allowDropoff;
         }
     }
 }
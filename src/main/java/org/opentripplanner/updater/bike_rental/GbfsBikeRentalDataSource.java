@@ -59,6 +59,12 @@ public class GbfsBikeRentalDataSource implements BikeRentalDataSource, JsonConfi
         return updatesFound;
     }
 
+    @Override
+    public long getBytesRead() {
+        return stationInformationSource.getBytesRead() + stationStatusSource.getBytesRead()
+                + floatingBikeSource.getBytesRead();
+    }
+
     @Override
     public List<BikeRentalStation> getStations() {
 
@@ -68,16 +74,20 @@ public class GbfsBikeRentalDataSource implements BikeRentalDataSource, JsonConfi
             statusLookup.put(station.id, station);
         }
 
-        // Iterate over all known stations, and if we have any status information add it to those station objects.
-        for (BikeRentalStation station : stationInformationSource.getStations()) {
-            if (!statusLookup.containsKey(station.id)) continue;
+        // Copy all known stations, and if we have any status information add it to the copies. The station information
+        // is kept as long as it does not change, so its objects are not modified.
+        List<BikeRentalStation> stations = new ArrayList<>();
+        for (BikeRentalStation information : stationInformationSource.getStations()) {
+            BikeRentalStation station = information.clone();
             BikeRentalStation status = statusLookup.get(station.id);
-            station.bikesAvailable = status.bikesAvailable;
-            station.spacesAvailable = status.spacesAvailable;
+            if (status != null) {
+                station.bikesAvailable = status.bikesAvailable;
+                station.spacesAvailable = status.spacesAvailable;
+            }
+            stations.add(station);
         }
 
-        // Copy the full list of station objects (with status updates) into a List, appending the floating bike stations.
-        List<BikeRentalStation> stations = new LinkedList<>(stationInformationSource.getStations());
+        // Append the floating bike stations.
         stations.addAll(floatingBikeSource.getStations());
 
         // Set identical network ID on all stations
@@ -2,24 +2,24 @@ package org.opentripplanner.updater.bike_rental;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.opentripplanner.updater.JsonConfigurable;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.util.HttpUtils;
+import org.opentripplanner.util.ConditionalHttpGet;
+import org.opentripplanner.util.json.JsonDataListParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 /**
- * Fetch Bike Rental JSON feeds and pass each record on to the specific rental subclass
+ * Fetch Bike Rental JSON feeds and pass each record on to the specific rental subclass. The feed is parsed while it is
+ * downloaded, and is not downloaded again while the server reports it unchanged.
  *
  * @see BikeRentalDataSource
  */
@@ -30,7 +30,9 @@ public abstract class GenericJsonBikeRentalDataSource implements BikeRentalDataS
     private String headerName;
     private String headerValue;
 
-    private String jsonParsePath;
+    private JsonDataListParser<BikeRentalStation> parser;
+
+    private ConditionalHttpGet download;
 
     List<BikeRentalStation> stations = new ArrayList<BikeRentalStation>();
 
@@ -42,7 +44,7 @@ public abstract class GenericJsonBikeRentalDataSource implements BikeRentalDataS
      *
      */
     public GenericJsonBikeRentalDataSource(String jsonPath) {
-        jsonParsePath = jsonPath;
+        parser = new JsonDataListParser<>(jsonPath, this::makeStation);
         headerName = "Default";
         headerValue = null;
     }
@@ -55,7 +57,7 @@ public abstract class GenericJsonBikeRentalDataSource implements BikeRentalDataS
      * @param headerValue header value
      */
     public GenericJsonBikeRentalDataSource(String jsonPath, String headerName, String headerValue) {
-        jsonParsePath = jsonPath;
+        parser = new JsonDataListParser<>(jsonPath, this::makeStation);
         this.headerName = headerName;
         this.headerValue = headerValue;
     }
@@ -65,95 +67,40 @@ public abstract class GenericJsonBikeRentalDataSource implements BikeRentalDataS
      *
      */
     public GenericJsonBikeRentalDataSource() {
-        jsonParsePath = "";
+        parser = new JsonDataListParser<>("", this::makeStation);
     }
 
     @Override
     public boolean update() {
-        try {
-            InputStream data = null;
-        	
-        	URL url2 = new URL(url);
-        	
-            String proto = url2.getProtocol();
-            if (proto.equals("http") || proto.equals("https")) {
-            	data = HttpUtils.getData(url, headerName, headerValue);
-            } else {
-                // Local file probably, try standard java
-                data = url2.openStream();
-            }
+        try (InputStream data = download.fetch()) {
             // TODO handle optional GBFS files, where it's not warning-worthy that they don't exist.
             if (data == null) {
-                log.warn("Failed to get data from url " + url);
+                log.debug("Bike rental feed {} has not changed", url);
                 return false;
             }
-            parseJSON(data);
-            data.close();
+            List<BikeRentalStation> out = parser.parse(data);
+            synchronized(this) {
+                stations = out;
+            }
         } catch (IllegalArgumentException e) {
+            download.reset();
             log.warn("Error parsing bike rental feed from " + url, e);
             return false;
         } catch (JsonProcessingException e) {
+            download.reset();
             log.warn("Error parsing bike rental feed from " + url + "(bad JSON of some sort)", e);
             return false;
         } catch (IOException e) {
+            download.reset();
             log.warn("Error reading bike rental feed from " + url, e);
             return false;
         }
         return true;
     }
 
-    private void parseJSON(InputStream dataStream) throws IllegalArgumentException, IOException {
-
-        ArrayList<BikeRentalStation> out = new ArrayList<>();
-
-        String rentalString = convertStreamToString(dataStream);
-
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(rentalString);
-
-        if (!jsonParsePath.equals("")) {
-            String delimiter = "/";
-            String[] parseElement = jsonParsePath.split(delimiter);
-            for(int i =0; i < parseElement.length ; i++) {
-                rootNode = rootNode.path(parseElement[i]);
-            }
-
-            if (rootNode.isMissingNode()) {
-                throw new IllegalArgumentException("Could not find jSON elements " + jsonParsePath);
-              }
-        }
-
-        for (int i = 0; i < rootNode.size(); i++) {
-            // TODO can we use foreach? for (JsonNode node : rootNode) ...
-            JsonNode node = rootNode.get(i);
-            if (node == null) {
-                continue;
-            }
-            BikeRentalStation brstation = makeStation(node);
-            if (brstation != null)
-                out.add(brstation);
-        }
-        synchronized(this) {
-            stations = out;
-        }
-    }
-
-    private String convertStreamToString(java.io.InputStream is) {
-        java.util.Scanner scanner = null;
-        String result="";
-        try {
-           
-            scanner = new java.util.Scanner(is).useDelimiter("\\A");
-            result = scanner.hasNext() ? scanner.next() : "";
-            scanner.close();
-        }
-        finally
-        {
-           if(scanner!=null)
-               scanner.close();
-        }
-        return result;
-        
+    @Override
+    public long getBytesRead() {
+        return download == null ? -1 : download.getBytesRead();
     }
 
     @Override
@@ -167,6 +114,7 @@ public abstract class GenericJsonBikeRentalDataSource implements BikeRentalDataS
 
     public void setUrl(String url) {
         this.url = url;
+        this.download = new ConditionalHttpGet(url, headerName, headerValue);
     }
 
     public abstract BikeRentalStation makeStation(JsonNode rentalStationNode);
@@ -6,14 +6,17 @@ import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.util.NonLocalizedString;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UIPBikeRentalDataSource extends GenericJsonBikeRentalDataSource {
 
-    private String baseURL = null;
+    private final UIPAvailabilityDataSource availabilitySource;
 
     UIPBikeRentalDataSource(String apiKey) {
         super("stations", "Client-Identifier", apiKey);
+        availabilitySource = new UIPAvailabilityDataSource(apiKey);
     }
 
     /**
@@ -37,45 +40,59 @@ public class UIPBikeRentalDataSource extends GenericJsonBikeRentalDataSource {
         return brstation;
     }
 
+    /** Sets the URL of the stations, and that of their availability, which are downloaded separately. */
+    @Override
+    public void setUrl(String url) {
+        super.setUrl(url);
+        availabilitySource.setUrl(url + "/availability");
+    }
+
     @Override
     public boolean update() {
+        // The stations seldom change, so either download may be unchanged since the previous update
+        boolean updatesFound = super.update();
+        updatesFound |= availabilitySource.update();
+        return updatesFound;
+    }
 
-        // get stations
-        if(!super.update()){
-            return false;
-        }
-        List<BikeRentalStation> stations = super.getStations();
+    @Override
+    public long getBytesRead() {
+        return super.getBytesRead() + availabilitySource.getBytesRead();
+    }
 
-        // update stations with availability info
-        super.stations = new ArrayList<>();
-        if(baseURL == null){
-            baseURL = getUrl();
-        }
-        setUrl(baseURL + "/availability");
-        if(!super.update()){
-            return false;
+    /**
+     * @return copies of the stations with their availability, the stations are kept as long as they do not change.
+     */
+    @Override
+    public List<BikeRentalStation> getStations() {
+        Map<String, BikeRentalStation> availabilityLookup = new HashMap<>();
+        for (BikeRentalStation availability : availabilitySource.getStations()) {
+            availabilityLookup.put(availability.id, availability);
         }
 
-        List<BikeRentalStation> stationsAvailability = super.getStations();
-        super.stations = mergeStationInfo(stations, stationsAvailability);
-        setUrl(baseURL);
-        return true;
-    }
-
-    private List<BikeRentalStation> mergeStationInfo(List<BikeRentalStation> stations,
-                                                     List<BikeRentalStation> availabilityStations){
         List<BikeRentalStation> merged = new ArrayList<>();
-        for(BikeRentalStation station : stations){
-            for(BikeRentalStation availability : availabilityStations){
-                if(station.id.equals(availability.id)){
-                    station.bikesAvailable = availability.bikesAvailable;
-                    station.spacesAvailable = availability.spacesAvailable;
-                    merged.add(station);
-                }
+        for (BikeRentalStation information : super.getStations()) {
+            BikeRentalStation availability = availabilityLookup.get(information.id);
+            if (availability != null) {
+                BikeRentalStation station = information.clone();
+                station.bikesAvailable = availability.bikesAvailable;
+                station.spacesAvailable = availability.spacesAvailable;
+                merged.add(station);
             }
         }
         return merged;
     }
 
+    /** The availability of the stations, in the same format as the stations themselves. */
+    class UIPAvailabilityDataSource extends GenericJsonBikeRentalDataSource {
 
+        UIPAvailabilityDataSource(String apiKey) {
+            super("stations", "Client-Identifier", apiKey);
+        }
+
+        @Override
+        public BikeRentalStation makeStation(JsonNode rentalStationNode) {
+            return UIPBikeRentalDataSource.this.makeStation(rentalStationNode);
+        }
+    }
 }
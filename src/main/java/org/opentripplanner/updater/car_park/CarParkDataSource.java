@@ -31,4 +31,12 @@ public interface CarParkDataSource {
 
     public List<CarPark> getCarParks();
 
+    /**
+     * @return the number of bytes downloaded by the last update, 0 if the source was unchanged, or -1 if this source
+     * does not measure it.
+     */
+    default long getBytesRead() {
+        return -1;
+    }
+
 }
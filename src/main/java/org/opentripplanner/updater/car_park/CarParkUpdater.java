@@ -30,9 +30,12 @@ import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.vertextype.ParkAndRideVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterDomain;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.PollingGraphUpdater;
 import org.opentripplanner.updater.JsonConfigurable;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +75,10 @@ public class CarParkUpdater extends PollingGraphUpdater {
 
     private SimpleStreetSplitter linker;
 
+    private Histogram pollDuration;
+
+    private Histogram pollBytes;
+
     public CarParkUpdater() { }
 
     @Override
@@ -102,6 +109,10 @@ public class CarParkUpdater extends PollingGraphUpdater {
         // Configure updater
         this.graph = graph;
         this.source = source;
+        this.pollDuration = Metrics.histogram("otp_car_park_poll_duration_ms",
+                "Time to download and parse the car park data of a source, in milliseconds.", "source", sourceType);
+        this.pollBytes = Metrics.histogram("otp_car_park_poll_bytes",
+                "Bytes of car park data downloaded per poll, 0 when the data had not changed.", "source", sourceType);
         LOG.info("Creating car-park updater running every {} seconds : {}", pollingPeriodSeconds, source);
     }
 
@@ -124,7 +135,14 @@ public class CarParkUpdater extends PollingGraphUpdater {
     @Override
     protected void runPolling() throws Exception {
         LOG.debug("Updating car parks from " + source);
-        if (!source.update()) {
+        long startNanos = System.nanoTime();
+        boolean updated = source.update();
+        pollDuration.recordMillisSince(startNanos);
+        long bytesRead = source.getBytesRead();
+        if (bytesRead >= 0) {
+            pollBytes.record(bytesRead);
+        }
+        if (!updated) {
             LOG.debug("No updates");
             return;
         }
@@ -147,10 +165,16 @@ public class CarParkUpdater extends PollingGraphUpdater {
             this.carParks = carParks;
         }
 
+        @Override
+        public GraphWriterDomain getDomain() {
+            return GraphWriterDomain.STREETS;
+        }
+
         @Override
         public void run(Graph graph) {
             // Apply stations to graph
             Set<CarPark> carParkSet = new HashSet<CarPark>();
+            boolean changed = false;
             /* Add any new park and update space available for existing parks */
             for (CarPark carPark : carParks) {
                 carParkService.addCarPark(carPark);
@@ -174,8 +198,13 @@ public class CarParkUpdater extends PollingGraphUpdater {
                         }
                     }
                     verticesByPark.put(carPark, carParkVertex);
+                    changed = true;
                 } else {
-                    verticesByPark.get(carPark).updateCapacity(carPark.maxCapacity, carPark.spacesAvailable);
+                    ParkAndRideVertex carParkVertex = verticesByPark.get(carPark);
+                    // Routing only looks at whether a park is (almost) full, so only report changes of that state
+                    boolean hadFewSpacesAvailable = carParkVertex.hasFewSpacesAvailable();
+                    carParkVertex.updateCapacity(carPark.maxCapacity, carPark.spacesAvailable);
+                    changed |= hadFewSpacesAvailable != carParkVertex.hasFewSpacesAvailable();
                 }
             }
             /* Remove existing parks that were not present in the update */
@@ -196,6 +225,9 @@ public class CarParkUpdater extends PollingGraphUpdater {
                 // post-iteration removal to avoid concurrent modification
                 verticesByPark.remove(carPark);
             }
+            if (changed || !toRemove.isEmpty()) {
+                carParkService.markChanged();
+            }
         }
     }
 
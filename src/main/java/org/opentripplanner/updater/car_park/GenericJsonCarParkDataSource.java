@@ -2,22 +2,22 @@ package org.opentripplanner.updater.car_park;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opentripplanner.routing.car_park.CarPark;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.updater.JsonConfigurable;
-import org.opentripplanner.util.HttpUtils;
+import org.opentripplanner.util.ConditionalHttpGet;
+import org.opentripplanner.util.json.JsonDataListParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Fetch car park JSON feeds and pass each record on to the specific car park subclass
+ * Fetch car park JSON feeds and pass each record on to the specific car park subclass. The feed is parsed while it is
+ * downloaded, and is not downloaded again while the server reports it unchanged.
  *
  * @see CarParkDataSource
  */
@@ -28,9 +28,11 @@ public abstract class GenericJsonCarParkDataSource implements CarParkDataSource,
     private String url;
     private String apiKey;
 
-    private String jsonParsePath;
+    private JsonDataListParser<CarPark> parser;
 
-    ArrayList<CarPark> carParks = new ArrayList<>();
+    private ConditionalHttpGet download;
+
+    List<CarPark> carParks = new ArrayList<>();
 
     /**
      * Construct superclass
@@ -40,7 +42,7 @@ public abstract class GenericJsonCarParkDataSource implements CarParkDataSource,
      *
      */
     public GenericJsonCarParkDataSource(String jsonPath) {
-        jsonParsePath = jsonPath;
+        parser = new JsonDataListParser<>(jsonPath, this::makeCarPark);
         apiKey = null;
     }
 
@@ -53,7 +55,7 @@ public abstract class GenericJsonCarParkDataSource implements CarParkDataSource,
      *
      */
     public GenericJsonCarParkDataSource(String jsonPath, String apiKeyValue) {
-        jsonParsePath = jsonPath;
+        parser = new JsonDataListParser<>(jsonPath, this::makeCarPark);
         apiKey = apiKeyValue;
     }
 
@@ -62,95 +64,49 @@ public abstract class GenericJsonCarParkDataSource implements CarParkDataSource,
      *
      */
     public GenericJsonCarParkDataSource() {
-        jsonParsePath = "";
+        parser = new JsonDataListParser<>("", this::makeCarPark);
     }
 
     @Override
     public boolean update() {
-        try {
-            InputStream data = null;
-
-            URL url2 = new URL(url);
-
-            String proto = url2.getProtocol();
-            if (proto.equals("http") || proto.equals("https")) {
-                data = HttpUtils.getData(url, "ApiKey", apiKey);
-            } else {
-                // Local file probably, try standard java
-                data = url2.openStream();
-            }
-
+        try (InputStream data = download.fetch()) {
             if (data == null) {
-                log.warn("Failed to get data from url " + url);
+                log.debug("Car park feed {} has not changed", url);
                 return false;
             }
-            parseJSON(data);
-            data.close();
+            List<CarPark> out = parser.parse(data);
+            synchronized(this) {
+                carParks = out;
+            }
         } catch (IllegalArgumentException e) {
+            download.reset();
             log.warn("Error parsing car park feed from " + url, e);
             return false;
         } catch (JsonProcessingException e) {
+            download.reset();
             log.warn("Error parsing car park feed from " + url + "(bad JSON of some sort)", e);
             return false;
         } catch (IOException e) {
+            download.reset();
             log.warn("Error reading car park feed from " + url, e);
             return false;
         }
         return true;
     }
 
-    private void parseJSON(InputStream dataStream) throws JsonProcessingException,
-        IllegalArgumentException, IOException {
-
-        ArrayList<CarPark> out = new ArrayList<>();
-
-        String parkString = convertStreamToString(dataStream);
-
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(parkString);
-
-        if (!jsonParsePath.equals("")) {
-            String delimiter = "/";
-            String[] parseElement = jsonParsePath.split(delimiter);
-            for(int i =0; i < parseElement.length ; i++) {
-                rootNode = rootNode.path(parseElement[i]);
-            }
-
-            if (rootNode.isMissingNode()) {
-                throw new IllegalArgumentException("Could not find jSON elements " + jsonParsePath);
-            }
-        }
-
-        for (int i = 0; i < rootNode.size(); i++) {
-            JsonNode node = rootNode.get(i);
-            if (node == null) {
-                continue;
-            }
-            CarPark carPark = makeCarPark(node);
-            if (carPark != null)
-                out.add(carPark);
-        }
-        synchronized(this) {
-            carParks = out;
+    /**
+     * Make the next update download and parse the feed even if it has not changed, for subclasses whose car parks
+     * also depend on other data.
+     */
+    protected void resetDownload() {
+        if (download != null) {
+            download.reset();
         }
     }
 
-    String convertStreamToString(java.io.InputStream is) {
-        java.util.Scanner scanner = null;
-        String result="";
-        try {
-
-            scanner = new java.util.Scanner(is).useDelimiter("\\A");
-            result = scanner.hasNext() ? scanner.next() : "";
-            scanner.close();
-        }
-        finally
-        {
-            if(scanner!=null)
-                scanner.close();
-        }
-        return result;
-
+    @Override
+    public long getBytesRead() {
+        return download == null ? -1 : download.getBytesRead();
     }
 
     @Override
@@ -164,6 +120,7 @@ public abstract class GenericJsonCarParkDataSource implements CarParkDataSource,
 
     public void setUrl(String url) {
         this.url = url;
+        this.download = new ConditionalHttpGet(url, "ApiKey", apiKey);
     }
 
     public abstract CarPark makeCarPark(JsonNode carParkNode);
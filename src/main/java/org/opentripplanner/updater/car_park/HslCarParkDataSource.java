@@ -1,8 +1,6 @@
 package org.opentripplanner.updater.car_park;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -13,6 +11,7 @@ import org.opentripplanner.routing.car_park.CarPark;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.util.HttpUtils;
 import org.opentripplanner.util.NonLocalizedString;
+import org.opentripplanner.util.json.JsonDataListParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +37,8 @@ public class HslCarParkDataSource extends GenericJsonCarParkDataSource{
 
     private Map<String, Integer> utilizations = Collections.EMPTY_MAP;
 
+    private static final JsonDataListParser<JsonNode> UTILIZATION_PARSER = new JsonDataListParser<>("", node -> node);
+
     public HslCarParkDataSource() {
         super("results");
     }
@@ -71,36 +72,23 @@ public class HslCarParkDataSource extends GenericJsonCarParkDataSource{
     }
 
     public boolean update() {
-        InputStream data = null;
-
-        try {
-            data = HttpUtils.getData(utilizationUrl);
+        try (InputStream data = HttpUtils.getData(utilizationUrl)) {
             if (data != null) {
                 parseUtilizations(data);
+                // The car parks are built with the utilizations, so read them again even if they did not change
+                resetDownload();
             }
-            data.close();
-
-        } catch (IOException e) {
+        } catch (IllegalArgumentException | IOException e) {
             log.warn("Error parsing car park feed from " + utilizationUrl, e);
         }
         return super.update();
     }
 
-    private void parseUtilizations(InputStream dataStream) throws JsonProcessingException,
-        IllegalArgumentException, IOException {
+    private void parseUtilizations(InputStream dataStream) throws IllegalArgumentException, IOException {
 
         Map<String, Integer> out = new HashMap<>();
 
-        String utilitiesString = convertStreamToString(dataStream);
-
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(utilitiesString);
-
-        for (int i = 0; i < rootNode.size(); i++) {
-            JsonNode node = rootNode.get(i);
-            if (node == null) {
-                continue;
-            }
+        for (JsonNode node : UTILIZATION_PARSER.parse(dataStream)) {
             if (!Objects.equals(node.path("capacityType").textValue(), "CAR")) {
                 continue;
             }
@@ -23,8 +23,9 @@ import java.util.List;
 
 /**
  * This class starts an Paho MQTT client which opens a connection to a GTFS-RT data source.
- * A callback is registered which handles incoming GTFS-RT messages as they stream in by placing a
- * GTFS-RT decoder Runnable task in the single-threaded executor for handling.
+ * A callback is registered which handles incoming GTFS-RT messages as they stream in by decoding them and
+ * passing their trip updates to a {@link TripUpdateCoalescer}, which merges them until the graph writer thread
+ * applies them. The optional maxPendingUpdates parameter limits the number of trips with pending updates.
  *
  * Usage example ('bessersmith' name is an example) in the file 'Graph.properties':
  *
@@ -59,6 +60,10 @@ public class MqttGtfsRealtimeUpdater implements GraphUpdater {
 
     private MqttClient client;
 
+    private int maxPendingUpdates;
+
+    private TripUpdateCoalescer coalescer;
+
     /**
      * What type should a newly added route have.
      *
@@ -75,6 +80,7 @@ public class MqttGtfsRealtimeUpdater implements GraphUpdater {
         qos = config.path("qos").asInt(0);
         newRouteType = config.path("newRouteType").asInt(defaultNewRouteType);
         fuzzyTripMatching = config.path("fuzzyTripMatching").asBoolean(false);
+        maxPendingUpdates = config.path("maxPendingUpdates").asInt(TripUpdateCoalescer.DEFAULT_MAX_PENDING_UPDATES);
     }
 
     @Override public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
@@ -96,6 +102,7 @@ public class MqttGtfsRealtimeUpdater implements GraphUpdater {
     }
 
     @Override public void run() throws Exception {
+        coalescer = new TripUpdateCoalescer(updaterManager, feedId, newRouteType, maxPendingUpdates);
         URI parsedUrl = new URI(url);
         client = new MqttClient(url, clientId, persistence);
         MqttConnectOptions connOpts = new MqttConnectOptions();
@@ -152,10 +159,8 @@ public class MqttGtfsRealtimeUpdater implements GraphUpdater {
                 }
 
                 if (updates != null) {
-                    // Handle trip updates via graph writer runnable
-                    TripUpdateGraphWriterRunnable runnable = new TripUpdateGraphWriterRunnable(
-                        fullDataset, updates, feedId, newRouteType);
-                    updaterManager.execute(runnable);
+                    // Handle trip updates via the coalescer, which submits graph writer runnables
+                    coalescer.offer(fullDataset, updates);
                 }
             }
 
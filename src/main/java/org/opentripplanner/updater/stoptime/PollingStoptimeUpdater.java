@@ -151,6 +151,11 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
                     snapshotSource.fuzzyTripMatcher = fuzzyTripMatcher;
                 }
             }
+
+            @Override
+            public GraphWriterDomain getDomain() {
+                return GraphWriterDomain.TRANSIT;
+            }
         });
     }
 
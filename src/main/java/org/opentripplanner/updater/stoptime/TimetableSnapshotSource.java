@@ -5,6 +5,7 @@ import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate;
 import de.mfdz.RealtimeExtension;
+import org.opentripplanner.common.model.T2;
 import org.opentripplanner.model.*;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.edgetype.Timetable;
@@ -16,12 +17,16 @@ import org.opentripplanner.routing.trippattern.RealTimeState;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.updater.GtfsRealtimeFuzzyTripMatcher;
 import org.opentripplanner.util.SentryUtilities;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.ParseException;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 /**
  * This class should be used to create snapshots of lookup tables of realtime data. This is
@@ -31,6 +36,36 @@ import java.util.concurrent.locks.ReentrantLock;
 public class TimetableSnapshotSource {
     private static final Logger LOG = LoggerFactory.getLogger(TimetableSnapshotSource.class);
 
+    private static final Counter TRIP_UPDATES_APPLIED = Metrics.counter("otp_trip_updates_applied_total",
+            "Number of GTFS-RT trip updates applied to the timetable snapshot buffer.");
+
+    private static final Counter TRIP_UPDATES_REJECTED = Metrics.counter("otp_trip_updates_rejected_total",
+            "Number of GTFS-RT trip updates that could not be applied.");
+
+    private static final Histogram APPLY_DURATION = Metrics.histogram("otp_trip_updates_apply_duration_ms",
+            "Duration of applying one GTFS-RT message, including preparing its updates and waiting for the buffer lock, in milliseconds.");
+
+    private static final Histogram PREPARE_DURATION = Metrics.histogram("otp_trip_updates_prepare_duration_ms",
+            "Duration of matching, validating and building the trip times of one GTFS-RT message before taking the buffer lock, in milliseconds.");
+
+    private static final Histogram LOCK_WAIT_DURATION = Metrics.histogram("otp_trip_updates_lock_wait_duration_ms",
+            "Duration of waiting for the buffer lock to apply one GTFS-RT message, in milliseconds.");
+
+    private static final Histogram BUFFER_UPDATE_DURATION = Metrics.histogram("otp_trip_updates_buffer_update_duration_ms",
+            "Duration of holding the buffer lock to apply one GTFS-RT message and commit the snapshot, in milliseconds.");
+
+    private static final Counter TRIP_UPDATES_UNCHANGED = Metrics.counter("otp_trip_updates_unchanged_total",
+            "Number of GTFS-RT trip updates of full datasets skipped because the trip did not change since the previous one.");
+
+    private static final Histogram DIRTY_PATTERNS = Metrics.histogram("otp_trip_updates_dirty_patterns",
+            "Number of trip patterns whose timetables were changed by one GTFS-RT message.");
+
+    private static final Counter SNAPSHOT_COMMITS = Metrics.counter("otp_timetable_snapshot_commits_total",
+            "Number of timetable snapshots committed.");
+
+    private static final Histogram SNAPSHOT_AGE = Metrics.histogram("otp_timetable_snapshot_age_ms",
+            "Age of the timetable snapshot handed to a routing request, in milliseconds since it was committed.");
+
     /**
      * Number of milliseconds per second
      */
@@ -56,6 +91,12 @@ public class TimetableSnapshotSource {
      */
     private volatile TimetableSnapshot snapshot = null;
 
+    /** Incremented every time a new snapshot is committed, so that derived data can detect stale realtime data. */
+    private volatile long snapshotVersion = 0;
+
+    /** Time the current snapshot was committed, in milliseconds since the epoch. */
+    private volatile long snapshotCommitTime = 0;
+
     /**
      * The working copy of the timetable snapshot. Should not be visible to routing threads. Should
      * only be modified by a thread that holds a lock on {@link #bufferLock}. All public methods that
@@ -68,6 +109,17 @@ public class TimetableSnapshotSource {
      */
     private final ReentrantLock bufferLock = new ReentrantLock(true);
 
+    /**
+     * For each feed sending full datasets, the update applied to each trip and service date by the last full dataset.
+     * The trips of the next full dataset that did not change are skipped instead of clearing the buffer and applying
+     * them all again. Trips changed by a differential message since then are kept with a null update, so that they are
+     * reverted by the next full dataset in any case. Only used while holding {@link #bufferLock}.
+     */
+    private final Map<String, Map<T2<String, ServiceDate>, PreparedTripUpdate>> lastFullDatasets = new HashMap<>();
+
+    /** The patterns changed in the buffer by the message being applied. Only used while holding {@link #bufferLock}. */
+    private final Set<TripPattern> dirtyPatterns = new HashSet<>();
+
     /**
      * A synchronized cache of trip patterns that are added to the graph due to GTFS-realtime messages.
      */
@@ -121,15 +173,32 @@ public class TimetableSnapshotSource {
             snapshotToReturn = snapshot;
         }
 
+        if (snapshotToReturn != null) {
+            SNAPSHOT_AGE.record(System.currentTimeMillis() - snapshotCommitTime);
+        }
         return snapshotToReturn;
     }
 
+    /**
+     * @return the number of snapshots committed so far. Changes whenever {@link #getTimetableSnapshot()} starts
+     *         returning a different snapshot.
+     */
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
     private TimetableSnapshot getTimetableSnapshot(final boolean force) {
         final long now = System.currentTimeMillis();
         if (force || now - lastSnapshotTime > maxSnapshotFrequency) {
             if (force || buffer.isDirty()) {
                 LOG.debug("Committing {}", buffer.toString());
-                snapshot = buffer.commit(force);
+                TimetableSnapshot committed = buffer.commit(force);
+                if (committed != snapshot) {
+                    snapshot = committed;
+                    snapshotVersion++;
+                    snapshotCommitTime = System.currentTimeMillis();
+                    SNAPSHOT_COMMITS.inc();
+                }
             } else {
                 LOG.debug("Buffer was unchanged, keeping old snapshot.");
             }
@@ -175,63 +244,89 @@ public class TimetableSnapshotSource {
             return;
         }
 
+        long startNanos = System.nanoTime();
+        // Matching, validating and building new trip times only read the graph, so this is done for all updates in
+        // parallel before taking the lock, and only the changes to the buffer are made while holding it.
+        final List<PreparedTripUpdate> preparedUpdates = updates.parallelStream()
+                .map(tripUpdate -> prepareTripUpdate(graph, tripUpdate, feedId))
+                .collect(Collectors.toList());
+        PREPARE_DURATION.recordMillisSince(startNanos);
+
         // Acquire lock on buffer
+        long lockNanos = System.nanoTime();
         bufferLock.lock();
+        long bufferNanos = System.nanoTime();
+        LOCK_WAIT_DURATION.recordMillisSince(lockNanos);
 
         try {
-            if (fullDataset) {
-                // Remove all updates from the buffer
+            dirtyPatterns.clear();
+            final Map<T2<String, ServiceDate>, PreparedTripUpdate> previousUpdates = lastFullDatasets.remove(feedId);
+            final Map<T2<String, ServiceDate>, PreparedTripUpdate> appliedUpdates = new HashMap<>();
+            if (fullDataset && previousUpdates == null) {
+                // Without the previous full dataset, the updates that are no longer in this one are unknown:
+                // remove all updates from the buffer
                 buffer.clear(feedId);
             }
 
             LOG.debug("message contains {} trip updates", updates.size());
             int uIndex = 0;
+            int unchanged = 0;
 
-            for (TripUpdate tripUpdate : updates) {
+            for (final PreparedTripUpdate prepared : preparedUpdates) {
+                final TripUpdate tripUpdate = prepared.tripUpdate;
                 SentryUtilities.setupSentryTripUpdate(tripUpdate);
 
-                if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
-                    final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
-                    tripUpdate = tripUpdate.toBuilder().setTrip(trip).build();
-                }
-
-                if (!tripUpdate.hasTrip()) {
-                    LOG.warn("Missing TripDescriptor in gtfs-rt trip update: \n{}", tripUpdate);
+                if (prepared.type == null) {
+                    // Already found invalid while preparing
                     statistics.increaseRejected();
+                    TRIP_UPDATES_REJECTED.inc();
                     continue;
                 }
 
-                ServiceDate serviceDate = new ServiceDate();
-                final TripDescriptor tripDescriptor = tripUpdate.getTrip();
-
-                if (tripDescriptor.hasStartDate()) {
-                    try {
-                        serviceDate = ServiceDate.parseString(tripDescriptor.getStartDate());
-                    } catch (final ParseException e) {
-                        LOG.warn("Failed to parse start date in gtfs-rt trip update: \n{}", tripUpdate);
-                        statistics.increaseRejected();
-                        continue;
+                if (prepared.key != null && previousUpdates != null) {
+                    if (fullDataset) {
+                        final boolean tracked = previousUpdates.containsKey(prepared.key);
+                        final PreparedTripUpdate previous = previousUpdates.remove(prepared.key);
+                        if (prepared.hasSameContent(previous)) {
+                            // The trip still has the trip times of the previous full dataset
+                            appliedUpdates.put(prepared.key, prepared);
+                            unchanged++;
+                            continue;
+                        }
+                        if (tracked) {
+                            // Start over from the scheduled trip, as clearing the buffer would
+                            revertTrip(feedId, prepared.key);
+                        }
+                    } else {
+                        // Keep tracking the trip without any content, so that the next full dataset starts over from
+                        // the scheduled trip, or reverts it if the trip is no longer in the dataset
+                        previousUpdates.put(prepared.key, null);
                     }
-                } else {
-                    // TODO: figure out the correct service date. For the special case that a trip
-                    // starts for example at 40:00, yesterday would probably be a better guess.
                 }
+                if (prepared.key != null && fullDataset) {
+                    appliedUpdates.put(prepared.key, prepared);
+                }
+
+                final ServiceDate serviceDate = prepared.serviceDate;
 
                 uIndex += 1;
                 LOG.debug("trip update #{} ({} updates) :",
                         uIndex, tripUpdate.getStopTimeUpdateCount());
                 LOG.trace("{}", tripUpdate);
 
-                // Determine what kind of trip update this is
+                // Apply the trip update according to its kind
                 boolean applied = false;
-                final TripUpdateType tripScheduleRelationship = determineTripScheduleRelationship(
-                        tripUpdate);
-                switch (tripScheduleRelationship) {
+                switch (prepared.type) {
                     case SCHEDULED:
-                        applied = handleScheduledTrip(tripUpdate, feedId, serviceDate);
+                        applied = prepared.tripTimes != null
+                                && updateBuffer(feedId, prepared.pattern, prepared.tripTimes, serviceDate);
                         break;
                     case ADDED:
-                        applied = validateAndHandleAddedTrip(graph, tripUpdate, feedId, serviceDate, newRouteType);
+                        applied = prepared.stops != null
+                                && handleAddedTrip(graph, tripUpdate, prepared.stops, feedId, serviceDate, newRouteType);
+                        if (applied) {
+                            LOG.info("Added trip {} to feed '{}'", tripUpdate.getTrip().getTripId(), feedId);
+                        }
                         break;
                     case UNSCHEDULED:
                         applied = handleUnscheduledTrip(tripUpdate, feedId, serviceDate);
@@ -240,27 +335,44 @@ public class TimetableSnapshotSource {
                         applied = handleCanceledTrip(tripUpdate, feedId, serviceDate);
                         break;
                     case MODIFIED:
-                        applied = validateAndHandleModifiedTrip(graph, tripUpdate, feedId, serviceDate);
+                        applied = prepared.stops != null
+                                && handleModifiedTrip(graph, prepared.trip, tripUpdate, prepared.stops, feedId, serviceDate);
                         break;
                 }
 
                 if (applied) {
                     statistics.increaseApplied();
+                    TRIP_UPDATES_APPLIED.inc();
                 } else {
                     LOG.info("Failed to apply TripUpdate.");
                     LOG.trace(" Contents: {}", tripUpdate);
                     statistics.increaseRejected();
+                    TRIP_UPDATES_REJECTED.inc();
                 }
 
             }
-            LOG.debug("end of update message");
+            if (fullDataset) {
+                if (previousUpdates != null) {
+                    // Trips that are no longer in the full dataset
+                    for (T2<String, ServiceDate> key : previousUpdates.keySet()) {
+                        revertTrip(feedId, key);
+                    }
+                }
+                lastFullDatasets.put(feedId, appliedUpdates);
+            } else if (previousUpdates != null) {
+                // Keep the previous full dataset, with the trips changed by this message
+                lastFullDatasets.put(feedId, previousUpdates);
+            }
+            TRIP_UPDATES_UNCHANGED.add(unchanged);
+            DIRTY_PATTERNS.record(dirtyPatterns.size());
+            LOG.debug("end of update message: {} unchanged trips, {} patterns changed", unchanged, dirtyPatterns.size());
             statistics.printAndClear();
 
             // Make a snapshot after each message in anticipation of incoming requests
             // Purge data if necessary (and force new snapshot if anything was purged)
             // Make sure that the public (locking) getTimetableSnapshot function is not called.
             if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
+                final boolean modified = purgeExpiredData(graph);
                 getTimetableSnapshot(modified);
             } else {
                 getTimetableSnapshot(false);
@@ -268,6 +380,144 @@ public class TimetableSnapshotSource {
         } finally {
             // Always release lock
             bufferLock.unlock();
+            BUFFER_UPDATE_DURATION.recordMillisSince(bufferNanos);
+            APPLY_DURATION.recordMillisSince(startNanos);
+        }
+    }
+
+    /**
+     * A trip update along with everything about it that does not depend on the buffer.
+     */
+    private static final class PreparedTripUpdate {
+
+        /** The update, with its trip descriptor replaced by the matched one when fuzzy matching is enabled */
+        final TripUpdate tripUpdate;
+
+        /** null if the update is invalid and must be rejected */
+        final TripUpdateType type;
+
+        final ServiceDate serviceDate;
+
+        /** The trip id and service date, null if the update has no trip id */
+        final T2<String, ServiceDate> key;
+
+        /** Hash of everything the trip times depend on, see {@link #hasSameContent(PreparedTripUpdate)} */
+        final int contentHash;
+
+        /** For SCHEDULED updates, the pattern of the trip and its updated trip times, null if invalid */
+        TripPattern pattern;
+
+        TripTimes tripTimes;
+
+        /** For MODIFIED updates, the trip being modified */
+        Trip trip;
+
+        /** For ADDED and MODIFIED updates, the stop of each stop time update, null if invalid */
+        List<Stop> stops;
+
+        PreparedTripUpdate(TripUpdate tripUpdate, TripUpdateType type, ServiceDate serviceDate) {
+            this.tripUpdate = tripUpdate;
+            this.type = type;
+            this.serviceDate = serviceDate;
+            this.key = type != null && tripUpdate.getTrip().hasTripId()
+                    ? new T2<>(tripUpdate.getTrip().getTripId(), serviceDate) : null;
+            // Hashes of protobuf messages are computed once and kept, so this also speeds up the comparisons
+            this.contentHash = 31 * tripUpdate.getTrip().hashCode() + tripUpdate.getStopTimeUpdateList().hashCode();
+        }
+
+        /**
+         * @return whether the other update results in the same trip times as this one: same trip descriptor and stop
+         *         time updates. Other fields of the trip update, like its timestamp, are not used.
+         */
+        boolean hasSameContent(PreparedTripUpdate other) {
+            return other != null && contentHash == other.contentHash && type == other.type
+                    && tripUpdate.getTrip().equals(other.tripUpdate.getTrip())
+                    && tripUpdate.getStopTimeUpdateList().equals(other.tripUpdate.getStopTimeUpdateList());
+        }
+    }
+
+    /**
+     * Match, validate and build the new trip times of a trip update, as far as possible without the buffer. This only
+     * reads the graph, so it can be called for several updates concurrently and without holding the buffer lock.
+     */
+    private PreparedTripUpdate prepareTripUpdate(final Graph graph, TripUpdate tripUpdate, final String feedId) {
+        if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
+            final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
+            // Only copy the update if the trip was matched to a different one
+            if (trip != tripUpdate.getTrip()) {
+                tripUpdate = tripUpdate.toBuilder().setTrip(trip).build();
+            }
+        }
+
+        if (!tripUpdate.hasTrip()) {
+            LOG.warn("Missing TripDescriptor in gtfs-rt trip update: \n{}", tripUpdate);
+            return new PreparedTripUpdate(tripUpdate, null, null);
+        }
+
+        ServiceDate serviceDate = new ServiceDate();
+        final TripDescriptor tripDescriptor = tripUpdate.getTrip();
+
+        if (tripDescriptor.hasStartDate()) {
+            try {
+                serviceDate = ServiceDate.parseString(tripDescriptor.getStartDate());
+            } catch (final ParseException e) {
+                LOG.warn("Failed to parse start date in gtfs-rt trip update: \n{}", tripUpdate);
+                return new PreparedTripUpdate(tripUpdate, null, null);
+            }
+        } else {
+            // TODO: figure out the correct service date. For the special case that a trip
+            // starts for example at 40:00, yesterday would probably be a better guess.
+        }
+
+        // Determine what kind of trip update this is
+        final PreparedTripUpdate prepared = new PreparedTripUpdate(tripUpdate,
+                determineTripScheduleRelationship(tripUpdate), serviceDate);
+        if (prepared.type == null) {
+            LOG.warn("Unsupported schedule relationship in gtfs-rt trip update: \n{}", tripUpdate);
+            return prepared;
+        }
+        switch (prepared.type) {
+            case SCHEDULED:
+                prepared.pattern = getPatternForTripId(feedId, tripDescriptor.getTripId());
+                prepared.tripTimes = createUpdatedTripTimes(prepared.pattern, tripUpdate, serviceDate);
+                break;
+            case ADDED:
+                prepared.stops = validateAddedTrip(graph, tripUpdate, feedId, serviceDate);
+                break;
+            case MODIFIED:
+                if (tripDescriptor.hasTripId()) {
+                    prepared.trip = getTripForTripId(feedId, tripDescriptor.getTripId());
+                }
+                prepared.stops = validateModifiedTrip(graph, prepared.trip, tripUpdate, feedId, serviceDate);
+                break;
+        }
+        return prepared;
+    }
+
+    /**
+     * Update the trip times of one trip in the buffer, keeping track of the patterns changed by the current message.
+     */
+    private boolean updateBuffer(final String feedId, final TripPattern pattern, final TripTimes tripTimes,
+            final ServiceDate serviceDate) {
+        dirtyPatterns.add(pattern);
+        return buffer.update(feedId, pattern, tripTimes, serviceDate);
+    }
+
+    /**
+     * Undo all updates of a trip on a service date in the buffer, in the pattern of the scheduled trip as well as in
+     * the pattern it was last added to.
+     */
+    private void revertTrip(final String feedId, final T2<String, ServiceDate> tripIdAndServiceDate) {
+        final String tripId = tripIdAndServiceDate.first;
+        final ServiceDate serviceDate = tripIdAndServiceDate.second;
+        final TripPattern scheduledPattern = getPatternForTripId(feedId, tripId);
+        if (scheduledPattern != null && buffer.revert(feedId, scheduledPattern, tripId, serviceDate)) {
+            dirtyPatterns.add(scheduledPattern);
+        }
+        final TripPattern addedPattern = buffer.getLastAddedTripPattern(feedId, tripId, serviceDate);
+        if (addedPattern != null && addedPattern != scheduledPattern
+                && buffer.revert(feedId, addedPattern, tripId, serviceDate)) {
+            dirtyPatterns.add(addedPattern);
         }
     }
 
@@ -327,34 +577,45 @@ public class TimetableSnapshotSource {
     }
 
     private boolean handleScheduledTrip(final TripUpdate tripUpdate, final String feedId, final ServiceDate serviceDate) {
-        final TripDescriptor tripDescriptor = tripUpdate.getTrip();
         // This does not include Agency ID or feed ID, trips are feed-unique and we currently assume a single static feed.
-        final String tripId = tripDescriptor.getTripId();
-        final TripPattern pattern = getPatternForTripId(feedId, tripId);
+        final TripPattern pattern = getPatternForTripId(feedId, tripUpdate.getTrip().getTripId());
+        final TripTimes updatedTripTimes = createUpdatedTripTimes(pattern, tripUpdate, serviceDate);
 
-        if (pattern == null) {
-            LOG.warn("No pattern found for tripId {}, skipping TripUpdate.", tripId);
+        if (updatedTripTimes == null) {
             return false;
         }
 
+        final boolean success = updateBuffer(feedId, pattern, updatedTripTimes, serviceDate);
+        return success;
+    }
+
+    /**
+     * Apply a trip update of a scheduled trip on the *scheduled* time table of its pattern. This does not use the
+     * buffer.
+     *
+     * @param pattern pattern of the trip, or null if it was not found
+     * @return the updated trip times, or null if the trip update cannot be applied
+     */
+    private TripTimes createUpdatedTripTimes(final TripPattern pattern, final TripUpdate tripUpdate,
+            final ServiceDate serviceDate) {
+        if (pattern == null) {
+            LOG.warn("No pattern found for tripId {}, skipping TripUpdate.", tripUpdate.getTrip().getTripId());
+            return null;
+        }
+
         if (tripUpdate.getStopTimeUpdateCount() < 1) {
             LOG.warn("TripUpdate contains no updates, skipping.");
-            return false;
+            return null;
         }
 
-        // Apply update on the *scheduled* time table and set the updated trip times in the buffer
         final TripTimes updatedTripTimes = pattern.scheduledTimetable.createUpdatedTripTimes(tripUpdate,
                 timeZone, serviceDate);
 
-        if (updatedTripTimes == null) {
-            return false;
+        if (updatedTripTimes != null) {
+            // Make sure that updated trip times have the correct real time state
+            updatedTripTimes.setRealTimeState(RealTimeState.UPDATED);
         }
-
-        // Make sure that updated trip times have the correct real time state
-        updatedTripTimes.setRealTimeState(RealTimeState.UPDATED);
-
-        final boolean success = buffer.update(feedId, pattern, updatedTripTimes, serviceDate);
-        return success;
+        return updatedTripTimes;
     }
 
     /**
@@ -368,6 +629,25 @@ public class TimetableSnapshotSource {
      */
     public boolean validateAndHandleAddedTrip(final Graph graph, final TripUpdate tripUpdate,
             final String feedId, final ServiceDate serviceDate, int newRouteType) {
+        final List<Stop> stops = validateAddedTrip(graph, tripUpdate, feedId, serviceDate);
+        if (stops == null) {
+            return false;
+        }
+
+        final boolean success = handleAddedTrip(graph, tripUpdate, stops, feedId, serviceDate, newRouteType);
+        if(success) {
+            LOG.info("Added trip {} to feed '{}'", tripUpdate.getTrip().getTripId(), feedId);
+        }
+        return success;
+    }
+
+    /**
+     * Validate a GTFS-RT TripUpdate message containing an ADDED trip. This does not use the buffer.
+     *
+     * @return the stop of each StopTimeUpdate in the TripUpdate message, or null if the trip is invalid
+     */
+    private List<Stop> validateAddedTrip(final Graph graph, final TripUpdate tripUpdate, final String feedId,
+            final ServiceDate serviceDate) {
         // Preconditions
         Preconditions.checkNotNull(graph);
         Preconditions.checkNotNull(tripUpdate);
@@ -381,7 +661,7 @@ public class TimetableSnapshotSource {
         final TripDescriptor tripDescriptor = tripUpdate.getTrip();
         if (!tripDescriptor.hasTripId()) {
             LOG.warn("No trip id found for ADDED trip, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether trip id already exists in graph
@@ -391,38 +671,28 @@ public class TimetableSnapshotSource {
             // TODO: should we support this and add a new instantiation of this trip (making it
             // frequency based)?
             LOG.warn("Graph already contains trip id of ADDED trip, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether a start date exists
         if (!tripDescriptor.hasStartDate()) {
             // TODO: should we support this and apply update to all days?
             LOG.warn("ADDED trip doesn't have a start date in TripDescriptor, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether at least two stop updates exist
         if (tripUpdate.getStopTimeUpdateCount() < 2) {
             LOG.warn("ADDED trip has less then two stops, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether all stop times are available and all stops exist
         final List<Stop> stops = checkNewStopTimeUpdatesAndFindStops(feedId, tripUpdate);
         if (stops == null) {
             LOG.warn("Not all stops have a stop time or stops not found. skipping.");
-            return false;
-        }
-
-        //
-        // Handle added trip
-        //
-
-        final boolean success = handleAddedTrip(graph, tripUpdate, stops, feedId, serviceDate, newRouteType);
-        if(success) {
-            LOG.info("Added trip {} to feed '{}'", tripUpdate.getTrip().getTripId(), feedId);
         }
-        return success;
+        return stops;
     }
 
     /**
@@ -728,7 +998,8 @@ public class TimetableSnapshotSource {
         final StopPattern stopPattern = new StopPattern(stopTimes, graph.deduplicator);
 
         // Get cached trip pattern or create one if it doesn't exist yet
-        final TripPattern pattern = tripPatternCache.getOrCreateTripPattern(stopPattern, trip.getRoute(), graph);
+        final TripPattern pattern = tripPatternCache.getOrCreateTripPattern(stopPattern, trip.getRoute(), graph,
+                serviceDate);
 
         // Add service code to bitset of pattern if needed (using copy on write)
         final int serviceCode = graph.serviceCodes.get(trip.getServiceId());
@@ -755,7 +1026,7 @@ public class TimetableSnapshotSource {
         newTripTimes.setRealTimeState(realTimeState);
 
         // Add new trip times to the buffer
-        final boolean success = buffer.update(feedId, pattern, newTripTimes, serviceDate);
+        final boolean success = updateBuffer(feedId, pattern, newTripTimes, serviceDate);
         return success;
     }
 
@@ -780,7 +1051,7 @@ public class TimetableSnapshotSource {
             } else {
                 final TripTimes newTripTimes = new TripTimes(timetable.getTripTimes(tripIndex));
                 newTripTimes.cancel();
-                buffer.update(feedId, pattern, newTripTimes, serviceDate);
+                updateBuffer(feedId, pattern, newTripTimes, serviceDate);
                 success = true;
             }
         }
@@ -810,7 +1081,7 @@ public class TimetableSnapshotSource {
             } else {
                 final TripTimes newTripTimes = new TripTimes(timetable.getTripTimes(tripIndex));
                 newTripTimes.cancel();
-                buffer.update(feedId, pattern, newTripTimes, serviceDate);
+                updateBuffer(feedId, pattern, newTripTimes, serviceDate);
                 success = true;
             }
         }
@@ -825,74 +1096,59 @@ public class TimetableSnapshotSource {
     }
 
     /**
-     * Validate and handle GTFS-RT TripUpdate message containing a MODIFIED trip.
+     * Validate a GTFS-RT TripUpdate message containing a MODIFIED trip. This does not use the buffer.
      *
      * @param graph graph to update
+     * @param trip the trip with the trip id of the trip update, null if there is none
      * @param tripUpdate GTFS-RT TripUpdate message
      * @param feedId
      * @param serviceDate
-     * @return true iff successful
+     * @return the stop of each StopTimeUpdate in the TripUpdate message, or null if the trip is invalid
      */
-    private boolean validateAndHandleModifiedTrip(final Graph graph, final TripUpdate tripUpdate, final String feedId, final ServiceDate serviceDate) {
+    private List<Stop> validateModifiedTrip(final Graph graph, final Trip trip, final TripUpdate tripUpdate,
+            final String feedId, final ServiceDate serviceDate) {
         // Preconditions
         Preconditions.checkNotNull(graph);
         Preconditions.checkNotNull(tripUpdate);
         Preconditions.checkNotNull(serviceDate);
 
-        //
-        // Validate modified trip
-        //
-
         // Check whether trip id of MODIFIED trip is available
         final TripDescriptor tripDescriptor = tripUpdate.getTrip();
         if (!tripDescriptor.hasTripId()) {
             LOG.warn("No trip id found for MODIFIED trip, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether trip id already exists in graph
-        String tripId = tripDescriptor.getTripId();
-        Trip trip = getTripForTripId(feedId, tripId);
         if (trip == null) {
             // TODO: should we support this and consider it an ADDED trip?
             LOG.warn("Graph does not contain trip id of MODIFIED trip, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether a start date exists
         if (!tripDescriptor.hasStartDate()) {
             // TODO: should we support this and apply update to all days?
             LOG.warn("MODIFIED trip doesn't have a start date in TripDescriptor, skipping.");
-            return false;
+            return null;
         } else {
             // Check whether service date is served by trip
             final Set<FeedScopedId> serviceIds = graph.getCalendarService().getServiceIdsOnDate(serviceDate);
             if (!serviceIds.contains(trip.getServiceId())) {
                 // TODO: should we support this and change service id of trip?
                 LOG.warn("MODIFIED trip has a service date that is not served by trip, skipping.");
-                return false;
+                return null;
             }
         }
 
         // Check whether at least two stop updates exist
         if (tripUpdate.getStopTimeUpdateCount() < 2) {
             LOG.warn("MODIFIED trip has less then two stops, skipping.");
-            return false;
+            return null;
         }
 
         // Check whether all stop times are available and all stops exist
-        List<Stop> stops = checkNewStopTimeUpdatesAndFindStops(feedId, tripUpdate);
-        if (stops == null) {
-            return false;
-        }
-
-        //
-        // Handle modified trip
-        //
-
-        final boolean success = handleModifiedTrip(graph, trip, tripUpdate, stops, feedId, serviceDate);
-
-        return success;
+        return checkNewStopTimeUpdatesAndFindStops(feedId, tripUpdate);
     }
 
     /**
@@ -966,7 +1222,7 @@ public class TimetableSnapshotSource {
         return success;
     }
 
-    private boolean purgeExpiredData() {
+    private boolean purgeExpiredData(final Graph graph) {
         final ServiceDate today = new ServiceDate();
         final ServiceDate previously = today.previous().previous(); // Just to be safe...
 
@@ -978,7 +1234,17 @@ public class TimetableSnapshotSource {
 
         lastPurgeDate = previously;
 
-        return buffer.purgeExpiredData(previously);
+        // Trips of purged days must be applied again if they are still in the next full dataset
+        for (Map<T2<String, ServiceDate>, PreparedTripUpdate> lastFullDataset : lastFullDatasets.values()) {
+            lastFullDataset.keySet().removeIf(key -> key.second.compareTo(previously) <= 0);
+        }
+
+        final boolean modified = buffer.purgeExpiredData(previously);
+
+        // Remove the vertices and edges of trip patterns only used by added or modified trips of purged days
+        tripPatternCache.purgeExpiredPatterns(graph, previously, buffer.getPatternsInUse());
+
+        return modified;
     }
 
     /**
@@ -1,67 +1,160 @@
 package org.opentripplanner.updater.stoptime;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
 import org.opentripplanner.model.StopPattern;
+import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * A synchronized cache of trip patterns that are added to the graph due to GTFS-realtime messages.
+ * A cache of trip patterns that are added to the graph due to GTFS-realtime messages. Looking up
+ * an existing trip pattern does not take any lock, only creating one does.
+ *
+ * Each trip pattern remembers the last service date it was used for. Once that date has been
+ * purged from the realtime data and the pattern is no longer used by the timetable snapshot, its
+ * vertices and edges are removed from the graph and it is dropped from the cache, so that a
+ * long-running router does not keep gaining vertices and edges for detours of past days.
  */
 public class TripPatternCache {
-    
+
+    private static final Logger LOG = LoggerFactory.getLogger(TripPatternCache.class);
+
+    private static final Counter PATTERNS_CREATED = Metrics.counter("otp_realtime_patterns_created_total",
+            "Number of trip patterns created for added or modified trips.");
+
+    private static final Counter PATTERNS_REMOVED = Metrics.counter("otp_realtime_patterns_removed_total",
+            "Number of trip patterns created for added or modified trips that were removed once expired.");
+
     private int counter = 0;
 
-    private final Map<StopPattern, TripPattern> cache = new HashMap<>();
-    
+    private final Map<StopPattern, TripPattern> cache = new ConcurrentHashMap<>();
+
+    /** The last service date each cached trip pattern was requested for. */
+    private final Map<TripPattern, ServiceDate> lastServiceDates = new ConcurrentHashMap<>();
+
     /**
      * Get cached trip pattern or create one if it doesn't exist yet. If a trip pattern is created, vertices
      * and edges for this trip pattern are also created in the graph.
-     * 
+     *
      * @param stopPattern stop pattern to retrieve/create trip pattern
      * @param route route of new trip pattern in case a new trip pattern will be created
      * @param graph graph to add vertices and edges in case a new trip pattern will be created
+     * @param serviceDate service date of the trip using the trip pattern, the pattern is kept at least until then
      * @return cached or newly created trip pattern
      */
-    public synchronized TripPattern getOrCreateTripPattern(final StopPattern stopPattern,
-            final Route route, final Graph graph) {
+    public TripPattern getOrCreateTripPattern(final StopPattern stopPattern, final Route route,
+            final Graph graph, final ServiceDate serviceDate) {
         // Check cache for trip pattern
         TripPattern tripPattern = cache.get(stopPattern);
-        
+
         // Create TripPattern if it doesn't exist yet
         if (tripPattern == null) {
-            tripPattern = new TripPattern(route, stopPattern);
-            
-            // Generate unique code for trip pattern
-            tripPattern.code = generateUniqueTripPatternCode(tripPattern);
-            
-            // Create an empty bitset for service codes (because the new pattern does not contain any trips)
-            tripPattern.setServiceCodes(graph.serviceCodes);
-            
-            // Finish scheduled time table
-            tripPattern.scheduledTimetable.finish();
-            
-            // Create vertices and edges for new TripPattern
-            // TODO: purge these vertices and edges once in a while?
-            tripPattern.makePatternVerticesAndEdges(graph, graph.index.stopVertexForStop);
-            
-            // TODO: Add pattern to graph index? 
-            
-            // Add pattern to cache
-            cache.put(stopPattern, tripPattern);
+            tripPattern = createTripPattern(stopPattern, route, graph);
+        }
+
+        lastServiceDates.merge(tripPattern, serviceDate,
+                (previous, date) -> previous.compareTo(date) >= 0 ? previous : date);
+        return tripPattern;
+    }
+
+    private synchronized TripPattern createTripPattern(final StopPattern stopPattern,
+            final Route route, final Graph graph) {
+        // Check again, another thread may have created it in the meantime
+        TripPattern tripPattern = cache.get(stopPattern);
+        if (tripPattern != null) {
+            return tripPattern;
         }
-        
+
+        tripPattern = new TripPattern(route, stopPattern);
+
+        // Generate unique code for trip pattern
+        tripPattern.code = generateUniqueTripPatternCode(tripPattern);
+
+        // Create an empty bitset for service codes (because the new pattern does not contain any trips)
+        tripPattern.setServiceCodes(graph.serviceCodes);
+
+        // Finish scheduled time table
+        tripPattern.scheduledTimetable.finish();
+
+        // Create vertices and edges for new TripPattern
+        tripPattern.makePatternVerticesAndEdges(graph, graph.index.stopVertexForStop);
+
+        // TODO: Add pattern to graph index?
+
+        // Add pattern to cache
+        cache.put(stopPattern, tripPattern);
+        PATTERNS_CREATED.inc();
         return tripPattern;
     }
 
+    /**
+     * Remove the trip patterns whose last service date is on or before the given date and which are
+     * not in the given set of patterns still in use, together with their vertices and edges.
+     *
+     * @param graph graph the vertices and edges of the trip patterns were added to
+     * @param serviceDate last purged service date
+     * @param patternsInUse trip patterns that must be kept
+     * @return the number of removed trip patterns
+     */
+    public synchronized int purgeExpiredPatterns(final Graph graph, final ServiceDate serviceDate,
+            final Set<TripPattern> patternsInUse) {
+        int removed = 0;
+        for (Iterator<TripPattern> it = cache.values().iterator(); it.hasNext();) {
+            TripPattern tripPattern = it.next();
+            ServiceDate lastServiceDate = lastServiceDates.get(tripPattern);
+            if ((lastServiceDate != null && serviceDate.compareTo(lastServiceDate) < 0)
+                    || patternsInUse.contains(tripPattern)) {
+                continue;
+            }
+            it.remove();
+            lastServiceDates.remove(tripPattern);
+            removeVerticesAndEdges(graph, tripPattern);
+            removed++;
+        }
+        if (removed > 0) {
+            PATTERNS_REMOVED.add(removed);
+            LOG.info("Removed {} expired realtime trip patterns, {} remaining.", removed, cache.size());
+        }
+        return removed;
+    }
+
+    /** @return the number of cached trip patterns. */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove the pattern vertices of the trip pattern from the graph, which also removes the hop,
+     * dwell, board and alight edges connecting them to each other and to the transit stops.
+     */
+    private static void removeVerticesAndEdges(final Graph graph, final TripPattern tripPattern) {
+        for (Vertex vertex : tripPattern.departVertices) {
+            if (vertex != null && graph.containsVertex(vertex)) {
+                graph.removeVertexAndEdges(vertex);
+            }
+        }
+        for (Vertex vertex : tripPattern.arriveVertices) {
+            if (vertex != null && graph.containsVertex(vertex)) {
+                graph.removeVertexAndEdges(vertex);
+            }
+        }
+    }
+
     /**
      * Generate unique trip pattern code for real-time added trip pattern. This function roughly
      * follows the format of {@link TripPattern#generateUniqueIds(java.util.Collection)}.
-     * 
+     *
      * @param tripPattern trip pattern to generate code for
      * @return unique trip pattern code
      */
@@ -0,0 +1,170 @@
+package org.opentripplanner.updater.stoptime;
+
+import com.google.common.base.Preconditions;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterDomain;
+import org.opentripplanner.updater.GraphWriterRunnable;
+import org.opentripplanner.util.monitoring.Counter;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the trip updates of streaming GTFS-RT updaters (MQTT, websocket) between two runs of the graph writer
+ * thread, so that a burst of messages results in a single graph writer task instead of one task per message.
+ *
+ * Pending differential updates are merged per trip and start date, the last one winning: each update of a trip is
+ * applied from its scheduled times, so only the latest one matters. A full dataset replaces everything still pending.
+ * At most one graph writer task is queued per coalescer, taking all updates pending when it starts. When the number
+ * of pending trips reaches a limit, the thread receiving messages is blocked until they are taken, which slows down
+ * the client library and ultimately the message source.
+ */
+public class TripUpdateCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TripUpdateCoalescer.class);
+
+    public static final int DEFAULT_MAX_PENDING_UPDATES = 10000;
+
+    private final GraphUpdaterManager updaterManager;
+
+    private final String feedId;
+
+    private final int newRouteType;
+
+    private final int maxPendingUpdates;
+
+    private final Counter supersededUpdates;
+
+    private final Histogram lag;
+
+    private final Histogram blockedDuration;
+
+    /** True if the pending updates start with a full dataset. */
+    private boolean fullDataset = false;
+
+    /** Pending updates by trip, in arrival order. Updates without a trip ID are keyed by themselves. */
+    private Map<Object, TripUpdate> pending = new LinkedHashMap<>();
+
+    /** True if a graph writer task has been submitted and has not yet taken the pending updates. */
+    private boolean drainScheduled = false;
+
+    /** Arrival of the oldest message whose updates are pending, to measure the lag until they are applied. */
+    private long batchStartNanos;
+
+    private volatile int pendingCount = 0;
+
+    public TripUpdateCoalescer(GraphUpdaterManager updaterManager, String feedId, int newRouteType,
+                               int maxPendingUpdates) {
+        Preconditions.checkNotNull(updaterManager);
+        Preconditions.checkNotNull(feedId);
+        Preconditions.checkArgument(maxPendingUpdates > 0, "maxPendingUpdates must be positive");
+        this.updaterManager = updaterManager;
+        this.feedId = feedId;
+        this.newRouteType = newRouteType;
+        this.maxPendingUpdates = maxPendingUpdates;
+        supersededUpdates = Metrics.counter("otp_trip_updates_superseded_total",
+                "Number of streamed trip updates dropped because a newer update of the same trip arrived before "
+                        + "they were applied.", "feed", feedId);
+        lag = Metrics.histogram("otp_trip_updates_lag_ms",
+                "Time from the arrival of the oldest streamed message of a batch until the batch is applied, "
+                        + "in milliseconds.", "feed", feedId);
+        blockedDuration = Metrics.histogram("otp_trip_updates_blocked_ms",
+                "Time the receiving thread of a streaming updater was blocked because too many trip updates were "
+                        + "pending, in milliseconds.", "feed", feedId);
+        Metrics.gauge("otp_trip_updates_pending", "Number of streamed trip updates waiting to be applied.",
+                () -> pendingCount, "feed", feedId);
+    }
+
+    /**
+     * Add the updates of a message to the pending ones, and make sure a graph writer task will apply them. This blocks
+     * while too many differential updates are pending.
+     */
+    public synchronized void offer(boolean fullDataset, List<TripUpdate> updates) {
+        long receivedNanos = System.nanoTime();
+        if (fullDataset) {
+            supersededUpdates.add(pending.size());
+            pending.clear();
+            this.fullDataset = true;
+            batchStartNanos = receivedNanos;
+        } else if (pending.size() >= maxPendingUpdates) {
+            LOG.debug("{} trip updates of feed {} are pending, waiting for the graph writer.", pending.size(),
+                    feedId);
+            try {
+                while (drainScheduled && pending.size() >= maxPendingUpdates) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // Accept the updates anyway, the updater is being stopped
+                Thread.currentThread().interrupt();
+            }
+            blockedDuration.recordMillisSince(receivedNanos);
+        }
+
+        for (TripUpdate update : updates) {
+            Object key = coalescingKey(update);
+            // Remove first, so that the latest update of a trip keeps its arrival order
+            if (pending.remove(key) != null) {
+                supersededUpdates.inc();
+            }
+            pending.put(key, update);
+        }
+        pendingCount = pending.size();
+
+        if (!drainScheduled) {
+            drainScheduled = true;
+            if (!this.fullDataset) {
+                batchStartNanos = receivedNanos;
+            }
+            updaterManager.execute(new GraphWriterRunnable() {
+                @Override
+                public void run(Graph graph) {
+                    apply(graph);
+                }
+
+                @Override
+                public GraphWriterDomain getDomain() {
+                    return GraphWriterDomain.TRANSIT;
+                }
+            });
+        }
+    }
+
+    /** Apply all pending updates to the graph. This is run by the graph writer thread. */
+    void apply(Graph graph) {
+        boolean full;
+        List<TripUpdate> updates;
+        long startNanos;
+        synchronized (this) {
+            full = fullDataset;
+            updates = new ArrayList<>(pending.values());
+            startNanos = batchStartNanos;
+            fullDataset = false;
+            pending = new LinkedHashMap<>();
+            pendingCount = 0;
+            drainScheduled = false;
+            notifyAll();
+        }
+        try {
+            new TripUpdateGraphWriterRunnable(full, updates, feedId, newRouteType).run(graph);
+        } finally {
+            lag.recordMillisSince(startNanos);
+        }
+    }
+
+    private static Object coalescingKey(TripUpdate update) {
+        TripDescriptor trip = update.getTrip();
+        if (!trip.hasTripId()) {
+            return update;
+        }
+        return trip.getTripId() + ":" + trip.getStartDate();
+    }
+}
@@ -3,6 +3,7 @@ package org.opentripplanner.updater.stoptime;
 import java.util.List;
 
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphWriterDomain;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.slf4j.Logger;
@@ -52,4 +53,9 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
                     + " The following updates are not applied: {}", updates);
         }
     }
+
+    @Override
+    public GraphWriterDomain getDomain() {
+        return GraphWriterDomain.TRANSIT;
+    }
 }
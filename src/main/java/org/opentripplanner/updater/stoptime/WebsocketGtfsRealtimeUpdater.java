@@ -26,8 +26,9 @@ import com.ning.http.client.websocket.WebSocketUpgradeHandler;
 
 /**
  * This class starts an HTTP client which opens a websocket connection to a GTFS-RT data source. A
- * callback is registered which handles incoming GTFS-RT messages as they stream in by placing a
- * GTFS-RT decoder Runnable task in the single-threaded executor for handling.
+ * callback is registered which handles incoming GTFS-RT messages as they stream in by decoding them and
+ * passing their trip updates to a {@link TripUpdateCoalescer}, which merges them until the graph writer
+ * thread applies them.
  *
  * Usage example ('websocket' name is an example) in the file 'Graph.properties':
  *
@@ -76,6 +77,13 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
      */
     private int newRouteType = defaultNewRouteType;
 
+    /**
+     * The maximum number of trips with pending updates before the websocket listener is blocked.
+     */
+    private int maxPendingUpdates;
+
+    private TripUpdateCoalescer coalescer;
+
     @Override
     public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
         this.updaterManager = updaterManager;
@@ -87,6 +95,7 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
         feedId = config.path("feedId").asText("");
         reconnectPeriodSec = config.path("reconnectPeriodSec").asInt(DEFAULT_RECONNECT_PERIOD_SEC);
         newRouteType = config.path("newRouteType").asInt(defaultNewRouteType);
+        maxPendingUpdates = config.path("maxPendingUpdates").asInt(TripUpdateCoalescer.DEFAULT_MAX_PENDING_UPDATES);
     }
 
     @Override
@@ -110,6 +119,7 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
         // config);
         // Using Netty by default:
 
+        coalescer = new TripUpdateCoalescer(updaterManager, feedId, newRouteType, maxPendingUpdates);
         while (true) {
             AsyncHttpClient client = new AsyncHttpClient();
             WebSocketListener listener = new Listener();
@@ -189,10 +199,8 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
             }
 
             if (updates != null) {
-                // Handle trip updates via graph writer runnable
-                TripUpdateGraphWriterRunnable runnable = new TripUpdateGraphWriterRunnable(
-                        fullDataset, updates, feedId, newRouteType);
-                updaterManager.execute(runnable);
+                // Handle trip updates via the coalescer, which submits graph writer runnables
+                coalescer.offer(fullDataset, updates);
             }
         }
     }
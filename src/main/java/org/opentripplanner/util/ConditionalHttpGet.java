@@ -0,0 +1,111 @@
+package org.opentripplanner.util;
+
+import com.google.common.io.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Downloads the same URL over and over again, for polling updaters. The ETag and Last-Modified headers of the previous
+ * response are sent back, so that the server can answer 304 Not Modified instead of sending an unchanged document
+ * again. URLs which are not HTTP, typically local files, are always read.
+ *
+ * The validators are kept as soon as a response is received. If the content could not be used, call {@link #reset()}
+ * so that it is downloaded again next time even if it did not change.
+ */
+public class ConditionalHttpGet {
+
+    private final String url;
+
+    private final String requestHeaderName;
+
+    private final String requestHeaderValue;
+
+    private String etag;
+
+    private String lastModified;
+
+    private CountingInputStream lastContent;
+
+    public ConditionalHttpGet(String url) {
+        this(url, null, null);
+    }
+
+    public ConditionalHttpGet(String url, String requestHeaderName, String requestHeaderValue) {
+        this.url = url;
+        this.requestHeaderName = requestHeaderName;
+        this.requestHeaderValue = requestHeaderValue;
+    }
+
+    /**
+     * @return the content, which must be closed by the caller, or null if it has not changed since the previous call
+     * @throws IOException if the content could not be downloaded
+     */
+    public synchronized InputStream fetch() throws IOException {
+        lastContent = null;
+        URL parsedUrl = new URL(url);
+        String proto = parsedUrl.getProtocol();
+        if (!proto.equals("http") && !proto.equals("https")) {
+            // Local file probably, try standard java
+            return count(parsedUrl.openStream());
+        }
+
+        HttpGet httpget = new HttpGet(url);
+        if (requestHeaderValue != null) {
+            httpget.addHeader(requestHeaderName, requestHeaderValue);
+        }
+        if (etag != null) {
+            httpget.addHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            httpget.addHeader("If-Modified-Since", lastModified);
+        }
+        HttpResponse response = HttpUtils.getClient().execute(httpget);
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (status == HttpStatus.SC_NOT_MODIFIED) {
+            EntityUtils.consumeQuietly(entity);
+            return null;
+        }
+        if (status != HttpStatus.SC_OK || entity == null) {
+            EntityUtils.consumeQuietly(entity);
+            reset();
+            throw new IOException("Could not get " + url + ": " + response.getStatusLine());
+        }
+        etag = headerValue(response, "ETag");
+        lastModified = headerValue(response, "Last-Modified");
+        return count(entity.getContent());
+    }
+
+    /** Forget the validators of the previous response, so that the next fetch downloads the content in any case. */
+    public synchronized void reset() {
+        etag = null;
+        lastModified = null;
+    }
+
+    /** @return the number of bytes read so far from the content returned by the last fetch, 0 if it was unchanged. */
+    public synchronized long getBytesRead() {
+        return lastContent == null ? 0 : lastContent.getCount();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private InputStream count(InputStream content) {
+        lastContent = new CountingInputStream(content);
+        return lastContent;
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+}
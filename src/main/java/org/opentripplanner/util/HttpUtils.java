@@ -57,7 +57,7 @@ public class HttpUtils {
         }
     }
     
-    private static HttpClient getClient() {
+    static HttpClient getClient() {
         HttpClient httpClient = HttpClientBuilder.create()
                 .setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(TIMEOUT_SOCKET).build())
                 .setConnectionTimeToLive(TIMEOUT_CONNECTION, TimeUnit.MILLISECONDS)
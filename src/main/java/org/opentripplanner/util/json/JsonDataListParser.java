@@ -0,0 +1,98 @@
+package org.opentripplanner.util.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Parses a list of data elements out of a JSON document while it is being read, skipping everything outside of the
+ * list. Only one element of the list at a time is read into a tree, which is handed to a factory building the data
+ * element, so a document of tens of megabytes is never held in memory as a whole, neither as text nor as a tree.
+ *
+ * @param <T> The class of the data elements that will be built.
+ */
+public class JsonDataListParser<T> {
+
+    /** Creates parsers which can read trees. Thread safe once configured. */
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    private final String path;
+
+    private final String[] pathElements;
+
+    private final Function<JsonNode, T> dataFactory;
+
+    /**
+     * @param path JSON path to get from enclosing elements to the nested list, with levels separated by '/', for
+     *        example "d/list". Empty if the list is on the top level.
+     * @param dataFactory builds a data element from an element of the list, or returns null to skip it
+     */
+    public JsonDataListParser(String path, Function<JsonNode, T> dataFactory) {
+        this.path = path;
+        this.pathElements = path.isEmpty() ? new String[0] : path.split("/");
+        this.dataFactory = dataFactory;
+    }
+
+    /**
+     * @return the data elements built from the list, empty if the path leads to something else than a list
+     * @throws IllegalArgumentException if the path does not exist in the document
+     */
+    public List<T> parse(InputStream data) throws IOException {
+        List<T> out = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            parser.nextToken();
+            for (String element : pathElements) {
+                if (!moveToField(parser, element)) {
+                    throw new IllegalArgumentException("Could not find jSON elements " + path);
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                return out;
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode node = parser.readValueAsTree();
+                if (node == null) {
+                    continue;
+                }
+                T t = dataFactory.apply(node);
+                if (t != null) {
+                    out.add(t);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Move the parser from the start of an object to the value of one of its fields, skipping the other fields.
+     *
+     * @return false if the parser is not at the start of an object, or the object has no such field
+     */
+    private static boolean moveToField(JsonParser parser, String name) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(fieldName)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "(" + path + ")";
+    }
+}
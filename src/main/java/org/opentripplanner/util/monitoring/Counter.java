@@ -0,0 +1,31 @@
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count. Increments are cheap and do not contend between threads, so counters can be
+ * updated on the routing hot paths.
+ */
+public class Counter extends Metric {
+
+    private final LongAdder count = new LongAdder();
+
+    public void inc() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    void write(Writer writer, String name, String labels) throws IOException {
+        writeSample(writer, name, labels, null, get());
+    }
+}
@@ -0,0 +1,31 @@
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.LongSupplier;
+
+/**
+ * A value that is read from its owner every time the metrics are exported, e.g. a queue length or memory use.
+ */
+public class Gauge extends Metric {
+
+    private volatile LongSupplier supplier;
+
+    Gauge(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    /** Read the value from a new owner, e.g. after a graph has been reloaded. */
+    void setSupplier(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public long get() {
+        return supplier.getAsLong();
+    }
+
+    @Override
+    void write(Writer writer, String name, String labels) throws IOException {
+        writeSample(writer, name, labels, null, get());
+    }
+}
@@ -0,0 +1,132 @@
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative long values, e.g. durations in milliseconds or numbers of visited vertices.
+ *
+ * Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of the value: every power
+ * of two is split into {@link #SUB_BUCKETS} buckets, so any quantile is reported with a relative error of at most
+ * 1 / SUB_BUCKETS over the full range of long values. Recording a value costs two uncontended additions and does not
+ * allocate. The distribution covers all values recorded since startup.
+ */
+public class Histogram extends Metric {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int N_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The quantiles that are exported, in addition to the maximum. */
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final LongAdder[] buckets = new LongAdder[N_BUCKETS];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < N_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[bucketIndex(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** Record the milliseconds elapsed since the given start time, as returned by {@link System#nanoTime()}. */
+    public void recordMillisSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000000);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return an upper bound of the value below which the given fraction of all recorded values lies, or 0 if nothing
+     *         was recorded yet.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] counts = new long[N_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        return valueAtQuantile(counts, total, quantile);
+    }
+
+    private long valueAtQuantile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /** Histograms are exported as Prometheus summaries, with a fixed set of quantiles. */
+    @Override
+    void write(Writer writer, String name, String labels) throws IOException {
+        long[] counts = new long[N_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        for (double quantile : QUANTILES) {
+            writeSample(writer, name, labels, "quantile=\"" + quantile + "\"", valueAtQuantile(counts, total, quantile));
+        }
+        writeSample(writer, name, labels, "quantile=\"1.0\"", getMax());
+        writeSample(writer, name + "_sum", labels, null, getSum());
+        writeSample(writer, name + "_count", labels, null, total);
+    }
+}
@@ -0,0 +1,36 @@
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A single time series (or for histograms, a group of series) registered in {@link Metrics}.
+ */
+public abstract class Metric {
+
+    /** Write the current value(s) in Prometheus text format, using the given name and rendered label pairs. */
+    abstract void write(Writer writer, String name, String labels) throws IOException;
+
+    static void writeSample(Writer writer, String name, String labels, String extraLabel, double value)
+            throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            writer.write('{');
+            writer.write(labels);
+            if (extraLabel != null) {
+                if (!labels.isEmpty()) {
+                    writer.write(',');
+                }
+                writer.write(extraLabel);
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            writer.write(Long.toString((long) value));
+        } else {
+            writer.write(Double.toString(value));
+        }
+        writer.write('\n');
+    }
+}
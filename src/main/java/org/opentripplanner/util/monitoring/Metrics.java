@@ -0,0 +1,111 @@
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of all operational metrics of this OTP instance, exported in Prometheus text format by the metrics web
+ * service.
+ *
+ * Metrics are looked up once by name and label pairs, typically into static final fields of the class that records
+ * them, and then updated without any further lookups. Looking up a metric that is already registered returns the
+ * existing instance, so different instances of e.g. an updater with the same labels share one time series.
+ *
+ * This replaces the old MonitoringStore, which only tracked a few maximum values and had to be explicitly enabled.
+ */
+public final class Metrics {
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    static {
+        Runtime runtime = Runtime.getRuntime();
+        gauge("otp_jvm_memory_used_bytes", "Heap memory currently in use.",
+                () -> runtime.totalMemory() - runtime.freeMemory());
+        gauge("otp_jvm_memory_max_bytes", "Maximum heap size.", runtime::maxMemory);
+    }
+
+    private Metrics() { }
+
+    /**
+     * @param labels alternating label names and values, e.g. "updater", "BikeRentalUpdater".
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return register(name, help, "counter", Counter.class, Counter::new, labels);
+    }
+
+    /** A counter whose value is maintained elsewhere and read when the metrics are exported. */
+    public static Gauge counter(String name, String help, LongSupplier supplier, String... labels) {
+        Gauge gauge = register(name, help, "counter", Gauge.class, () -> new Gauge(supplier), labels);
+        gauge.setSupplier(supplier);
+        return gauge;
+    }
+
+    /** If the gauge is already registered, it is redirected to the new supplier. */
+    public static Gauge gauge(String name, String help, LongSupplier supplier, String... labels) {
+        Gauge gauge = register(name, help, "gauge", Gauge.class, () -> new Gauge(supplier), labels);
+        gauge.setSupplier(supplier);
+        return gauge;
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return register(name, help, "summary", Histogram.class, Histogram::new, labels);
+    }
+
+    /** Write all registered metrics in the Prometheus text exposition format (version 0.0.4). */
+    public static void writePrometheus(Writer writer) throws IOException {
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            Family family = entry.getValue();
+            writer.write("# HELP " + entry.getKey() + " " + family.help + "\n");
+            writer.write("# TYPE " + entry.getKey() + " " + family.type + "\n");
+            for (Map.Entry<String, Metric> metric : family.metrics.entrySet()) {
+                metric.getValue().write(writer, entry.getKey(), metric.getKey());
+            }
+        }
+    }
+
+    private static <T extends Metric> T register(String name, String help, String type, Class<T> metricClass,
+                                                 Supplier<T> factory, String... labels) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        Metric metric = family.metrics.computeIfAbsent(renderLabels(labels), l -> factory.get());
+        if (!metricClass.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " +
+                    metric.getClass().getSimpleName());
+        }
+        return metricClass.cast(metric);
+    }
+
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name and value pairs.");
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            rendered.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            rendered.append('"');
+        }
+        return rendered.toString();
+    }
+
+    private static class Family {
+        final String help;
+        final String type;
+        final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.opentripplanner.analyst;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.location.TemporaryStreetLocation;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.util.NonLocalizedString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VertexTimesTest {
+
+    @Test
+    public void testPutAndGet() {
+        VertexTimes times = new VertexTimes(10);
+        assertEquals(TimeSurface.UNREACHABLE, times.get(3));
+        assertEquals(TimeSurface.UNREACHABLE, times.get(100));
+
+        times.put(3, 120);
+        times.put(7, 0);
+        times.put(3, 60);
+        times.put(25, 300);
+        assertEquals(60, times.get(3));
+        assertEquals(0, times.get(7));
+        assertEquals(300, times.get(25));
+        assertEquals(3, times.size());
+
+        times.put(7, TimeSurface.UNREACHABLE);
+        assertEquals(TimeSurface.UNREACHABLE, times.get(7));
+        assertEquals(2, times.size());
+    }
+
+    @Test
+    public void testIteration() {
+        VertexTimes times = new VertexTimes(10);
+        times.put(0, 10);
+        times.put(4, 20);
+        times.put(9, 30);
+        StringBuilder reached = new StringBuilder();
+        for (int v = times.nextReached(0); v >= 0; v = times.nextReached(v + 1)) {
+            reached.append(v).append(' ');
+        }
+        assertEquals("0 4 9 ", reached.toString());
+    }
+
+    @Test
+    public void testCompact() {
+        VertexTimes times = new VertexTimes(1000);
+        times.put(2, 100);
+        times.put(10, 65000);
+        times.compact();
+        assertEquals(22, times.getStorageBytes());
+        assertEquals(100, times.get(2));
+        assertEquals(65000, times.get(10));
+        assertEquals(TimeSurface.UNREACHABLE, times.get(5));
+        assertEquals(TimeSurface.UNREACHABLE, times.get(500));
+        assertEquals(10, times.nextReached(3));
+
+        // Modifying a compacted instance expands it again
+        times.put(5, 100000);
+        assertEquals(100000, times.get(5));
+        assertEquals(100, times.get(2));
+        assertEquals(3, times.size());
+
+        // Times not fitting in a char are kept as ints, but trimmed
+        times.compact();
+        assertEquals(44, times.getStorageBytes());
+        assertEquals(100000, times.get(5));
+        assertTrue(times.nextReached(11) < 0);
+    }
+
+    /** Temporary vertices, with the highest indices, do not make the array cover all vertices created so far */
+    @Test
+    public void testTemporaryVertices() {
+        Graph graph = new Graph();
+        IntersectionVertex vertex = new IntersectionVertex(graph, "v", 0, 0);
+        TemporaryStreetLocation origin = new TemporaryStreetLocation("origin", new Coordinate(0, 0),
+                new NonLocalizedString("origin"), false);
+        assertTrue(origin.getIndex() > vertex.getIndex());
+
+        VertexTimes times = new VertexTimes();
+        times.put(origin, 0);
+        times.put(vertex, 60);
+        assertEquals(0, times.get(origin));
+        assertEquals(60, times.get(vertex));
+        assertEquals(2, times.size());
+        assertEquals(vertex.getIndex(), times.nextReached(0));
+        assertTrue(times.nextReached(vertex.getIndex() + 1) < 0);
+
+        times.compact();
+        assertEquals(2L * (vertex.getIndex() + 1) + 8, times.getStorageBytes());
+        assertEquals(0, times.get(origin));
+
+        times.put(origin, TimeSurface.UNREACHABLE);
+        assertEquals(TimeSurface.UNREACHABLE, times.get(origin));
+        assertEquals(1, times.size());
+    }
+}
@@ -0,0 +1,287 @@
+package org.opentripplanner.analyst.batch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.common.RepeatingTimePeriod;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.ConstantIntersectionTraversalCostModel;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.DominanceFunction;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiOriginSearchTest {
+
+    private static final int SIZE = 12;
+
+    private Graph graph;
+
+    private IntersectionVertex[][] grid;
+
+    @Before
+    public void before() {
+        // A grid of streets with random lengths, some of them one-way and some of them footways
+        graph = new Graph();
+        grid = new IntersectionVertex[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                grid[x][y] = new IntersectionVertex(graph, x + "_" + y, x * 0.001, y * 0.001);
+            }
+        }
+        Random random = new Random(7);
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (x + 1 < SIZE) {
+                    edges(grid[x][y], grid[x + 1][y], 50 + random.nextInt(100), random.nextInt(5) == 0,
+                            random.nextInt(10) == 0);
+                }
+                if (y + 1 < SIZE) {
+                    edges(grid[x][y], grid[x][y + 1], 50 + random.nextInt(100), random.nextInt(5) == 0,
+                            random.nextInt(10) == 0);
+                }
+            }
+        }
+        // Turn restrictions for cars and bicycles at a few intersections
+        TraverseModeSet modes = new TraverseModeSet("CAR,BICYCLE");
+        for (int i = 0; i < 20; i++) {
+            IntersectionVertex vertex = grid[1 + random.nextInt(SIZE - 2)][1 + random.nextInt(SIZE - 2)];
+            List<Edge> incoming = new ArrayList<>(vertex.getIncoming());
+            List<Edge> outgoing = new ArrayList<>(vertex.getOutgoing());
+            if (incoming.isEmpty() || outgoing.isEmpty()) {
+                continue;
+            }
+            Edge from = incoming.get(random.nextInt(incoming.size()));
+            Edge to = outgoing.get(random.nextInt(outgoing.size()));
+            TurnRestrictionType type = i % 5 == 0 ? TurnRestrictionType.ONLY_TURN : TurnRestrictionType.NO_TURN;
+            graph.addTurnRestriction(from, new TurnRestriction(from, to, type, modes));
+        }
+    }
+
+    @Test
+    public void testSameTimesAsShortestPathTreeWalking() {
+        assertSameTimesAsShortestPathTree(request("WALK"));
+    }
+
+    @Test
+    public void testSameTimesAsShortestPathTreeCycling() {
+        RoutingRequest request = request("BICYCLE");
+        request.bikeSwitchTime = 10;
+        assertSameTimesAsShortestPathTree(request);
+    }
+
+    @Test
+    public void testSameTimesAsShortestPathTreeDriving() {
+        assertSameTimesAsShortestPathTree(request("CAR"));
+    }
+
+    @Test
+    public void testTurnRestrictionsAreApplied() {
+        // Edges of 100 m taking 9 seconds by car, with a restriction forcing cars to go around through d
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", 0, 0);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", 0.001, 0);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", 0.002, 0);
+        IntersectionVertex d = new IntersectionVertex(graph, "d", 0.0015, 0.0008);
+        edges(a, b, 100, true, false);
+        edges(b, c, 100, true, false);
+        edges(b, d, 100, true, false);
+        edges(d, c, 100, true, false);
+        Edge from = a.getOutgoing().iterator().next();
+        Edge to = c.getIncoming().stream().filter(edge -> edge.getFromVertex() == b).findFirst().get();
+        graph.addTurnRestriction(from, new TurnRestriction(from, to, TurnRestrictionType.NO_TURN,
+                new TraverseModeSet("CAR")));
+        List<Sample> origins = new ArrayList<>();
+        origins.add(new Sample(a, 0, null, 0));
+
+        MultiOriginSearch search = new MultiOriginSearch(
+                MultiOriginSearch.StreetGraph.build(graph, request("CAR")), 1, 0);
+        search.route(origins);
+        assertEquals(18, search.getTime(0, d));
+        assertEquals(27, search.getTime(0, c));
+
+        RoutingRequest request = request("BICYCLE");
+        request.bikeSpeed = 10;
+        search = new MultiOriginSearch(MultiOriginSearch.StreetGraph.build(graph, request), 1, 0);
+        search.route(origins);
+        assertEquals(20, search.getTime(0, c));
+    }
+
+    @Test
+    public void testSupportedRequests() {
+        for (String modes : new String[] { "WALK", "BICYCLE", "CAR" }) {
+            // The default intersection model has turn costs
+            RoutingRequest request = new RoutingRequest(new TraverseModeSet(modes));
+            assertTrue(modes, MultiOriginSearch.supports(graph, request));
+            assertTrue(modes, MultiOriginSearch.supports(graph, request(modes)));
+        }
+
+        RoutingRequest request = request("CAR");
+        request.arriveBy = true;
+        assertFalse(MultiOriginSearch.supports(graph, request));
+
+        request = request("WALK");
+        request.softWalkLimiting = false;
+        request.maxWalkDistance = 1000;
+        assertFalse(MultiOriginSearch.supports(graph, request));
+
+        StreetEdge edge = (StreetEdge) grid[3][3].getOutgoing().iterator().next();
+        edge.setMotorVehicleNoThruTraffic(true);
+        assertTrue(MultiOriginSearch.supports(graph, request("WALK")));
+        assertFalse(MultiOriginSearch.supports(graph, request("CAR")));
+        edge.setMotorVehicleNoThruTraffic(false);
+
+        Edge from = grid[4][4].getIncoming().iterator().next();
+        Edge to = grid[4][4].getOutgoing().iterator().next();
+        TurnRestriction restriction = new TurnRestriction(from, to, TurnRestrictionType.NO_TURN,
+                new TraverseModeSet("CAR"));
+        restriction.time = RepeatingTimePeriod.parseFromOsmTurnRestriction("Mo", "Fr", "07:00", "09:00");
+        graph.addTurnRestriction(from, restriction);
+        assertFalse(MultiOriginSearch.supports(graph, request("CAR")));
+    }
+
+    @Test
+    public void testBundleGivesSameTimesAsSingleOrigins() {
+        MultiOriginSearch.StreetGraph streetGraph = MultiOriginSearch.StreetGraph.build(graph, request("WALK"));
+        Random random = new Random(3);
+        List<Sample> origins = new ArrayList<>();
+        for (int o = 0; o < MultiOriginSearch.MAX_ORIGINS; o++) {
+            int x = random.nextInt(SIZE - 1);
+            int y = random.nextInt(SIZE);
+            int d0 = random.nextInt(50);
+            origins.add(new Sample(grid[x][y], d0, grid[x + 1][y], 50 - d0));
+        }
+        // An origin that could not be linked to the street network
+        origins.set(10, null);
+
+        // A short cutoff, so that some vertices are not reached
+        MultiOriginSearch bundleSearch = new MultiOriginSearch(streetGraph, MultiOriginSearch.MAX_ORIGINS, 600);
+        bundleSearch.route(origins);
+        MultiOriginSearch singleSearch = new MultiOriginSearch(streetGraph, 1, 600);
+        boolean unreached = false;
+        for (int o = 0; o < origins.size(); o++) {
+            List<Sample> single = new ArrayList<>();
+            single.add(origins.get(o));
+            singleSearch.route(single);
+            for (IntersectionVertex[] column : grid) {
+                for (IntersectionVertex vertex : column) {
+                    int time = singleSearch.getTime(0, vertex);
+                    assertEquals(time, bundleSearch.getTime(o, vertex));
+                    assertTrue(time <= 600);
+                    unreached |= time < 0;
+                }
+            }
+        }
+        assertTrue(unreached);
+        assertEquals(-1, bundleSearch.getTime(10, grid[0][0]));
+        assertFalse(bundleSearch.getTime(0, origins.get(0).v0) < 0);
+    }
+
+    /**
+     * With the turn costs of the default intersection model, the times are never longer than those of a shortest path
+     * tree, which does not always find the fastest way to turn, and longer than without turn costs.
+     */
+    @Test
+    public void testTurnCostsAreApplied() {
+        for (String modes : new String[] { "WALK", "BICYCLE", "CAR" }) {
+            RoutingRequest request = new RoutingRequest(new TraverseModeSet(modes));
+            request.walkSpeed = 1.3;
+            MultiOriginSearch search = new MultiOriginSearch(MultiOriginSearch.StreetGraph.build(graph, request), 1, 0);
+            MultiOriginSearch withoutTurnCosts =
+                    new MultiOriginSearch(MultiOriginSearch.StreetGraph.build(graph, request(modes)), 1, 0);
+            List<Sample> origins = new ArrayList<>();
+            origins.add(new Sample(grid[5][7], 0, null, 0));
+            search.route(origins);
+            withoutTurnCosts.route(origins);
+
+            RoutingRequest options = request.clone();
+            options.batch = true;
+            options.dominanceFunction = new DominanceFunction.EarliestArrival();
+            options.setRoutingContext(graph, grid[5][7], null);
+            ShortestPathTree spt = new AStar().getShortestPathTree(options);
+            boolean longer = false;
+            for (IntersectionVertex[] column : grid) {
+                for (IntersectionVertex vertex : column) {
+                    List<State> states = spt.getStates(vertex);
+                    int sptTime = states == null ? -1 : (int) states.stream()
+                            .mapToLong(State::getElapsedTimeSeconds).min().orElse(-1);
+                    int time = search.getTime(0, vertex);
+                    assertEquals(vertex.getLabel(), sptTime < 0, time < 0);
+                    assertTrue(vertex.getLabel(), time <= sptTime);
+                    assertTrue(vertex.getLabel(), time >= withoutTurnCosts.getTime(0, vertex));
+                    longer |= time > withoutTurnCosts.getTime(0, vertex);
+                }
+            }
+            assertTrue(modes, longer);
+        }
+    }
+
+    /** Compare the times of a search from origins on vertices to those of a shortest path tree per origin */
+    private void assertSameTimesAsShortestPathTree(RoutingRequest request) {
+        assertTrue(MultiOriginSearch.supports(graph, request));
+        MultiOriginSearch.StreetGraph streetGraph = MultiOriginSearch.StreetGraph.build(graph, request);
+        MultiOriginSearch search = new MultiOriginSearch(streetGraph, 4, 0);
+        List<Sample> origins = new ArrayList<>();
+        origins.add(new Sample(grid[0][0], 0, null, 0));
+        origins.add(new Sample(grid[5][7], 0, null, 0));
+        origins.add(new Sample(grid[11][2], 0, null, 0));
+        origins.add(new Sample(grid[6][6], 0, null, 0));
+        search.route(origins);
+
+        for (int o = 0; o < origins.size(); o++) {
+            RoutingRequest options = request.clone();
+            options.batch = true;
+            options.dominanceFunction = new DominanceFunction.EarliestArrival();
+            options.setRoutingContext(graph, origins.get(o).v0, null);
+            ShortestPathTree spt = new AStar().getShortestPathTree(options);
+            for (IntersectionVertex[] column : grid) {
+                for (IntersectionVertex vertex : column) {
+                    // States reached through edges with turn restrictions are kept besides the earliest one
+                    List<State> states = spt.getStates(vertex);
+                    int expected = states == null ? -1 : (int) states.stream()
+                            .mapToLong(State::getElapsedTimeSeconds).min().orElse(-1);
+                    assertEquals(vertex.getLabel(), expected, search.getTime(o, vertex));
+                }
+            }
+        }
+    }
+
+    private static RoutingRequest request(String modes) {
+        RoutingRequest request = new RoutingRequest(new TraverseModeSet(modes));
+        request.walkSpeed = 1.3;
+        request.setWalkReluctance(1.0);
+        request.traversalCostModel = new ConstantIntersectionTraversalCostModel(0.0);
+        return request;
+    }
+
+    private void edges(IntersectionVertex a, IntersectionVertex b, double length, boolean oneWay, boolean footway) {
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { a.getCoordinate(), b.getCoordinate() });
+        StreetTraversalPermission permission =
+                footway ? StreetTraversalPermission.PEDESTRIAN : StreetTraversalPermission.ALL;
+        new StreetEdge(a, b, geometry, a.getLabel() + "-" + b.getLabel(), length, permission, false);
+        if (!oneWay) {
+            new StreetEdge(b, a, (LineString) geometry.reverse(), b.getLabel() + "-" + a.getLabel(), length,
+                    permission, true);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.opentripplanner.api.resource;
+
+import org.junit.Test;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.monitoring.Metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlanResponseCacheTest {
+
+    private static final Map<String, List<String>> PARAMETERS =
+            Collections.singletonMap("mode", Collections.singletonList("WALK"));
+
+    private static final long START_TIME = 1000000000000L;
+
+    private final Graph graph = new Graph();
+
+    private final PlanResponseCache cache = new PlanResponseCache(graph, 100, 60, 60, 4);
+
+    @Test
+    public void testNormalization() {
+        RoutingRequest first = request(60.168992, 24.932366, 1000000030L);
+        RoutingRequest second = request(60.169011, 24.932401, 1000000059L);
+
+        String key = cache.normalize(first, PARAMETERS);
+        assertEquals(key, cache.normalize(second, PARAMETERS));
+        assertEquals(1000000020L, first.dateTime);
+        assertEquals(60.169, first.from.lat, 0);
+        assertEquals(24.9324, first.from.lng, 0);
+
+        RoutingRequest other = request(60.168992, 24.932366, 1000000030L);
+        assertNotEquals(key, cache.normalize(other, Collections.singletonMap("mode", Collections.singletonList("BICYCLE"))));
+    }
+
+    @Test
+    public void testArriveByRoundsUp() {
+        RoutingRequest request = request(60.168992, 24.932366, 1000000030L);
+        request.arriveBy = true;
+        cache.normalize(request, PARAMETERS);
+        assertEquals(1000000080L, request.dateTime);
+    }
+
+    @Test
+    public void testInvalidationOnBikeRentalChange() throws Exception {
+        BikeRentalStationService bikeRentalStationService = graph.getService(BikeRentalStationService.class, true);
+        AtomicInteger plannerCalls = new AtomicInteger();
+
+        RoutingRequest walk = request(60.168992, 24.932366, 1000000030L);
+        RoutingRequest bikeRental = request(60.168992, 24.932366, 1000000030L);
+        bikeRental.allowBikeRental = true;
+        String walkKey = cache.normalize(walk, PARAMETERS);
+        String bikeRentalKey = cache.normalize(bikeRental, Collections.emptyMap());
+
+        assertFalse(cache.get(walkKey, walk, () -> plan(plannerCalls)).hit);
+        assertFalse(cache.get(bikeRentalKey, bikeRental, () -> plan(plannerCalls)).hit);
+        assertTrue(cache.get(walkKey, walk, () -> plan(plannerCalls)).hit);
+        assertTrue(cache.get(bikeRentalKey, bikeRental, () -> plan(plannerCalls)).hit);
+        assertEquals(2, plannerCalls.get());
+
+        bikeRentalStationService.markChanged();
+        assertTrue(cache.get(walkKey, walk, () -> plan(plannerCalls)).hit);
+        assertFalse(cache.get(bikeRentalKey, bikeRental, () -> plan(plannerCalls)).hit);
+        assertEquals(3, plannerCalls.get());
+        assertEquals(1L, (long) cache.getStats().get("invalidations"));
+    }
+
+    @Test
+    public void testHitsGetTheirOwnCopy() throws Exception {
+        AtomicInteger plannerCalls = new AtomicInteger();
+        RoutingRequest walk = request(60.168992, 24.932366, 1000000030L);
+        String key = cache.normalize(walk, PARAMETERS);
+
+        PlanResponseCache.CachedPlan routed = cache.get(key, walk, () -> plan(plannerCalls));
+        routed.plan.addItinerary(new Itinerary());
+        PlanResponseCache.CachedPlan first = cache.get(key, walk, () -> plan(plannerCalls));
+        PlanResponseCache.CachedPlan second = cache.get(key, walk, () -> plan(plannerCalls));
+        assertNotSame(first.plan, second.plan);
+        assertNotSame(first.plan.itinerary.get(0), second.plan.itinerary.get(0));
+        assertEquals(1, first.plan.itinerary.size());
+
+        first.plan.itinerary.get(0).legs.add(new Leg());
+        first.plan.itinerary.get(0).startTime.add(Calendar.HOUR, 1);
+        PlanResponseCache.CachedPlan third = cache.get(key, walk, () -> plan(plannerCalls));
+        assertTrue(third.plan.itinerary.get(0).legs.isEmpty());
+        assertEquals(START_TIME, third.plan.itinerary.get(0).startTime.getTimeInMillis());
+        assertEquals(1, plannerCalls.get());
+    }
+
+    @Test
+    public void testMetricsReadTheCurrentCacheOfTheRouter() throws Exception {
+        Graph reloadedGraph = new Graph();
+        reloadedGraph.routerId = "reloaded";
+        RoutingRequest walk = request(60.168992, 24.932366, 1000000030L);
+        AtomicInteger plannerCalls = new AtomicInteger();
+
+        PlanResponseCache old = new PlanResponseCache(reloadedGraph, 100, 60, 60, 4);
+        old.get(old.normalize(walk, PARAMETERS), walk, () -> plan(plannerCalls));
+        assertTrue(metrics().contains("otp_plan_cache_size{router=\"reloaded\"} 1\n"));
+
+        // A reload starts the new router before it shuts down the old one
+        PlanResponseCache current = new PlanResponseCache(reloadedGraph, 100, 60, 60, 4);
+        old.shutdown();
+        assertTrue(metrics().contains("otp_plan_cache_size{router=\"reloaded\"} 0\n"));
+        current.get(current.normalize(walk, PARAMETERS), walk, () -> plan(plannerCalls));
+        assertTrue(metrics().contains("otp_plan_cache_size{router=\"reloaded\"} 1\n"));
+        assertTrue(metrics().contains("otp_plan_cache_misses_total{router=\"reloaded\"} 1\n"));
+        current.shutdown();
+    }
+
+    private static String metrics() throws IOException {
+        StringWriter writer = new StringWriter();
+        Metrics.writePrometheus(writer);
+        return writer.toString();
+    }
+
+    private static PlanResponseCache.CachedPlan plan(AtomicInteger plannerCalls) {
+        plannerCalls.incrementAndGet();
+        TripPlan plan = new TripPlan();
+        Itinerary itinerary = new Itinerary();
+        itinerary.startTime = Calendar.getInstance();
+        itinerary.startTime.setTimeInMillis(START_TIME);
+        plan.addItinerary(itinerary);
+        return new PlanResponseCache.CachedPlan(plan, Collections.emptyList());
+    }
+
+    private static RoutingRequest request(double lat, double lng, long dateTime) {
+        RoutingRequest request = new RoutingRequest(new TraverseModeSet("WALK"));
+        request.from = new GenericLocation(lat, lng);
+        request.to = new GenericLocation(60.2, 24.9);
+        request.dateTime = dateTime;
+        return request;
+    }
+}
@@ -0,0 +1,51 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.GtfsTest;
+import org.opentripplanner.routing.core.RoutingRequest;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+public class SearchTraceTest extends GtfsTest {
+
+    @Override
+    public boolean isLongDistance() { return true; }
+
+    @Override
+    public String getFeedName() {
+        return "gtfs/interlining";
+    }
+
+    public void testTraceIsCollectedOnRequest() {
+        RoutingRequest request = new RoutingRequest();
+        request.searchTrace = true;
+        plan(time(), "stop0", "stop3", null, false, false, null, null, null, 2, request);
+
+        SearchTrace trace = request.rctx.debugOutput.searchTrace;
+        assertNotNull(trace);
+        assertTrue(trace.phaseMillis.containsKey("linking"));
+        assertTrue(trace.phaseMillis.containsKey("search"));
+        assertTrue(trace.phaseMillis.containsKey("planConversion"));
+        assertFalse(trace.searches.isEmpty());
+        assertTrue(trace.statesCreated > 0);
+        assertTrue(trace.verticesVisited > 0);
+        assertTrue(trace.tripsScanned > 0);
+        assertEquals(trace.statesCreated,
+                trace.searches.stream().mapToLong(search -> search.statesCreated).sum());
+        assertEquals(trace.tripsScanned,
+                trace.searches.stream().mapToLong(search -> search.tripsScanned).sum());
+    }
+
+    public void testNoTraceByDefault() {
+        RoutingRequest request = new RoutingRequest();
+        plan(time(), "stop0", "stop3", null, false, false, null, null, null, 2, request);
+        assertNull(request.rctx.debugOutput.searchTrace);
+    }
+
+    private static long time() {
+        Calendar calendar = new GregorianCalendar(2014, Calendar.JANUARY, 01, 00, 05, 00);
+        calendar.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        return calendar.getTime().getTime() / 1000;
+    }
+}
@@ -0,0 +1,99 @@
+package org.opentripplanner.common;
+
+import org.junit.Test;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Stop;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StopAutocompleteIndexTest {
+
+    private final Stop central = stop("F", "1", "Central Station Platform 1", "1001", 60.17, 24.94);
+    private final Stop centralFar = stop("F", "2", "Central Square", "2002", 61.50, 23.76);
+    private final Stop cemetery = stop("G", "3", "Cemetery", null, 60.18, 24.95);
+    private final Stop munchen = stop("G", "4", "München Hbf", null, 48.14, 11.56);
+    private final Stop station = stop("F", "S", "Central Station", null, 60.17, 24.94);
+
+    private final StopAutocompleteIndex index = new StopAutocompleteIndex(
+            Arrays.asList(central, centralFar, cemetery, munchen), Collections.singletonList(station));
+
+    @Test
+    public void testPrefixMatch() {
+        List<Stop> result = index.query("cen", true, false, 10, null, null, null);
+        assertEquals(Arrays.asList(centralFar, central), result);
+
+        result = index.query("Central plat", true, true, 10, null, null, null);
+        assertEquals(Arrays.asList(central, centralFar, station), result);
+
+        result = index.query("ce", true, false, 10, Collections.singletonList("G"), null, null);
+        assertEquals(Collections.singletonList(cemetery), result);
+    }
+
+    @Test
+    public void testStationsAndStops() {
+        assertEquals(Collections.singletonList(station), index.query("central station", false, true, 10, null, null, null));
+        List<Stop> result = index.query("central station", true, true, 10, null, null, null);
+        assertEquals(Arrays.asList(station, central, centralFar), result);
+    }
+
+    @Test
+    public void testMultipleWordsMatchAny() {
+        // Entries matching any of the words are returned, like with the Lucene query
+        assertEquals(Arrays.asList(cemetery, centralFar),
+                index.query("cemetery square", true, false, 10, null, null, null));
+        // Entries matching all words come first, even with a worse match quality
+        assertEquals(Arrays.asList(centralFar, central),
+                index.query("central squ", true, false, 10, null, null, null));
+        assertEquals(Arrays.asList(centralFar, central),
+                index.query("central squ", true, false, 10, null, 60.17, 24.94));
+        assertEquals(Collections.singletonList(munchen), index.query("hbf xyz", true, false, 10, null, null, null));
+    }
+
+    @Test
+    public void testCodeAndDiacritics() {
+        assertEquals(Collections.singletonList(centralFar), index.query("2002", true, false, 10, null, null, null));
+        assertEquals(Collections.singletonList(munchen), index.query("munchen", true, false, 10, null, null, null));
+        assertEquals(Collections.singletonList(munchen), index.query("MÜN", true, false, 10, null, null, null));
+    }
+
+    @Test
+    public void testFuzzyMatch() {
+        assertEquals(Arrays.asList(centralFar, central), index.query("cnetral", true, false, 10, null, null, null));
+        assertTrue(index.query("xyz", true, false, 10, null, null, null).isEmpty());
+        assertTrue(StopAutocompleteIndex.prefixWithinOneEdit("centarl", "central"));
+        assertTrue(StopAutocompleteIndex.prefixWithinOneEdit("cetral", "central"));
+        assertTrue(StopAutocompleteIndex.prefixWithinOneEdit("cenrtal", "centralen"));
+        assertFalse(StopAutocompleteIndex.prefixWithinOneEdit("cnetarl", "central"));
+    }
+
+    @Test
+    public void testRankingByDistance() {
+        List<Stop> result = index.query("central", true, false, 10, null, 61.5, 23.7);
+        assertEquals(Arrays.asList(centralFar, central), result);
+        result = index.query("central", true, false, 1, null, 60.2, 24.9);
+        assertEquals(Collections.singletonList(central), result);
+    }
+
+    @Test
+    public void testTokenize() {
+        assertArrayEquals(new String[] {"a", "b", "c"}, StopAutocompleteIndex.tokenize("A-B (c) a"));
+        assertEquals(0, StopAutocompleteIndex.tokenize(null).length);
+    }
+
+    private static Stop stop(String feedId, String id, String name, String code, double lat, double lon) {
+        Stop stop = new Stop();
+        stop.setId(new FeedScopedId(feedId, id));
+        stop.setName(name);
+        stop.setCode(code);
+        stop.setLat(lat);
+        stop.setLon(lon);
+        return stop;
+    }
+}
@@ -0,0 +1,78 @@
+package org.opentripplanner.common.geometry;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilderTest.CELL_SIZE;
+import static org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilderTest.delaunayIsolines;
+import static org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilderTest.makeBuilder;
+import static org.opentripplanner.common.geometry.MarchingSquaresIsolineBuilderTest.makeGrid;
+
+/**
+ * Compare the time taken by each isoline builder to compute 18 isochrones, every 5 minutes up to 90, on a noisy grid
+ * with about 250,000 samples. This takes several seconds, so it is not part of the unit tests; run it by hand.
+ */
+@Ignore("Benchmark, run by hand")
+public class MarchingSquaresIsolineBuilderPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarchingSquaresIsolineBuilderPerformanceTest.class);
+
+    private static final int RADIUS = 250;
+
+    @Test
+    public void testBenchmarkAgainstOtherBuilders() {
+        ZSampleGrid<WTWD> grid = makeGrid(RADIUS + 10, RADIUS, 6, null);
+        double[] cutoffs = new double[18];
+        for (int i = 0; i < cutoffs.length; i++) {
+            cutoffs[i] = (i + 1) * 5 * 60;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Geometry> delaunayIsolines = delaunayIsolines(grid, cutoffs);
+        long delaunayTimeMs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        RecursiveGridIsolineBuilder recursiveBuilder = new RecursiveGridIsolineBuilder(CELL_SIZE, CELL_SIZE,
+                new Coordinate(), c -> {
+                    double r = Math.sqrt(c.x * c.x + c.y * c.y) / CELL_SIZE;
+                    return r > RADIUS ? Long.MAX_VALUE : (long) (60 * r);
+                }, seedPoints());
+        for (double cutoff : cutoffs) {
+            recursiveBuilder.computeIsoline((long) cutoff);
+        }
+        long recursiveTimeMs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        List<Geometry> marchingSquaresIsolines = makeBuilder(grid).computeIsolines(cutoffs);
+        long marchingSquaresTimeMs = System.currentTimeMillis() - start;
+
+        LOG.info("Delaunay isolines: {} ms, recursive grid isolines: {} ms, marching squares isolines: {} ms for {} "
+                + "cutoffs.", delaunayTimeMs, recursiveTimeMs, marchingSquaresTimeMs, cutoffs.length);
+
+        for (int i = 0; i < cutoffs.length; i++) {
+            double delaunayArea = delaunayIsolines.get(i).getArea();
+            double marchingSquaresArea = marchingSquaresIsolines.get(i).getArea();
+            assertEquals(delaunayArea, marchingSquaresArea, delaunayArea * 0.05);
+        }
+        assertTrue("Marching squares should be faster than Delaunay triangulation",
+                marchingSquaresTimeMs < delaunayTimeMs);
+    }
+
+    private static List<Coordinate> seedPoints() {
+        List<Coordinate> points = new ArrayList<>();
+        for (int x = 0; x <= RADIUS + 4; x += 2) {
+            points.add(new Coordinate(x * CELL_SIZE, 0));
+        }
+        return points;
+    }
+}
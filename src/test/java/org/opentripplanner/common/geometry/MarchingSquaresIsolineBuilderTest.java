@@ -0,0 +1,140 @@
+package org.opentripplanner.common.geometry;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MarchingSquaresIsolineBuilderTest {
+
+    static final double CELL_SIZE = 0.001;
+
+    /** Samples further off-road than this are unreachable */
+    static final double MAX_OFF_ROAD = 1.0;
+
+    @Test
+    public void testConcentricIsolines() {
+        // One minute per cell from the center, reachable up to 20 cells away
+        ZSampleGrid<WTWD> grid = makeGrid(30, 20, 0, null);
+        MarchingSquaresIsolineBuilder<WTWD> builder = makeBuilder(grid);
+        List<Geometry> isolines = builder.computeIsolines(new double[] { 600, 300, 900 });
+
+        assertEquals(3, isolines.size());
+        double[] radius = { 10, 5, 15 };
+        for (int i = 0; i < 3; i++) {
+            Geometry isoline = isolines.get(i);
+            assertEquals(1, isoline.getNumGeometries());
+            Polygon polygon = (Polygon) isoline.getGeometryN(0);
+            assertEquals(0, polygon.getNumInteriorRing());
+            double expectedArea = Math.PI * Math.pow(radius[i] * CELL_SIZE, 2);
+            assertEquals(expectedArea, polygon.getArea(), expectedArea * 0.05);
+        }
+        assertTrue(isolines.get(0).covers(isolines.get(1)));
+        assertTrue(isolines.get(2).covers(isolines.get(0)));
+
+        // Beyond the reachable area, the isoline follows the off-road limit
+        Geometry all = builder.computeIsolines(new double[] { 3600 }).get(0);
+        assertEquals(1, all.getNumGeometries());
+        assertTrue(all.getArea() > Math.PI * Math.pow(19 * CELL_SIZE, 2));
+        assertTrue(all.getArea() < Math.PI * Math.pow(22 * CELL_SIZE, 2));
+    }
+
+    @Test
+    public void testHolesAndIslands() {
+        // A slow ring between 8 and 11 cells from the center makes a hole in the isolines beyond it.
+        ZSampleGrid<WTWD> grid = makeGrid(30, 20, 0, (x, y) -> {
+            double r = Math.sqrt(x * x + y * y);
+            return r > 8 && r < 11 && x > 0 ? 5000.0 : null;
+        });
+        MarchingSquaresIsolineBuilder<WTWD> builder = makeBuilder(grid);
+        List<Geometry> isolines = builder.computeIsolines(new double[] { 300, 900 });
+        assertEquals(0, ((Polygon) isolines.get(0).getGeometryN(0)).getNumInteriorRing());
+        assertEquals(1, isolines.get(1).getNumGeometries());
+        assertEquals(1, ((Polygon) isolines.get(1).getGeometryN(0)).getNumInteriorRing());
+        assertTrue(isolines.get(1).isValid());
+
+        // An island of fast cells far from the center
+        grid = makeGrid(30, 20, 0, (x, y) -> x >= 15 && x <= 16 && y >= -1 && y <= 1 ? 60.0 : null);
+        Geometry isoline = makeBuilder(grid).computeIsolines(new double[] { 300 }).get(0);
+        assertEquals(2, isoline.getNumGeometries());
+    }
+
+    @Test
+    public void testEmptyGrid() {
+        SparseMatrixZSampleGrid<WTWD> grid = new SparseMatrixZSampleGrid<>(16, 0, CELL_SIZE, CELL_SIZE,
+                new Coordinate());
+        List<Geometry> isolines = makeBuilder(grid).computeIsolines(new double[] { 300, 600 });
+        assertTrue(isolines.get(0).isEmpty());
+        assertTrue(isolines.get(1).isEmpty());
+    }
+
+    /** Check that the isolines cover about the same areas as the ones of the Delaunay builder, on a noisy grid. */
+    @Test
+    public void testAgreesWithDelaunayBuilder() {
+        ZSampleGrid<WTWD> grid = makeGrid(50, 40, 6, null);
+        double[] cutoffs = { 300, 900, 1500, 2100 };
+        List<Geometry> delaunayIsolines = delaunayIsolines(grid, cutoffs);
+        List<Geometry> marchingSquaresIsolines = makeBuilder(grid).computeIsolines(cutoffs);
+        for (int i = 0; i < cutoffs.length; i++) {
+            double delaunayArea = delaunayIsolines.get(i).getArea();
+            double marchingSquaresArea = marchingSquaresIsolines.get(i).getArea();
+            assertEquals(delaunayArea, marchingSquaresArea, delaunayArea * 0.05);
+        }
+    }
+
+    /** A function overriding the time of some samples, returning null to keep the default time. */
+    interface TimeOverride {
+        Double time(int x, int y);
+    }
+
+    /**
+     * Make a square grid with samples up to size cells from the center, the ones further than radius cells from the
+     * center being too far off-road. The time is one minute per cell from the center, plus some noise.
+     */
+    static ZSampleGrid<WTWD> makeGrid(int size, int radius, double noiseSeconds, TimeOverride override) {
+        Random random = new Random(42);
+        SparseMatrixZSampleGrid<WTWD> grid = new SparseMatrixZSampleGrid<>(16, 4 * size * size, CELL_SIZE, CELL_SIZE,
+                new Coordinate());
+        for (int x = -size; x <= size; x++) {
+            for (int y = -size; y <= size; y++) {
+                double r = Math.sqrt(x * x + y * y);
+                WTWD z = new WTWD();
+                z.w = 1.0;
+                z.wTime = 60 * r + noiseSeconds * random.nextDouble();
+                z.d = r <= radius ? 0 : r - radius + MAX_OFF_ROAD;
+                Double time = override == null ? null : override.time(x, y);
+                if (time != null) {
+                    z.wTime = time;
+                }
+                grid.getOrCreate(x, y).setZ(z);
+            }
+        }
+        return grid;
+    }
+
+    static MarchingSquaresIsolineBuilder<WTWD> makeBuilder(ZSampleGrid<WTWD> grid) {
+        return new MarchingSquaresIsolineBuilder<>(grid, z -> z.wTime / z.w, z -> z.d, MAX_OFF_ROAD);
+    }
+
+    static List<Geometry> delaunayIsolines(ZSampleGrid<WTWD> grid, double[] cutoffs) {
+        DelaunayIsolineBuilder<WTWD> delaunayBuilder =
+                new DelaunayIsolineBuilder<>(grid.delaunayTriangulate(), new WTWD.IsolineMetric());
+        List<Geometry> isolines = new ArrayList<>();
+        for (double cutoff : cutoffs) {
+            WTWD z0 = new WTWD();
+            z0.w = 1.0;
+            z0.wTime = cutoff;
+            z0.d = MAX_OFF_ROAD;
+            isolines.add(delaunayBuilder.computeIsoline(z0));
+        }
+        return isolines;
+    }
+}
@@ -0,0 +1,203 @@
+package org.opentripplanner.inspector.vector;
+
+import com.google.protobuf.CodedInputStream;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.common.geometry.GeometryUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorTileEncoderTest {
+
+    private static final int Z = 14, X = 8185, Y = 5449;
+
+    private final GeometryFactory gf = GeometryUtils.getGeometryFactory();
+
+    @Test
+    public void testPoint() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(Z, X, Y);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("name", "Central");
+        attributes.put("bikes", 5);
+        attributes.put("missing", null);
+        encoder.addFeature("stops", gf.createPoint(tileCoordinate(0.25, 0.5)), attributes);
+
+        List<DecodedLayer> layers = decode(encoder.encode());
+        assertEquals(1, layers.size());
+        DecodedLayer layer = layers.get(0);
+        assertEquals("stops", layer.name);
+        assertEquals(2, layer.version);
+        assertEquals(VectorTileEncoder.EXTENT, layer.extent);
+        assertEquals(2, layer.keys.size());
+        assertEquals(1, layer.features.size());
+        DecodedFeature feature = layer.features.get(0);
+        assertEquals(1, feature.type);
+        // MoveTo(1), then the zigzag encoded position 1024, 2048
+        assertArrayEquals(new int[] { 9, 2048, 4096 }, feature.geometry);
+    }
+
+    @Test
+    public void testLineIsClipped() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(Z, X, Y);
+        Geometry line = gf.createLineString(new Coordinate[] {
+                tileCoordinate(0.5, 0.5), tileCoordinate(3, 0.5) });
+        encoder.addFeature("streets", line, null);
+
+        DecodedFeature feature = decode(encoder.encode()).get(0).features.get(0);
+        assertEquals(2, feature.type);
+        assertEquals(9, feature.geometry[0]);
+        assertEquals(2048, unzigzag(feature.geometry[1]), 1);
+        assertEquals(2048, unzigzag(feature.geometry[2]), 1);
+        assertEquals(10, feature.geometry[3]);
+        // The line ends at the buffer around the tile
+        assertEquals(2048 + 64, unzigzag(feature.geometry[4]), 1);
+        assertEquals(0, unzigzag(feature.geometry[5]));
+    }
+
+    @Test
+    public void testPolygonWinding() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder(Z, X, Y);
+        // Counterclockwise in longitude and latitude, hence clockwise in tile coordinates where y points down
+        Geometry polygon = gf.createPolygon(new Coordinate[] {
+                tileCoordinate(0.25, 0.75), tileCoordinate(0.75, 0.75), tileCoordinate(0.75, 0.25),
+                tileCoordinate(0.25, 0.25), tileCoordinate(0.25, 0.75) });
+        encoder.addFeature("isochrones", polygon, null);
+        encoder.addFeature("isochrones", polygon.reverse(), null);
+
+        List<DecodedFeature> features = decode(encoder.encode()).get(0).features;
+        assertEquals(2, features.size());
+        for (DecodedFeature feature : features) {
+            assertEquals(3, feature.type);
+            assertTrue(ringArea(feature.geometry) > 0);
+            assertEquals(15, feature.geometry[feature.geometry.length - 1]);
+        }
+    }
+
+    @Test
+    public void testFeatureOutsideTileIsSkipped() {
+        VectorTileEncoder encoder = new VectorTileEncoder(Z, X, Y);
+        encoder.addFeature("stops", gf.createPoint(tileCoordinate(2, 2)), null);
+        assertEquals(0, encoder.encode().length);
+    }
+
+    /** @return the coordinate at the given fraction of the tile, from its top left corner */
+    private static Coordinate tileCoordinate(double fx, double fy) {
+        double lon = SlippyTile.tile2lon(X, Z) + fx * (SlippyTile.tile2lon(X + 1, Z) - SlippyTile.tile2lon(X, Z));
+        // Go through web mercator so that fractions are exact in tile coordinates
+        double top = mercatorY(SlippyTile.tile2lat(Y, Z));
+        double bottom = mercatorY(SlippyTile.tile2lat(Y + 1, Z));
+        double y = top + fy * (bottom - top);
+        double lat = Math.toDegrees(2 * Math.atan(Math.exp(y)) - Math.PI / 2);
+        return new Coordinate(lon, lat);
+    }
+
+    private static double mercatorY(double lat) {
+        return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /** @return the shoelace area of the single ring in the given geometry commands */
+    private static long ringArea(int[] geometry) {
+        List<int[]> points = new ArrayList<>();
+        int x = 0, y = 0;
+        int i = 0;
+        while (i < geometry.length) {
+            int id = geometry[i] & 0x7;
+            int count = geometry[i] >> 3;
+            i++;
+            if (id == 7) {
+                continue;
+            }
+            for (int c = 0; c < count; c++) {
+                x += unzigzag(geometry[i++]);
+                y += unzigzag(geometry[i++]);
+                points.add(new int[] { x, y });
+            }
+        }
+        long area = 0;
+        for (int p = 0; p < points.size(); p++) {
+            int[] a = points.get(p);
+            int[] b = points.get((p + 1) % points.size());
+            area += (long) a[0] * b[1] - (long) b[0] * a[1];
+        }
+        return area;
+    }
+
+    private static class DecodedLayer {
+        String name;
+        int version;
+        int extent;
+        List<String> keys = new ArrayList<>();
+        List<DecodedFeature> features = new ArrayList<>();
+    }
+
+    private static class DecodedFeature {
+        int type;
+        int[] geometry;
+    }
+
+    private static List<DecodedLayer> decode(byte[] tile) throws IOException {
+        List<DecodedLayer> layers = new ArrayList<>();
+        CodedInputStream in = CodedInputStream.newInstance(tile);
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            assertEquals(3, tag >>> 3);
+            layers.add(decodeLayer(in.readByteArray()));
+        }
+        return layers;
+    }
+
+    private static DecodedLayer decodeLayer(byte[] bytes) throws IOException {
+        DecodedLayer layer = new DecodedLayer();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 1: layer.name = in.readString(); break;
+            case 2: layer.features.add(decodeFeature(in.readByteArray())); break;
+            case 3: layer.keys.add(in.readString()); break;
+            case 5: layer.extent = in.readUInt32(); break;
+            case 15: layer.version = in.readUInt32(); break;
+            default: in.skipField(tag);
+            }
+        }
+        return layer;
+    }
+
+    private static DecodedFeature decodeFeature(byte[] bytes) throws IOException {
+        DecodedFeature feature = new DecodedFeature();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (tag >>> 3) {
+            case 3: feature.type = in.readEnum(); break;
+            case 4: feature.geometry = readPacked(in.readByteArray()); break;
+            default: in.skipField(tag);
+            }
+        }
+        return feature;
+    }
+
+    private static int[] readPacked(byte[] bytes) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        List<Integer> values = new ArrayList<>();
+        while (!in.isAtEnd()) {
+            values.add(in.readUInt32());
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,90 @@
+package org.opentripplanner.inspector.vector;
+
+import org.junit.Test;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorTileManagerTest {
+
+    @Test
+    public void testPregenerateOnlyStaticLayersFromTheirMinZoom() {
+        Graph graph = new Graph();
+        graph.expandToInclude(24.90, 60.15);
+        graph.expandToInclude(24.95, 60.18);
+        VectorTileManager manager = new VectorTileManager(graph, 1L << 20);
+        CountingLayer stops = new CountingLayer("stops", 10, false);
+        CountingLayer streets = new CountingLayer("streets", 13, false);
+        CountingLayer bikeRental = new CountingLayer("bikerental", 12, true);
+        manager.registerLayer(stops);
+        manager.registerLayer(streets);
+        manager.registerLayer(bikeRental);
+        assertEquals(10, manager.getPregenerateMinZoom());
+
+        int count = manager.generateTiles(12);
+        assertTrue(count > 0);
+        assertEquals(count, stops.zooms.size());
+        assertEquals(10, (int) stops.zooms.get(0));
+        assertTrue(streets.zooms.isEmpty());
+        assertTrue(bikeRental.zooms.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPregenerateBelowMinZoomIsRejected() {
+        new VectorTileManager(new Graph(), 1L << 20).pregenerate(9);
+    }
+
+    @Test
+    public void testDuplicateLayersAreRejected() {
+        VectorTileManager manager = new VectorTileManager(new Graph(), 1L << 20);
+        CountingLayer stops = new CountingLayer("stops", 10, false);
+        manager.registerLayer(stops);
+        try {
+            manager.getTile(Arrays.asList("stops", "stops"), 14, 9326, 4741);
+            throw new AssertionError("Duplicate layers should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Duplicate layer: stops", e.getMessage());
+        }
+        assertTrue(stops.zooms.isEmpty());
+    }
+
+    /** A layer without features, recording the zoom levels of the tiles generated. */
+    private static class CountingLayer implements VectorTileLayer {
+
+        final String name;
+        final int minZoom;
+        final boolean realtime;
+        final List<Integer> zooms = new ArrayList<>();
+
+        CountingLayer(String name, int minZoom, boolean realtime) {
+            this.name = name;
+            this.minZoom = minZoom;
+            this.realtime = realtime;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getMinZoom() {
+            return minZoom;
+        }
+
+        @Override
+        public boolean isRealtime() {
+            return realtime;
+        }
+
+        @Override
+        public synchronized void addFeatures(VectorTileEncoder encoder, int zoom) {
+            zooms.add(zoom);
+        }
+    }
+}
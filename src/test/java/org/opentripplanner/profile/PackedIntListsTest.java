@@ -0,0 +1,38 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PackedIntListsTest {
+
+    @Test
+    public void testEntries() {
+        PackedIntLists lists = new PackedIntLists.Builder()
+                .add(new int[] { 3, 120, 7, 45 })
+                .add(RaptorWorkerData.EMPTY_INT_ARRAY)
+                .add(new TIntArrayList(new int[] { 1 }))
+                .add(new int[0])
+                .build();
+
+        assertEquals(4, lists.size());
+        assertArrayEquals(new int[] { 3, 120, 7, 45 }, lists.get(0));
+        assertArrayEquals(new int[0], lists.get(1));
+        assertArrayEquals(new int[] { 1 }, lists.get(2));
+        assertArrayEquals(new int[0], lists.get(3));
+
+        assertEquals(lists.end(0), lists.start(1));
+        assertEquals(lists.start(2), lists.end(1));
+        assertEquals(1, lists.values[lists.start(2)]);
+        assertEquals(5, lists.values.length);
+    }
+
+    @Test
+    public void testEmpty() {
+        PackedIntLists lists = new PackedIntLists.Builder().build();
+        assertEquals(0, lists.size());
+        assertEquals(0, lists.values.length);
+    }
+}
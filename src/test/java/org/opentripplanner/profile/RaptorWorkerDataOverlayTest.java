@@ -0,0 +1,160 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.analyst.scenario.AdjustDwellTime;
+import org.opentripplanner.analyst.scenario.Modification;
+import org.opentripplanner.analyst.scenario.RemoveTrip;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.File;
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that RaptorWorkerData built as an overlay on the data without any scenario gives the same RAPTOR results as
+ * RaptorWorkerData built from scratch for the scenario.
+ */
+public class RaptorWorkerDataOverlayTest {
+
+    /** Stops of the test agency from which the searches start */
+    private static final String[] ORIGINS = { "C", "E", "N", "O" };
+
+    private static final String AGENCY = "agency";
+
+    private Graph graph;
+
+    private ProfileRequest request;
+
+    private TimeWindow window;
+
+    @Before
+    public void before() {
+        graph = new Graph();
+        GtfsModule gtfs = new GtfsModule(Arrays.asList(new GtfsBundle(new File(ConstantsForTests.FAKE_GTFS))));
+        gtfs.buildGraph(graph, new HashMap<>());
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        // Departures from 14:30 to 16:30, when buses and trains of several routes leave the origins
+        request = new ProfileRequest();
+        request.date = new LocalDate(2015, 9, 17);
+        request.fromTime = 14 * 3600 + 30 * 60;
+        request.toTime = 16 * 3600 + 30 * 60;
+        request.walkSpeed = 1.3f;
+        request.maxWalkTime = 20;
+        window = new TimeWindow(request.fromTime, request.toTime + RaptorWorker.MAX_DURATION,
+                graph.index.servicesRunning(request.date), DayOfWeek.of(request.date.getDayOfWeek()));
+    }
+
+    /** A banned route, all of whose trips are removed */
+    @Test
+    public void testBannedRoute() {
+        RemoveTrip removeTrip = new RemoveTrip();
+        removeTrip.agencyId = AGENCY;
+        removeTrip.routeId = Arrays.asList("10");
+        assertSameResults(removeTrip);
+    }
+
+    /** A mode filter, removing all the trips of the routes of a type (buses) */
+    @Test
+    public void testModeFilter() {
+        RemoveTrip removeTrip = new RemoveTrip();
+        removeTrip.agencyId = AGENCY;
+        removeTrip.routeType = new int[] { 3 };
+        assertSameResults(removeTrip);
+    }
+
+    /** A pattern whose trip times have been modified, standing in for a pattern updated in real time */
+    @Test
+    public void testModifiedPattern() {
+        assertSameResults(adjustDwellTime());
+    }
+
+    @Test
+    public void testAllModifications() {
+        RemoveTrip bannedRoute = new RemoveTrip();
+        bannedRoute.agencyId = AGENCY;
+        bannedRoute.routeId = Arrays.asList("10");
+        RemoveTrip modeFilter = new RemoveTrip();
+        modeFilter.agencyId = AGENCY;
+        modeFilter.routeType = new int[] { 3 };
+        assertSameResults(bannedRoute, modeFilter, adjustDwellTime());
+    }
+
+    /** Wait five minutes at E on trips of route 18, delaying their arrival at D */
+    private static AdjustDwellTime adjustDwellTime() {
+        AdjustDwellTime adjustDwellTime = new AdjustDwellTime();
+        adjustDwellTime.agencyId = AGENCY;
+        adjustDwellTime.routeId = Arrays.asList("18");
+        adjustDwellTime.stopId = Arrays.asList("E");
+        adjustDwellTime.dwellTime = 300;
+        return adjustDwellTime;
+    }
+
+    /**
+     * Check that the data built directly for a scenario with the given modifications, as an overlay and by the cache
+     * give the same times at all targets, and that the modifications do change these times.
+     */
+    private void assertSameResults(Modification... modifications) {
+        Scenario scenario = new Scenario(1);
+        scenario.modifications.addAll(Arrays.asList(modifications));
+        assertTrue(RaptorWorkerData.canOverlay(scenario));
+
+        RaptorWorkerData base = new RaptorWorkerData(graph, window, request, null, null, new TaskStatistics());
+        PropagatedTimesStore baseTimes = run(base);
+
+        request.scenario = scenario;
+        RaptorWorkerData direct = new RaptorWorkerData(graph, window, request, null, new TaskStatistics());
+        RaptorWorkerData overlay = new RaptorWorkerData(base, graph, window, request, new TaskStatistics());
+        RaptorWorkerData cached = new RaptorWorkerDataCache(graph).get(window, request, null, new TaskStatistics());
+
+        // The overlays share the stops and their targets with the data without any scenario
+        assertSame(base.targetsForStop, overlay.targetsForStop);
+        assertSame(base.indexForStop, cached.indexForStop);
+
+        PropagatedTimesStore directTimes = run(direct);
+        assertFalse(Arrays.equals(baseTimes.mins, directTimes.mins) && Arrays.equals(baseTimes.maxs, directTimes.maxs)
+                && Arrays.equals(baseTimes.avgs, directTimes.avgs));
+        for (RaptorWorkerData data : new RaptorWorkerData[] { overlay, cached }) {
+            PropagatedTimesStore times = run(data);
+            assertArrayEquals(directTimes.mins, times.mins);
+            assertArrayEquals(directTimes.maxs, times.maxs);
+            assertArrayEquals(directTimes.avgs, times.avgs);
+        }
+    }
+
+    /**
+     * Run RAPTOR from the origin stops. The stops do not have the same index in data built directly and in an overlay,
+     * but the targets, which are vertices, do.
+     */
+    private PropagatedTimesStore run(RaptorWorkerData data) {
+        TIntIntMap accessTimes = new TIntIntHashMap();
+        for (Stop stop : graph.index.stopVertexForStop.keySet()) {
+            if (!Arrays.asList(ORIGINS).contains(stop.getId().getId()))
+                continue;
+
+            int stopIndex = data.indexForStop.get(graph.index.stopVertexForStop.get(stop).getIndex());
+            if (stopIndex != -1)
+                accessTimes.put(stopIndex, 0);
+        }
+        int[] nonTransitTimes = new int[data.nTargets];
+        Arrays.fill(nonTransitTimes, RaptorWorker.UNREACHED);
+        return new RaptorWorker(data, request).runRaptor(graph, accessTimes, nonTransitTimes, new TaskStatistics());
+    }
+}
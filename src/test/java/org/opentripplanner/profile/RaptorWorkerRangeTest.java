@@ -0,0 +1,138 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.profile.RaptorWorkerTimetable.BoardingAssumption;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.File;
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that the frequency searches with a deterministic boarding assumption, whose state is kept from one departure
+ * minute to the next, give the same times as searches run independently at each minute.
+ */
+public class RaptorWorkerRangeTest {
+
+    private static final int SEED = 42;
+
+    private Graph graph;
+
+    private RaptorWorkerData data;
+
+    /** The origin, a stop at the start of a chain of frequency lines */
+    private TIntIntMap initialStops;
+
+    private int fromTime = 8 * 3600;
+
+    private int toTime = 9 * 3600;
+
+    @Before
+    public void before() {
+        graph = new Graph();
+        GtfsModule gtfs = new GtfsModule(Arrays.asList(new GtfsBundle(new File(ConstantsForTests.FARE_COMPONENT_GTFS))));
+        gtfs.buildGraph(graph, new HashMap<>());
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        ProfileRequest request = request(BoardingAssumption.RANDOM);
+        TimeWindow window = new TimeWindow(fromTime, toTime + RaptorWorker.MAX_DURATION,
+                graph.index.servicesRunning(request.date), DayOfWeek.of(request.date.getDayOfWeek()));
+        data = new RaptorWorkerData(graph, window, request, new TaskStatistics());
+        assertTrue(data.hasFrequencies);
+
+        initialStops = new TIntIntHashMap();
+        for (Stop stop : graph.index.stopVertexForStop.keySet()) {
+            if (stop.getId().getId().equals("A"))
+                initialStops.put(data.indexForStop.get(graph.index.stopVertexForStop.get(stop).getIndex()), 0);
+        }
+        assertEquals(1, initialStops.size());
+    }
+
+    @Test
+    public void testSameTimesAsSearchesAtEachMinute() {
+        for (BoardingAssumption assumption : new BoardingAssumption[] {
+                BoardingAssumption.BEST_CASE, BoardingAssumption.WORST_CASE, BoardingAssumption.HALF_HEADWAY }) {
+            int[][] range = runRange(assumption);
+            int[][] independent = runEachMinute(assumption);
+            for (int minute = 0; minute < range.length; minute++) {
+                assertArrayEquals(assumption + " " + minute, independent[minute], range[minute]);
+            }
+            // stops other than the origin are reached by riding the frequency lines
+            assertTrue(Arrays.stream(range[0]).filter(t -> t != RaptorWorker.UNREACHED).count() > 1);
+        }
+        assertFalse(Arrays.deepEquals(runRange(BoardingAssumption.BEST_CASE), runRange(BoardingAssumption.WORST_CASE)));
+    }
+
+    /** Run a frequency search keeping its state from the latest departure minute to the earliest, as runRaptor does */
+    private int[][] runRange(BoardingAssumption assumption) {
+        RaptorWorker worker = worker(assumption);
+        RaptorWorker.RangeState state = worker.new RangeState(assumption);
+        int[] scheduledTimesAtTargets = new int[data.nTargets];
+        Arrays.fill(scheduledTimesAtTargets, RaptorWorker.UNREACHED);
+        int[][] times = new int[(toTime - fromTime) / 60][];
+        for (int departureTime = toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+            worker.runRaptorScheduled(initialStops, departureTime);
+            worker.doPropagation(worker.bestNonTransferTimes, scheduledTimesAtTargets, departureTime);
+            worker.runRaptorFrequencyRange(departureTime, state, scheduledTimesAtTargets);
+            times[n] = state.elapsedTimesAtTargets(departureTime);
+        }
+        return times;
+    }
+
+    /** Run a scheduled search and a frequency search from scratch at each departure minute */
+    private int[][] runEachMinute(BoardingAssumption assumption) {
+        int[][] times = new int[(toTime - fromTime) / 60][];
+        for (int departureTime = toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+            RaptorWorker worker = worker(assumption);
+            int[] timesAtTargets = new int[data.nTargets];
+            Arrays.fill(timesAtTargets, RaptorWorker.UNREACHED);
+            worker.runRaptorScheduled(initialStops, departureTime);
+            worker.doPropagation(worker.bestNonTransferTimes, timesAtTargets, departureTime);
+
+            int[] bestTimes = Arrays.copyOf(worker.bestTimes, worker.bestTimes.length);
+            int[] bestNonTransferTimes = Arrays.copyOf(worker.bestNonTransferTimes, worker.bestNonTransferTimes.length);
+            int[] previousPatterns = Arrays.copyOf(worker.previousPatterns, worker.previousPatterns.length);
+            worker.runRaptorFrequency(departureTime, bestTimes, bestNonTransferTimes, previousPatterns);
+            worker.doPropagation(bestNonTransferTimes, timesAtTargets, departureTime);
+
+            final int dt = departureTime;
+            times[n] = Arrays.stream(timesAtTargets).map(t -> t != RaptorWorker.UNREACHED ? t - dt : t).toArray();
+        }
+        return times;
+    }
+
+    /** A worker drawing the same frequency offsets as all the others */
+    private RaptorWorker worker(BoardingAssumption assumption) {
+        RaptorWorker worker = new RaptorWorker(data, request(assumption));
+        worker.offsets = new FrequencyRandomOffsets(data, SEED);
+        worker.offsets.randomize();
+        return worker;
+    }
+
+    private ProfileRequest request(BoardingAssumption assumption) {
+        ProfileRequest request = new ProfileRequest();
+        request.date = new LocalDate(2015, 9, 17);
+        request.fromTime = fromTime;
+        request.toTime = toTime;
+        request.walkSpeed = 1.3f;
+        request.maxWalkTime = 20;
+        request.boardingAssumption = assumption;
+        return request;
+    }
+}
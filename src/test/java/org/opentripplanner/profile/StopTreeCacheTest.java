@@ -0,0 +1,98 @@
+package org.opentripplanner.profile;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opentripplanner.graph_builder.module.FakeGraph.addRegularStopGrid;
+import static org.opentripplanner.graph_builder.module.FakeGraph.buildGraphNoTransit;
+import static org.opentripplanner.graph_builder.module.FakeGraph.link;
+
+public class StopTreeCacheTest {
+
+    private static final int MAX_WALK_METERS = 500;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Graph graph;
+
+    private List<TransitStop> stops;
+
+    @Before
+    public void before() {
+        graph = buildGraphNoTransit();
+        addRegularStopGrid(graph);
+        link(graph);
+        graph.rebuildVertexAndEdgeIndices();
+        stops = Lists.newArrayList(Iterables.limit(Iterables.filter(graph.getVertices(), TransitStop.class), 20));
+    }
+
+    /** Test that the stop trees memory-mapped from a saved file are those which were computed */
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        StopTreeCache computed = new StopTreeCache(graph, stops, MAX_WALK_METERS);
+        File file = new File(temporaryFolder.getRoot(), StopTreeCache.FILENAME);
+        computed.save(file, graph);
+
+        StopTreeCache loaded = StopTreeCache.load(file, graph, MAX_WALK_METERS);
+        assertNotNull(loaded);
+        assertSameTrees(computed, loaded);
+
+        // Not saved for this walk distance cutoff
+        assertNull(StopTreeCache.load(file, graph, MAX_WALK_METERS + 1));
+    }
+
+    /** Test that saving again does not change the stop trees memory-mapped from the previous file */
+    @Test
+    public void testSaveOverLoadedFile() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), StopTreeCache.FILENAME);
+        StopTreeCache computed = new StopTreeCache(graph, stops, MAX_WALK_METERS);
+        computed.save(file, graph);
+        StopTreeCache loaded = StopTreeCache.load(file, graph, MAX_WALK_METERS);
+        assertNotNull(loaded);
+
+        // Different trees for fewer stops
+        StopTreeCache other = new StopTreeCache(graph, stops.subList(0, 5), MAX_WALK_METERS * 2);
+        other.save(file, graph);
+
+        assertSameTrees(computed, loaded);
+        StopTreeCache reloaded = StopTreeCache.load(file, graph, MAX_WALK_METERS * 2);
+        assertNotNull(reloaded);
+        assertSameTrees(other, reloaded);
+        assertNull(reloaded.getDistancesForStop(stops.get(10)));
+
+        // No temporary file is left behind
+        assertArrayEquals(new String[] { StopTreeCache.FILENAME }, temporaryFolder.getRoot().list());
+    }
+
+    private void assertSameTrees(StopTreeCache expected, StopTreeCache actual) {
+        assertEquals(expected.maxWalkMeters, actual.maxWalkMeters);
+        int[] expectedTimes = new int[Vertex.getMaxIndex()];
+        int[] actualTimes = new int[expectedTimes.length];
+        for (TransitStop stop : stops) {
+            int[] distances = expected.getDistancesForStop(stop);
+            assertArrayEquals(stop.getLabel(), distances, actual.getDistancesForStop(stop));
+            if (distances != null) {
+                assertTrue(distances.length > 0);
+                expected.propagateStop(stop, 60, 1.3, expectedTimes);
+                actual.propagateStop(stop, 60, 1.3, actualTimes);
+            }
+        }
+        assertArrayEquals(expectedTimes, actualTimes);
+    }
+}
@@ -0,0 +1,60 @@
+package org.opentripplanner.routing.alertpatch;
+
+import org.junit.Test;
+import org.opentripplanner.model.FeedScopedId;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AlertIndexTest {
+
+    @Test
+    public void testLookupByEntity() {
+        FeedScopedId stopId = new FeedScopedId("F", "stop");
+        FeedScopedId routeId = new FeedScopedId("F", "route");
+        FeedScopedId tripId = new FeedScopedId("F", "trip");
+
+        AlertPatch stopAlert = alertPatch("stop");
+        stopAlert.setStop(stopId);
+        AlertPatch routeAtStopAlert = alertPatch("routeAtStop");
+        routeAtStopAlert.setRoute(routeId);
+        routeAtStopAlert.setStop(stopId);
+        AlertPatch tripAlert = alertPatch("trip");
+        tripAlert.setTrip(tripId);
+        AlertPatch agencyAlert = alertPatch("agency");
+        agencyAlert.setAgencyId("agency");
+
+        AlertIndex index = new AlertIndex(1, Arrays.asList(stopAlert, routeAtStopAlert, tripAlert, agencyAlert));
+
+        assertEquals(1, index.version);
+        assertEquals(4, index.getAlerts().size());
+        assertEquals(Arrays.asList(stopAlert, routeAtStopAlert), index.getAlertsForStop(stopId));
+        assertEquals(Arrays.asList(routeAtStopAlert), index.getAlertsForRoute(routeId));
+        assertEquals(Arrays.asList(tripAlert), index.getAlertsForTrip(tripId));
+        assertEquals(Arrays.asList(agencyAlert), index.getAlertsForAgency("agency"));
+        assertTrue(index.getAlertsForStop(new FeedScopedId("F", "other")).isEmpty());
+        assertTrue(index.getAlertsForPattern("F:pattern").isEmpty());
+
+        assertSame(tripAlert, index.getAlertForId("trip"));
+        assertNull(index.getAlertForId("unknown"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, AlertIndex.EMPTY.version);
+        assertTrue(AlertIndex.EMPTY.getAlerts().isEmpty());
+        assertNull(AlertIndex.EMPTY.getAlertForId("trip"));
+    }
+
+    private static AlertPatch alertPatch(String id) {
+        AlertPatch alertPatch = new AlertPatch();
+        alertPatch.setFeedId("F");
+        alertPatch.setId(id);
+        alertPatch.setAlert(Alert.createSimpleAlerts(id));
+        return alertPatch;
+    }
+}
@@ -0,0 +1,103 @@
+package org.opentripplanner.routing.bike_rental;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FreeFloatingVehicleIndexTest {
+
+    @Test
+    public void testNearestVehicle() {
+        FreeFloatingVehicleIndex index = new FreeFloatingVehicleIndex();
+        BikeRentalStation near = vehicle("near", 24.94500, 60.17000, "a");
+        BikeRentalStation nearer = vehicle("nearer", 24.94520, 60.17010, "b");
+        BikeRentalStation far = vehicle("far", 24.95000, 60.17000, "a");
+        index.update("a", Arrays.asList(near, far));
+        index.update("b", Collections.singletonList(nearer));
+        assertEquals(3, index.size());
+
+        assertEquals(nearer, index.getNearestVehicle(24.94525, 60.17012, null, false));
+        assertEquals(near, index.getNearestVehicle(24.94525, 60.17012, Collections.singleton("a"), false));
+        assertNull(index.getNearestVehicle(24.94525, 60.17012, Collections.singleton("c"), false));
+        assertNull(index.getNearestVehicle(24.94800, 60.17000, null, false));
+
+        nearer.bikesAvailable = 0;
+        assertEquals(near, index.getNearestVehicle(24.94525, 60.17012, null, true));
+    }
+
+    @Test
+    public void testUpdateReplacesNetwork() {
+        FreeFloatingVehicleIndex index = new FreeFloatingVehicleIndex();
+        index.update("a", Collections.singletonList(vehicle("1", 24.945, 60.17, "a")));
+        index.update("b", Collections.singletonList(vehicle("2", 24.945, 60.17, "b")));
+
+        BikeRentalStation moved = vehicle("1", 24.946, 60.17, "a");
+        index.update("a", Collections.singletonList(moved));
+        assertEquals(2, index.size());
+        assertEquals(moved, index.getNearestVehicle(24.946, 60.17, Collections.singleton("a"), false));
+        assertNull(index.getNearestVehicle(24.945, 60.17, Collections.singleton("a"), false));
+
+        index.update("a", Collections.emptyList());
+        index.update("b", Collections.emptyList());
+        assertTrue(index.isEmpty());
+        assertTrue(index.getVehicles("a").isEmpty());
+    }
+
+    @Test
+    public void testLookupUsesSnapshot() {
+        FreeFloatingVehicleIndex index = new FreeFloatingVehicleIndex();
+        BikeRentalStation vehicle = vehicle("1", 24.945, 60.17, "a");
+        index.update("a", Collections.singletonList(vehicle));
+        FreeFloatingVehicleLookup lookup = new FreeFloatingVehicleLookup(index.getSnapshot());
+        index.update("a", Collections.emptyList());
+
+        assertEquals(vehicle, lookup.getNearestVehicle(24.9451, 60.1701, null, false));
+        assertEquals(vehicle, lookup.getNearestVehicle(24.9452, 60.1702, null, false));
+        assertNull(lookup.getNearestVehicle(24.9600, 60.1700, null, false));
+        assertEquals(2, lookup.getCellsVisited());
+        assertNull(index.getNearestVehicle(24.9451, 60.1701, null, false));
+    }
+
+    /** Cells are narrower than the search distance east-west at high latitudes */
+    @Test
+    public void testHighLatitude() {
+        FreeFloatingVehicleIndex index = new FreeFloatingVehicleIndex();
+        // About 48 m east of the position below, two cells away
+        BikeRentalStation east = vehicle("east", 10.00201, 65.0, "a");
+        index.update("a", Collections.singletonList(east));
+        assertEquals(east, index.getNearestVehicle(10.00099, 65.0, null, false));
+        assertEquals(east, new FreeFloatingVehicleLookup(index.getSnapshot()).getNearestVehicle(10.00099, 65.0, null,
+                false));
+
+        // About 48 m west, from the other side of the same cell
+        BikeRentalStation west = vehicle("west", 9.99898, 65.0, "a");
+        index.update("a", Collections.singletonList(west));
+        FreeFloatingVehicleLookup lookup = new FreeFloatingVehicleLookup(index.getSnapshot());
+        assertNull(lookup.getNearestVehicle(10.00099, 65.0, null, false));
+        assertEquals(west, lookup.getNearestVehicle(10.00001, 65.0, null, false));
+        assertEquals(1, lookup.getCellsVisited());
+
+        // Even further north
+        BikeRentalStation north = vehicle("north", 10.0025, 80.0, "a");
+        index.update("a", Collections.singletonList(north));
+        assertEquals(north, index.getNearestVehicle(10.0001, 80.0, null, false));
+        assertNull(index.getNearestVehicle(9.9999, 80.0, null, false));
+    }
+
+    private static BikeRentalStation vehicle(String id, double lon, double lat, String network) {
+        BikeRentalStation vehicle = new BikeRentalStation();
+        vehicle.id = id;
+        vehicle.x = lon;
+        vehicle.y = lat;
+        vehicle.bikesAvailable = 1;
+        vehicle.isFloatingBike = true;
+        vehicle.networks = Set.of(network);
+        return vehicle;
+    }
+}
@@ -40,6 +40,9 @@ public class RoutingContextTest {
         when(graph.getFeedIds()).thenReturn(Collections.singletonList("FEED"));
         when(graph.getAgencies(feedId)).thenReturn(Collections.singletonList(agency));
         when(calendarService.getTimeZoneForAgencyId(agencyId)).thenReturn(TimeZone.getTimeZone("Europe/Budapest"));
+        ServiceCalendarCache serviceCalendar = new ServiceCalendarCache(calendarService, Collections.emptyMap(),
+                Collections.singletonList(TimeZone.getTimeZone("Europe/Budapest")));
+        when(graph.getServiceCalendarCache()).thenReturn(serviceCalendar);
 
         when(routingRequest.getSecondsSinceEpoch())
             .thenReturn(
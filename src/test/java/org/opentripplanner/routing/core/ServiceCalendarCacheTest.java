@@ -0,0 +1,79 @@
+package org.opentripplanner.routing.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.calendar.impl.CalendarServiceImpl;
+import org.opentripplanner.model.CalendarService;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.calendar.CalendarServiceData;
+import org.opentripplanner.model.calendar.ServiceDate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceCalendarCacheTest {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Budapest");
+
+    private static final FeedScopedId WEEKDAYS = new FeedScopedId("FEED", "WEEKDAYS");
+
+    private static final FeedScopedId SUNDAY = new FeedScopedId("FEED", "SUNDAY");
+
+    private CalendarService calendarService;
+
+    private ServiceCalendarCache cache;
+
+    @Before
+    public void before() {
+        CalendarServiceData data = new CalendarServiceData();
+        data.putServiceDatesForServiceId(WEEKDAYS, Arrays.asList(new ServiceDate(2014, 3, 28),
+                new ServiceDate(2014, 3, 31)));
+        data.putServiceDatesForServiceId(SUNDAY, Collections.singletonList(new ServiceDate(2014, 3, 30)));
+        data.putTimeZoneForAgencyId("AGENCY", TIME_ZONE);
+        calendarService = new CalendarServiceImpl(data);
+
+        Map<FeedScopedId, Integer> serviceCodes = new HashMap<>();
+        serviceCodes.put(WEEKDAYS, 0);
+        serviceCodes.put(SUNDAY, 1);
+        cache = new ServiceCalendarCache(calendarService, serviceCodes, Collections.singletonList(TIME_ZONE));
+    }
+
+    @Test
+    public void testSameServicesAsCalendar() {
+        for (ServiceDate date = new ServiceDate(2014, 3, 27); date.compareTo(new ServiceDate(2014, 4, 1)) <= 0;
+                date = date.next()) {
+            ServiceDay serviceDay = cache.serviceDay(date, "AGENCY");
+            assertEquals(date, serviceDay.getServiceDate());
+            assertEquals(calendarService.getServiceIdsOnDate(date).contains(WEEKDAYS), serviceDay.serviceRunning(0));
+            assertEquals(calendarService.getServiceIdsOnDate(date).contains(SUNDAY), serviceDay.serviceRunning(1));
+        }
+        // 2014-03-30T00:00:00+01:00, the day daylight saving time starts
+        assertEquals(0, cache.serviceDay(new ServiceDate(2014, 3, 30), TIME_ZONE).secondsSinceMidnight(1396134000L));
+        // 2014-03-31T00:00:00+02:00
+        assertEquals(0, cache.serviceDay(new ServiceDate(2014, 3, 31), TIME_ZONE).secondsSinceMidnight(1396216800L));
+        assertTrue(cache.servicesRunning(new ServiceDate(2014, 3, 30)).get(1));
+        assertTrue(cache.servicesRunning(new ServiceDate(2014, 3, 29)).isEmpty());
+    }
+
+    @Test
+    public void testServiceDaysAreShared() {
+        ServiceDate sunday = new ServiceDate(2014, 3, 30);
+        assertSame(cache.serviceDay(sunday, TIME_ZONE), cache.serviceDay(sunday, "AGENCY"));
+        // not a service date, but within the window
+        ServiceDate saturday = new ServiceDate(2014, 3, 29);
+        assertSame(cache.serviceDay(saturday, TIME_ZONE), cache.serviceDay(saturday, TIME_ZONE));
+        // too far away from the window to be kept
+        ServiceDate later = new ServiceDate(2015, 3, 29);
+        assertNotSame(cache.serviceDay(later, TIME_ZONE), cache.serviceDay(later, TIME_ZONE));
+        assertFalse(cache.serviceDay(later, TIME_ZONE).anyServiceRunning(cache.servicesRunning(sunday)));
+    }
+}
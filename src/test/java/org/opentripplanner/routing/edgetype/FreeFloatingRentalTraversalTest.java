@@ -0,0 +1,184 @@
+package org.opentripplanner.routing.edgetype;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.StateEditor;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test picking up free-floating rental vehicles, which are not in the graph, when traversing street edges.
+ */
+public class FreeFloatingRentalTraversalTest {
+
+    private Graph graph;
+
+    private IntersectionVertex v0, v1;
+
+    private StreetEdge edge;
+
+    /** A vehicle of network a about 5 m from v1 */
+    private BikeRentalStation nearV1;
+
+    /** A vehicle of network b about 8 m from v1 */
+    private BikeRentalStation otherNetworkNearV1;
+
+    /** A vehicle of network a about 5 m from v0 */
+    private BikeRentalStation nearV0;
+
+    @Before
+    public void before() {
+        graph = new Graph();
+        v0 = new IntersectionVertex(graph, "v0", 24.9450, 60.1700);
+        v1 = new IntersectionVertex(graph, "v1", 24.9460, 60.1700);
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { v0.getCoordinate(), v1.getCoordinate() });
+        edge = new StreetEdge(v0, v1, geometry, "street", 55, StreetTraversalPermission.ALL, false);
+
+        nearV1 = vehicle("1", 24.94610, 60.1700, "a");
+        otherNetworkNearV1 = vehicle("2", 24.94615, 60.1700, "b");
+        nearV0 = vehicle("3", 24.94490, 60.1700, "a");
+        BikeRentalStationService service = new BikeRentalStationService();
+        service.getFreeFloatingVehicles().update("a", Arrays.asList(nearV1, nearV0));
+        service.getFreeFloatingVehicles().update("b", Collections.singletonList(otherNetworkNearV1));
+        graph.putService(BikeRentalStationService.class, service);
+    }
+
+    @Test
+    public void testPickUp() {
+        RoutingRequest options = request();
+        options.setRoutingContext(graph, v0, v1);
+        List<State> states = results(edge.traverse(new State(options)));
+        assertEquals(2, states.size());
+        State walking = states.stream().filter(s -> !s.isBikeRenting()).findFirst().get();
+        State renting = states.stream().filter(State::isBikeRenting).findFirst().get();
+        assertEquals(TraverseMode.WALK, walking.getNonTransitMode());
+
+        // The rental starts at the vertex reached, after walking one way to the nearest vehicle
+        assertEquals(v1, renting.getVertex());
+        assertEquals(TraverseMode.BICYCLE, renting.getNonTransitMode());
+        assertEquals(Set.of("a"), renting.getBikeRentalNetworks());
+        assertRentalCosts(options, walking, renting, v1, nearV1);
+    }
+
+    @Test
+    public void testArriveByPickUp() {
+        RoutingRequest options = request();
+        options.arriveBy = true;
+        options.setRoutingContext(graph, v0, v1);
+        List<State> states = results(edge.traverse(rentingState(options, "a")));
+        assertEquals(2, states.size());
+        State riding = states.stream().filter(State::isBikeRenting).findFirst().get();
+        State walking = states.stream().filter(s -> !s.isBikeRenting()).findFirst().get();
+        assertEquals(TraverseMode.BICYCLE, riding.getNonTransitMode());
+
+        // Going backwards, the vehicle ridden along the edge was picked up next to its start
+        assertEquals(v0, walking.getVertex());
+        assertEquals(TraverseMode.WALK, walking.getNonTransitMode());
+        assertRentalCosts(options, riding, walking, v0, nearV0);
+
+        // There is no vehicle of the network being ridden there
+        assertEquals(1, results(edge.traverse(rentingState(options, "b"))).size());
+    }
+
+    @Test
+    public void testNetworks() {
+        RoutingRequest options = request();
+        options.allowedBikeRentalNetworks = Set.of("b");
+        options.setRoutingContext(graph, v0, v1);
+        State renting = results(edge.traverse(new State(options))).stream().filter(State::isBikeRenting)
+                .findFirst().get();
+        assertEquals(Set.of("b"), renting.getBikeRentalNetworks());
+        State walking = results(edge.traverse(new State(options))).stream().filter(s -> !s.isBikeRenting())
+                .findFirst().get();
+        assertRentalCosts(options, walking, renting, v1, otherNetworkNearV1);
+
+        options = request();
+        options.allowedBikeRentalNetworks = Set.of("c");
+        options.setRoutingContext(graph, v0, v1);
+        assertEquals(1, results(edge.traverse(new State(options))).size());
+
+        options = request();
+        options.allowedBikeRentalNetworks = Collections.emptySet();
+        options.setRoutingContext(graph, v0, v1);
+        assertEquals(1, results(edge.traverse(new State(options))).size());
+    }
+
+    @Test
+    public void testNoRentalWhenNotAllowed() {
+        RoutingRequest options = request();
+        options.allowBikeRental = false;
+        options.setRoutingContext(graph, v0, v1);
+        List<State> states = results(edge.traverse(new State(options)));
+        assertEquals(1, states.size());
+        assertFalse(states.get(0).isBikeRenting());
+    }
+
+    /** Check that the state after picking up the vehicle cost the walk to the vehicle and the pickup. */
+    private static void assertRentalCosts(RoutingRequest options, State without, State with, IntersectionVertex vertex,
+            BikeRentalStation vehicle) {
+        double distance = SphericalDistanceLibrary.fastDistance(vertex.getLat(), vertex.getLon(), vehicle.y,
+                vehicle.x);
+        assertTrue(distance > 0);
+        int walkTime = (int) Math.ceil(distance / options.walkSpeed);
+        assertEquals(without.getElapsedTimeSeconds() + walkTime + options.bikeRentalPickupTime,
+                with.getElapsedTimeSeconds());
+        assertEquals(without.getWeight() + walkTime * options.walkReluctance + options.bikeRentalPickupCost,
+                with.getWeight(), 1e-6);
+        assertEquals(without.getWalkDistance() + distance, with.getWalkDistance(), 1e-6);
+    }
+
+    private State rentingState(RoutingRequest options, String network) {
+        StateEditor editor = new StateEditor(options, v1);
+        editor.beginVehicleRenting(TraverseMode.BICYCLE);
+        editor.setBikeRentalNetworks(Set.of(network));
+        return editor.makeState();
+    }
+
+    private static RoutingRequest request() {
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet("WALK,BICYCLE"));
+        options.allowBikeRental = true;
+        options.walkSpeed = 1.2;
+        options.setWalkReluctance(2.0);
+        return options;
+    }
+
+    private static List<State> results(State state) {
+        List<State> states = new ArrayList<>();
+        for (State s = state; s != null; s = s.getNextResult()) {
+            states.add(s);
+        }
+        return states;
+    }
+
+    private static BikeRentalStation vehicle(String id, double lon, double lat, String network) {
+        BikeRentalStation vehicle = new BikeRentalStation();
+        vehicle.id = id;
+        vehicle.x = lon;
+        vehicle.y = lat;
+        vehicle.bikesAvailable = 1;
+        vehicle.isFloatingBike = true;
+        vehicle.networks = Set.of(network);
+        return vehicle;
+    }
+}
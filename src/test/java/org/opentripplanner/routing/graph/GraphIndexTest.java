@@ -8,6 +8,10 @@ import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.index.ResolverCache;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.index.model.TripTimeShort;
 import org.opentripplanner.GtfsTest;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.routing.edgetype.TripPattern;
@@ -100,6 +104,44 @@ public class GraphIndexTest extends GtfsTest {
         assertTrue(stops.size() >= 3); // Query can overselect
     }
 
+    public void testResolverCacheSharesLookups() {
+        String feedId = graph.getFeedIds().iterator().next();
+        Stop stopA = graph.index.stopForId.get(new FeedScopedId(feedId, "A"));
+        TripPattern pattern = graph.index.patternsForStop.get(stopA).iterator().next();
+        ServiceDate serviceDate = new ServiceDate();
+
+        ResolverCache cache = new ResolverCache(graph.index);
+        assertSame(cache.resolve(pattern, serviceDate), cache.resolve(pattern, serviceDate));
+        assertSame(cache.serviceDay(serviceDate, pattern.route.getAgency().getId()),
+                cache.serviceDay(serviceDate, pattern.route.getAgency().getId()));
+
+        List<StopTimesInPattern> stopTimes = cache.stopTimesForStop(stopA, 0, 24 * 60 * 60, 2, false, true);
+        long misses = cache.getMisses();
+        assertSame(stopTimes, cache.stopTimesForStop(stopA, 0, 24 * 60 * 60, 2, false, true));
+        assertEquals(misses, cache.getMisses());
+        assertTrue(cache.getHits() >= 2);
+    }
+
+    public void testStopTimesForPatternInDepartureOrder() {
+        String feedId = graph.getFeedIds().iterator().next();
+        Stop stopA = graph.index.stopForId.get(new FeedScopedId(feedId, "A"));
+        Trip trip = graph.index.tripForId.get(new FeedScopedId(feedId, "1.1"));
+        TripPattern pattern = graph.index.patternForTrip.get(trip);
+        ResolverCache cache = new ResolverCache(graph.index);
+        long midnight = cache.serviceDay(new ServiceDate(), pattern.route.getAgency().getId()).time(0);
+
+        List<TripTimeShort> times = graph.index.stopTimesForPattern(stopA, pattern, midnight, 24 * 60 * 60, 3, false, false);
+        assertEquals(3, times.size());
+        assertEquals(0, times.get(0).scheduledDeparture);
+        assertEquals(20 * 60, times.get(1).scheduledDeparture);
+        assertEquals(8 * 60 * 60, times.get(2).scheduledDeparture);
+
+        // The departure lists are binary searched for the start time and cut off at the end of the time range
+        times = graph.index.stopTimesForPattern(stopA, pattern, midnight + 10 * 60, 60 * 60, 3, false, false);
+        assertEquals(1, times.size());
+        assertEquals(20 * 60, times.get(0).scheduledDeparture);
+    }
+
     public void testGraphQLSimple() {
         String query =
                 "query Agency{" +
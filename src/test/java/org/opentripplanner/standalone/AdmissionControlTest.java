@@ -0,0 +1,132 @@
+package org.opentripplanner.standalone;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opentripplanner.standalone.AdmissionControl.Endpoint;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testEndpointForPath() {
+        assertEquals(Endpoint.PLAN, Endpoint.forPath("routers/default/plan"));
+        assertEquals(Endpoint.PROFILE, Endpoint.forPath("/routers/default/profile"));
+        assertEquals(Endpoint.GRAPHQL, Endpoint.forPath("routers/default/index/graphql"));
+        assertEquals(Endpoint.GRAPHQL, Endpoint.forPath("routers/default/index/graphql/batch"));
+        assertNull(Endpoint.forPath("routers/default/index/stops"));
+        assertNull(Endpoint.forPath("routers/default/plan/cache"));
+        assertNull(Endpoint.forPath("routers"));
+    }
+
+    @Test
+    public void testCostEstimation() {
+        assertEquals(2, AdmissionControl.estimateCost(Endpoint.PLAN, parameters()));
+        assertEquals(1, AdmissionControl.estimateCost(Endpoint.PLAN, parameters("mode", "WALK")));
+        assertEquals(3, AdmissionControl.estimateCost(Endpoint.PLAN, parameters("mode", "BICYCLE_RENT,TRANSIT")));
+        assertEquals(4, AdmissionControl.estimateCost(Endpoint.PLAN,
+                parameters("mode", "BUS,WALK", "numItineraries", "6")));
+        assertEquals(4, AdmissionControl.estimateCost(Endpoint.PROFILE, parameters()));
+        assertEquals(10, AdmissionControl.estimateCost(Endpoint.PROFILE,
+                parameters("startTime", "06:00", "endTime", "10:00")));
+        assertEquals(1, AdmissionControl.estimateCost(Endpoint.GRAPHQL, parameters()));
+    }
+
+    @Test
+    public void testRejectionWhenQueueIsFull() throws InterruptedException {
+        AdmissionControl admissionControl = new AdmissionControl(2, 10, 0, 1000);
+        int cost = admissionControl.acquire(Endpoint.PLAN, parameters());
+        assertEquals(2, cost);
+        // No capacity left and no queue: rejected without waiting
+        assertEquals(0, admissionControl.acquire(Endpoint.PLAN, parameters()));
+        // Other endpoints have their own capacity
+        assertEquals(1, admissionControl.acquire(Endpoint.GRAPHQL, parameters()));
+        admissionControl.release(Endpoint.PLAN, cost);
+        assertEquals(2, admissionControl.acquire(Endpoint.PLAN, parameters()));
+        assertEquals(1L, (long) admissionControl.getStats().get("plan").get("rejected"));
+    }
+
+    @Test
+    public void testRejectionAfterQueueWait() throws InterruptedException {
+        AdmissionControl admissionControl = new AdmissionControl(2, 10, 1, 10);
+        admissionControl.acquire(Endpoint.PLAN, parameters());
+        assertEquals(0, admissionControl.acquire(Endpoint.PLAN, parameters()));
+        assertEquals(0L, (long) admissionControl.getStats().get("plan").get("queued"));
+    }
+
+    @Test
+    public void testRejectionWhenHandlerThreadsAreBusy() throws InterruptedException {
+        AdmissionControl admissionControl = new AdmissionControl(10, 2, 16, 1000);
+        int planCost = admissionControl.acquire(Endpoint.PLAN, parameters());
+        assertEquals(1, admissionControl.acquire(Endpoint.GRAPHQL, parameters()));
+        // The endpoints have capacity left, but waiting for it would take the last handler threads
+        assertEquals(0, admissionControl.acquire(Endpoint.PLAN, parameters("mode", "WALK")));
+        assertEquals(0, admissionControl.acquire(Endpoint.PROFILE, parameters()));
+        admissionControl.release(Endpoint.PLAN, planCost);
+        assertEquals(1, admissionControl.acquire(Endpoint.PLAN, parameters("mode", "WALK")));
+    }
+
+    @Test
+    public void testFilterAnswersOverCapacityRequestWith503() throws IOException, InterruptedException {
+        AdmissionControl admissionControl = new AdmissionControl(2, 10, 0, 1000);
+        AdmissionControlFilter filter = new AdmissionControlFilter(admissionControl);
+
+        ContainerRequestContext admitted = request("routers/default/plan");
+        filter.filter(admitted);
+        verify(admitted, never()).abortWith(any(Response.class));
+
+        ContainerRequestContext overCapacity = request("routers/default/plan");
+        filter.filter(overCapacity);
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(overCapacity).abortWith(response.capture());
+        assertEquals(503, response.getValue().getStatus());
+        assertEquals("1", response.getValue().getHeaderString("Retry-After"));
+
+        // Releasing the admitted request makes room for the next one
+        filter.filter(admitted, mock(ContainerResponseContext.class));
+        ContainerRequestContext next = request("routers/default/plan");
+        filter.filter(next);
+        verify(next, never()).abortWith(any(Response.class));
+    }
+
+    private static ContainerRequestContext request(String path) {
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPath()).thenReturn(path);
+        when(uriInfo.getQueryParameters()).thenReturn(parameters());
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        Map<Object, Object> properties = new HashMap<>();
+        doAnswer(invocation -> properties.put(invocation.getArguments()[0], invocation.getArguments()[1]))
+                .when(request).setProperty(anyString(), any());
+        doAnswer(invocation -> properties.remove(invocation.getArguments()[0]))
+                .when(request).removeProperty(anyString());
+        when(request.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.getArguments()[0]));
+        return request;
+    }
+
+    private static MultivaluedMap<String, String> parameters(String... keysAndValues) {
+        MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            parameters.add(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return parameters;
+    }
+}
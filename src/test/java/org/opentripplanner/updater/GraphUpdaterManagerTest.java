@@ -0,0 +1,133 @@
+package org.opentripplanner.updater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GraphUpdaterManagerTest {
+
+    private Graph graph;
+
+    private GraphUpdaterManager updaterManager;
+
+    @Before
+    public void before() {
+        graph = new Graph();
+        updaterManager = new GraphUpdaterManager(graph);
+    }
+
+    @After
+    public void after() {
+        updaterManager.stop();
+    }
+
+    @Test
+    public void testDomainsRunInParallel() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch alertsDone = new CountDownLatch(1);
+        updaterManager.execute(writer(GraphWriterDomain.STREET_NOTES, release::await));
+        updaterManager.execute(writer(GraphWriterDomain.ALERTS, alertsDone::countDown));
+
+        // The alerts writer is not held back by the blocked street notes writer
+        assertTrue(alertsDone.await(10, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testExclusiveWriterRunsAlone() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch exclusiveDone = new CountDownLatch(1);
+        CountDownLatch transitDone = new CountDownLatch(1);
+        StringBuffer order = new StringBuffer();
+        updaterManager.execute(writer(GraphWriterDomain.STREETS, () -> {
+            release.await();
+            order.append("streets ");
+        }));
+        updaterManager.execute(writer(GraphWriterDomain.EXCLUSIVE, () -> {
+            order.append("exclusive ");
+            exclusiveDone.countDown();
+        }));
+        updaterManager.execute(writer(GraphWriterDomain.TRANSIT, () -> {
+            order.append("transit");
+            transitDone.countDown();
+        }));
+
+        // Neither the exclusive writer nor the transit writer submitted after it may start before the streets writer
+        assertFalse(exclusiveDone.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(transitDone.await(0, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(transitDone.await(10, TimeUnit.SECONDS));
+        assertEquals("streets exclusive transit", order.toString());
+    }
+
+    @Test
+    public void testEdgesCreatedInParallelHaveUniqueIds() throws InterruptedException {
+        int edgesPerWriter = 10000;
+        IntersectionVertex a = new IntersectionVertex(graph, "a", 0, 0);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", 0, 0.001);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", 0.001, 0);
+        IntersectionVertex d = new IntersectionVertex(graph, "d", 0.001, 0.001);
+        int[] streetIds = new int[edgesPerWriter];
+        int[] transitIds = new int[edgesPerWriter];
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        updaterManager.execute(writer(GraphWriterDomain.STREETS, () -> {
+            started.countDown();
+            started.await();
+            for (int i = 0; i < edgesPerWriter; i++) {
+                streetIds[i] = new FreeEdge(a, b).getId();
+            }
+            done.countDown();
+        }));
+        updaterManager.execute(writer(GraphWriterDomain.TRANSIT, () -> {
+            started.countDown();
+            started.await();
+            for (int i = 0; i < edgesPerWriter; i++) {
+                transitIds[i] = new FreeEdge(c, d).getId();
+            }
+            done.countDown();
+        }));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < edgesPerWriter; i++) {
+            ids.add(streetIds[i]);
+            ids.add(transitIds[i]);
+        }
+        assertEquals(2 * edgesPerWriter, ids.size());
+    }
+
+    private interface Action {
+        void run() throws InterruptedException;
+    }
+
+    private static GraphWriterRunnable writer(GraphWriterDomain domain, Action action) {
+        return new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                try {
+                    action.run();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public GraphWriterDomain getDomain() {
+                return domain;
+            }
+        };
+    }
+}
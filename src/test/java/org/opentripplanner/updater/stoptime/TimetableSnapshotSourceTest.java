@@ -7,6 +7,7 @@ import java.io.File;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Before;
@@ -208,6 +209,72 @@ public class TimetableSnapshotSourceTest {
         assertEquals(RealTimeState.SCHEDULED, forToday.getTripTimes(tripIndex2).getRealTimeState());
     }
 
+    @Test
+    public void testFullDatasetOnlyChangesUpdatedTrips() throws InvalidProtocolBufferException {
+        final FeedScopedId tripId = new FeedScopedId(feedId, "1.1");
+        final FeedScopedId tripId2 = new FeedScopedId(feedId, "1.2");
+        final Trip trip = graph.index.tripForId.get(tripId);
+        final TripPattern pattern = graph.index.patternForTrip.get(trip);
+        final int tripIndex = pattern.scheduledTimetable.getTripIndex(tripId);
+        final int tripIndex2 = pattern.scheduledTimetable.getTripIndex(tripId2);
+        final TripUpdate cancellation2 = TripUpdate.parseFrom(cancellation).toBuilder()
+                .setTrip(TripDescriptor.newBuilder()
+                        .setTripId("1.2")
+                        .setScheduleRelationship(TripDescriptor.ScheduleRelationship.CANCELED))
+                .build();
+        updater.maxSnapshotFrequency = (-1);
+
+        updater.applyTripUpdates(graph, true, Arrays.asList(delayedTripUpdate("1.1", 1, 100), cancellation2), feedId);
+        final TripTimes delayed = updater.getTimetableSnapshot().resolve(pattern, serviceDate).getTripTimes(tripIndex);
+        assertEquals(1, delayed.getDepartureDelay(1));
+
+        // Same trips, only the timestamp changed: the trip times are kept
+        updater.applyTripUpdates(graph, true, Arrays.asList(delayedTripUpdate("1.1", 1, 130), cancellation2), feedId);
+        Timetable forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertSame(delayed, forToday.getTripTimes(tripIndex));
+        assertEquals(RealTimeState.CANCELED, forToday.getTripTimes(tripIndex2).getRealTimeState());
+
+        // The cancellation is no longer in the dataset
+        updater.applyTripUpdates(graph, true, Arrays.asList(delayedTripUpdate("1.1", 1, 160)), feedId);
+        forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertSame(delayed, forToday.getTripTimes(tripIndex));
+        assertSame(pattern.scheduledTimetable.getTripTimes(tripIndex2), forToday.getTripTimes(tripIndex2));
+
+        // The delay changed
+        updater.applyTripUpdates(graph, true, Arrays.asList(delayedTripUpdate("1.1", 2, 190)), feedId);
+        forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertEquals(2, forToday.getTripTimes(tripIndex).getDepartureDelay(1));
+
+        // A differential message cancels both trips, the next full dataset only has the unchanged delay of 1.1
+        final TripUpdate cancellation1 = TripUpdate.parseFrom(cancellation);
+        updater.applyTripUpdates(graph, false, Arrays.asList(cancellation1, cancellation2), feedId);
+        forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertEquals(RealTimeState.CANCELED, forToday.getTripTimes(tripIndex).getRealTimeState());
+        assertEquals(RealTimeState.CANCELED, forToday.getTripTimes(tripIndex2).getRealTimeState());
+
+        updater.applyTripUpdates(graph, true, Arrays.asList(delayedTripUpdate("1.1", 2, 220)), feedId);
+        forToday = updater.getTimetableSnapshot().resolve(pattern, serviceDate);
+        assertEquals(RealTimeState.UPDATED, forToday.getTripTimes(tripIndex).getRealTimeState());
+        assertEquals(2, forToday.getTripTimes(tripIndex).getDepartureDelay(1));
+        assertSame(pattern.scheduledTimetable.getTripTimes(tripIndex2), forToday.getTripTimes(tripIndex2));
+    }
+
+    private TripUpdate delayedTripUpdate(String tripId, int delay, long timestamp) {
+        final TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.setTrip(TripDescriptor.newBuilder()
+                .setTripId(tripId)
+                .setScheduleRelationship(TripDescriptor.ScheduleRelationship.SCHEDULED));
+        tripUpdateBuilder.setTimestamp(timestamp);
+
+        final StopTimeUpdate.Builder stopTimeUpdateBuilder = tripUpdateBuilder.addStopTimeUpdateBuilder();
+        stopTimeUpdateBuilder.setScheduleRelationship(StopTimeUpdate.ScheduleRelationship.SCHEDULED);
+        stopTimeUpdateBuilder.setStopSequence(2);
+        stopTimeUpdateBuilder.getArrivalBuilder().setDelay(delay);
+        stopTimeUpdateBuilder.getDepartureBuilder().setDelay(delay);
+
+        return tripUpdateBuilder.build();
+    }
+
     @Test
     public void testHandleAddedTrip() throws ParseException {
         // GIVEN
@@ -473,6 +540,31 @@ public class TimetableSnapshotSourceTest {
          */
     }
 
+    @Test
+    public void testPurgeExpiredRealtimePatterns() {
+        final TripPatternCache tripPatternCache = new TripPatternCache();
+        final Trip trip = graph.index.tripForId.get(new FeedScopedId(feedId, "1.1"));
+        final TripPattern scheduledPattern = graph.index.patternForTrip.get(trip);
+        final ServiceDate yesterday = serviceDate.previous();
+
+        final TripPattern pattern = tripPatternCache.getOrCreateTripPattern(scheduledPattern.stopPattern,
+                scheduledPattern.route, graph, yesterday);
+        assertSame(pattern, tripPatternCache.getOrCreateTripPattern(scheduledPattern.stopPattern,
+                scheduledPattern.route, graph, serviceDate));
+        assertTrue(graph.containsVertex(pattern.departVertices[0]));
+
+        // Still used today
+        assertEquals(0, tripPatternCache.purgeExpiredPatterns(graph, yesterday, Collections.emptySet()));
+        // Still used by the timetable snapshot
+        assertEquals(0, tripPatternCache.purgeExpiredPatterns(graph, serviceDate, Collections.singleton(pattern)));
+
+        assertEquals(1, tripPatternCache.purgeExpiredPatterns(graph, serviceDate, Collections.emptySet()));
+        assertEquals(0, tripPatternCache.size());
+        assertFalse(graph.containsVertex(pattern.departVertices[0]));
+        assertFalse(graph.containsVertex(pattern.arriveVertices[1]));
+        assertEquals(0, pattern.departVertices[0].getDegreeIn() + pattern.departVertices[0].getDegreeOut());
+    }
+
     @Test
     public void testPurgeExpiredData() throws InvalidProtocolBufferException {
         final FeedScopedId tripId = new FeedScopedId(feedId, "1.1");
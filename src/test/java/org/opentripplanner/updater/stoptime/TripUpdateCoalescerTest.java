@@ -0,0 +1,79 @@
+package org.opentripplanner.updater.stoptime;
+
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.GraphWriterRunnable;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TripUpdateCoalescerTest {
+
+    private GraphUpdaterManager updaterManager;
+
+    private TripUpdateCoalescer coalescer;
+
+    private Graph graph;
+
+    private TimetableSnapshotSource snapshotSource;
+
+    @Before
+    public void before() {
+        updaterManager = mock(GraphUpdaterManager.class);
+        coalescer = new TripUpdateCoalescer(updaterManager, "FEED", 3, 100);
+        graph = mock(Graph.class);
+        snapshotSource = mock(TimetableSnapshotSource.class);
+        graph.timetableSnapshotSource = snapshotSource;
+    }
+
+    @Test
+    public void testDifferentialUpdatesAreMergedPerTrip() {
+        TripUpdate first = tripUpdate("A", "20140330", 1);
+        TripUpdate other = tripUpdate("B", "20140330", 1);
+        TripUpdate second = tripUpdate("A", "20140330", 2);
+        TripUpdate nextDay = tripUpdate("A", "20140331", 1);
+
+        coalescer.offer(false, Arrays.asList(first, other));
+        coalescer.offer(false, Arrays.asList(second, nextDay));
+
+        ArgumentCaptor<GraphWriterRunnable> runnable = ArgumentCaptor.forClass(GraphWriterRunnable.class);
+        verify(updaterManager, times(1)).execute(runnable.capture());
+        runnable.getValue().run(graph);
+        verify(snapshotSource).applyTripUpdates(graph, false, Arrays.asList(other, second, nextDay), "FEED", 3);
+
+        // Once applied, the next message schedules a new graph writer task
+        coalescer.offer(false, Collections.singletonList(first));
+        verify(updaterManager, times(2)).execute(any());
+    }
+
+    @Test
+    public void testFullDatasetReplacesPendingUpdates() {
+        TripUpdate differential = tripUpdate("A", "20140330", 1);
+        TripUpdate full = tripUpdate("B", "20140330", 2);
+        TripUpdate later = tripUpdate("B", "20140330", 3);
+
+        coalescer.offer(false, Collections.singletonList(differential));
+        coalescer.offer(true, Collections.singletonList(full));
+        coalescer.offer(false, Collections.singletonList(later));
+
+        ArgumentCaptor<GraphWriterRunnable> runnable = ArgumentCaptor.forClass(GraphWriterRunnable.class);
+        verify(updaterManager, times(1)).execute(runnable.capture());
+        runnable.getValue().run(graph);
+        verify(snapshotSource).applyTripUpdates(graph, true, Collections.singletonList(later), "FEED", 3);
+    }
+
+    private static TripUpdate tripUpdate(String tripId, String startDate, long timestamp) {
+        TripDescriptor trip = TripDescriptor.newBuilder().setTripId(tripId).setStartDate(startDate).build();
+        return TripUpdate.newBuilder().setTrip(trip).setTimestamp(timestamp).build();
+    }
+}
@@ -0,0 +1,149 @@
+package org.opentripplanner.util;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Test conditional downloads against a local server which answers 304 Not Modified when the ETag sent back is that of
+ * the current content.
+ */
+public class ConditionalHttpGetTest {
+
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    private HttpServer server;
+
+    private String url;
+
+    /** The content served, whose ETag is its version */
+    private volatile String content = "first";
+
+    private volatile int version = 1;
+
+    /** The status returned instead of the content, if it is not 200 */
+    private volatile int status = 200;
+
+    private volatile int requests;
+
+    private volatile String ifNoneMatch;
+
+    private volatile String ifModifiedSince;
+
+    private volatile String clientIdentifier;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/feed", this::handle);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/feed";
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests++;
+        ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        clientIdentifier = exchange.getRequestHeaders().getFirst("Client-Identifier");
+        String etag = "\"" + version + "\"";
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+        } else if (etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        ConditionalHttpGet download = new ConditionalHttpGet(url, "Client-Identifier", "test");
+        assertEquals("first", read(download.fetch()));
+        assertEquals(5, download.getBytesRead());
+        assertNull(ifNoneMatch);
+        assertNull(ifModifiedSince);
+        assertEquals("test", clientIdentifier);
+
+        // The validators of the previous response are sent back
+        assertNull(download.fetch());
+        assertEquals(2, requests);
+        assertEquals("\"1\"", ifNoneMatch);
+        assertEquals(LAST_MODIFIED, ifModifiedSince);
+        assertEquals(0, download.getBytesRead());
+
+        // Once the content changes it is downloaded again
+        content = "second";
+        version = 2;
+        assertEquals("second", read(download.fetch()));
+        assertEquals("\"1\"", ifNoneMatch);
+        assertNull(download.fetch());
+        assertEquals("\"2\"", ifNoneMatch);
+    }
+
+    /** The content must be downloaded again after it could not be parsed, even if it did not change */
+    @Test
+    public void testResetAfterParseFailure() throws IOException {
+        ConditionalHttpGet download = new ConditionalHttpGet(url);
+        assertEquals("first", read(download.fetch()));
+        download.reset();
+        assertEquals("first", read(download.fetch()));
+        assertEquals(2, requests);
+        assertNull(ifNoneMatch);
+        assertNull(ifModifiedSince);
+        assertNull(download.fetch());
+    }
+
+    @Test
+    public void testErrorStatus() throws IOException {
+        ConditionalHttpGet download = new ConditionalHttpGet(url);
+        assertEquals("first", read(download.fetch()));
+        status = 503;
+        try {
+            download.fetch();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("\"1\"", ifNoneMatch);
+
+        // The validators are forgotten after an error, so the unchanged content is downloaded again
+        status = 200;
+        assertEquals("first", read(download.fetch()));
+        assertNull(ifNoneMatch);
+        assertEquals(3, requests);
+    }
+
+    private static String read(InputStream content) throws IOException {
+        assertNotNull(content);
+        try (InputStream in = content) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+}
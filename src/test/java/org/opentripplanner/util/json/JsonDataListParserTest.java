@@ -0,0 +1,49 @@
+package org.opentripplanner.util.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonDataListParserTest {
+
+    @Test
+    public void testNestedList() throws IOException {
+        JsonDataListParser<String> parser = new JsonDataListParser<>("data/bikes",
+                node -> node.path("disabled").asBoolean() ? null : node.path("bike_id").asText());
+        List<String> ids = parser.parse(json("{\"last_updated\": 1, \"ttl\": {\"a\": [1, 2]}, \"data\": {"
+                + "\"other\": [{\"bike_id\": \"x\"}], \"bikes\": [{\"bike_id\": \"1\", \"lat\": 60.1},"
+                + "{\"bike_id\": \"2\", \"disabled\": true}, {\"bike_id\": \"3\", \"rental_uris\": {\"web\": \"u\"}}]},"
+                + "\"trailing\": {\"bikes\": []}}"));
+        assertEquals(Arrays.asList("1", "3"), ids);
+    }
+
+    @Test
+    public void testTopLevelList() throws IOException {
+        JsonDataListParser<Integer> parser = new JsonDataListParser<>("", node -> node.path("id").asInt());
+        assertEquals(Arrays.asList(1, 2), parser.parse(json("[{\"id\": 1}, {\"id\": 2}]")));
+    }
+
+    @Test
+    public void testNotAList() throws IOException {
+        JsonDataListParser<Integer> parser = new JsonDataListParser<>("data", node -> node.path("id").asInt());
+        assertTrue(parser.parse(json("{\"data\": {\"id\": 1}}")).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingPath() throws IOException {
+        JsonDataListParser<Integer> parser = new JsonDataListParser<>("data/stations", node -> 1);
+        parser.parse(json("{\"data\": {\"bikes\": []}}"));
+    }
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,65 @@
+package org.opentripplanner.util.monitoring;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = Histogram.bucketIndex(value);
+            long upperBound = Histogram.bucketUpperBound(index);
+            assertTrue(upperBound >= value);
+            // Relative error of at most 1/8
+            assertTrue(upperBound - value <= value / 8);
+            if (index > 0) {
+                assertTrue(Histogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        long median = histogram.getValueAtQuantile(0.5);
+        assertTrue(median >= 500 && median <= 500 * 9 / 8);
+        assertEquals(1000, histogram.getValueAtQuantile(1.0));
+        assertEquals(0, new Histogram().getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testPrometheusFormat() throws IOException {
+        Counter counter = Metrics.counter("otp_test_events_total", "Test events.", "source", "a\"b");
+        assertSame(counter, Metrics.counter("otp_test_events_total", "Test events.", "source", "a\"b"));
+        counter.add(3);
+        Metrics.histogram("otp_test_duration_ms", "Test durations.").record(5);
+
+        StringWriter writer = new StringWriter();
+        Metrics.writePrometheus(writer);
+        String output = writer.toString();
+        assertTrue(output.contains("# TYPE otp_test_events_total counter\n"));
+        assertTrue(output.contains("otp_test_events_total{source=\"a\\\"b\"} 3\n"));
+        assertTrue(output.contains("# TYPE otp_test_duration_ms summary\n"));
+        assertTrue(output.contains("otp_test_duration_ms{quantile=\"0.5\"} 5\n"));
+        assertTrue(output.contains("otp_test_duration_ms_count 1\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        Metrics.counter("otp_test_conflict", "Conflicting metric.");
+        Metrics.histogram("otp_test_conflict", "Conflicting metric.");
+    }
+}